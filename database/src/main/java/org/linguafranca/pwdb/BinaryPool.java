@@ -0,0 +1,510 @@
+package org.linguafranca.pwdb;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The attachments of a database held as raw bytes, indexed as they are referred to by entries.
+ * <p>
+ * This is the form that attachments take in the inner header of a KDBX V4 stream, so a pool can
+ * be filled from and written to such a stream without compressing and base64 encoding attachments
+ * into the XML. Formats that keep attachments in the XML (KDBX V3) convert them when writing.
+ * <p>
+ * Attachments are kept in memory up to a budget, attachments that would exceed it are written to a
+ * temporary file, encrypted with AES-CTR under a key held only in memory, and streamed back when read.
+ * Space in the file is not reused when attachments are replaced, {@link #close()} deletes it.
+ * By default the budget is unlimited and no file is used.
+ * <p>
+ * Arrays passed to the pool are not copied, arrays returned from {@link #get(int)} are.
+ */
+public class BinaryPool implements AutoCloseable {
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final SecureRandom secureRandom = new SecureRandom();
+
+    private final long memoryBudget;
+    private final Path directory;
+    private final List<Binary> binaries = new ArrayList<>();
+
+    private long memoryBytes = 0;
+    private SpillFile spillFile;
+
+    private interface Binary {
+        int length();
+
+        InputStream open() throws IOException;
+    }
+
+    private static final class MemoryBinary implements Binary {
+        private final byte[] content;
+
+        MemoryBinary(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public int length() {
+            return content.length;
+        }
+
+        @Override
+        public InputStream open() {
+            return new ByteArrayInputStream(content);
+        }
+    }
+
+    /**
+     * An attachment in the spill file, as a list of extents
+     */
+    private static final class SpilledBinary implements Binary {
+        private final SpillFile file;
+        private final byte[] iv;
+        private final List<long[]> extents = new ArrayList<>();
+        private int length = 0;
+
+        SpilledBinary(SpillFile file, byte[] iv) {
+            this.file = file;
+            this.iv = iv;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public InputStream open() {
+            return file.new SpillInputStream(this);
+        }
+    }
+
+    /**
+     * An append only temporary file, attachments are encrypted with a key belonging to the file
+     * and an IV per attachment
+     */
+    private static final class SpillFile {
+        private final FileChannel channel;
+        private final SecretKeySpec key;
+        private long end = 0;
+
+        SpillFile(Path directory) throws IOException {
+            Path path = directory == null ?
+                    Files.createTempFile("binarypool", ".tmp") :
+                    Files.createTempFile(directory, "binarypool", ".tmp");
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+            byte[] keyBytes = new byte[32];
+            secureRandom.nextBytes(keyBytes);
+            key = new SecretKeySpec(keyBytes, "AES");
+            Arrays.fill(keyBytes, (byte) 0);
+        }
+
+        Cipher getCipher(int mode, byte[] iv) {
+            try {
+                Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+                cipher.init(mode, key, new IvParameterSpec(iv));
+                return cipher;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /* append cipher text to a binary */
+        synchronized void append(SpilledBinary binary, byte[] cipherText, int length) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(cipherText, 0, length);
+            long position = end;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            long[] last = binary.extents.isEmpty() ? null : binary.extents.get(binary.extents.size() - 1);
+            if (last != null && last[0] + last[1] == end) {
+                last[1] += length;
+            } else {
+                binary.extents.add(new long[]{end, length});
+            }
+            binary.length += length;
+            end = position;
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+
+        /**
+         * Reads and decrypts the extents of a binary
+         */
+        private final class SpillInputStream extends InputStream {
+            private final SpilledBinary binary;
+            private final Cipher cipher;
+            private final ByteBuffer cipherText = ByteBuffer.allocate(CHUNK_SIZE);
+            private byte[] plainText = EMPTY;
+            private int plainTextPosition = 0;
+            private int extent = 0;
+            private long extentPosition = 0;
+
+            SpillInputStream(SpilledBinary binary) {
+                this.binary = binary;
+                this.cipher = getCipher(Cipher.DECRYPT_MODE, binary.iv);
+            }
+
+            /* decrypt the next chunk, false at the end of the binary */
+            private boolean fill() throws IOException {
+                while (plainTextPosition == plainText.length) {
+                    if (extent == binary.extents.size()) {
+                        return false;
+                    }
+                    long[] current = binary.extents.get(extent);
+                    // Buffer rather than ByteBuffer methods for Java 8 compatibility
+                    ((Buffer) cipherText).clear();
+                    ((Buffer) cipherText).limit((int) Math.min(CHUNK_SIZE, current[1] - extentPosition));
+                    while (cipherText.hasRemaining()) {
+                        if (channel.read(cipherText, current[0] + extentPosition + cipherText.position()) < 0) {
+                            throw new EOFException("Spill file is truncated");
+                        }
+                    }
+                    extentPosition += cipherText.limit();
+                    if (extentPosition == current[1]) {
+                        extent++;
+                        extentPosition = 0;
+                    }
+                    plainText = cipher.update(cipherText.array(), 0, cipherText.limit());
+                    plainTextPosition = 0;
+                }
+                return true;
+            }
+
+            @Override
+            public int read() throws IOException {
+                if (!fill()) {
+                    return -1;
+                }
+                return plainText[plainTextPosition++] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!fill()) {
+                    return -1;
+                }
+                int count = Math.min(len, plainText.length - plainTextPosition);
+                System.arraycopy(plainText, plainTextPosition, b, off, count);
+                plainTextPosition += count;
+                return count;
+            }
+        }
+    }
+
+    /**
+     * Collects content in memory until it would exceed the budget, then writes it to the spill file
+     */
+    private class PoolOutputStream extends OutputStream {
+        private final int index;
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private SpilledBinary spilled;
+        private Cipher cipher;
+        private boolean closed = false;
+
+        PoolOutputStream(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream is closed");
+            }
+            if (spilled == null && memory.size() + len > getRemainingBudget()) {
+                byte[] iv = new byte[16];
+                secureRandom.nextBytes(iv);
+                spilled = new SpilledBinary(getSpillFile(), iv);
+                cipher = spilled.file.getCipher(Cipher.ENCRYPT_MODE, iv);
+                byte[] buffered = memory.toByteArray();
+                memory = null;
+                spill(buffered, 0, buffered.length);
+            }
+            if (spilled == null) {
+                memory.write(b, off, len);
+            } else {
+                spill(b, off, len);
+            }
+        }
+
+        private void spill(byte[] b, int off, int len) throws IOException {
+            for (int i = 0; i < len; i += CHUNK_SIZE) {
+                byte[] cipherText = cipher.update(b, off + i, Math.min(CHUNK_SIZE, len - i));
+                if (cipherText != null) {
+                    spilled.file.append(spilled, cipherText, cipherText.length);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            put(index, spilled == null ? new MemoryBinary(memory.toByteArray()) : spilled);
+        }
+    }
+
+    /**
+     * A pool which holds all attachments in memory
+     */
+    public BinaryPool() {
+        this(Long.MAX_VALUE, null);
+    }
+
+    /**
+     * @param memoryBudget the number of bytes of attachments to hold in memory
+     * @param directory    the directory for the temporary file, or null for the default temporary directory
+     */
+    public BinaryPool(long memoryBudget, Path directory) {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("Memory budget must not be negative");
+        }
+        this.memoryBudget = memoryBudget;
+        this.directory = directory;
+    }
+
+    private synchronized long getRemainingBudget() {
+        return memoryBudget - memoryBytes;
+    }
+
+    private synchronized SpillFile getSpillFile() throws IOException {
+        if (spillFile == null) {
+            spillFile = new SpillFile(directory);
+        }
+        return spillFile;
+    }
+
+    private synchronized void put(int index, Binary binary) {
+        while (binaries.size() <= index) {
+            binaries.add(null);
+        }
+        Binary previous = binaries.set(index, binary);
+        if (previous instanceof MemoryBinary) {
+            memoryBytes -= previous.length();
+        }
+        if (binary instanceof MemoryBinary) {
+            memoryBytes += binary.length();
+        }
+    }
+
+    /**
+     * Add an attachment at the next free index
+     *
+     * @param content the content, which is not copied
+     * @return the index of the attachment
+     */
+    public synchronized int add(byte[] content) {
+        int index = binaries.size();
+        set(index, content);
+        return index;
+    }
+
+    /**
+     * Add an attachment at the next free index
+     *
+     * @param content a stream of the content, which is read to its end but not closed
+     * @return the index of the attachment
+     */
+    public int add(InputStream content) throws IOException {
+        int index;
+        synchronized (this) {
+            index = binaries.size();
+            // reserve the index
+            put(index, new MemoryBinary(EMPTY));
+        }
+        set(index, content);
+        return index;
+    }
+
+    /**
+     * Set the attachment at an index, replacing any that is there
+     *
+     * @param index   the index
+     * @param content the content, which is not copied if it is held in memory
+     */
+    public void set(int index, byte[] content) {
+        if (content.length <= getRemainingBudget()) {
+            put(index, new MemoryBinary(content));
+            return;
+        }
+        try (OutputStream outputStream = newOutputStream(index)) {
+            outputStream.write(content);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write attachment to temporary file", e);
+        }
+    }
+
+    /**
+     * Set the attachment at an index, replacing any that is there
+     *
+     * @param index   the index
+     * @param content a stream of the content, which is read to its end but not closed
+     */
+    public void set(int index, InputStream content) throws IOException {
+        try (OutputStream outputStream = newOutputStream(index)) {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int read;
+            while ((read = content.read(buffer)) >= 0) {
+                outputStream.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * Set the attachment at an index, replacing any that is there, to the content written to a stream
+     *
+     * @param index the index
+     * @return a stream, the attachment is set when it is closed
+     */
+    public OutputStream newOutputStream(int index) {
+        return new PoolOutputStream(index);
+    }
+
+    /**
+     * @return true if there is an attachment at the index
+     */
+    public synchronized boolean contains(int index) {
+        return index >= 0 && index < binaries.size() && binaries.get(index) != null;
+    }
+
+    /**
+     * Get a copy of an attachment
+     *
+     * @param index the index
+     * @return the content, or null if there is no attachment at that index
+     */
+    public byte[] get(int index) {
+        Binary binary = getBinary(index);
+        if (binary == null) {
+            return null;
+        }
+        if (binary instanceof MemoryBinary) {
+            return ((MemoryBinary) binary).content.clone();
+        }
+        byte[] result = new byte[binary.length()];
+        try (InputStream inputStream = binary.open()) {
+            int position = 0;
+            while (position < result.length) {
+                int read = inputStream.read(result, position, result.length - position);
+                if (read < 0) {
+                    throw new EOFException();
+                }
+                position += read;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read attachment from temporary file", e);
+        }
+        return result;
+    }
+
+    private synchronized Binary getBinary(int index) {
+        return contains(index) ? binaries.get(index) : null;
+    }
+
+    /**
+     * Read an attachment without copying it into memory
+     *
+     * @param index the index
+     * @return a stream of the content, or null if there is no attachment at that index
+     */
+    public InputStream getInputStream(int index) throws IOException {
+        Binary binary = getBinary(index);
+        return binary == null ? null : binary.open();
+    }
+
+    /**
+     * Write an attachment, an index with no attachment writes nothing
+     *
+     * @param index        the index
+     * @param outputStream the stream to write to
+     */
+    public void writeTo(int index, OutputStream outputStream) throws IOException {
+        Binary binary = getBinary(index);
+        if (binary instanceof MemoryBinary) {
+            outputStream.write(((MemoryBinary) binary).content);
+        } else if (binary != null) {
+            try (InputStream inputStream = binary.open()) {
+                byte[] buffer = new byte[CHUNK_SIZE];
+                int read;
+                while ((read = inputStream.read(buffer)) >= 0) {
+                    outputStream.write(buffer, 0, read);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the length of the attachment at the index, or -1 if there is none
+     */
+    public synchronized int getLength(int index) {
+        return contains(index) ? binaries.get(index).length() : -1;
+    }
+
+    /**
+     * @return the number of bytes of attachments held in memory
+     */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * @return one more than the highest index of an attachment
+     */
+    public synchronized int size() {
+        return binaries.size();
+    }
+
+    /**
+     * Remove all attachments
+     */
+    public synchronized void clear() {
+        binaries.clear();
+        memoryBytes = 0;
+    }
+
+    /**
+     * Remove all attachments and delete the temporary file, if any
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        clear();
+        if (spillFile != null) {
+            spillFile.close();
+            spillFile = null;
+        }
+    }
+}
@@ -16,9 +16,15 @@
 
 package org.linguafranca.pwdb;
 
+import com.google.common.io.ByteStreams;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.*;
 
 /**
@@ -198,6 +204,63 @@ public interface Entry <D extends Database<D, G, E, I>, G extends Group<D, G, E,
      */
     boolean removeBinaryProperty(String name) throws UnsupportedOperationException;
 
+    /**
+     * Gets the value of a binary property as a stream, which implementations may provide
+     * without holding the whole value in memory.
+     *
+     * <p>Support for this method is optional.
+     *
+     * @param name the name of the property to get
+     * @return a stream or null if the property is not known, or if binary properties are not supported
+     * @throws IOException if the value cannot be read
+     * @see Database#supportsBinaryProperties
+     */
+    default InputStream getBinaryPropertyStream(String name) throws IOException {
+        byte[] value = getBinaryProperty(name);
+        return value == null ? null : new ByteArrayInputStream(value);
+    }
+
+    /**
+     * Sets the value of a binary property from a stream, which implementations may store
+     * without holding the whole value in memory.
+     *
+     * <p>Support for this method is optional.
+     *
+     * @param name the name of the property to set
+     * @param value a stream of the value, which is read to its end but not closed
+     * @throws IOException if the value cannot be read
+     * @throws UnsupportedOperationException if binary properties are not supported
+     * @see Database#supportsBinaryProperties()
+     */
+    default void setBinaryPropertyStream(String name, InputStream value) throws IOException {
+        setBinaryProperty(name, ByteStreams.toByteArray(value));
+    }
+
+    /**
+     * Sets the value of a binary property to what is written to a stream. The property is
+     * set when the stream is closed.
+     *
+     * <p>Support for this method is optional.
+     *
+     * @param name the name of the property to set
+     * @return a stream to write the value to
+     * @throws UnsupportedOperationException if binary properties are not supported
+     * @see Database#supportsBinaryProperties()
+     */
+    default OutputStream newBinaryPropertyStream(String name) {
+        return new ByteArrayOutputStream() {
+            private boolean closed = false;
+
+            @Override
+            public void close() {
+                if (!closed) {
+                    closed = true;
+                    setBinaryProperty(name, toByteArray());
+                }
+            }
+        };
+    }
+
     /**
      * Returns a list of binary property names known to the entry.
      *
@@ -1,6 +1,9 @@
 package org.linguafranca.pwdb;
 
 import com.google.common.base.Charsets;
+import org.linguafranca.pwdb.security.SealingEngine;
+import org.linguafranca.pwdb.security.SeekableStreamEncryptor;
+import org.linguafranca.pwdb.security.SlabArena;
 
 import javax.crypto.Cipher;
 import javax.crypto.SealedObject;
@@ -30,6 +33,10 @@ public interface PropertyValue {
 
     char [] getValueAsChars();
 
+    /**
+     * The value encoded as UTF-8. Implementations must return a new array on each call, which the caller
+     * owns and may overwrite, e.g. encrypt in place or zero after use.
+     */
     byte [] getValueAsBytes();
 
     boolean isProtected();
@@ -122,6 +129,60 @@ public interface PropertyValue {
                 return BytesStore.getFactory();
             }
         }
+
+        /**
+         * As {@link Default} but protected values are sealed by a {@link SealingEngine} belonging to the strategy,
+         * so all the protected values of a database using the strategy share one engine.
+         */
+        class Sealing extends Default {
+            private final Factory<EngineSealedStore> factory;
+
+            public Sealing() {
+                this(new SealingEngine());
+            }
+
+            public Sealing(SealingEngine engine) {
+                this.factory = EngineSealedStore.getFactory(engine);
+            }
+
+            @Override
+            public Factory<? extends PropertyValue> newProtected() {
+                return factory;
+            }
+        }
+
+        /**
+         * As {@link Default} but protected values are stored in a {@link SlabArena} belonging to the strategy.
+         * The arena should be closed when the database using the strategy is finished with, see
+         * {@link org.linguafranca.pwdb.protect.ProtectedDatabase#close()}.
+         */
+        class Arena extends Default implements AutoCloseable {
+            private final SlabArena arena;
+            private final Factory<ArenaStore> factory;
+
+            public Arena() {
+                this(new SlabArena());
+            }
+
+            public Arena(SlabArena arena) {
+                this.arena = arena;
+                this.factory = ArenaStore.getFactory(arena);
+            }
+
+            @Override
+            public Factory<? extends PropertyValue> newProtected() {
+                return factory;
+            }
+
+            public SlabArena getArena() {
+                return arena;
+            }
+
+            @Override
+            public void close() {
+                arena.close();
+            }
+        }
     }
 
     /**
@@ -439,4 +500,243 @@ public interface PropertyValue {
             return true;
         }
     }
+
+    /**
+     * A protected value as loaded, held as its ciphertext and its offset in the inner keystream, which is
+     * decrypted into a value from a given factory when it is first accessed.
+     * <p>
+     * Loading a database in this way does no decryption of protected values that are never read. A value
+     * which has not been changed can be saved by writing its ciphertext again, if it falls at the same offset
+     * in the same keystream, see {@link #getCipherText(SeekableStreamEncryptor)}.
+     * <p>
+     * The stream encryptor, and so the inner stream key, is retained for as long as the value.
+     */
+    class DeferredStore implements PropertyValue {
+        private final SeekableStreamEncryptor encryptor;
+        private final long position;
+        private final byte[] cipherText;
+        private final PropertyValue.Factory<? extends PropertyValue> factory;
+        private volatile PropertyValue value;
+
+        /**
+         * @param encryptor the encryptor the value was encrypted with
+         * @param position the offset of the value in the keystream
+         * @param cipherText the encrypted value
+         * @param factory a factory for the value once decrypted
+         */
+        public DeferredStore(SeekableStreamEncryptor encryptor, long position, byte[] cipherText,
+                             PropertyValue.Factory<? extends PropertyValue> factory) {
+            this.encryptor = encryptor;
+            this.position = position;
+            this.cipherText = cipherText;
+            this.factory = factory;
+        }
+
+        private PropertyValue getDecrypted() {
+            PropertyValue result = value;
+            if (result == null) {
+                synchronized (this) {
+                    result = value;
+                    if (result == null) {
+                        byte[] bytes = encryptor.decrypt(position, cipherText);
+                        result = factory.of(bytes);
+                        Arrays.fill(bytes, (byte) 0);
+                        value = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * True if the value has been decrypted
+         */
+        public boolean isDecrypted() {
+            return value != null;
+        }
+
+        /**
+         * The original ciphertext, if it is valid for the next value to be encrypted by an encryptor,
+         * i.e. the encryptor has the same key and is positioned at the same offset as when the value was loaded
+         *
+         * @param other the encryptor that is being used for saving
+         * @return a copy of the ciphertext or null if it cannot be reused
+         */
+        public byte[] getCipherText(SeekableStreamEncryptor other) {
+            if (other.getClass() == encryptor.getClass() &&
+                    other.getPosition() == position &&
+                    Arrays.equals(other.getKey(), encryptor.getKey())) {
+                return cipherText.clone();
+            }
+            return null;
+        }
+
+        @Override
+        public CharSequence getValue() {
+            return getDecrypted().getValue();
+        }
+
+        @Override
+        public char[] getValueAsChars() {
+            return getDecrypted().getValueAsChars();
+        }
+
+        @Override
+        public byte[] getValueAsBytes() {
+            return getDecrypted().getValueAsBytes();
+        }
+
+        @Override
+        public boolean isProtected() {
+            return true;
+        }
+
+        @Override
+        public String getValueAsString() {
+            return getDecrypted().getValueAsString();
+        }
+    }
+
+    /**
+     * Property value storage sealed by a {@link SealingEngine}, a cheaper alternative to {@link SealedStore}
+     */
+    class EngineSealedStore implements PropertyValue {
+        private final SealingEngine engine;
+        private final SealingEngine.Sealed sealed;
+
+        public static PropertyValue.Factory<EngineSealedStore> getFactory(SealingEngine engine) {
+            return new PropertyValue.Factory<EngineSealedStore>() {
+                @Override
+                public EngineSealedStore of(CharSequence aCharSequence) {
+                    return new EngineSealedStore(engine, aCharSequence);
+                }
+
+                @Override
+                public EngineSealedStore of(char[] value) {
+                    return new EngineSealedStore(engine, value);
+                }
+
+                @Override
+                public EngineSealedStore of(byte[] value) {
+                    return new EngineSealedStore(engine, value);
+                }
+            };
+        }
+
+        public EngineSealedStore(SealingEngine engine, byte[] bytes) {
+            this.engine = engine;
+            this.sealed = engine.seal(bytes);
+        }
+
+        public EngineSealedStore(SealingEngine engine, char[] chars) {
+            this(engine, charsToBytes(chars));
+        }
+
+        public EngineSealedStore(SealingEngine engine, CharSequence charSequence) {
+            this(engine, charSequenceToBytes(charSequence));
+        }
+
+        @Override
+        public String getValueAsString() {
+            return new String(engine.unseal(sealed), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public char[] getValueAsChars() {
+            byte[] bytes = engine.unseal(sealed);
+            char[] result = bytesToChars(bytes);
+            Arrays.fill(bytes, (byte) 0);
+            return result;
+        }
+
+        @Override
+        public byte[] getValueAsBytes() {
+            return engine.unseal(sealed);
+        }
+
+        @Override
+        public CharSequence getValue() {
+            byte[] bytes = engine.unseal(sealed);
+            CharSequence result = bytesToCharSequence(bytes);
+            Arrays.fill(bytes, (byte) 0);
+            return result;
+        }
+
+        @Override
+        public boolean isProtected() {
+            return true;
+        }
+    }
+
+    /**
+     * Property value storage sealed and held off-heap in a {@link SlabArena}. The space is freed when the
+     * value is garbage collected.
+     */
+    class ArenaStore implements PropertyValue {
+        private final SlabArena arena;
+        private final SlabArena.Handle handle;
+
+        public static PropertyValue.Factory<ArenaStore> getFactory(SlabArena arena) {
+            return new PropertyValue.Factory<ArenaStore>() {
+                @Override
+                public ArenaStore of(CharSequence aCharSequence) {
+                    return new ArenaStore(arena, aCharSequence);
+                }
+
+                @Override
+                public ArenaStore of(char[] value) {
+                    return new ArenaStore(arena, value);
+                }
+
+                @Override
+                public ArenaStore of(byte[] value) {
+                    return new ArenaStore(arena, value);
+                }
+            };
+        }
+
+        public ArenaStore(SlabArena arena, byte[] bytes) {
+            this.arena = arena;
+            this.handle = arena.allocate(this, bytes);
+        }
+
+        public ArenaStore(SlabArena arena, char[] chars) {
+            this(arena, charsToBytes(chars));
+        }
+
+        public ArenaStore(SlabArena arena, CharSequence charSequence) {
+            this(arena, charSequenceToBytes(charSequence));
+        }
+
+        @Override
+        public String getValueAsString() {
+            return new String(arena.read(handle), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public char[] getValueAsChars() {
+            byte[] bytes = arena.read(handle);
+            char[] result = bytesToChars(bytes);
+            Arrays.fill(bytes, (byte) 0);
+            return result;
+        }
+
+        @Override
+        public byte[] getValueAsBytes() {
+            return arena.read(handle);
+        }
+
+        @Override
+        public CharSequence getValue() {
+            byte[] bytes = arena.read(handle);
+            CharSequence result = bytesToCharSequence(bytes);
+            Arrays.fill(bytes, (byte) 0);
+            return result;
+        }
+
+        @Override
+        public boolean isProtected() {
+            return true;
+        }
+    }
 }
@@ -35,7 +35,9 @@ import java.io.OutputStream;
  * has been written on save, and reading the value after load to allow for integrity checking.
  * <p>
  * KDBX V4 databases have their attachments in the header so databases need to support setting
- * and getting of attachments for serialization
+ * and getting of attachments for serialization. Databases which hold their attachments as raw bytes
+ * in a {@link BinaryPool} provide it, so that attachments need not be converted to and from their
+ * XML form.
  */
 public interface SerializableDatabase {
 
@@ -56,4 +58,14 @@ public interface SerializableDatabase {
     byte[] getBinary(int index);
 
     int getBinaryCount();
+
+    /**
+     * The attachments of the database as raw bytes, if it holds them in that form
+     *
+     * @return a pool, or null if attachments are to be set and got using {@link #addBinary(int, byte[])}
+     * and {@link #getBinary(int)}
+     */
+    default BinaryPool getBinaryPool() {
+        return null;
+    }
 }
@@ -21,6 +21,8 @@ import org.linguafranca.pwdb.security.StreamEncryptor;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
  * Interface provides for wrapping a database serialization in a stream format, e.g. KDBX or none.
@@ -61,6 +63,15 @@ public interface StreamFormat <C extends StreamConfiguration>{
 
     void load(SerializableDatabase serializableDatabase, Credentials credentials, InputStream encryptedInputStream) throws IOException;
 
+    /**
+     * Load from a file. Formats may override this to read the file more efficiently than as a stream.
+     */
+    default void load(SerializableDatabase serializableDatabase, Credentials credentials, Path path) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            load(serializableDatabase, credentials, inputStream);
+        }
+    }
+
     void save(SerializableDatabase serializableDatabase, Credentials credentials, OutputStream encryptedOutputStream) throws IOException;
 
     C getStreamConfiguration();
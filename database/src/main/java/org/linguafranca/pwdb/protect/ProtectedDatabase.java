@@ -13,7 +13,7 @@ import java.util.List;
  * establishes {@link org.linguafranca.pwdb.PropertyValue.StringStore} storage for unprotected values and
  * {@link org.linguafranca.pwdb.PropertyValue.SealedStore} for protected values.
  */
-public abstract class ProtectedDatabase<D extends Database<D, G, E, I>, G extends Group<D, G, E, I>, E extends Entry<D,G,E,I>, I extends Icon> extends AbstractDatabase<D,G,E,I> {
+public abstract class ProtectedDatabase<D extends Database<D, G, E, I>, G extends Group<D, G, E, I>, E extends Entry<D,G,E,I>, I extends Icon> extends AbstractDatabase<D,G,E,I> implements AutoCloseable {
     private PropertyValue.Strategy valueStrategy = new PropertyValue.Strategy.Default();
 
     @Override
@@ -55,4 +55,19 @@ public abstract class ProtectedDatabase<D extends Database<D, G, E, I>, G extend
     public boolean supportsPropertyValueStrategy(){
         return true;
     }
+
+    /**
+     * Release resources held by the property value strategy, e.g. the off-heap storage of
+     * {@link PropertyValue.Strategy.Arena}. Protected values may not be readable afterwards.
+     */
+    @Override
+    public void close() {
+        if (valueStrategy instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) valueStrategy).close();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
 }
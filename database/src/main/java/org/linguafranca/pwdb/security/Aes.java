@@ -10,13 +10,11 @@ import org.bouncycastle.crypto.params.ParametersWithIV;
 
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.security.MessageDigest;
 import java.security.SecureRandom;
 import java.util.UUID;
 
 import static org.linguafranca.pwdb.security.Aes.KdfKeys.ParamRounds;
 import static org.linguafranca.pwdb.security.Aes.KdfKeys.ParamSeed;
-import static org.linguafranca.pwdb.security.Encryption.getSha256MessageDigestInstance;
 
 /**
  * AES may be used for Key Derivation and also as the underlying stream cipher
@@ -73,7 +71,7 @@ public class Aes implements CipherAlgorithm, KeyDerivationFunction {
     @Override
     public InputStream getDecryptedInputStream(InputStream encryptedInputStream, byte[] key, byte[] iv) {
         final ParametersWithIV keyAndIV = new ParametersWithIV(new KeyParameter(key), iv);
-        PaddedBufferedBlockCipher pbbc = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESEngine()));
+        PaddedBufferedBlockCipher pbbc = new PaddedBufferedBlockCipher(CBCBlockCipher.newInstance(AESEngine.newInstance()));
         pbbc.init(false, keyAndIV);
         return new CipherInputStream(encryptedInputStream, pbbc);
     }
@@ -81,7 +79,7 @@ public class Aes implements CipherAlgorithm, KeyDerivationFunction {
     @Override
     public OutputStream getEncryptedOutputStream(OutputStream decryptedOutputStream, byte[] key, byte[] iv) {
         final ParametersWithIV keyAndIV = new ParametersWithIV(new KeyParameter(key), iv);
-        PaddedBufferedBlockCipher pbbc = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESEngine()));
+        PaddedBufferedBlockCipher pbbc = new PaddedBufferedBlockCipher(CBCBlockCipher.newInstance(AESEngine.newInstance()));
         pbbc.init(true, keyAndIV);
         return new CipherOutputStream(decryptedOutputStream, pbbc);
     }
@@ -98,6 +96,23 @@ public class Aes implements CipherAlgorithm, KeyDerivationFunction {
                 transformParams.mustGet(ParamRounds).asLong());
     }
 
+    /**
+     * the engine that computes the AES KDF, by default using the JCE and the common ForkJoin pool
+     */
+    private static volatile AesKdfEngine kdfEngine = new AesKdfEngine();
+
+    /**
+     * Set the engine used for key derivation, e.g. to use a different {@link java.util.concurrent.Executor}
+     * @param engine an engine
+     */
+    public static void setKdfEngine(AesKdfEngine engine) {
+        kdfEngine = engine;
+    }
+
+    public static AesKdfEngine getKdfEngine() {
+        return kdfEngine;
+    }
+
     /**
      * Simplified version for KDBX V3
      * @param key the composite key
@@ -106,21 +121,6 @@ public class Aes implements CipherAlgorithm, KeyDerivationFunction {
      * @return a transformed key
      */
     public static byte[] getTransformedKey(byte[] key, byte [] transformSeed, long transformRounds) {
-
-        AESEngine engine = new AESEngine();
-        engine.init(true, new KeyParameter(transformSeed));
-
-        // copy input key
-        byte[] transformedKey = new byte[key.length];
-        System.arraycopy(key, 0, transformedKey, 0, transformedKey.length);
-
-        // transform rounds times
-        for (long rounds = 0; rounds < transformRounds; rounds++) {
-            engine.processBlock(transformedKey, 0, transformedKey, 0);
-            engine.processBlock(transformedKey, 16, transformedKey, 16);
-        }
-
-        MessageDigest md = getSha256MessageDigestInstance();
-        return md.digest(transformedKey);
+        return kdfEngine.getTransformedKey(key, transformSeed, transformRounds);
     }
 }
@@ -0,0 +1,163 @@
+package org.linguafranca.pwdb.security;
+
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.linguafranca.pwdb.security.Encryption.getSha256MessageDigestInstance;
+
+/**
+ * Computes the AES key derivation function, being {@code rounds} AES-ECB encryptions
+ * of each half of the key, using the seed as the AES key, followed by SHA-256.
+ * <p>
+ * The two halves are independent, so the second is computed on an {@link Executor} while the
+ * calling thread computes the first. Encryption uses the JCE "AES/ECB/NoPadding" cipher, which
+ * on most JVMs uses AES hardware instructions, falling back to BouncyCastle's {@link AESEngine}
+ * if the JCE cipher isn't available.
+ * <p>
+ * Output is identical to that of a sequential computation. Instances are immutable and may be
+ * shared between threads.
+ */
+public class AesKdfEngine {
+
+    /**
+     * Below this number of rounds the halves are computed one after the other on the calling thread
+     */
+    public static final long PARALLEL_THRESHOLD = 10_000;
+
+    private static final int BLOCK_SIZE = 16;
+
+    private final Executor executor;
+    private final boolean useJce;
+
+    /**
+     * An engine that uses the common ForkJoin pool for the second half of the key
+     */
+    public AesKdfEngine() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * An engine that uses the supplied executor for the second half of the key
+     * @param executor an executor, or null to compute both halves on the calling thread
+     */
+    public AesKdfEngine(Executor executor) {
+        this(executor, isJceAvailable());
+    }
+
+    /**
+     * An engine that uses the supplied executor and the JCE or BouncyCastle as specified
+     * @param executor an executor, or null to compute both halves on the calling thread
+     * @param useJce true to use the JCE, false to use BouncyCastle
+     */
+    public AesKdfEngine(Executor executor, boolean useJce) {
+        this.executor = executor;
+        this.useJce = useJce;
+    }
+
+    /**
+     * true if the JCE provides "AES/ECB/NoPadding"
+     */
+    public static boolean isJceAvailable() {
+        try {
+            Cipher.getInstance("AES/ECB/NoPadding");
+            return true;
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    public boolean isUsingJce() {
+        return useJce;
+    }
+
+    /**
+     * Transform a key
+     * @param key the 32 byte composite key
+     * @param seed the 32 byte transform seed, used as the AES key
+     * @param rounds the number of rounds
+     * @return SHA-256 digest of the transformed key
+     */
+    public byte[] getTransformedKey(byte[] key, byte[] seed, long rounds) {
+        if (key.length != 2 * BLOCK_SIZE) {
+            throw new IllegalArgumentException("Key must be 32 bytes");
+        }
+        byte[] transformedKey = Arrays.copyOf(key, key.length);
+        try {
+            if (executor == null || rounds < PARALLEL_THRESHOLD) {
+                transformHalf(transformedKey, 0, seed, rounds);
+                transformHalf(transformedKey, BLOCK_SIZE, seed, rounds);
+            } else {
+                CompletableFuture<Void> secondHalf = CompletableFuture.runAsync(
+                        () -> transformHalf(transformedKey, BLOCK_SIZE, seed, rounds), executor);
+                try {
+                    transformHalf(transformedKey, 0, seed, rounds);
+                } finally {
+                    joinUnwrapped(secondHalf);
+                }
+            }
+            MessageDigest md = getSha256MessageDigestInstance();
+            return md.digest(transformedKey);
+        } finally {
+            Arrays.fill(transformedKey, (byte) 0);
+        }
+    }
+
+    private void transformHalf(byte[] transformedKey, int offset, byte[] seed, long rounds) {
+        if (useJce) {
+            transformHalfJce(transformedKey, offset, seed, rounds);
+        } else {
+            transformHalfBouncyCastle(transformedKey, offset, seed, rounds);
+        }
+    }
+
+    private static void transformHalfJce(byte[] transformedKey, int offset, byte[] seed, long rounds) {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/ECB/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(seed, "AES"));
+            // alternate between two buffers rather than encrypt in place
+            byte[] a = Arrays.copyOfRange(transformedKey, offset, offset + BLOCK_SIZE);
+            byte[] b = new byte[BLOCK_SIZE];
+            for (long round = 0; round < rounds; round++) {
+                cipher.update(a, 0, BLOCK_SIZE, b, 0);
+                byte[] t = a;
+                a = b;
+                b = t;
+            }
+            System.arraycopy(a, 0, transformedKey, offset, BLOCK_SIZE);
+            Arrays.fill(a, (byte) 0);
+            Arrays.fill(b, (byte) 0);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void transformHalfBouncyCastle(byte[] transformedKey, int offset, byte[] seed, long rounds) {
+        BlockCipher engine = AESEngine.newInstance();
+        engine.init(true, new KeyParameter(seed));
+        for (long round = 0; round < rounds; round++) {
+            engine.processBlock(transformedKey, offset, transformedKey, offset);
+        }
+    }
+
+    private static void joinUnwrapped(CompletableFuture<Void> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package org.linguafranca.pwdb.security;
 
-import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
 import org.bouncycastle.crypto.params.Argon2Parameters;
 
 import java.security.SecureRandom;
@@ -35,6 +34,23 @@ public class Argon2 implements KeyDerivationFunction {
         return instance;
     }
 
+    /**
+     * the engine that computes lanes in parallel, by default on the common ForkJoin pool
+     */
+    private static volatile Argon2Engine engine = new Argon2Engine();
+
+    /**
+     * Set the engine used for key derivation, e.g. to use a different {@link java.util.concurrent.Executor}
+     * @param argon2Engine an engine
+     */
+    public static void setEngine(Argon2Engine argon2Engine) {
+        engine = argon2Engine;
+    }
+
+    public static Argon2Engine getEngine() {
+        return engine;
+    }
+
 
     /**
      * keys into the variant dictionary supplied as a KDBX header
@@ -76,10 +92,8 @@ public class Argon2 implements KeyDerivationFunction {
                 .withParallelism(parallelism)
                 .withSalt(salt);
 
-        Argon2BytesGenerator gen = new Argon2BytesGenerator();
-        gen.init(builder.build());
         byte[] result = new byte[32];
-        gen.generateBytes(digest, result, 0, result.length);
+        engine.generateBytes(builder.build(), digest, result);
         return result;
     }
 
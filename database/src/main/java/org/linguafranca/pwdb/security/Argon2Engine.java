@@ -0,0 +1,475 @@
+package org.linguafranca.pwdb.security;
+
+import org.bouncycastle.crypto.digests.Blake2bDigest;
+import org.bouncycastle.crypto.params.Argon2Parameters;
+import org.bouncycastle.util.Pack;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * An implementation of Argon2 (RFC 9106) which fills the lanes of each segment concurrently.
+ * <p>
+ * Argon2 divides its memory into {@code p} lanes, each of four segments. All the lanes of a segment
+ * may be computed independently, there is a synchronisation point before the next segment.
+ * The BouncyCastle implementation computes all lanes on the calling thread, this class hands
+ * lanes other than the first to an {@link Executor} and computes the first itself. Any executor
+ * will do - the default is the common ForkJoin pool, on Java 21 and later a virtual thread
+ * per task executor is another option.
+ * <p>
+ * Output is identical to that of BouncyCastle's {@code Argon2BytesGenerator}, which supplies the
+ * parameter type, and supports the same types (Argon2d, Argon2i, Argon2id) and versions (0x10, 0x13).
+ * <p>
+ * Memory comes from an {@link Argon2MemoryPool}, by default {@link Argon2MemoryPool#getDefault()}.
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ */
+public class Argon2Engine {
+
+    private static final int BLOCK_SIZE = 1024;
+    private static final int QWORDS_IN_BLOCK = BLOCK_SIZE / 8;
+    private static final int ADDRESSES_IN_BLOCK = 128;
+    private static final int PREHASH_DIGEST_LENGTH = 64;
+    private static final int PREHASH_SEED_LENGTH = 72;
+    private static final int SYNC_POINTS = 4;
+    private static final int MIN_ITERATIONS = 1;
+    private static final long M32L = 0xFFFFFFFFL;
+    private static final int BLOCKS_IN_CHUNK = Argon2MemoryPool.CHUNK_LONGS / QWORDS_IN_BLOCK;
+
+    private final Executor executor;
+    private final Argon2MemoryPool memoryPool;
+
+    /**
+     * An engine that uses the common ForkJoin pool for lanes other than the first
+     */
+    public Argon2Engine() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * An engine that uses the supplied executor for lanes other than the first
+     * @param executor an executor, or null to compute all lanes on the calling thread
+     */
+    public Argon2Engine(Executor executor) {
+        this(executor, Argon2MemoryPool.getDefault());
+    }
+
+    /**
+     * An engine that uses the supplied executor for lanes other than the first and the supplied memory pool
+     * @param executor an executor, or null to compute all lanes on the calling thread
+     * @param memoryPool a memory pool
+     */
+    public Argon2Engine(Executor executor, Argon2MemoryPool memoryPool) {
+        this.executor = executor;
+        this.memoryPool = memoryPool;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public Argon2MemoryPool getMemoryPool() {
+        return memoryPool;
+    }
+
+    /**
+     * Compute an Argon2 hash
+     *
+     * @param parameters type, version, iterations, memory, lanes, salt and optional secret and associated data
+     * @param password   the password
+     * @param out        the destination for the tag, its length is the length of the tag
+     * @throws IllegalStateException if interrupted while waiting for memory
+     */
+    public void generateBytes(Argon2Parameters parameters, byte[] password, byte[] out) {
+        if (parameters.getLanes() < 1) {
+            throw new IllegalArgumentException("Lanes must be at least 1");
+        }
+        if (parameters.getIterations() < MIN_ITERATIONS) {
+            throw new IllegalArgumentException("Iterations must be at least " + MIN_ITERATIONS);
+        }
+        if (out.length < 4) {
+            throw new IllegalArgumentException("Output length must be at least 4");
+        }
+        Instance instance = new Instance(parameters);
+        try {
+            instance.memory = memoryPool.acquire(instance.memoryBlocks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for Argon2 memory", e);
+        }
+        try {
+            instance.initialize(password, out.length);
+            instance.fillMemoryBlocks(executor);
+            instance.digest(out);
+        } finally {
+            memoryPool.release(instance.memory);
+        }
+    }
+
+    /**
+     * The state of a single computation
+     */
+    private static class Instance {
+        final Argon2Parameters parameters;
+        final int lanes;
+        final int segmentLength;
+        final int laneLength;
+        final int memoryBlocks;
+        // chunks of blocks, a block never spans chunks
+        long[][] memory;
+
+        Instance(Argon2Parameters parameters) {
+            this.parameters = parameters;
+            this.lanes = parameters.getLanes();
+            int requested = Math.max(parameters.getMemory(), 2 * SYNC_POINTS * lanes);
+            this.segmentLength = requested / (lanes * SYNC_POINTS);
+            this.laneLength = segmentLength * SYNC_POINTS;
+            this.memoryBlocks = segmentLength * lanes * SYNC_POINTS;
+        }
+
+        long[] chunk(int block) {
+            return memory[block / BLOCKS_IN_CHUNK];
+        }
+
+        static int offset(int block) {
+            return (block % BLOCKS_IN_CHUNK) * QWORDS_IN_BLOCK;
+        }
+
+        /**
+         * H0 and the first two blocks of each lane
+         */
+        void initialize(byte[] password, int outputLength) {
+            Blake2bDigest blake = new Blake2bDigest(PREHASH_DIGEST_LENGTH * 8);
+            int[] values = {lanes, outputLength, parameters.getMemory(), parameters.getIterations(),
+                    parameters.getVersion(), parameters.getType()};
+            for (int value : values) {
+                updateWithLength(blake, value);
+            }
+            addByteString(blake, password);
+            addByteString(blake, parameters.getSalt());
+            addByteString(blake, parameters.getSecret());
+            addByteString(blake, parameters.getAdditional());
+
+            byte[] seed = new byte[PREHASH_SEED_LENGTH];
+            blake.doFinal(seed, 0);
+
+            byte[] block = new byte[BLOCK_SIZE];
+            for (int lane = 0; lane < lanes; lane++) {
+                Pack.intToLittleEndian(lane, seed, PREHASH_DIGEST_LENGTH + 4);
+                for (int index = 0; index < 2; index++) {
+                    Pack.intToLittleEndian(index, seed, PREHASH_DIGEST_LENGTH);
+                    hash(seed, block);
+                    int blockIndex = lane * laneLength + index;
+                    Pack.littleEndianToLong(block, 0, chunk(blockIndex), offset(blockIndex), QWORDS_IN_BLOCK);
+                }
+            }
+            Arrays.fill(seed, (byte) 0);
+            Arrays.fill(block, (byte) 0);
+        }
+
+        void fillMemoryBlocks(Executor executor) {
+            int iterations = parameters.getIterations();
+            Filler[] fillers = new Filler[lanes];
+            for (int lane = 0; lane < lanes; lane++) {
+                fillers[lane] = new Filler(this);
+            }
+            for (int pass = 0; pass < iterations; pass++) {
+                for (int slice = 0; slice < SYNC_POINTS; slice++) {
+                    if (executor == null || lanes == 1) {
+                        for (int lane = 0; lane < lanes; lane++) {
+                            fillers[lane].fillSegment(pass, lane, slice);
+                        }
+                        continue;
+                    }
+                    List<CompletableFuture<Void>> futures = new ArrayList<>(lanes - 1);
+                    for (int lane = 1; lane < lanes; lane++) {
+                        final int p = pass, l = lane, s = slice;
+                        final Filler filler = fillers[lane];
+                        futures.add(CompletableFuture.runAsync(() -> filler.fillSegment(p, l, s), executor));
+                    }
+                    RuntimeException failure = null;
+                    try {
+                        fillers[0].fillSegment(pass, 0, slice);
+                    } catch (RuntimeException e) {
+                        failure = e;
+                    }
+                    // wait for all lanes, even in the event of failure, since they share memory
+                    for (CompletableFuture<Void> future : futures) {
+                        try {
+                            future.join();
+                        } catch (CompletionException e) {
+                            if (failure == null) {
+                                failure = e.getCause() instanceof RuntimeException ?
+                                        (RuntimeException) e.getCause() : e;
+                            }
+                        }
+                    }
+                    if (failure != null) {
+                        throw failure;
+                    }
+                }
+            }
+        }
+
+        /**
+         * XOR the last blocks of each lane and hash to the output length
+         */
+        void digest(byte[] out) {
+            long[] finalBlock = new long[QWORDS_IN_BLOCK];
+            for (int lane = 0; lane < lanes; lane++) {
+                int blockIndex = lane * laneLength + laneLength - 1;
+                long[] chunk = chunk(blockIndex);
+                int offset = offset(blockIndex);
+                for (int i = 0; i < QWORDS_IN_BLOCK; i++) {
+                    finalBlock[i] ^= chunk[offset + i];
+                }
+            }
+            byte[] finalBytes = new byte[BLOCK_SIZE];
+            Pack.longToLittleEndian(finalBlock, finalBytes, 0);
+            hash(finalBytes, out);
+            Arrays.fill(finalBlock, 0);
+            Arrays.fill(finalBytes, (byte) 0);
+        }
+    }
+
+    /**
+     * Fills segments, each lane has its own filler and therefore its own scratch blocks
+     */
+    private static class Filler {
+        final Instance instance;
+        final long[] r = new long[QWORDS_IN_BLOCK];
+        final long[] z = new long[QWORDS_IN_BLOCK];
+        final long[] addressBlock = new long[QWORDS_IN_BLOCK];
+        final long[] inputBlock = new long[QWORDS_IN_BLOCK];
+        final long[] zeroBlock = new long[QWORDS_IN_BLOCK];
+
+        Filler(Instance instance) {
+            this.instance = instance;
+        }
+
+        void fillSegment(int pass, int lane, int slice) {
+            Argon2Parameters parameters = instance.parameters;
+            int segmentLength = instance.segmentLength;
+            int laneLength = instance.laneLength;
+
+            boolean dataIndependentAddressing = parameters.getType() == Argon2Parameters.ARGON2_i ||
+                    (parameters.getType() == Argon2Parameters.ARGON2_id && pass == 0 && slice < SYNC_POINTS / 2);
+
+            if (dataIndependentAddressing) {
+                Arrays.fill(inputBlock, 0);
+                inputBlock[0] = pass;
+                inputBlock[1] = lane;
+                inputBlock[2] = slice;
+                inputBlock[3] = instance.memoryBlocks;
+                inputBlock[4] = parameters.getIterations();
+                inputBlock[5] = parameters.getType();
+            }
+
+            int startingIndex = 0;
+            if (pass == 0 && slice == 0) {
+                // the first two blocks of each lane are already initialized
+                startingIndex = 2;
+                if (dataIndependentAddressing) {
+                    nextAddresses();
+                }
+            }
+
+            int currentOffset = lane * laneLength + slice * segmentLength + startingIndex;
+            int previousOffset = currentOffset % laneLength == 0 ? currentOffset + laneLength - 1 : currentOffset - 1;
+
+            boolean withXor = pass != 0 && parameters.getVersion() != Argon2Parameters.ARGON2_VERSION_10;
+
+            for (int index = startingIndex; index < segmentLength; index++, currentOffset++, previousOffset++) {
+                if (currentOffset % laneLength == 1) {
+                    previousOffset = currentOffset - 1;
+                }
+                long pseudoRandom;
+                if (dataIndependentAddressing) {
+                    if (index % ADDRESSES_IN_BLOCK == 0) {
+                        nextAddresses();
+                    }
+                    pseudoRandom = addressBlock[index % ADDRESSES_IN_BLOCK];
+                } else {
+                    pseudoRandom = instance.chunk(previousOffset)[Instance.offset(previousOffset)];
+                }
+
+                int referenceLane = (int) ((pseudoRandom >>> 32) % instance.lanes);
+                if (pass == 0 && slice == 0) {
+                    referenceLane = lane;
+                }
+                int referenceIndex = indexAlpha(pass, slice, index, pseudoRandom & M32L, referenceLane == lane);
+                int referenceOffset = referenceLane * laneLength + referenceIndex;
+
+                fillBlock(instance.chunk(previousOffset), Instance.offset(previousOffset),
+                        instance.chunk(referenceOffset), Instance.offset(referenceOffset),
+                        instance.chunk(currentOffset), Instance.offset(currentOffset), withXor);
+            }
+        }
+
+        int indexAlpha(int pass, int slice, int index, long pseudoRandom, boolean sameLane) {
+            int segmentLength = instance.segmentLength;
+            int laneLength = instance.laneLength;
+            int referenceAreaSize;
+            if (pass == 0) {
+                if (slice == 0) {
+                    referenceAreaSize = index - 1;
+                } else if (sameLane) {
+                    referenceAreaSize = slice * segmentLength + index - 1;
+                } else {
+                    referenceAreaSize = slice * segmentLength + (index == 0 ? -1 : 0);
+                }
+            } else {
+                if (sameLane) {
+                    referenceAreaSize = laneLength - segmentLength + index - 1;
+                } else {
+                    referenceAreaSize = laneLength - segmentLength + (index == 0 ? -1 : 0);
+                }
+            }
+            long relativePosition = (pseudoRandom * pseudoRandom) >>> 32;
+            relativePosition = (referenceAreaSize - 1) - ((referenceAreaSize * relativePosition) >>> 32);
+
+            int startPosition = 0;
+            if (pass != 0 && slice != SYNC_POINTS - 1) {
+                startPosition = (slice + 1) * segmentLength;
+            }
+            return (int) ((startPosition + relativePosition) % laneLength);
+        }
+
+        void nextAddresses() {
+            inputBlock[6]++;
+            fillBlock(zeroBlock, 0, inputBlock, 0, addressBlock, 0, false);
+            fillBlock(zeroBlock, 0, addressBlock, 0, addressBlock, 0, false);
+        }
+
+        /**
+         * The compression function G, the result is written (or XORed) to next
+         */
+        void fillBlock(long[] x, int xOffset, long[] y, int yOffset, long[] next, int nextOffset, boolean withXor) {
+            for (int i = 0; i < QWORDS_IN_BLOCK; i++) {
+                r[i] = x[xOffset + i] ^ y[yOffset + i];
+            }
+            if (withXor) {
+                for (int i = 0; i < QWORDS_IN_BLOCK; i++) {
+                    z[i] = r[i] ^ next[nextOffset + i];
+                }
+            } else {
+                System.arraycopy(r, 0, z, 0, QWORDS_IN_BLOCK);
+            }
+
+            // rows
+            for (int i = 0; i < 8; i++) {
+                int v = 16 * i;
+                roundFunction(r, v, v + 1, v + 2, v + 3, v + 4, v + 5, v + 6, v + 7,
+                        v + 8, v + 9, v + 10, v + 11, v + 12, v + 13, v + 14, v + 15);
+            }
+            // columns
+            for (int i = 0; i < 8; i++) {
+                int v = 2 * i;
+                roundFunction(r, v, v + 1, v + 16, v + 17, v + 32, v + 33, v + 48, v + 49,
+                        v + 64, v + 65, v + 80, v + 81, v + 96, v + 97, v + 112, v + 113);
+            }
+
+            for (int i = 0; i < QWORDS_IN_BLOCK; i++) {
+                next[nextOffset + i] = z[i] ^ r[i];
+            }
+        }
+    }
+
+    private static void roundFunction(long[] b, int v0, int v1, int v2, int v3, int v4, int v5, int v6, int v7,
+                                      int v8, int v9, int v10, int v11, int v12, int v13, int v14, int v15) {
+        quarterRound(b, v0, v4, v8, v12);
+        quarterRound(b, v1, v5, v9, v13);
+        quarterRound(b, v2, v6, v10, v14);
+        quarterRound(b, v3, v7, v11, v15);
+
+        quarterRound(b, v0, v5, v10, v15);
+        quarterRound(b, v1, v6, v11, v12);
+        quarterRound(b, v2, v7, v8, v13);
+        quarterRound(b, v3, v4, v9, v14);
+    }
+
+    private static void quarterRound(long[] v, int a, int b, int c, int d) {
+        long va = v[a], vb = v[b], vc = v[c], vd = v[d];
+
+        va = fBlaMka(va, vb);
+        vd = Long.rotateRight(vd ^ va, 32);
+        vc = fBlaMka(vc, vd);
+        vb = Long.rotateRight(vb ^ vc, 24);
+        va = fBlaMka(va, vb);
+        vd = Long.rotateRight(vd ^ va, 16);
+        vc = fBlaMka(vc, vd);
+        vb = Long.rotateRight(vb ^ vc, 63);
+
+        v[a] = va;
+        v[b] = vb;
+        v[c] = vc;
+        v[d] = vd;
+    }
+
+    private static long fBlaMka(long x, long y) {
+        return x + y + 2 * (x & M32L) * (y & M32L);
+    }
+
+    /**
+     * The variable length hash function H' of the specification
+     */
+    private static void hash(byte[] input, byte[] out) {
+        byte[] outLength = new byte[4];
+        Pack.intToLittleEndian(out.length, outLength, 0);
+
+        int blake2bLength = 64;
+        if (out.length <= blake2bLength) {
+            Blake2bDigest blake = new Blake2bDigest(out.length * 8);
+            blake.update(outLength, 0, outLength.length);
+            blake.update(input, 0, input.length);
+            blake.doFinal(out, 0);
+            return;
+        }
+
+        Blake2bDigest digest = new Blake2bDigest(blake2bLength * 8);
+        byte[] outBuffer = new byte[blake2bLength];
+
+        // V1
+        digest.update(outLength, 0, outLength.length);
+        digest.update(input, 0, input.length);
+        digest.doFinal(outBuffer, 0);
+
+        int halfLength = blake2bLength / 2, outPos = halfLength;
+        System.arraycopy(outBuffer, 0, out, 0, halfLength);
+
+        int r = ((out.length + 31) / 32) - 2;
+        for (int i = 2; i <= r; i++, outPos += halfLength) {
+            // V2 to Vr
+            digest.update(outBuffer, 0, outBuffer.length);
+            digest.doFinal(outBuffer, 0);
+            System.arraycopy(outBuffer, 0, out, outPos, halfLength);
+        }
+
+        int lastLength = out.length - 32 * r;
+        // Vr+1
+        digest = new Blake2bDigest(lastLength * 8);
+        digest.update(outBuffer, 0, outBuffer.length);
+        digest.doFinal(out, outPos);
+        Arrays.fill(outBuffer, (byte) 0);
+    }
+
+    private static void updateWithLength(Blake2bDigest blake, int value) {
+        byte[] bytes = new byte[4];
+        Pack.intToLittleEndian(value, bytes, 0);
+        blake.update(bytes, 0, bytes.length);
+    }
+
+    private static void addByteString(Blake2bDigest blake, byte[] bytes) {
+        if (bytes == null) {
+            updateWithLength(blake, 0);
+            return;
+        }
+        updateWithLength(blake, bytes.length);
+        blake.update(bytes, 0, bytes.length);
+    }
+}
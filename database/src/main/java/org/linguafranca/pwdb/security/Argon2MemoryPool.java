@@ -0,0 +1,153 @@
+package org.linguafranca.pwdb.security;
+
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A pool of memory for {@link Argon2Engine}, bounded by an overall budget.
+ * <p>
+ * Argon2 with KeePass default parameters needs 64MiB per key derivation. Allocating that as a single
+ * array makes it a "humongous" object for G1 and discarding it after each unlock leads to full GCs when
+ * unlocks are frequent or concurrent. The pool hands out memory as chunks of {@link #CHUNK_KIB} KiB,
+ * below the humongous threshold for all G1 region sizes, and keeps released chunks for re-use.
+ * Chunks are zeroed when released.
+ * <p>
+ * Released chunks are only softly reachable, so the pool does not pin up to its budget for the life of
+ * the JVM: the garbage collector reclaims idle chunks when memory is short, or once they have been unused
+ * for a while (see {@code -XX:SoftRefLRUPolicyMSPerMB}). {@link #trim} discards them immediately.
+ * <p>
+ * The total memory handed out at any time is limited by the budget. Requests that can't be satisfied
+ * wait until enough memory has been released, rather than risking an {@link OutOfMemoryError}.
+ * A request larger than the whole budget waits until it can have the whole budget, and the excess is
+ * allocated for that request only.
+ */
+public class Argon2MemoryPool {
+
+    /**
+     * Size of a chunk in KiB, i.e. 256 Argon2 blocks
+     */
+    public static final int CHUNK_KIB = 256;
+    static final int CHUNK_LONGS = CHUNK_KIB * 1024 / 8;
+
+    private static final Argon2MemoryPool defaultPool =
+            new Argon2MemoryPool(Math.max(Runtime.getRuntime().maxMemory() / 4 / 1024, 64 * 1024));
+
+    private final int budgetChunks;
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<SoftReference<long[]>> free = new ConcurrentLinkedDeque<>();
+
+    /**
+     * Create a pool
+     * @param budgetKiB the maximum amount of memory to hand out at any one time
+     */
+    public Argon2MemoryPool(long budgetKiB) {
+        long chunks = budgetKiB / CHUNK_KIB;
+        if (chunks < 1) {
+            throw new IllegalArgumentException("Budget must be at least " + CHUNK_KIB + " KiB");
+        }
+        this.budgetChunks = (int) Math.min(chunks, Integer.MAX_VALUE);
+        this.permits = new Semaphore(budgetChunks, true);
+    }
+
+    /**
+     * The pool used by default, whose budget is a quarter of the maximum heap size (but at least 64MiB)
+     */
+    public static Argon2MemoryPool getDefault() {
+        return defaultPool;
+    }
+
+    /**
+     * Number of chunks needed to hold a number of KiB
+     */
+    static int chunksFor(long kib) {
+        return (int) ((kib + CHUNK_KIB - 1) / CHUNK_KIB);
+    }
+
+    /**
+     * Acquire memory, waiting for it to become available if need be
+     * @param kib the amount of memory required
+     * @return zeroed chunks of memory, to be returned using {@link #release}
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public long[][] acquire(long kib) throws InterruptedException {
+        int chunks = chunksFor(kib);
+        permits.acquire(Math.min(chunks, budgetChunks));
+        long[][] result = new long[chunks][];
+        try {
+            for (int i = 0; i < chunks; i++) {
+                long[] chunk = i < budgetChunks ? pollFree() : null;
+                result[i] = chunk == null ? new long[CHUNK_LONGS] : chunk;
+            }
+        } catch (OutOfMemoryError e) {
+            release(result);
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * A chunk held for re-use that has not been garbage collected, or null if there is none
+     */
+    private long[] pollFree() {
+        SoftReference<long[]> reference;
+        while ((reference = free.poll()) != null) {
+            long[] chunk = reference.get();
+            if (chunk != null) {
+                return chunk;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Zero and release memory obtained from {@link #acquire}
+     * @param chunks the chunks to release
+     */
+    public void release(long[][] chunks) {
+        int pooled = Math.min(chunks.length, budgetChunks);
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] != null) {
+                Arrays.fill(chunks[i], 0);
+                // the excess of a request larger than the budget is not kept
+                if (i < pooled) {
+                    free.push(new SoftReference<>(chunks[i]));
+                }
+                chunks[i] = null;
+            }
+        }
+        permits.release(pooled);
+    }
+
+    /**
+     * Discard chunks held for re-use, so that they can be garbage collected
+     */
+    public void trim() {
+        free.clear();
+    }
+
+    public long getBudgetKiB() {
+        return (long) budgetChunks * CHUNK_KIB;
+    }
+
+    /**
+     * Memory that can be acquired without waiting
+     */
+    public long getAvailableKiB() {
+        return (long) permits.availablePermits() * CHUNK_KIB;
+    }
+
+    /**
+     * Memory held for re-use
+     */
+    public long getPooledKiB() {
+        long chunks = 0;
+        for (SoftReference<long[]> reference : free) {
+            if (reference.get() != null) {
+                chunks++;
+            }
+        }
+        return chunks * CHUNK_KIB;
+    }
+}
@@ -6,6 +6,9 @@ import java.util.UUID;
 
 /**
  * Interface defining an algorithm for encrypting and decrypting database contents
+ * <p>
+ * Implementations may be provided as services, see {@link CipherAlgorithmRegistry}.
+ * Service implementations must have a public no-argument constructor.
  */
 public interface CipherAlgorithm {
     /**
@@ -18,6 +21,14 @@ public interface CipherAlgorithm {
      */
     String getName();
 
+    /**
+     * Whether this implementation can be used in the current environment,
+     * e.g. whether the underlying JCE provider is present
+     */
+    default boolean isAvailable() {
+        return true;
+    }
+
     /**
      * Create a decrypted stream from the supplied encrypted one
      *
@@ -0,0 +1,197 @@
+package org.linguafranca.pwdb.security;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The implementations of {@link CipherAlgorithm} available for each cipher UUID.
+ * <p>
+ * The BouncyCastle implementations {@link Aes} and {@link ChaCha} are always registered. Further
+ * implementations are discovered using {@link ServiceLoader} from
+ * {@code META-INF/services/org.linguafranca.pwdb.security.CipherAlgorithm}, which is how
+ * {@link JceAes} and {@link JceChaCha} are registered, or may be registered programmatically.
+ * Implementations that are not {@link CipherAlgorithm#isAvailable() available} are ignored.
+ * <p>
+ * When there is more than one implementation for a UUID, the first request for that UUID
+ * runs a short self-benchmark - each candidate encrypts and decrypts a megabyte - and the fastest
+ * is chosen. A candidate whose output differs from that of the first registered implementation,
+ * or which fails, is not chosen. The choice may be overridden using {@link #setPreferred}.
+ */
+public class CipherAlgorithmRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(CipherAlgorithmRegistry.class);
+
+    private static final int BENCHMARK_SIZE = 1024 * 1024;
+    private static final int BENCHMARK_RUNS = 3;
+
+    private static final Map<UUID, List<CipherAlgorithm>> candidates = new ConcurrentHashMap<>();
+    private static final Map<UUID, CipherAlgorithm> preferred = new ConcurrentHashMap<>();
+
+    static {
+        register(Aes.getInstance());
+        register(ChaCha.getInstance());
+        for (Iterator<CipherAlgorithm> iterator = ServiceLoader.load(CipherAlgorithm.class).iterator(); ; ) {
+            try {
+                if (!iterator.hasNext()) {
+                    break;
+                }
+                register(iterator.next());
+            } catch (ServiceConfigurationError e) {
+                logger.warn("Could not load cipher algorithm", e);
+            }
+        }
+    }
+
+    private CipherAlgorithmRegistry() {}
+
+    /**
+     * Register an implementation of a cipher algorithm, ignored if not available.
+     * A preference already established for its UUID is discarded.
+     * @param cipherAlgorithm an implementation
+     * @return true if registered
+     */
+    public static boolean register(@NotNull CipherAlgorithm cipherAlgorithm) {
+        if (!cipherAlgorithm.isAvailable()) {
+            logger.debug("Cipher algorithm {} is not available", cipherAlgorithm.getName());
+            return false;
+        }
+        candidates.computeIfAbsent(cipherAlgorithm.getCipherUuid(), k -> new CopyOnWriteArrayList<>())
+                .add(cipherAlgorithm);
+        preferred.remove(cipherAlgorithm.getCipherUuid());
+        return true;
+    }
+
+    /**
+     * true if there is an implementation for this UUID
+     */
+    public static boolean isKnown(UUID cipherUuid) {
+        return candidates.containsKey(cipherUuid);
+    }
+
+    /**
+     * All the available implementations for a UUID, in order of registration
+     */
+    public static List<CipherAlgorithm> getAll(UUID cipherUuid) {
+        List<CipherAlgorithm> result = candidates.get(cipherUuid);
+        return result == null ? Collections.emptyList() : Collections.unmodifiableList(result);
+    }
+
+    /**
+     * The implementation to use for a UUID, benchmarking the candidates if not already chosen
+     * @param cipherUuid the UUID
+     * @return an implementation
+     * @throws IllegalArgumentException if the UUID is not known
+     */
+    public static @NotNull CipherAlgorithm getPreferred(UUID cipherUuid) {
+        if (!isKnown(cipherUuid)) {
+            throw new IllegalArgumentException("Unknown Cipher UUID " + cipherUuid);
+        }
+        CipherAlgorithm chosen = preferred.get(cipherUuid);
+        if (chosen != null) {
+            return chosen;
+        }
+        // benchmark outside the map, so as not to block other threads using it, concurrent
+        // first calls may each benchmark and the first to finish is kept
+        chosen = choose(getAll(cipherUuid));
+        CipherAlgorithm previous = preferred.putIfAbsent(cipherUuid, chosen);
+        return previous == null ? chosen : previous;
+    }
+
+    /**
+     * Override the choice of implementation for a UUID
+     * @param cipherUuid the UUID
+     * @param cipherAlgorithm the implementation to use, or null to choose by benchmark again
+     */
+    public static void setPreferred(UUID cipherUuid, @Nullable CipherAlgorithm cipherAlgorithm) {
+        if (cipherAlgorithm == null) {
+            preferred.remove(cipherUuid);
+            return;
+        }
+        if (!cipherAlgorithm.getCipherUuid().equals(cipherUuid)) {
+            throw new IllegalArgumentException("Cipher algorithm " + cipherAlgorithm.getName() + " does not have UUID " + cipherUuid);
+        }
+        preferred.put(cipherUuid, cipherAlgorithm);
+    }
+
+    private static CipherAlgorithm choose(List<CipherAlgorithm> algorithms) {
+        CipherAlgorithm reference = algorithms.get(0);
+        if (algorithms.size() == 1) {
+            return reference;
+        }
+        byte[] key = new byte[32];
+        // 16 byte IV for AES, 12 for ChaCha20 - use the shorter length if the longer is refused
+        byte[] plainText = new byte[BENCHMARK_SIZE];
+        new Random(0).nextBytes(plainText);
+
+        byte[] iv = null;
+        byte[] expected = null;
+        for (byte[] candidateIv : new byte[][]{new byte[16], new byte[12]}) {
+            try {
+                expected = encrypt(reference, key, candidateIv, plainText);
+                iv = candidateIv;
+                break;
+            } catch (IOException | RuntimeException ignored) {
+            }
+        }
+        if (expected == null) {
+            return reference;
+        }
+
+        CipherAlgorithm best = reference;
+        long bestTime = Long.MAX_VALUE;
+        for (CipherAlgorithm algorithm : algorithms) {
+            try {
+                long time = Long.MAX_VALUE;
+                for (int run = 0; run < BENCHMARK_RUNS; run++) {
+                    long start = System.nanoTime();
+                    byte[] cipherText = encrypt(algorithm, key, iv, plainText);
+                    byte[] decrypted = decrypt(algorithm, key, iv, cipherText);
+                    time = Math.min(time, System.nanoTime() - start);
+                    if (!Arrays.equals(expected, cipherText) || !Arrays.equals(plainText, decrypted)) {
+                        throw new IllegalStateException("Output does not match " + reference.getName());
+                    }
+                }
+                logger.debug("Cipher algorithm {} took {}us", algorithm.getName(), time / 1000);
+                if (time < bestTime) {
+                    bestTime = time;
+                    best = algorithm;
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Cipher algorithm {} is not usable: {}", algorithm.getName(), e.getMessage());
+            }
+        }
+        logger.debug("Chose cipher algorithm {}", best.getName());
+        return best;
+    }
+
+    private static byte[] encrypt(CipherAlgorithm algorithm, byte[] key, byte[] iv, byte[] plainText) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(plainText.length + 32);
+        OutputStream outputStream = algorithm.getEncryptedOutputStream(baos, key, iv);
+        outputStream.write(plainText);
+        outputStream.close();
+        return baos.toByteArray();
+    }
+
+    private static byte[] decrypt(CipherAlgorithm algorithm, byte[] key, byte[] iv, byte[] cipherText) throws IOException {
+        InputStream inputStream = algorithm.getDecryptedInputStream(new ByteArrayInputStream(cipherText), key, iv);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(cipherText.length);
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = inputStream.read(buffer)) >= 0) {
+            baos.write(buffer, 0, read);
+        }
+        inputStream.close();
+        return baos.toByteArray();
+    }
+}
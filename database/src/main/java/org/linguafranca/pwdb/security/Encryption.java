@@ -143,7 +143,7 @@ public class Encryption {
 
     /**
      * A list of ciphers that we may apply to the database contents.
-     * Enum constants forward to underlying implementation.
+     * Enum constants forward to the implementation chosen by {@link CipherAlgorithmRegistry}.
      */
     public enum Cipher implements CipherAlgorithm {
         CHA_CHA_20(ChaCha.getInstance()),
@@ -152,7 +152,8 @@ public class Encryption {
         private final CipherAlgorithm ef;
 
         /**
-         * Find a cipher that matches this Uuid
+         * Find a cipher that matches this Uuid, one of the constants of this enum if it is
+         * one of those, otherwise an implementation registered with {@link CipherAlgorithmRegistry}
          *
          * @param cipherUuid the Uuid
          * @return a cipher
@@ -164,7 +165,7 @@ public class Encryption {
                     return ca;
                 }
             }
-            throw new IllegalArgumentException("Unknown Cipher UUID");
+            return CipherAlgorithmRegistry.getPreferred(cipherUuid);
         }
 
         Cipher(CipherAlgorithm ef) {
@@ -183,12 +184,12 @@ public class Encryption {
 
         @Override
         public InputStream getDecryptedInputStream(InputStream encryptedInputStream, byte[] key, byte[] iv) {
-            return ef.getDecryptedInputStream(encryptedInputStream, key, iv);
+            return CipherAlgorithmRegistry.getPreferred(getCipherUuid()).getDecryptedInputStream(encryptedInputStream, key, iv);
         }
 
         @Override
         public OutputStream getEncryptedOutputStream(OutputStream decryptedOutputStream, byte[] key, byte[] iv) {
-            return ef.getEncryptedOutputStream(decryptedOutputStream, key, iv);
+            return CipherAlgorithmRegistry.getPreferred(getCipherUuid()).getEncryptedOutputStream(decryptedOutputStream, key, iv);
         }
     }
 
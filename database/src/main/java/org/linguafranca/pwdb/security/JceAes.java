@@ -0,0 +1,60 @@
+package org.linguafranca.pwdb.security;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.UUID;
+
+/**
+ * AES-256-CBC with PKCS#7 padding for database contents using the JCE, which on most JVMs
+ * uses AES hardware instructions. An alternative to {@link Aes}, registered with
+ * {@link CipherAlgorithmRegistry} via {@link java.util.ServiceLoader}.
+ */
+public class JceAes implements CipherAlgorithm {
+
+    private static final String TRANSFORMATION = "AES/CBC/PKCS5Padding";
+    private static final String name = "AES (JCE)";
+
+    @Override
+    public UUID getCipherUuid() {
+        return Aes.getInstance().getCipherUuid();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        try {
+            getCipher(Cipher.ENCRYPT_MODE, new byte[32], new byte[16]);
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public InputStream getDecryptedInputStream(InputStream encryptedInputStream, byte[] key, byte[] iv) {
+        return new JceCipherInputStream(encryptedInputStream, getCipher(Cipher.DECRYPT_MODE, key, iv));
+    }
+
+    @Override
+    public OutputStream getEncryptedOutputStream(OutputStream decryptedOutputStream, byte[] key, byte[] iv) {
+        return new JceCipherOutputStream(decryptedOutputStream, getCipher(Cipher.ENCRYPT_MODE, key, iv));
+    }
+
+    static Cipher getCipher(int mode, byte[] key, byte[] iv) {
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(mode, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
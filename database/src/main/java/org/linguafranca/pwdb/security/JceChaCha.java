@@ -0,0 +1,86 @@
+package org.linguafranca.pwdb.security;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.security.GeneralSecurityException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.UUID;
+
+/**
+ * ChaCha20 (RFC 7539) for database contents using the JCE, which provides it from Java 11.
+ * An alternative to {@link ChaCha}, registered with {@link CipherAlgorithmRegistry}
+ * via {@link java.util.ServiceLoader}.
+ * <p>
+ * This library targets Java 8, so the parameter spec is created reflectively, and
+ * {@link #isAvailable()} is false on earlier JVMs.
+ */
+public class JceChaCha implements CipherAlgorithm {
+
+    private static final String name = "CHA_CHA_20 (JCE)";
+    private static final Constructor<?> parameterSpecConstructor = findParameterSpecConstructor();
+
+    private static Constructor<?> findParameterSpecConstructor() {
+        try {
+            return Class.forName("javax.crypto.spec.ChaCha20ParameterSpec").getConstructor(byte[].class, int.class);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public UUID getCipherUuid() {
+        return ChaCha.getInstance().getCipherUuid();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        if (parameterSpecConstructor == null) {
+            return false;
+        }
+        try {
+            getCipher(Cipher.ENCRYPT_MODE, new byte[32], new byte[12]);
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public InputStream getDecryptedInputStream(InputStream encryptedInputStream, byte[] key, byte[] iv) {
+        return new JceCipherInputStream(encryptedInputStream, getCipher(Cipher.DECRYPT_MODE, key, iv));
+    }
+
+    @Override
+    public OutputStream getEncryptedOutputStream(OutputStream decryptedOutputStream, byte[] key, byte[] iv) {
+        return new JceCipherOutputStream(decryptedOutputStream, getCipher(Cipher.ENCRYPT_MODE, key, iv));
+    }
+
+    private static Cipher getCipher(int mode, byte[] key, byte[] iv) {
+        return getCipher(mode, key, iv, 0);
+    }
+
+    /**
+     * A cipher whose keystream starts at the 64 byte block given by counter
+     */
+    static Cipher getCipher(int mode, byte[] key, byte[] iv, int counter) {
+        if (parameterSpecConstructor == null) {
+            throw new IllegalStateException("ChaCha20 is not supported by this JVM");
+        }
+        try {
+            AlgorithmParameterSpec spec = (AlgorithmParameterSpec) parameterSpecConstructor.newInstance(iv, counter);
+            Cipher cipher = Cipher.getInstance("ChaCha20");
+            cipher.init(mode, new SecretKeySpec(key, "ChaCha20"), spec);
+            return cipher;
+        } catch (GeneralSecurityException | ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
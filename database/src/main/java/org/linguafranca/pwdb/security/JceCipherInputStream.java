@@ -0,0 +1,122 @@
+package org.linguafranca.pwdb.security;
+
+import javax.crypto.Cipher;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+
+/**
+ * An input stream that decrypts (or encrypts) using a JCE {@link Cipher}.
+ * <p>
+ * Unlike {@link javax.crypto.CipherInputStream} it reads from the underlying stream in large
+ * chunks, which matters for throughput when the cipher is hardware accelerated, and reports
+ * failure of the final block (e.g. bad padding) as an {@link IOException} rather than
+ * ignoring it.
+ */
+public class JceCipherInputStream extends FilterInputStream {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final Cipher cipher;
+    private final byte[] inputBuffer;
+    private byte[] outputBuffer;
+    private int outputPosition = 0;
+    private int outputLimit = 0;
+    private boolean finished = false;
+    private final byte[] singleByte = new byte[1];
+
+    public JceCipherInputStream(InputStream inputStream, Cipher cipher) {
+        this(inputStream, cipher, DEFAULT_BUFFER_SIZE);
+    }
+
+    public JceCipherInputStream(InputStream inputStream, Cipher cipher, int bufferSize) {
+        super(inputStream);
+        this.cipher = cipher;
+        this.inputBuffer = new byte[bufferSize];
+        this.outputBuffer = new byte[cipher.getOutputSize(bufferSize)];
+    }
+
+    /**
+     * Refill the output buffer
+     * @return false if there is no more output
+     */
+    private boolean fill() throws IOException {
+        while (outputPosition == outputLimit) {
+            if (finished) {
+                return false;
+            }
+            int read = in.read(inputBuffer);
+            try {
+                if (read < 0) {
+                    finished = true;
+                    ensureOutputCapacity(cipher.getOutputSize(0));
+                    outputLimit = cipher.doFinal(outputBuffer, 0);
+                } else {
+                    ensureOutputCapacity(cipher.getOutputSize(read));
+                    outputLimit = cipher.update(inputBuffer, 0, read, outputBuffer, 0);
+                }
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Cipher failure", e);
+            }
+            outputPosition = 0;
+        }
+        return true;
+    }
+
+    private void ensureOutputCapacity(int size) {
+        if (outputBuffer.length < size) {
+            outputBuffer = new byte[size];
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = read(singleByte, 0, 1);
+        return read < 0 ? -1 : singleByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(len, outputLimit - outputPosition);
+        System.arraycopy(outputBuffer, outputPosition, b, off, count);
+        outputPosition += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && fill()) {
+            int count = (int) Math.min(n - skipped, outputLimit - outputPosition);
+            outputPosition += count;
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return outputLimit - outputPosition;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+}
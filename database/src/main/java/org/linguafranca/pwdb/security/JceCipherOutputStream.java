@@ -0,0 +1,111 @@
+package org.linguafranca.pwdb.security;
+
+import javax.crypto.Cipher;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+
+/**
+ * An output stream that encrypts (or decrypts) using a JCE {@link Cipher}.
+ * <p>
+ * Writes are passed to the cipher directly, small writes are first collected into a buffer.
+ * The final block is processed on {@link #close()}.
+ */
+public class JceCipherOutputStream extends FilterOutputStream {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final Cipher cipher;
+    private final byte[] inputBuffer;
+    private int inputCount = 0;
+    private byte[] outputBuffer;
+    private boolean closed = false;
+
+    public JceCipherOutputStream(OutputStream outputStream, Cipher cipher) {
+        this(outputStream, cipher, DEFAULT_BUFFER_SIZE);
+    }
+
+    public JceCipherOutputStream(OutputStream outputStream, Cipher cipher, int bufferSize) {
+        super(outputStream);
+        this.cipher = cipher;
+        this.inputBuffer = new byte[bufferSize];
+        this.outputBuffer = new byte[cipher.getOutputSize(bufferSize)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (inputCount == inputBuffer.length) {
+            flushInput();
+        }
+        inputBuffer[inputCount++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len < inputBuffer.length - inputCount) {
+            System.arraycopy(b, off, inputBuffer, inputCount, len);
+            inputCount += len;
+            return;
+        }
+        flushInput();
+        process(b, off, len);
+    }
+
+    private void flushInput() throws IOException {
+        if (inputCount > 0) {
+            process(inputBuffer, 0, inputCount);
+            inputCount = 0;
+        }
+    }
+
+    private void process(byte[] b, int off, int len) throws IOException {
+        int outputSize = cipher.getOutputSize(len);
+        if (outputBuffer.length < outputSize) {
+            outputBuffer = new byte[outputSize];
+        }
+        try {
+            int count = cipher.update(b, off, len, outputBuffer, 0);
+            out.write(outputBuffer, 0, count);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cipher failure", e);
+        }
+    }
+
+    /**
+     * Passes buffered data to the cipher and flushes the underlying stream. Data held
+     * by the cipher pending a complete block is not written until close.
+     */
+    @Override
+    public void flush() throws IOException {
+        flushInput();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flushInput();
+            int outputSize = cipher.getOutputSize(0);
+            if (outputBuffer.length < outputSize) {
+                outputBuffer = new byte[outputSize];
+            }
+            int count = cipher.doFinal(outputBuffer, 0);
+            out.write(outputBuffer, 0, count);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cipher failure", e);
+        } finally {
+            out.close();
+        }
+    }
+}
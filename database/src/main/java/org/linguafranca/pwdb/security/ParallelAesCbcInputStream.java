@@ -0,0 +1,105 @@
+package org.linguafranca.pwdb.security;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Decrypts AES-CBC with PKCS#7 padding using several threads.
+ * <p>
+ * In CBC decryption each plaintext block depends only on its ciphertext block and the one before,
+ * so the ciphertext can be divided into chunks which are decrypted independently, each using the
+ * last ciphertext block of the previous chunk as its IV. The stream reads ahead a number of chunks
+ * from the underlying stream on the calling thread, decrypts them on an {@link Executor} and returns
+ * the plaintext in order. Padding is removed from the last chunk.
+ * <p>
+ * Output is the same as that of {@link Aes#getDecryptedInputStream} or {@link JceAes#getDecryptedInputStream}.
+ */
+public class ParallelAesCbcInputStream extends ParallelChunkedInputStream {
+
+    private static final int BLOCK_SIZE = 16;
+
+    private final SecretKeySpec key;
+    private byte[] previousBlock;
+
+    /**
+     * Decrypt with default chunk size and read ahead
+     *
+     * @param encryptedInputStream the ciphertext
+     * @param key the AES key
+     * @param iv the initialisation vector
+     * @param executor an executor to decrypt chunks on, or null to decrypt on the calling thread
+     */
+    public ParallelAesCbcInputStream(InputStream encryptedInputStream, byte[] key, byte[] iv, Executor executor) {
+        this(encryptedInputStream, key, iv, executor, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS_IN_FLIGHT);
+    }
+
+    /**
+     * Decrypt
+     *
+     * @param encryptedInputStream the ciphertext
+     * @param key the AES key
+     * @param iv the initialisation vector
+     * @param executor an executor to decrypt chunks on, or null to decrypt on the calling thread
+     * @param chunkSize the size of a chunk, a multiple of 16
+     * @param chunksInFlight the number of chunks to read ahead
+     */
+    public ParallelAesCbcInputStream(InputStream encryptedInputStream, byte[] key, byte[] iv, Executor executor,
+                                     int chunkSize, int chunksInFlight) {
+        super(encryptedInputStream, executor, chunkSize, chunksInFlight, BLOCK_SIZE);
+        if (iv.length != BLOCK_SIZE) {
+            throw new IllegalArgumentException("IV must be " + BLOCK_SIZE + " bytes");
+        }
+        this.key = new SecretKeySpec(key, "AES");
+        this.previousBlock = iv.clone();
+    }
+
+    @Override
+    protected Supplier<byte[]> transform(byte[] cipherText, long position) {
+        final byte[] iv = previousBlock;
+        // a partial last block is reported by endOfInput
+        int end = cipherText.length - cipherText.length % BLOCK_SIZE;
+        previousBlock = end == 0 ? previousBlock : Arrays.copyOfRange(cipherText, end - BLOCK_SIZE, end);
+        return () -> decrypt(cipherText, iv);
+    }
+
+    @Override
+    protected void endOfInput(long length) throws IOException {
+        if (length == 0) {
+            throw new IOException("Ciphertext is empty, expected at least one block");
+        }
+        if (length % BLOCK_SIZE != 0) {
+            throw new IOException("Ciphertext length is not a multiple of the block size");
+        }
+    }
+
+    private byte[] decrypt(byte[] cipherText, byte[] iv) {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/CBC/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+            return cipher.doFinal(cipherText);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    protected int trailerLength(byte[] plainText) throws IOException {
+        int padding = plainText[plainText.length - 1] & 0xFF;
+        if (padding < 1 || padding > BLOCK_SIZE) {
+            throw new IOException("Bad padding");
+        }
+        for (int i = plainText.length - padding; i < plainText.length; i++) {
+            if ((plainText[i] & 0xFF) != padding) {
+                throw new IOException("Bad padding");
+            }
+        }
+        return padding;
+    }
+}
@@ -0,0 +1,88 @@
+package org.linguafranca.pwdb.security;
+
+import org.bouncycastle.crypto.engines.ChaCha7539Engine;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+
+import javax.crypto.Cipher;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Decrypts ChaCha20 (RFC 7539) using several threads.
+ * <p>
+ * The keystream for any 64 byte block can be computed from its block counter, so the ciphertext
+ * is divided into chunks which are decrypted independently, each starting the keystream at the
+ * chunk's position. The stream reads ahead a number of chunks from the underlying stream on the
+ * calling thread, decrypts them on an {@link Executor} and returns the plaintext in order.
+ * <p>
+ * Output is the same as that of {@link ChaCha#getDecryptedInputStream}. ChaCha20 is symmetric,
+ * see {@link ParallelChaChaOutputStream} for encryption.
+ */
+public class ParallelChaChaInputStream extends ParallelChunkedInputStream {
+
+    static final int BLOCK_SIZE = 64;
+
+    private final byte[] key;
+    private final byte[] iv;
+    private final boolean useJce;
+
+    /**
+     * Decrypt with default chunk size and read ahead
+     *
+     * @param encryptedInputStream the ciphertext
+     * @param key the ChaCha20 key
+     * @param iv the nonce
+     * @param executor an executor to decrypt chunks on, or null to decrypt on the calling thread
+     */
+    public ParallelChaChaInputStream(InputStream encryptedInputStream, byte[] key, byte[] iv, Executor executor) {
+        this(encryptedInputStream, key, iv, executor, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS_IN_FLIGHT);
+    }
+
+    /**
+     * Decrypt
+     *
+     * @param encryptedInputStream the ciphertext
+     * @param key the ChaCha20 key
+     * @param iv the nonce
+     * @param executor an executor to decrypt chunks on, or null to decrypt on the calling thread
+     * @param chunkSize the size of a chunk, a multiple of 64
+     * @param chunksInFlight the number of chunks to read ahead
+     */
+    public ParallelChaChaInputStream(InputStream encryptedInputStream, byte[] key, byte[] iv, Executor executor,
+                                     int chunkSize, int chunksInFlight) {
+        super(encryptedInputStream, executor, chunkSize, chunksInFlight, BLOCK_SIZE);
+        this.key = key.clone();
+        this.iv = iv.clone();
+        this.useJce = new JceChaCha().isAvailable();
+    }
+
+    @Override
+    protected Supplier<byte[]> transform(byte[] cipherText, long position) {
+        return () -> process(key, iv, useJce, position, cipherText, cipherText.length);
+    }
+
+    /**
+     * Apply the keystream starting at a position to some bytes
+     *
+     * @param position the position of the input in the stream, a multiple of 64
+     * @return a new array containing the result
+     */
+    static byte[] process(byte[] key, byte[] iv, boolean useJce, long position, byte[] input, int length) {
+        if (useJce) {
+            try {
+                return JceChaCha.getCipher(Cipher.ENCRYPT_MODE, key, iv, (int) (position / BLOCK_SIZE)).doFinal(input, 0, length);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        ChaCha7539Engine engine = new ChaCha7539Engine();
+        engine.init(true, new ParametersWithIV(new KeyParameter(key), iv));
+        engine.seekTo(position);
+        byte[] output = new byte[length];
+        engine.processBytes(input, 0, length, output, 0);
+        return output;
+    }
+}
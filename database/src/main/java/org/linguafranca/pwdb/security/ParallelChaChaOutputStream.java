@@ -0,0 +1,162 @@
+package org.linguafranca.pwdb.security;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Encrypts ChaCha20 (RFC 7539) using several threads.
+ * <p>
+ * Plaintext is collected into chunks which are encrypted on an {@link Executor}, each starting the
+ * keystream at the chunk's position, and written to the underlying stream in order. At most a
+ * given number of chunks are in flight at once.
+ * <p>
+ * Since chunks must start on a keystream block boundary, {@link #flush()} writes only complete
+ * chunks, the remainder is written on {@link #close()}.
+ * <p>
+ * Output is the same as that of {@link ChaCha#getEncryptedOutputStream}.
+ */
+public class ParallelChaChaOutputStream extends FilterOutputStream {
+
+    private final byte[] key;
+    private final byte[] iv;
+    private final boolean useJce;
+    private final Executor executor;
+    private final int chunkSize;
+    private final int chunksInFlight;
+    private final Deque<CompletableFuture<byte[]>> chunks = new ArrayDeque<>();
+
+    private byte[] buffer;
+    private int count = 0;
+    private long position = 0;
+    private boolean closed = false;
+
+    /**
+     * Encrypt with default chunk size and chunks in flight
+     *
+     * @param outputStream the stream to write ciphertext to
+     * @param key the ChaCha20 key
+     * @param iv the nonce
+     * @param executor an executor to encrypt chunks on, or null to encrypt on the calling thread
+     */
+    public ParallelChaChaOutputStream(OutputStream outputStream, byte[] key, byte[] iv, Executor executor) {
+        this(outputStream, key, iv, executor,
+                ParallelChunkedInputStream.DEFAULT_CHUNK_SIZE, ParallelChunkedInputStream.DEFAULT_CHUNKS_IN_FLIGHT);
+    }
+
+    /**
+     * Encrypt
+     *
+     * @param outputStream the stream to write ciphertext to
+     * @param key the ChaCha20 key
+     * @param iv the nonce
+     * @param executor an executor to encrypt chunks on, or null to encrypt on the calling thread
+     * @param chunkSize the size of a chunk, a multiple of 64
+     * @param chunksInFlight the number of chunks to encrypt before waiting for the first
+     */
+    public ParallelChaChaOutputStream(OutputStream outputStream, byte[] key, byte[] iv, Executor executor,
+                                      int chunkSize, int chunksInFlight) {
+        super(outputStream);
+        if (chunkSize <= 0 || chunkSize % ParallelChaChaInputStream.BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("Chunk size must be a positive multiple of " + ParallelChaChaInputStream.BLOCK_SIZE);
+        }
+        if (chunksInFlight < 1) {
+            throw new IllegalArgumentException("Chunks in flight must be at least 1");
+        }
+        this.key = key.clone();
+        this.iv = iv.clone();
+        this.useJce = new JceChaCha().isAvailable();
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.chunksInFlight = chunksInFlight;
+        this.buffer = new byte[chunkSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        buffer[count++] = (byte) b;
+        if (count == chunkSize) {
+            submit();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        while (len > 0) {
+            int copy = Math.min(len, chunkSize - count);
+            System.arraycopy(b, off, buffer, count, copy);
+            count += copy;
+            off += copy;
+            len -= copy;
+            if (count == chunkSize) {
+                submit();
+            }
+        }
+    }
+
+    private void submit() throws IOException {
+        final byte[] input = buffer;
+        final int length = count;
+        final long start = position;
+        Supplier<byte[]> task = () -> ParallelChaChaInputStream.process(key, iv, useJce, start, input, length);
+        chunks.addLast(executor == null ?
+                CompletableFuture.completedFuture(task.get()) :
+                CompletableFuture.supplyAsync(task, executor));
+        position += length;
+        buffer = new byte[chunkSize];
+        count = 0;
+        while (chunks.size() > chunksInFlight) {
+            writeFirst();
+        }
+    }
+
+    private void writeFirst() throws IOException {
+        byte[] output;
+        try {
+            output = chunks.removeFirst().join();
+        } catch (CompletionException | CancellationException e) {
+            throw new IOException("Chunk processing failed", e.getCause() == null ? e : e.getCause());
+        }
+        out.write(output);
+    }
+
+    /**
+     * Write all complete chunks and flush the underlying stream
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!chunks.isEmpty()) {
+            writeFirst();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (count > 0) {
+                submit();
+            }
+            flush();
+        } finally {
+            closed = true;
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package org.linguafranca.pwdb.security;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Base for streams that transform (typically decrypt) their input in chunks which can be
+ * processed independently of each other.
+ * <p>
+ * Chunks are read ahead from the underlying stream on the calling thread, transformed on an
+ * {@link Executor} and returned in order. Subclasses supply the transformation for a chunk given
+ * its position, and may remove trailing bytes (such as padding) from the output of the last chunk.
+ */
+public abstract class ParallelChunkedInputStream extends FilterInputStream {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    public static final int DEFAULT_CHUNKS_IN_FLIGHT = 4;
+
+    private static class Chunk {
+        final CompletableFuture<byte[]> output;
+        boolean last;
+
+        Chunk(CompletableFuture<byte[]> output, boolean last) {
+            this.output = output;
+            this.last = last;
+        }
+    }
+
+    private final Executor executor;
+    private final int chunkSize;
+    private final int chunksInFlight;
+    private final Deque<Chunk> chunks = new ArrayDeque<>();
+
+    private long position = 0;
+    private boolean endOfInput = false;
+    private byte[] current = new byte[0];
+    private int currentPosition = 0;
+    private int currentLimit = 0;
+    private final byte[] singleByte = new byte[1];
+
+    /**
+     * @param inputStream the input
+     * @param executor an executor to transform chunks on, or null to transform on the calling thread
+     * @param chunkSize the size of a chunk, a multiple of alignment
+     * @param chunksInFlight the number of chunks to read ahead
+     * @param alignment chunks must be a multiple of this size, e.g. a cipher block size
+     */
+    protected ParallelChunkedInputStream(InputStream inputStream, Executor executor, int chunkSize, int chunksInFlight, int alignment) {
+        super(inputStream);
+        if (chunkSize <= 0 || chunkSize % alignment != 0) {
+            throw new IllegalArgumentException("Chunk size must be a positive multiple of " + alignment);
+        }
+        if (chunksInFlight < 1) {
+            throw new IllegalArgumentException("Chunks in flight must be at least 1");
+        }
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.chunksInFlight = chunksInFlight;
+    }
+
+    /**
+     * Called on the reading thread, in order, for each chunk of input
+     * @param input a chunk, which the subclass may retain
+     * @param position the position of the chunk in the input
+     * @return a function that transforms the chunk, which may be run on another thread
+     */
+    protected abstract Supplier<byte[]> transform(byte[] input, long position);
+
+    /**
+     * Called when the end of input is reached
+     * @param length the total length of the input
+     * @throws IOException if the length is invalid
+     */
+    protected void endOfInput(long length) throws IOException {
+    }
+
+    /**
+     * The number of bytes to remove from the end of the output of the last chunk, e.g. padding
+     * @param output the transformed last chunk
+     * @throws IOException if the trailing bytes are invalid
+     */
+    protected int trailerLength(byte[] output) throws IOException {
+        return 0;
+    }
+
+    /**
+     * Read ahead so that there are chunks in flight and we know whether the first is the last
+     */
+    private void readAhead() throws IOException {
+        while (!endOfInput && chunks.size() <= chunksInFlight) {
+            byte[] input = new byte[chunkSize];
+            int length = readFully(input);
+            if (length < chunkSize) {
+                endOfInput = true;
+                endOfInput(position + length);
+                if (length == 0) {
+                    if (!chunks.isEmpty()) {
+                        chunks.peekLast().last = true;
+                    }
+                    break;
+                }
+                input = Arrays.copyOf(input, length);
+            }
+            Supplier<byte[]> task = transform(input, position);
+            position += length;
+            CompletableFuture<byte[]> output = executor == null ?
+                    CompletableFuture.completedFuture(task.get()) :
+                    CompletableFuture.supplyAsync(task, executor);
+            chunks.addLast(new Chunk(output, endOfInput));
+        }
+    }
+
+    private int readFully(byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int read = in.read(buffer, total, buffer.length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Make the next chunk of output current
+     * @return false if there is no more output
+     */
+    private boolean nextChunk() throws IOException {
+        while (currentPosition == currentLimit) {
+            readAhead();
+            Chunk chunk = chunks.pollFirst();
+            if (chunk == null) {
+                return false;
+            }
+            byte[] output;
+            try {
+                output = chunk.output.join();
+            } catch (CompletionException | CancellationException e) {
+                throw new IOException("Chunk processing failed", e.getCause() == null ? e : e.getCause());
+            }
+            current = output;
+            currentPosition = 0;
+            currentLimit = chunk.last ? output.length - trailerLength(output) : output.length;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = read(singleByte, 0, 1);
+        return read < 0 ? -1 : singleByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int count = Math.min(len, currentLimit - currentPosition);
+        System.arraycopy(current, currentPosition, b, off, count);
+        currentPosition += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && nextChunk()) {
+            int count = (int) Math.min(n - skipped, currentLimit - currentPosition);
+            currentPosition += count;
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return currentLimit - currentPosition;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Chunk chunk : chunks) {
+            chunk.output.cancel(false);
+        }
+        chunks.clear();
+        super.close();
+    }
+}
@@ -0,0 +1,177 @@
+package org.linguafranca.pwdb.security;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Seals (encrypts) values in memory with AES-GCM under a key shared by all the values sealed by the engine,
+ * typically the protected values of one database.
+ * <p>
+ * Nonces are a random prefix followed by a counter, so no nonce is repeated under a key. After a
+ * number of values have been sealed the key is rotated, values sealed under earlier keys keep a
+ * reference to their key. Ciphers are reused per thread.
+ * <p>
+ * The key material is on the heap, in a {@link SecretKeySpec} created once per key, and is not
+ * zeroed, so sealing guards against casual inspection of the values rather than a full heap dump.
+ * <p>
+ * This is much cheaper than {@link javax.crypto.SealedObject} with a key per value, which is what
+ * {@link org.linguafranca.pwdb.PropertyValue.SealedStore} does.
+ */
+public class SealingEngine {
+
+    /**
+     * The default number of values sealed with a key before it is rotated
+     */
+    public static final long DEFAULT_ROTATION_INTERVAL = 1L << 32;
+
+    private static final int KEY_LENGTH = 32;
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_LENGTH_BITS = 128;
+    private static final SecureRandom secureRandom = new SecureRandom();
+
+    private static final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/GCM is not supported", e);
+        }
+    });
+
+    private final long rotationInterval;
+    private volatile Key current = new Key();
+
+    /**
+     * A key and the nonces issued under it
+     */
+    private static final class Key {
+        private final SecretKeySpec keySpec;
+        private final int noncePrefix = secureRandom.nextInt();
+        private final AtomicLong counter = new AtomicLong();
+
+        Key() {
+            byte[] bytes = new byte[KEY_LENGTH];
+            secureRandom.nextBytes(bytes);
+            // the spec keeps its own copy
+            keySpec = new SecretKeySpec(bytes, "AES");
+            Arrays.fill(bytes, (byte) 0);
+        }
+
+        SecretKeySpec getKeySpec() {
+            return keySpec;
+        }
+
+        GCMParameterSpec getParameterSpec(long nonce) {
+            byte[] iv = ByteBuffer.allocate(NONCE_LENGTH).putInt(noncePrefix).putLong(nonce).array();
+            return new GCMParameterSpec(TAG_LENGTH_BITS, iv);
+        }
+    }
+
+    /**
+     * A sealed value
+     */
+    public static final class Sealed {
+        private final Key key;
+        private final long nonce;
+        private final byte[] cipherText;
+
+        private Sealed(Key key, long nonce, byte[] cipherText) {
+            this.key = key;
+            this.nonce = nonce;
+            this.cipherText = cipherText;
+        }
+
+        /* the ciphertext, for storage elsewhere */
+        byte[] getCipherText() {
+            return cipherText;
+        }
+
+        /* the key and nonce without the ciphertext */
+        Sealed withoutCipherText() {
+            return new Sealed(key, nonce, null);
+        }
+    }
+
+    /**
+     * An engine with the default rotation interval
+     */
+    public SealingEngine() {
+        this(DEFAULT_ROTATION_INTERVAL);
+    }
+
+    /**
+     * @param rotationInterval the number of values to seal with a key before rotating it
+     */
+    public SealingEngine(long rotationInterval) {
+        if (rotationInterval < 1) {
+            throw new IllegalArgumentException("Rotation interval must be at least 1");
+        }
+        this.rotationInterval = rotationInterval;
+    }
+
+    /**
+     * Seal a value
+     *
+     * @param plainText the value, which is not retained
+     * @return the sealed value
+     */
+    public Sealed seal(byte[] plainText) {
+        Key key;
+        long nonce;
+        while (true) {
+            key = current;
+            nonce = key.counter.getAndIncrement();
+            if (nonce < rotationInterval) {
+                break;
+            }
+            rotate(key);
+        }
+        try {
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.ENCRYPT_MODE, key.getKeySpec(), key.getParameterSpec(nonce));
+            return new Sealed(key, nonce, cipher.doFinal(plainText));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Unseal a value sealed by this engine
+     *
+     * @param sealed the sealed value
+     * @return a new array containing the value
+     */
+    public byte[] unseal(Sealed sealed) {
+        try {
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.DECRYPT_MODE, sealed.key.getKeySpec(), sealed.key.getParameterSpec(sealed.nonce));
+            return cipher.doFinal(sealed.cipherText);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Sealed value could not be opened", e);
+        }
+    }
+
+    /* unseal ciphertext stored elsewhere, given its key and nonce */
+    byte[] unseal(Sealed header, byte[] cipherText) {
+        return unseal(new Sealed(header.key, header.nonce, cipherText));
+    }
+
+    /**
+     * Start sealing values with a new key
+     */
+    public void rotate() {
+        rotate(current);
+    }
+
+    private synchronized void rotate(Key from) {
+        // another thread may have rotated already
+        if (current == from) {
+            current = new Key();
+        }
+    }
+}
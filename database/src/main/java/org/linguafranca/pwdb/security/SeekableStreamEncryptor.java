@@ -0,0 +1,30 @@
+package org.linguafranca.pwdb.security;
+
+/**
+ * A {@link StreamEncryptor} whose keystream can be positioned, so that a protected value can be
+ * decrypted independently of the values before it, given its offset in the keystream.
+ */
+public interface SeekableStreamEncryptor extends StreamEncryptor {
+
+    /**
+     * The offset in the keystream of the next value to be encrypted or decrypted
+     */
+    long getPosition();
+
+    /**
+     * Advance the keystream past a value without processing it
+     *
+     * @param length the length of the value
+     */
+    void skip(long length);
+
+    /**
+     * Decrypt a value at a given offset in the keystream. Does not affect the position of
+     * sequential encryption or decryption.
+     *
+     * @param position the offset of the value in the keystream
+     * @param encryptedText the value
+     * @return a new array containing the decrypted value
+     */
+    byte[] decrypt(long position, byte[] encryptedText);
+}
@@ -0,0 +1,337 @@
+package org.linguafranca.pwdb.security;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores sealed values off-heap in a few large direct buffers (slabs) rather than a direct buffer per value.
+ * <p>
+ * Values are sealed with a {@link SealingEngine} belonging to the arena and their ciphertext placed in the
+ * current slab, they are referred to by a {@link Handle} giving the slab, offset and length. Space is
+ * freed explicitly, or when the owner of a handle is garbage collected, and is wiped with zeros. When more
+ * than half a slab's worth of space has been freed, live values are moved out of sparsely used slabs,
+ * which are then dropped. Compaction takes place on an {@link Executor} if one is provided, otherwise on
+ * the thread that frees the space.
+ * <p>
+ * Arenas created with the default constructor share a single daemon thread, which compacts them and
+ * also frees the values of collected owners every {@link #DRAIN_INTERVAL_MILLIS} ms. Other arenas free
+ * those values when they next allocate or compact.
+ * <p>
+ * {@link #close()} wipes all slabs, after which values can no longer be read.
+ */
+public class SlabArena implements AutoCloseable {
+
+    public static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+    public static final long DRAIN_INTERVAL_MILLIS = 1000;
+
+    /* created on first use */
+    private static final class DefaultExecutor {
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SlabArena-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private final int slabSize;
+    private final Executor compactionExecutor;
+    private final SealingEngine engine = new SealingEngine();
+    private final List<Slab> slabs = new ArrayList<>();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    private final Set<OwnerReference> owners = new HashSet<>();
+
+    private long freedBytes = 0;
+    private boolean compactionScheduled = false;
+    private boolean closed = false;
+    private ScheduledFuture<?> drain;
+
+    private static final byte[] ZEROS = new byte[4096];
+
+    private static final class Slab {
+        private final ByteBuffer buffer;
+        private final Set<Handle> handles = new HashSet<>();
+        private int top = 0;
+        private int live = 0;
+
+        Slab(int size) {
+            buffer = ByteBuffer.allocateDirect(size);
+        }
+
+        void wipe(int offset, int length) {
+            ByteBuffer target = buffer.duplicate();
+            // Buffer rather than ByteBuffer methods for Java 8 compatibility
+            ((Buffer) target).position(offset);
+            while (length > 0) {
+                int count = Math.min(length, ZEROS.length);
+                target.put(ZEROS, 0, count);
+                length -= count;
+            }
+        }
+    }
+
+    /**
+     * The location of a value in the arena
+     */
+    public static final class Handle {
+        private final SealingEngine.Sealed sealed;
+        private final int length;
+        private Slab slab;
+        private int offset;
+        private OwnerReference owner;
+
+        private Handle(SealingEngine.Sealed sealed, int length) {
+            this.sealed = sealed;
+            this.length = length;
+        }
+    }
+
+    /* frees a handle when its owner is collected */
+    private static final class OwnerReference extends PhantomReference<Object> {
+        private final Handle handle;
+
+        OwnerReference(Object owner, Handle handle, ReferenceQueue<Object> queue) {
+            super(owner, queue);
+            this.handle = handle;
+        }
+    }
+
+    /* frees collected values periodically, without keeping the arena reachable */
+    private static final class Drain implements Runnable {
+        private final WeakReference<SlabArena> arena;
+
+        Drain(SlabArena arena) {
+            this.arena = new WeakReference<>(arena);
+        }
+
+        @Override
+        public void run() {
+            SlabArena target = arena.get();
+            if (target == null) {
+                // the arena's buffers go with it, and throwing suppresses further runs
+                throw new IllegalStateException("Arena has been collected");
+            }
+            target.drain();
+        }
+    }
+
+    /**
+     * An arena with default slab size which compacts, and frees values whose owners have been collected,
+     * on a shared daemon thread
+     */
+    public SlabArena() {
+        this(DEFAULT_SLAB_SIZE, DefaultExecutor.INSTANCE);
+        drain = DefaultExecutor.INSTANCE.scheduleWithFixedDelay(new Drain(this),
+                DRAIN_INTERVAL_MILLIS, DRAIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param slabSize the size of a slab, values larger than this get a slab of their own
+     * @param compactionExecutor an executor to compact on, or null to compact on the calling thread
+     */
+    public SlabArena(int slabSize, Executor compactionExecutor) {
+        if (slabSize < 1) {
+            throw new IllegalArgumentException("Slab size must be at least 1");
+        }
+        this.slabSize = slabSize;
+        this.compactionExecutor = compactionExecutor;
+    }
+
+    /**
+     * Seal and store a value
+     *
+     * @param owner an object whose collection frees the value, or null if it is only to be freed explicitly
+     * @param plainText the value, which is not retained
+     * @return a handle to the value
+     */
+    public synchronized Handle allocate(Object owner, byte[] plainText) {
+        checkOpen();
+        freeCollected();
+        SealingEngine.Sealed sealed = engine.seal(plainText);
+        byte[] cipherText = sealed.getCipherText();
+        Handle handle = new Handle(sealed.withoutCipherText(), cipherText.length);
+        place(handle);
+        ByteBuffer target = handle.slab.buffer.duplicate();
+        ((Buffer) target).position(handle.offset);
+        target.put(cipherText);
+        if (owner != null) {
+            handle.owner = new OwnerReference(owner, handle, collected);
+            owners.add(handle.owner);
+        }
+        return handle;
+    }
+
+    /* find space for a handle in the current slab, or a new one */
+    private void place(Handle handle) {
+        Slab slab = slabs.isEmpty() ? null : slabs.get(slabs.size() - 1);
+        if (slab == null || slab.buffer.capacity() - slab.top < handle.length) {
+            slab = new Slab(Math.max(slabSize, handle.length));
+            slabs.add(slab);
+        }
+        handle.slab = slab;
+        handle.offset = slab.top;
+        slab.top += handle.length;
+        slab.live += handle.length;
+        slab.handles.add(handle);
+    }
+
+    /**
+     * Read a value
+     *
+     * @param handle the handle of the value
+     * @return a new array containing the value
+     */
+    public synchronized byte[] read(Handle handle) {
+        checkOpen();
+        if (handle.slab == null) {
+            throw new IllegalStateException("Value has been freed");
+        }
+        byte[] cipherText = new byte[handle.length];
+        ByteBuffer source = handle.slab.buffer.duplicate();
+        ((Buffer) source).position(handle.offset);
+        source.get(cipherText);
+        return engine.unseal(handle.sealed, cipherText);
+    }
+
+    /**
+     * Free and wipe the space used by a value
+     *
+     * @param handle the handle of the value
+     */
+    public synchronized void free(Handle handle) {
+        if (closed || handle.slab == null) {
+            return;
+        }
+        if (handle.owner != null) {
+            owners.remove(handle.owner);
+            handle.owner.clear();
+        }
+        release(handle);
+        freedBytes += handle.length;
+        if (freedBytes > slabSize / 2 && !compactionScheduled) {
+            compactionScheduled = true;
+            if (compactionExecutor == null) {
+                compact();
+            } else {
+                compactionExecutor.execute(this::compact);
+            }
+        }
+    }
+
+    private void release(Handle handle) {
+        Slab slab = handle.slab;
+        slab.wipe(handle.offset, handle.length);
+        slab.live -= handle.length;
+        slab.handles.remove(handle);
+        handle.slab = null;
+    }
+
+    private synchronized void drain() {
+        if (!closed) {
+            freeCollected();
+        }
+    }
+
+    /* free values whose owners have been collected */
+    private void freeCollected() {
+        Reference<?> reference;
+        while ((reference = collected.poll()) != null) {
+            free(((OwnerReference) reference).handle);
+        }
+    }
+
+    /**
+     * Move values out of slabs that are less than half used, and drop those slabs
+     */
+    public synchronized void compact() {
+        compactionScheduled = false;
+        if (closed) {
+            return;
+        }
+        freeCollected();
+        List<Slab> sparse = new ArrayList<>();
+        for (Slab slab : slabs.subList(0, Math.max(0, slabs.size() - 1))) {
+            if (slab.live * 2 < slab.top) {
+                sparse.add(slab);
+            }
+        }
+        slabs.removeAll(sparse);
+        for (Slab slab : sparse) {
+            for (Handle handle : new ArrayList<>(slab.handles)) {
+                byte[] cipherText = new byte[handle.length];
+                ByteBuffer source = slab.buffer.duplicate();
+                ((Buffer) source).position(handle.offset);
+                source.get(cipherText);
+                release(handle);
+                place(handle);
+                ByteBuffer target = handle.slab.buffer.duplicate();
+                ((Buffer) target).position(handle.offset);
+                target.put(cipherText);
+            }
+            slab.wipe(0, slab.top);
+        }
+        // count frees since this compaction
+        freedBytes = 0;
+    }
+
+    /**
+     * The number of slabs in use
+     */
+    public synchronized int getSlabCount() {
+        return slabs.size();
+    }
+
+    /**
+     * The number of bytes occupied by values that have not been freed
+     */
+    public synchronized long getLiveBytes() {
+        long result = 0;
+        for (Slab slab : slabs) {
+            result += slab.live;
+        }
+        return result;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Arena is closed");
+        }
+    }
+
+    /**
+     * Wipe all slabs, values can no longer be read
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (drain != null) {
+            drain.cancel(false);
+        }
+        for (Slab slab : slabs) {
+            slab.wipe(0, slab.top);
+            for (Handle handle : slab.handles) {
+                handle.slab = null;
+            }
+        }
+        slabs.clear();
+        for (OwnerReference owner : owners) {
+            owner.clear();
+        }
+        owners.clear();
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.linguafranca.pwdb.security;
 
+import org.bouncycastle.crypto.SkippingCipher;
 import org.bouncycastle.crypto.StreamCipher;
 import org.bouncycastle.crypto.engines.ChaCha7539Engine;
 import org.bouncycastle.crypto.engines.Salsa20Engine;
@@ -23,11 +24,19 @@ import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.crypto.params.ParametersWithIV;
 import org.bouncycastle.util.encoders.Hex;
 
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * KDBX "protected" fields are stream encrypted. They must be decrypted in
  * the same order as they were encrypted.
+ * <p>
+ * As well as methods returning a new array there are methods which work in place on part of an array,
+ * on a {@link ByteBuffer} or on a list of values, avoiding an allocation per field. Implementations
+ * need only provide the array methods, the defaults for the others copy.
  *
  * @author jo
  */
@@ -38,6 +47,75 @@ public interface StreamEncryptor {
 
     byte[] encrypt(byte[] decryptedText);
 
+    /**
+     * Decrypt part of an array in place
+     */
+    default void decrypt(byte[] text, int offset, int length) {
+        byte[] decrypted = decrypt(Arrays.copyOfRange(text, offset, offset + length));
+        System.arraycopy(decrypted, 0, text, offset, length);
+    }
+
+    /**
+     * Encrypt part of an array in place
+     */
+    default void encrypt(byte[] text, int offset, int length) {
+        byte[] encrypted = encrypt(Arrays.copyOfRange(text, offset, offset + length));
+        System.arraycopy(encrypted, 0, text, offset, length);
+    }
+
+    /**
+     * Decrypt the bytes between the position and the limit of a buffer in place, advancing the position to the limit
+     */
+    default void decrypt(ByteBuffer text) {
+        process(text, false);
+    }
+
+    /**
+     * Encrypt the bytes between the position and the limit of a buffer in place, advancing the position to the limit
+     */
+    default void encrypt(ByteBuffer text) {
+        process(text, true);
+    }
+
+    /**
+     * Decrypt each of a list of values in place, in list order
+     */
+    default void decrypt(List<byte[]> texts) {
+        for (byte[] text : texts) {
+            decrypt(text, 0, text.length);
+        }
+    }
+
+    /**
+     * Encrypt each of a list of values in place, in list order
+     */
+    default void encrypt(List<byte[]> texts) {
+        for (byte[] text : texts) {
+            encrypt(text, 0, text.length);
+        }
+    }
+
+    /**
+     * Encrypt or decrypt a buffer in place for {@link #encrypt(ByteBuffer)} and {@link #decrypt(ByteBuffer)}, by
+     * default via its array if it has one, otherwise via a copy
+     */
+    default void process(ByteBuffer text, boolean encrypt) {
+        if (text.hasArray()) {
+            int offset = text.arrayOffset() + text.position();
+            if (encrypt) {
+                encrypt(text.array(), offset, text.remaining());
+            } else {
+                decrypt(text.array(), offset, text.remaining());
+            }
+            // Buffer rather than ByteBuffer methods for Java 8 compatibility
+            ((Buffer) text).position(text.limit());
+            return;
+        }
+        byte[] copy = new byte[text.remaining()];
+        text.duplicate().get(copy);
+        text.put(encrypt ? encrypt(copy) : decrypt(copy));
+    }
+
     class None implements StreamEncryptor {
 
         @Override
@@ -54,9 +132,22 @@ public interface StreamEncryptor {
         public byte[] encrypt(byte[] decryptedText) {
             return decryptedText;
         }
+
+        @Override
+        public void decrypt(byte[] text, int offset, int length) {
+        }
+
+        @Override
+        public void encrypt(byte[] text, int offset, int length) {
+        }
+
+        @Override
+        public void process(ByteBuffer text, boolean encrypt) {
+            ((Buffer) text).position(text.limit());
+        }
     }
 
-    class ChaCha20 extends Default {
+    class ChaCha20 extends Default implements SeekableStreamEncryptor {
         public ChaCha20(byte[] key) {
             super(new ChaCha7539Engine(), key);
 
@@ -72,7 +163,7 @@ public interface StreamEncryptor {
         }
     }
 
-    class Salsa20 extends Default {
+    class Salsa20 extends Default implements SeekableStreamEncryptor {
         // This fixed iv shows up as a vulnerability but is part of the definition of Keepass
         private static final byte[] SALSA20_IV = Hex.decode("E830094B97205D2A".getBytes());
 
@@ -130,5 +221,69 @@ public interface StreamEncryptor {
             cipher.processBytes(decryptedText, 0, decryptedText.length, output, 0);
             return output;
         }
+
+        /**
+         * The offset in the keystream, for a cipher which is a {@link SkippingCipher}
+         * @see SeekableStreamEncryptor#getPosition()
+         */
+        public long getPosition() {
+            return getSkippingCipher().getPosition();
+        }
+
+        /**
+         * Advance the keystream, for a cipher which is a {@link SkippingCipher}
+         * @see SeekableStreamEncryptor#skip(long)
+         */
+        public void skip(long length) {
+            getSkippingCipher().skip(length);
+        }
+
+        /**
+         * Decrypt at an offset in the keystream, for a cipher which is a {@link SkippingCipher}
+         * @see SeekableStreamEncryptor#decrypt(long, byte[])
+         */
+        public synchronized byte[] decrypt(long position, byte[] encryptedText) {
+            SkippingCipher skippingCipher = getSkippingCipher();
+            long saved = skippingCipher.getPosition();
+            skippingCipher.seekTo(position);
+            try {
+                return decrypt(encryptedText);
+            } finally {
+                skippingCipher.seekTo(saved);
+            }
+        }
+
+        private SkippingCipher getSkippingCipher() {
+            if (!(cipher instanceof SkippingCipher)) {
+                throw new UnsupportedOperationException("Cipher " + cipher.getAlgorithmName() + " is not seekable");
+            }
+            return (SkippingCipher) cipher;
+        }
+
+        @Override
+        public void decrypt(byte[] text, int offset, int length) {
+            cipher.processBytes(text, offset, length, text, offset);
+        }
+
+        @Override
+        public void encrypt(byte[] text, int offset, int length) {
+            cipher.processBytes(text, offset, length, text, offset);
+        }
+
+        @Override
+        public void process(ByteBuffer text, boolean encrypt) {
+            if (text.hasArray()) {
+                StreamEncryptor.super.process(text, encrypt);
+                return;
+            }
+            // a direct buffer is processed through a small scratch array
+            byte[] scratch = new byte[Math.min(text.remaining(), 4096)];
+            while (text.hasRemaining()) {
+                int length = Math.min(text.remaining(), scratch.length);
+                text.duplicate().get(scratch, 0, length);
+                cipher.processBytes(scratch, 0, length, scratch, 0);
+                text.put(scratch, 0, length);
+            }
+        }
     }
 }
@@ -0,0 +1,201 @@
+package org.linguafranca.pwdb.security;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A size and time bounded cache of the results of key derivation functions.
+ * <p>
+ * Running a KDF is deliberately expensive, but when the same database is opened repeatedly
+ * with the same credentials the KDF seed and parameters don't change, and nor does the result.
+ * Entries are keyed by an SHA-256 digest of the credential digest, the KDF UUID and the
+ * KDF parameters, so neither credentials nor parameters are retained by the cache.
+ * <p>
+ * Entries are evicted least recently used first when the cache is full, and are discarded once
+ * older than the time to live, which is checked for all entries whenever the cache is used.
+ * Evicted entries are overwritten. Note that while an entry is cached
+ * the transformed key is held on the heap - which is the point, but may not suit everyone,
+ * hence caching is opt in.
+ * <p>
+ * The class is thread safe. The KDF itself is run outside any lock, so concurrent misses
+ * for the same key may each run it.
+ */
+public class TransformedKeyCache {
+
+    private final int maxEntries;
+    private final long timeToLiveNanos;
+    private final LongSupplier clock;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static class CachedKey {
+        final byte[] transformedKey;
+        final long created;
+
+        CachedKey(byte[] transformedKey, long created) {
+            this.transformedKey = transformedKey;
+            this.created = created;
+        }
+
+        void wipe() {
+            Arrays.fill(transformedKey, (byte) 0);
+        }
+    }
+
+    private final LinkedHashMap<ByteBuffer, CachedKey> cache = new LinkedHashMap<ByteBuffer, CachedKey>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, CachedKey> eldest) {
+            if (size() > maxEntries) {
+                eldest.getValue().wipe();
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Create a cache
+     * @param maxEntries the maximum number of transformed keys to hold
+     * @param timeToLive how long a transformed key may be held
+     * @param unit the unit of time to live
+     */
+    public TransformedKeyCache(int maxEntries, long timeToLive, TimeUnit unit) {
+        this(maxEntries, timeToLive, unit, System::nanoTime);
+    }
+
+    /**
+     * Create a cache with a specified source of time, in nanoseconds
+     */
+    TransformedKeyCache(int maxEntries, long timeToLive, TimeUnit unit, LongSupplier clock) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache must allow at least one entry");
+        }
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("Time to live must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+        this.clock = clock;
+    }
+
+    /**
+     * Get a transformed key from the cache, or if not present compute it and add it to the cache
+     *
+     * @param digest the composite credentials digest
+     * @param kdfParameters the KDF parameters, including the KDF "$UUID"
+     * @param transform computes the transformed key if it isn't present
+     * @return a copy of the transformed key, which the caller is free to overwrite
+     */
+    public byte[] getTransformedKey(byte @NotNull [] digest, @NotNull VariantDictionary kdfParameters, @NotNull Supplier<byte[]> transform) {
+        ByteBuffer key = cacheKey(digest, kdfParameters);
+        synchronized (cache) {
+            discardExpired();
+            CachedKey cached = cache.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached.transformedKey.clone();
+            }
+        }
+        misses.incrementAndGet();
+        byte[] transformedKey = transform.get();
+        synchronized (cache) {
+            discardExpired();
+            CachedKey previous = cache.put(key, new CachedKey(transformedKey.clone(), clock.getAsLong()));
+            if (previous != null) {
+                previous.wipe();
+            }
+        }
+        return transformedKey;
+    }
+
+    /**
+     * Remove and overwrite all entries older than the time to live. Being used doesn't make an
+     * entry younger, so the least recently used entry is not necessarily the oldest, and all are
+     * checked - there are few.
+     */
+    private void discardExpired() {
+        long now = clock.getAsLong();
+        Iterator<CachedKey> iterator = cache.values().iterator();
+        while (iterator.hasNext()) {
+            CachedKey cached = iterator.next();
+            if (now - cached.created >= timeToLiveNanos) {
+                iterator.remove();
+                cached.wipe();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Remove and overwrite all entries
+     */
+    public void clear() {
+        synchronized (cache) {
+            for (CachedKey cached : cache.values()) {
+                cached.wipe();
+            }
+            cache.clear();
+        }
+    }
+
+    /**
+     * Number of entries currently held, including any that have expired since the cache was last used
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Number of requests satisfied from the cache
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Number of requests that required the KDF to be run
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Number of entries discarded because the cache was full or they had expired
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Digest the inputs to the KDF, parameters are taken in key order so that the
+     * order in which they were read from a file doesn't matter
+     */
+    private static ByteBuffer cacheKey(byte[] digest, VariantDictionary kdfParameters) {
+        MessageDigest md = Encryption.getSha256MessageDigestInstance();
+        updateWithLength(md, digest);
+        for (Map.Entry<String, VariantDictionary.Entry> entry : new TreeMap<>(kdfParameters.getEntries()).entrySet()) {
+            updateWithLength(md, entry.getKey().getBytes(StandardCharsets.UTF_8));
+            md.update(entry.getValue().getType());
+            updateWithLength(md, entry.getValue().asByteArray());
+        }
+        return ByteBuffer.wrap(md.digest());
+    }
+
+    private static void updateWithLength(MessageDigest md, byte[] bytes) {
+        md.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        md.update(bytes);
+    }
+}
@@ -0,0 +1,93 @@
+package org.linguafranca.pwdb;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BinaryPoolTest {
+
+    private static final Random random = new Random(11);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] randomBytes(int length) {
+        byte[] result = new byte[length];
+        random.nextBytes(result);
+        return result;
+    }
+
+    @Test
+    public void memoryOnly() throws Exception {
+        BinaryPool pool = new BinaryPool();
+        byte[] first = randomBytes(100);
+        assertEquals(0, pool.add(first));
+        pool.set(3, randomBytes(10));
+        assertEquals(4, pool.size());
+        assertFalse(pool.contains(1));
+        assertNull(pool.get(1));
+        assertEquals(-1, pool.getLength(1));
+        assertArrayEquals(first, pool.get(0));
+        assertNotSame(first, pool.get(0));
+        assertEquals(110, pool.getMemoryBytes());
+        pool.set(0, new byte[0]);
+        assertEquals(10, pool.getMemoryBytes());
+    }
+
+    @Test
+    public void spillToDisk() throws Exception {
+        BinaryPool pool = new BinaryPool(1000, folder.getRoot().toPath());
+        byte[] small = randomBytes(600);
+        byte[] large = randomBytes(300_000);
+        byte[] tooMany = randomBytes(600);
+        pool.add(small);
+        pool.add(large);
+        pool.add(new ByteArrayInputStream(tooMany));
+        // only the first fits in the budget
+        assertEquals(600, pool.getMemoryBytes());
+
+        assertArrayEquals(small, pool.get(0));
+        assertArrayEquals(large, pool.get(1));
+        assertArrayEquals(tooMany, pool.get(2));
+        assertArrayEquals(large, ByteStreams.toByteArray(pool.getInputStream(1)));
+        assertEquals(large.length, pool.getLength(1));
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        pool.writeTo(1, written);
+        assertArrayEquals(large, written.toByteArray());
+
+        pool.close();
+        assertEquals(0, folder.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void interleavedStreams() throws Exception {
+        BinaryPool pool = new BinaryPool(0, folder.getRoot().toPath());
+        byte[] first = randomBytes(200_000);
+        byte[] second = randomBytes(150_000);
+        OutputStream firstStream = pool.newOutputStream(0);
+        OutputStream secondStream = pool.newOutputStream(1);
+        for (int i = 0; i < 200_000; i += 10_000) {
+            firstStream.write(first, i, 10_000);
+            if (i < 150_000) {
+                secondStream.write(second, i, 10_000);
+            }
+        }
+        // not set until closed
+        assertFalse(pool.contains(0));
+        firstStream.close();
+        secondStream.close();
+        assertArrayEquals(first, pool.get(0));
+        assertArrayEquals(second, pool.get(1));
+        assertEquals(0, pool.getMemoryBytes());
+        pool.close();
+    }
+}
@@ -1,8 +1,12 @@
 package org.linguafranca.pwdb;
 
 import org.junit.Test;
+import org.linguafranca.pwdb.security.SealingEngine;
+import org.linguafranca.pwdb.security.SlabArena;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import org.linguafranca.test.util.TestUtil;
 
 import static org.junit.Assert.*;
@@ -62,6 +66,85 @@ public class PropertyValueTest {
         assertArrayEquals(THIS_IS_A_SECRET.toCharArray(), sealed.getValueAsChars());
         assertEquals(THIS_IS_A_SECRET, sealed.getValueAsString());
     }
+    @Test
+    public void engineSealedTest() {
+        // rotate keys every other value
+        SealingEngine engine = new SealingEngine(2);
+        PropertyValue.Factory<PropertyValue.EngineSealedStore> factory = PropertyValue.EngineSealedStore.getFactory(engine);
+
+        List<PropertyValue.EngineSealedStore> values = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            values.add(factory.of(THIS_IS_A_SECRET + i));
+        }
+        engine.rotate();
+        values.add(factory.of(THIS_IS_A_SECRET.toCharArray()));
+        values.add(factory.of(THIS_IS_A_SECRET.getBytes(StandardCharsets.UTF_8)));
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(THIS_IS_A_SECRET + i, values.get(i).getValueAsString());
+        }
+        for (PropertyValue.EngineSealedStore sealed : values.subList(5, 7)) {
+            assertEquals(THIS_IS_A_SECRET, sealed.getValue().toString());
+            assertArrayEquals(THIS_IS_A_SECRET.getBytes(StandardCharsets.UTF_8), sealed.getValueAsBytes());
+            assertArrayEquals(THIS_IS_A_SECRET.toCharArray(), sealed.getValueAsChars());
+            assertTrue(sealed.isProtected());
+        }
+        assertTrue(new PropertyValue.Strategy.Sealing().newProtected().of(ANOTHER_SECRET) instanceof PropertyValue.EngineSealedStore);
+    }
+
+    @Test
+    public void arenaTest() {
+        // small slabs, so that values spread over several
+        SlabArena arena = new SlabArena(256, null);
+        List<SlabArena.Handle> handles = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            handles.add(arena.allocate(null, (THIS_IS_A_SECRET + i).getBytes(StandardCharsets.UTF_8)));
+        }
+        int slabs = arena.getSlabCount();
+        assertTrue(slabs > 5);
+
+        // freeing most values compacts the remainder into fewer slabs
+        for (int i = 0; i < 60; i++) {
+            if (i % 10 != 0) {
+                arena.free(handles.get(i));
+            }
+        }
+        assertTrue(arena.getSlabCount() < slabs);
+        for (int i = 0; i < 60; i += 10) {
+            assertArrayEquals((THIS_IS_A_SECRET + i).getBytes(StandardCharsets.UTF_8), arena.read(handles.get(i)));
+        }
+
+        PropertyValue.ArenaStore sealed = PropertyValue.ArenaStore.getFactory(arena).of(THIS_IS_A_SECRET.toCharArray());
+        assertEquals(THIS_IS_A_SECRET, sealed.getValue().toString());
+        assertArrayEquals(THIS_IS_A_SECRET.getBytes(StandardCharsets.UTF_8), sealed.getValueAsBytes());
+        assertArrayEquals(THIS_IS_A_SECRET.toCharArray(), sealed.getValueAsChars());
+        assertEquals(THIS_IS_A_SECRET, sealed.getValueAsString());
+
+        arena.close();
+        try {
+            sealed.getValueAsString();
+            fail("Expected closed arena");
+        } catch (IllegalStateException e) {
+            assertEquals("Arena is closed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void arenaDrainTest() throws InterruptedException {
+        SlabArena arena = new SlabArena();
+        Object owner = new Object();
+        arena.allocate(owner, THIS_IS_A_SECRET.getBytes(StandardCharsets.UTF_8));
+        assertTrue(arena.getLiveBytes() > 0);
+        owner = null;
+        // the default arena frees the value without further calls to it
+        for (int i = 0; i < 100 && arena.getLiveBytes() > 0; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        assertEquals(0, arena.getLiveBytes());
+        arena.close();
+    }
+
     @Test
     public void stringTest() {
         PropertyValue.Factory<PropertyValue.StringStore> factory = PropertyValue.StringStore.getFactory();
@@ -32,6 +32,7 @@ import javax.xml.xpath.XPathExpressionException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Path;
 import java.util.Objects;
 import java.util.UUID;
 
@@ -72,6 +73,17 @@ public class DomDatabaseWrapper extends AbstractDatabase<DomDatabaseWrapper, Dom
         init();
     }
 
+    /**
+     * load a database, reading the file memory mapped
+     * @param credentials credentials to use
+     * @param path the file to read
+     */
+    public DomDatabaseWrapper(Credentials credentials, Path path) throws IOException {
+        this.streamFormat = new KdbxStreamFormat();
+        streamFormat.load(domDatabase, credentials, path);
+        init();
+    }
+
     /**
      * load a database
      * @param credentials credentials to use
@@ -85,6 +97,19 @@ public class DomDatabaseWrapper extends AbstractDatabase<DomDatabaseWrapper, Dom
                 checkNotNull(inputStream, "InputStream must not be null"));
     }
 
+    /**
+     * load a database, reading the file memory mapped
+     * @param credentials credentials to use
+     * @param path the file to read
+     * @return a database
+     */
+    public static DomDatabaseWrapper load(@NotNull Credentials credentials,
+                                          @NotNull Path path) throws IOException {
+        return new DomDatabaseWrapper(
+                checkNotNull(credentials, "Credentials must not be null"),
+                checkNotNull(path, "Path must not be null"));
+    }
+
     private void init() {
         document = domDatabase.getDoc();
         try {
@@ -199,7 +199,7 @@ public class DomEntryWrapper extends AbstractEntry <DomDatabaseWrapper, DomGroup
     @Override
     public void setExpiryTime(Date expiryTime) throws IllegalArgumentException {
         if (expiryTime == null) throw new IllegalArgumentException("expiryTime may not be null");
-        String formatted = Helpers.fromDate(expiryTime);
+        String formatted = Helpers.fromDateV3(expiryTime);
         DomHelper.setElementContent(DomHelper.EXPIRY_TIME_ELEMENT_NAME, element, formatted);
     }
 
@@ -210,7 +210,7 @@ public class DomEntryWrapper extends AbstractEntry <DomDatabaseWrapper, DomGroup
 
     @Override
     protected void touch() {
-        DomHelper.setElementContent(DomHelper.LAST_MODIFICATION_TIME_ELEMENT_NAME, element, Helpers.fromDate(new Date()));
+        DomHelper.setElementContent(DomHelper.LAST_MODIFICATION_TIME_ELEMENT_NAME, element, Helpers.fromDateV3(new Date()));
     }
 
     @Override
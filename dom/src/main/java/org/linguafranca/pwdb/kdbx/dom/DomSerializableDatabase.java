@@ -17,6 +17,7 @@
 package org.linguafranca.pwdb.kdbx.dom;
 
 
+import org.linguafranca.pwdb.kdbx.FormatContext;
 import org.linguafranca.pwdb.kdbx.Helpers;
 import org.linguafranca.pwdb.SerializableDatabase;
 import org.linguafranca.pwdb.security.StreamEncryptor;
@@ -40,7 +41,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 /**
  * This class is an XML DOM implementation of a KDBX database. The data is maintained as a DOM,
@@ -52,10 +55,11 @@ import java.util.Date;
  *
  * @author jo
  */
-public class DomSerializableDatabase implements SerializableDatabase {
+public class DomSerializableDatabase implements SerializableDatabase, FormatContext.Aware {
 
     private Document doc;
     private StreamEncryptor encryption;
+    private FormatContext formatContext = FormatContext.V3;
 
     private DomSerializableDatabase() {}
 
@@ -86,13 +90,19 @@ public class DomSerializableDatabase implements SerializableDatabase {
 
             // we need to decrypt all protected fields
             NodeList protectedContent = (NodeList) DomHelper.xpath.evaluate("//*[@Protected='True']", doc, XPathConstants.NODESET);
+            List<byte[]> values = new ArrayList<>(protectedContent.getLength());
             for (int i = 0; i < protectedContent.getLength(); i++){
-                Element element = ((Element) protectedContent.item(i));
-                String base64 = DomHelper.getElementContent(".", element);
+                String base64 = DomHelper.getElementContent(".", (Element) protectedContent.item(i));
                 // Android compatibility
-                byte[] encrypted = Base64.decodeBase64(base64.getBytes());
-                String decrypted = new String(encryption.decrypt(encrypted), StandardCharsets.UTF_8);
-                DomHelper.setElementContent(".", element, decrypted);
+                values.add(Base64.decodeBase64(base64.getBytes()));
+            }
+            // decrypt in place, in document order
+            if (!values.isEmpty()) {
+                encryption.decrypt(values);
+            }
+            for (int i = 0; i < protectedContent.getLength(); i++){
+                Element element = ((Element) protectedContent.item(i));
+                DomHelper.setElementContent(".", element, new String(values.get(i), StandardCharsets.UTF_8));
                 element.removeAttribute("Protected");
                 element.setAttribute("kpj2-ProtectOnOutput", "True");
             }
@@ -136,6 +146,7 @@ public class DomSerializableDatabase implements SerializableDatabase {
 
             // encrypt and base64 every element marked as protected
             NodeList protectedContent = (NodeList) DomHelper.xpath.evaluate("//*[@kpj2-ProtectOnOutput='True']", copyDoc, XPathConstants.NODESET);
+            List<byte[]> values = new ArrayList<>(protectedContent.getLength());
             for (int i = 0; i < protectedContent.getLength(); i++){
                 Element element = ((Element) protectedContent.item(i));
 
@@ -146,10 +157,16 @@ public class DomSerializableDatabase implements SerializableDatabase {
                 if (decrypted == null) {
                     decrypted = "";
                 }
-                byte[] encrypted = encryption.encrypt(decrypted.getBytes());
+                values.add(decrypted.getBytes());
+            }
+            // encrypt in place, in document order
+            if (!values.isEmpty()) {
+                encryption.encrypt(values);
+            }
+            for (int i = 0; i < protectedContent.getLength(); i++){
                 // Android compatibility
-                String base64 = new String(Base64.encodeBase64(encrypted));
-                DomHelper.setElementContent(".", element, base64);
+                String base64 = new String(Base64.encodeBase64(values.get(i)));
+                DomHelper.setElementContent(".", (Element) protectedContent.item(i), base64);
             }
 
             // we need to serialise dates according to the format, and
@@ -168,9 +185,9 @@ public class DomSerializableDatabase implements SerializableDatabase {
                 if (time.equals("${creationDate}")) {
                     date = Date.from(Instant.now());
                 } else {
-                    date = Helpers.toDate(time);
+                    date = formatContext.toDate(time);
                 }
-                String encoded = Helpers.fromDate(date);
+                String encoded = formatContext.fromDate(date);
                 DomHelper.setElementContent(".", element, encoded);
             }
 
@@ -239,6 +256,11 @@ public class DomSerializableDatabase implements SerializableDatabase {
         this.encryption = encryption;
     }
 
+    @Override
+    public void setFormatContext(FormatContext formatContext) {
+        this.formatContext = formatContext;
+    }
+
     public Document getDoc() {
         return doc;
     }
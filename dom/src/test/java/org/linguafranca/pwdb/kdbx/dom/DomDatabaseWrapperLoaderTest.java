@@ -22,6 +22,7 @@ import org.linguafranca.pwdb.Credentials;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 
 /**
  * @author jo
@@ -38,4 +39,9 @@ public class DomDatabaseWrapperLoaderTest extends DatabaseLoaderChecks {
         // through a org.linguafranca.keepass.Database interface.
         super.database = DomDatabaseWrapper.load(credentials, inputStream);
     }
+
+    @Override
+    protected DomDatabaseWrapper loadFromPath(Path path) throws IOException {
+        return DomDatabaseWrapper.load(new KdbxCreds("123".getBytes()), path);
+    }
 }
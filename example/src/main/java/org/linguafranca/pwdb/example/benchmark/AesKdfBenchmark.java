@@ -0,0 +1,64 @@
+package org.linguafranca.pwdb.example.benchmark;
+
+import org.linguafranca.pwdb.security.AesKdfEngine;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare ways of computing the AES KDF: BouncyCastle or JCE, halves in sequence or in parallel.
+ * The default rounds for a new V3 database is 6000; KeePass suggests rather more, e.g. for a one
+ * second delay, hence the range.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AesKdfBenchmark {
+
+    @Param({"60000", "1000000"})
+    public long rounds;
+
+    private final byte[] key = new byte[32];
+    private final byte[] seed = new byte[32];
+
+    private final AesKdfEngine bouncyCastleSequential = new AesKdfEngine(null, false);
+    private final AesKdfEngine jceSequential = new AesKdfEngine(null, true);
+    private final AesKdfEngine jceParallel = new AesKdfEngine();
+
+    @Setup
+    public void setup() {
+        SecureRandom random = new SecureRandom();
+        random.nextBytes(key);
+        random.nextBytes(seed);
+    }
+
+    @Benchmark
+    public byte[] bouncyCastleSequential() {
+        return bouncyCastleSequential.getTransformedKey(key, seed, rounds);
+    }
+
+    @Benchmark
+    public byte[] jceSequential() {
+        return jceSequential.getTransformedKey(key, seed, rounds);
+    }
+
+    @Benchmark
+    public byte[] jceParallel() {
+        return jceParallel.getTransformedKey(key, seed, rounds);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(AesKdfBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,74 @@
+package org.linguafranca.pwdb.example.benchmark;
+
+import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
+import org.bouncycastle.crypto.params.Argon2Parameters;
+import org.linguafranca.pwdb.security.Argon2Engine;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the BouncyCastle Argon2 implementation, which computes all lanes on
+ * the calling thread, with {@link Argon2Engine}, which computes lanes in parallel.
+ * <p>
+ * Parameters are those of a KeePass database with default memory (64MiB) and iterations (2)
+ * and a range of parallelism settings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class Argon2Benchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    private Argon2Parameters parameters;
+    private final byte[] password = new byte[32];
+    private final Argon2Engine engine = new Argon2Engine();
+
+    @Setup
+    public void setup() {
+        SecureRandom random = new SecureRandom();
+        random.nextBytes(password);
+        byte[] salt = new byte[32];
+        random.nextBytes(salt);
+        parameters = new Argon2Parameters.Builder(Argon2Parameters.ARGON2_d)
+                .withVersion(Argon2Parameters.ARGON2_VERSION_13)
+                .withIterations(2)
+                .withMemoryAsKB(64 * 1024)
+                .withParallelism(parallelism)
+                .withSalt(salt)
+                .build();
+    }
+
+    @Benchmark
+    public byte[] bouncyCastle() {
+        Argon2BytesGenerator generator = new Argon2BytesGenerator();
+        generator.init(parameters);
+        byte[] result = new byte[32];
+        generator.generateBytes(password, result);
+        return result;
+    }
+
+    @Benchmark
+    public byte[] parallelEngine() {
+        byte[] result = new byte[32];
+        engine.generateBytes(parameters, password, result);
+        return result;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(Argon2Benchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,163 @@
+package org.linguafranca.pwdb.example.benchmark;
+
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.Database;
+import org.linguafranca.pwdb.Entry;
+import org.linguafranca.pwdb.Group;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.kdbx.KdbxHeader;
+import org.linguafranca.pwdb.kdbx.KdbxStreamFormat;
+import org.linguafranca.pwdb.kdbx.dom.DomDatabaseWrapper;
+import org.linguafranca.pwdb.kdbx.jackson.JacksonDatabase;
+import org.linguafranca.pwdb.kdbx.jaxb.JaxbDatabase;
+import org.linguafranca.pwdb.kdbx.simple.SimpleDatabase;
+import org.linguafranca.pwdb.kdbx.stax.StaxDatabase;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the time each of the database implementations takes to load and to save the same
+ * database, held in memory so that only parsing, serialization and the inner stream are measured.
+ * The database is saved as KDBX 3.1 with a single AES transform round, so that key derivation
+ * does not dominate.
+ * <p>
+ * Running {@link #main} also reports the heap retained by each implementation once it has loaded
+ * the database.
+ * <p>
+ * On Java 9 and later the Simple implementation needs {@code --add-opens java.base/java.util=ALL-UNNAMED}
+ * to save.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BackendBenchmark {
+
+    @Param({"dom", "jaxb", "simple", "jackson", "stax"})
+    public String backend;
+
+    @Param({"1000"})
+    public int entries;
+
+    private static final Credentials CREDENTIALS = new KdbxCreds("123".getBytes());
+
+    private byte[] kdbx;
+    private Database<?, ?, ?, ?> database;
+
+    @Setup
+    public void setup() throws IOException {
+        kdbx = createKdbx(entries);
+        database = load(backend, kdbx);
+    }
+
+    @Benchmark
+    public Database<?, ?, ?, ?> load() throws IOException {
+        return load(backend, kdbx);
+    }
+
+    @Benchmark
+    public int save() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(kdbx.length);
+        save(database, outputStream);
+        return outputStream.size();
+    }
+
+    /**
+     * A database with a number of entries spread over groups, each with the standard properties
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static byte[] createKdbx(int entries) throws IOException {
+        Database database = new StaxDatabase();
+        Group group = null;
+        for (int i = 0; i < entries; i++) {
+            if (i % 50 == 0) {
+                group = database.getRootGroup().addGroup(database.newGroup("Group " + i));
+            }
+            Entry entry = database.newEntry();
+            entry.setTitle("Entry " + i);
+            entry.setUsername("user" + i + "@example.com");
+            entry.setPropertyValue(Entry.STANDARD_PROPERTY_NAME_PASSWORD, database.getPropertyValueStrategy()
+                    .newProtected().of("password-" + i + "-correct-horse-battery-staple"));
+            entry.setUrl("https://example.com/login/" + i);
+            entry.setNotes("Notes for entry " + i + ", long enough to be a typical note.");
+            group.addEntry(entry);
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        save(database, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    static void save(Database<?, ?, ?, ?> database, OutputStream outputStream) throws IOException {
+        KdbxHeader header = new KdbxHeader(3);
+        header.setTransformRounds(1);
+        database.save(new KdbxStreamFormat(header), CREDENTIALS, outputStream);
+    }
+
+    static Database<?, ?, ?, ?> load(String backend, byte[] kdbx) throws IOException {
+        InputStream inputStream = new ByteArrayInputStream(kdbx);
+        switch (backend) {
+            case "dom": return DomDatabaseWrapper.load(CREDENTIALS, inputStream);
+            case "jaxb": return JaxbDatabase.load(CREDENTIALS, inputStream);
+            case "simple": return SimpleDatabase.load(CREDENTIALS, inputStream);
+            case "jackson": return JacksonDatabase.load(CREDENTIALS, inputStream);
+            case "stax": return StaxDatabase.load(CREDENTIALS, inputStream);
+            default: throw new IllegalArgumentException(backend);
+        }
+    }
+
+    /**
+     * Heap in use after loading several copies of the database and a full collection, less that
+     * in use before, per copy
+     */
+    static long retainedHeap(String backend, byte[] kdbx) throws IOException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        Database<?, ?, ?, ?>[] databases = new Database<?, ?, ?, ?>[10];
+        collect(memory);
+        long before = memory.getHeapMemoryUsage().getUsed();
+        for (int i = 0; i < databases.length; i++) {
+            databases[i] = load(backend, kdbx);
+        }
+        collect(memory);
+        long after = memory.getHeapMemoryUsage().getUsed();
+        // keep the databases reachable until after measuring
+        for (Database<?, ?, ?, ?> database : databases) {
+            if (database.getRootGroup() == null) {
+                throw new IllegalStateException();
+            }
+        }
+        return (after - before) / databases.length;
+    }
+
+    private static void collect(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            memory.gc();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        byte[] kdbx = createKdbx(1000);
+        for (String backend : new String[]{"dom", "jaxb", "simple", "jackson", "stax"}) {
+            // once to load classes and warm caches
+            retainedHeap(backend, kdbx);
+            System.out.printf("%-8s retained heap %,d bytes per database%n", backend, retainedHeap(backend, kdbx));
+        }
+        Options options = new OptionsBuilder()
+                .include(BackendBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,91 @@
+package org.linguafranca.pwdb.example.benchmark;
+
+import org.linguafranca.pwdb.security.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare decryption throughput of the BouncyCastle and JCE implementations of the outer ciphers
+ * on 16MiB of content, roughly the size of a database with a number of attachments, and of
+ * AES and ChaCha20 decryption on several threads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CipherBenchmark {
+
+    @Param({"AesBouncyCastle", "AesJce", "AesParallel", "ChaChaBouncyCastle", "ChaChaJce", "ChaChaParallel"})
+    public String implementation;
+
+    private static final int SIZE = 16 * 1024 * 1024;
+
+    private CipherAlgorithm algorithm;
+    private boolean parallel = false;
+    private final byte[] key = new byte[32];
+    private byte[] iv;
+    private byte[] cipherText;
+    private final byte[] buffer = new byte[64 * 1024];
+
+    @Setup
+    public void setup() throws IOException {
+        switch (implementation) {
+            case "AesBouncyCastle": algorithm = Aes.getInstance(); iv = new byte[16]; break;
+            case "AesJce": algorithm = new JceAes(); iv = new byte[16]; break;
+            case "AesParallel": algorithm = new JceAes(); iv = new byte[16]; parallel = true; break;
+            case "ChaChaBouncyCastle": algorithm = ChaCha.getInstance(); iv = new byte[12]; break;
+            case "ChaChaJce": algorithm = new JceChaCha(); iv = new byte[12]; break;
+            case "ChaChaParallel": algorithm = ChaCha.getInstance(); iv = new byte[12]; parallel = true; break;
+            default: throw new IllegalArgumentException(implementation);
+        }
+        Random random = new Random();
+        random.nextBytes(key);
+        random.nextBytes(iv);
+        byte[] plainText = new byte[SIZE];
+        random.nextBytes(plainText);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(SIZE + 16);
+        OutputStream outputStream = algorithm.getEncryptedOutputStream(baos, key, iv);
+        outputStream.write(plainText);
+        outputStream.close();
+        cipherText = baos.toByteArray();
+    }
+
+    @Benchmark
+    public long decrypt() throws IOException {
+        InputStream inputStream;
+        if (!parallel) {
+            inputStream = algorithm.getDecryptedInputStream(new ByteArrayInputStream(cipherText), key, iv);
+        } else if (algorithm instanceof JceAes) {
+            inputStream = new ParallelAesCbcInputStream(new ByteArrayInputStream(cipherText), key, iv, ForkJoinPool.commonPool());
+        } else {
+            inputStream = new ParallelChaChaInputStream(new ByteArrayInputStream(cipherText), key, iv, ForkJoinPool.commonPool());
+        }
+        long total = 0;
+        int read;
+        while ((read = inputStream.read(buffer)) >= 0) {
+            total += read;
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CipherBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
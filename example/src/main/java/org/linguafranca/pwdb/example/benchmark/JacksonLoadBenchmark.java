@@ -0,0 +1,51 @@
+package org.linguafranca.pwdb.example.benchmark;
+
+import org.linguafranca.pwdb.Database;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load throughput and allocation of the Jackson implementation for a large database, as
+ * created by {@link BackendBenchmark#createKdbx}.
+ * <p>
+ * Running {@link #main} adds the GC profiler, which reports the allocation rate and the bytes
+ * allocated per load ({@code gc.alloc.rate.norm}).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class JacksonLoadBenchmark {
+
+    @Param({"100000"})
+    public int entries;
+
+    private byte[] kdbx;
+
+    @Setup
+    public void setup() throws IOException {
+        kdbx = BackendBenchmark.createKdbx(entries);
+    }
+
+    @Benchmark
+    public Database<?, ?, ?, ?> load() throws IOException {
+        return BackendBenchmark.load("jackson", kdbx);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(JacksonLoadBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
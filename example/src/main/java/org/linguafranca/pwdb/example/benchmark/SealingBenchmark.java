@@ -0,0 +1,61 @@
+package org.linguafranca.pwdb.example.benchmark;
+
+import org.linguafranca.pwdb.PropertyValue;
+import org.linguafranca.pwdb.security.SealingEngine;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the cost of creating and of reading a protected value stored as a {@link PropertyValue.SealedStore},
+ * with a key and a {@link javax.crypto.SealedObject} per value, and as a {@link PropertyValue.EngineSealedStore},
+ * sharing a {@link SealingEngine} per database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SealingBenchmark {
+
+    @Param({"SealedStore", "EngineSealedStore"})
+    public String implementation;
+
+    private static final byte[] PASSWORD = "correct horse battery staple".getBytes(StandardCharsets.UTF_8);
+
+    private PropertyValue.Factory<? extends PropertyValue> factory;
+    private PropertyValue value;
+
+    @Setup
+    public void setup() {
+        switch (implementation) {
+            case "SealedStore": factory = PropertyValue.SealedStore.getFactory(); break;
+            case "EngineSealedStore": factory = PropertyValue.EngineSealedStore.getFactory(new SealingEngine()); break;
+            default: throw new IllegalArgumentException(implementation);
+        }
+        value = factory.of(PASSWORD);
+    }
+
+    @Benchmark
+    public PropertyValue create() {
+        return factory.of(PASSWORD);
+    }
+
+    @Benchmark
+    public byte[] read() {
+        return value.getValueAsBytes();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SealingBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
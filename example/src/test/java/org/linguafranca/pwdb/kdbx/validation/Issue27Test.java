@@ -49,7 +49,7 @@ public class Issue27Test {
         List<? extends JaxbEntry> entries = db.findEntries("Sample Entry #2 - Copy");
 
         for (JaxbEntry entry: entries) {
-            printStream.println(Helpers.fromDate(entry.getCreationTime()));
+            printStream.println(Helpers.fromDateV3(entry.getCreationTime()));
             assertEquals("2018-01-26T13:20:58Z", Helpers.fromDateV3(entry.getCreationTime()));
         }
     }
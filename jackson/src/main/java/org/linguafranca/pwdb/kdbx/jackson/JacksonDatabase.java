@@ -16,7 +16,9 @@
 
 package org.linguafranca.pwdb.kdbx.jackson;
 
+import org.linguafranca.pwdb.BinaryPool;
 import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.PropertyValue;
 import org.linguafranca.pwdb.StreamConfiguration;
 import org.linguafranca.pwdb.StreamFormat;
 import org.linguafranca.pwdb.kdbx.KdbxHeader;
@@ -27,6 +29,8 @@ import org.linguafranca.pwdb.protect.ProtectedDatabase;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
@@ -46,6 +50,7 @@ public class JacksonDatabase extends ProtectedDatabase<JacksonDatabase, JacksonG
     public JacksonDatabase(KeePassFile file, StreamFormat<?> streamFormat) {
         try {
             keePassFile = file;
+            JacksonSerializableDatabase.poolBinaries(keePassFile);
             keePassFile.root.group.database = this;
             this.streamFormat = streamFormat;
             JacksonSerializableDatabase.fixUp(keePassFile.root.group);
@@ -82,6 +87,58 @@ public class JacksonDatabase extends ProtectedDatabase<JacksonDatabase, JacksonG
         return new JacksonDatabase(jsd.keePassFile, streamFormat);
     }
 
+    /**
+     * Load kdbx file storing property values according to a strategy, which becomes the
+     * strategy of the database and is closed when the database is closed
+     *
+     * @param credentials credentials to use
+     * @param inputStream where to load from
+     * @param strategy    the property value strategy
+     * @return a new database
+     */
+    public static JacksonDatabase load(Credentials credentials, InputStream inputStream,
+                                       PropertyValue.Strategy strategy) throws IOException {
+        JacksonSerializableDatabase jsd = new JacksonSerializableDatabase();
+        jsd.setPropertyValueStrategy(strategy);
+        StreamFormat<?> streamFormat = new KdbxStreamFormat();
+        streamFormat.load(jsd, credentials, inputStream);
+        JacksonDatabase database = new JacksonDatabase(jsd.keePassFile, streamFormat);
+        database.setPropertyValueStrategy(strategy);
+        return database;
+    }
+
+    /**
+     * Load kdbx file holding attachments in a pool, e.g. one which keeps only some of them in memory.
+     * The pool is closed when the database is closed.
+     *
+     * @param credentials credentials to use
+     * @param inputStream where to load from
+     * @param binaryPool  the pool to hold attachments in
+     * @return a new database
+     */
+    public static JacksonDatabase load(Credentials credentials, InputStream inputStream,
+                                       BinaryPool binaryPool) throws IOException {
+        JacksonSerializableDatabase jsd = new JacksonSerializableDatabase();
+        jsd.setBinaryPool(binaryPool);
+        StreamFormat<?> streamFormat = new KdbxStreamFormat();
+        streamFormat.load(jsd, credentials, inputStream);
+        return new JacksonDatabase(jsd.keePassFile, streamFormat);
+    }
+
+    /**
+     * Load kdbx file, reading the file memory mapped
+     *
+     * @param credentials credentials to use
+     * @param path        the file to load
+     * @return a new database
+     */
+    public static JacksonDatabase load(Credentials credentials, Path path) throws IOException {
+        JacksonSerializableDatabase jsd = new JacksonSerializableDatabase();
+        StreamFormat<?> streamFormat = new KdbxStreamFormat();
+        streamFormat.load(jsd, credentials, path);
+        return new JacksonDatabase(jsd.keePassFile, streamFormat);
+    }
+
     /**
      * Save the database with the same stream format that it was loaded with, or V4
      * default if none
@@ -193,11 +250,31 @@ public class JacksonDatabase extends ProtectedDatabase<JacksonDatabase, JacksonG
         return keePassFile.meta.memoryProtection.shouldProtect(s);
     }
 
+    /**
+     * @return a copy of the attachments in their XML form
+     * @deprecated attachments are held in the {@link #getBinaryPool() binary pool}
+     */
+    @Deprecated
     public List<KeePassFile.Binary> getBinaries() {
-        if (keePassFile.meta.binaries == null) {
-            keePassFile.createBinaries();
+        List<KeePassFile.Binary> binaries = JacksonSerializableDatabase.unpoolBinaries(keePassFile);
+        return binaries == null ? new ArrayList<>() : binaries;
+    }
+
+    public BinaryPool getBinaryPool() {
+        return keePassFile.binaryPool;
+    }
+
+    /**
+     * Also closes the pool of attachments, deleting its temporary file if it has one
+     */
+    @Override
+    public void close() {
+        super.close();
+        try {
+            keePassFile.binaryPool.close();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
         }
-        return keePassFile.meta.binaries;
     }
 
     public void addBinary(byte[] bytes, int index) {
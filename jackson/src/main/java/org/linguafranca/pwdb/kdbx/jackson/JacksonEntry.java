@@ -16,6 +16,10 @@
 
 package org.linguafranca.pwdb.kdbx.jackson;
 
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -23,14 +27,14 @@ import java.util.UUID;
 
 import org.jetbrains.annotations.NotNull;
 
+import org.linguafranca.pwdb.BinaryPool;
 import org.linguafranca.pwdb.Icon;
 import org.linguafranca.pwdb.PropertyValue;
 import org.linguafranca.pwdb.base.AbstractEntry;
-import org.linguafranca.pwdb.kdbx.Helpers;
-import org.linguafranca.pwdb.kdbx.jackson.converter.Base64ToUUIDConverter;
-import org.linguafranca.pwdb.kdbx.jackson.converter.BooleanToStringConverter;
-import org.linguafranca.pwdb.kdbx.jackson.converter.StringToBooleanConverter;
-import org.linguafranca.pwdb.kdbx.jackson.converter.UUIDToBase64Converter;
+import org.linguafranca.pwdb.kdbx.jackson.converter.BooleanDeserializer;
+import org.linguafranca.pwdb.kdbx.jackson.converter.BooleanSerializer;
+import org.linguafranca.pwdb.kdbx.jackson.converter.UUIDDeserializer;
+import org.linguafranca.pwdb.kdbx.jackson.converter.UUIDSerializer;
 
 import org.linguafranca.pwdb.kdbx.jackson.model.KeePassFile;
 import org.linguafranca.pwdb.kdbx.jackson.model.Times;
@@ -98,16 +102,16 @@ public class JacksonEntry extends AbstractEntry<JacksonDatabase, JacksonGroup, J
 
 
     @JacksonXmlProperty(localName = "UUID")
-    @JsonDeserialize(converter = Base64ToUUIDConverter.class)
-    @JsonSerialize(converter = UUIDToBase64Converter.class)
+    @JsonDeserialize(using = UUIDDeserializer.class)
+    @JsonSerialize(using = UUIDSerializer.class)
     protected UUID uuid;
 
     @JacksonXmlProperty(localName = "IconID")
     protected int iconID;
     
     @JacksonXmlProperty(localName = "CustomIconUUID")
-    @JsonDeserialize(converter = Base64ToUUIDConverter.class)
-    @JsonSerialize(converter = UUIDToBase64Converter.class)
+    @JsonDeserialize(using = UUIDDeserializer.class)
+    @JsonSerialize(using = UUIDSerializer.class)
     protected UUID customIconUUID;
    
     @JacksonXmlProperty(localName = "ForegroundColor")
@@ -120,16 +124,16 @@ public class JacksonEntry extends AbstractEntry<JacksonDatabase, JacksonGroup, J
     protected String overrideURL;
 
     @JacksonXmlProperty(localName = "PreviousParentGroup")
-    @JsonDeserialize(converter = Base64ToUUIDConverter.class)
-    @JsonSerialize(converter = UUIDToBase64Converter.class)
+    @JsonDeserialize(using = UUIDDeserializer.class)
+    @JsonSerialize(using = UUIDSerializer.class)
     protected UUID previousParentGroup;
 
     @JacksonXmlProperty(localName = "Tags")
     protected String tags;
 
     @JacksonXmlProperty(localName = "QualityCheck")
-    @JsonDeserialize(converter = StringToBooleanConverter.class)
-    @JsonSerialize(converter = BooleanToStringConverter.class)
+    @JsonDeserialize(using = BooleanDeserializer.class)
+    @JsonSerialize(using = BooleanSerializer.class)
     protected Boolean qualityCheck;
    
     @JacksonXmlProperty(localName = "Times")
@@ -226,42 +230,65 @@ public class JacksonEntry extends AbstractEntry<JacksonDatabase, JacksonGroup, J
             return null;
         }
 
-        KeePassFile.Binary binary = null;
-        for (KeePassFile.Binary b : database.getBinaries()) {
-            if (b.getId().equals(Integer.valueOf(getBinaryContent(bp)))) {
-                binary = b;
-            }
-        }
-        if (binary == null) {
+        return database.getBinaryPool().get(Integer.parseInt(getBinaryContent(bp)));
+    }
+
+    @Override
+    public InputStream getBinaryPropertyStream(String s) throws IOException {
+        BinaryProperty bp = getBinaryProp(s, binary);
+        if (bp == null) {
             return null;
         }
-        return Helpers.decodeBase64Content(binary.getValue().getBytes(), binary.getCompressed());
+        return database.getBinaryPool().getInputStream(Integer.parseInt(getBinaryContent(bp)));
+    }
+
+    @Override
+    public void setBinaryPropertyStream(String s, InputStream inputStream) throws IOException {
+        int index = database.getBinaryPool().add(inputStream);
+        addBinaryReference(s, index);
+    }
+
+    @Override
+    public OutputStream newBinaryPropertyStream(String s) {
+        BinaryPool pool = database.getBinaryPool();
+        // reserve an index
+        int index = pool.add(new byte[0]);
+        return new FilterOutputStream(pool.newOutputStream(index)) {
+            private boolean closed = false;
+
+            @Override
+            public void write(@NotNull byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    super.close();
+                    addBinaryReference(s, index);
+                }
+            }
+        };
     }
 
     @Override
     public void setBinaryProperty(String s, byte[] bytes) {
-        // remove old binary property with same name
+        // add at the next free index in the binary store, the pool does not copy
+        int max = database.getBinaryPool().add(bytes.clone());
+        addBinaryReference(s, max);
+    }
+
+    /* make a reference from the entry to a binary, replacing any with the same name */
+    private void addBinaryReference(String s, int index) {
         BinaryProperty bp = getBinaryProp(s, binary);
         if (bp != null) {
             binary.remove(bp);
         }
-
-        // what is the next free index in the binary store?
-        Integer max = -1;
-        for (KeePassFile.Binary binary : database.getBinaries()) {
-            if (binary.getId() > max) {
-                max = binary.getId();
-            }
-        }
-        max++;
-
-        database.addBinary(bytes, max);
-
-        // make a reference to it from the entry
         BinaryProperty binaryProperty = new BinaryProperty();
         binaryProperty.setKey(s);
         BinaryProperty.Value fieldValue = new BinaryProperty.Value();
-        fieldValue.setRef(String.valueOf(max));
+        fieldValue.setRef(String.valueOf(index));
         binaryProperty.setValue(fieldValue);
         binary.add(binaryProperty);
         touch();
@@ -25,10 +25,10 @@ import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlElementWrapper;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
 import org.jetbrains.annotations.NotNull;
 import org.linguafranca.pwdb.base.AbstractGroup;
-import org.linguafranca.pwdb.kdbx.jackson.converter.Base64ToUUIDConverter;
-import org.linguafranca.pwdb.kdbx.jackson.converter.BooleanToStringConverter;
-import org.linguafranca.pwdb.kdbx.jackson.converter.StringToBooleanConverter;
-import org.linguafranca.pwdb.kdbx.jackson.converter.UUIDToBase64Converter;
+import org.linguafranca.pwdb.kdbx.jackson.converter.BooleanDeserializer;
+import org.linguafranca.pwdb.kdbx.jackson.converter.BooleanSerializer;
+import org.linguafranca.pwdb.kdbx.jackson.converter.UUIDDeserializer;
+import org.linguafranca.pwdb.kdbx.jackson.converter.UUIDSerializer;
 import org.linguafranca.pwdb.kdbx.jackson.model.KeePassFile;
 import org.linguafranca.pwdb.kdbx.jackson.model.Times;
 
@@ -59,8 +59,8 @@ import java.util.UUID;
 public class JacksonGroup extends AbstractGroup <JacksonDatabase, JacksonGroup, JacksonEntry, JacksonIcon>{
 
     @JacksonXmlProperty(localName = "UUID")
-    @JsonDeserialize(converter = Base64ToUUIDConverter.class)
-    @JsonSerialize(converter = UUIDToBase64Converter.class)
+    @JsonDeserialize(using = UUIDDeserializer.class)
+    @JsonSerialize(using = UUIDSerializer.class)
     protected UUID uuid;
 
     @JacksonXmlProperty(localName = "Name")
@@ -73,39 +73,39 @@ public class JacksonGroup extends AbstractGroup <JacksonDatabase, JacksonGroup,
     protected int iconID;
     
     @JacksonXmlProperty(localName = "CustomIconUUID")
-    @JsonDeserialize(converter = Base64ToUUIDConverter.class)
-    @JsonSerialize(converter = UUIDToBase64Converter.class)
+    @JsonDeserialize(using = UUIDDeserializer.class)
+    @JsonSerialize(using = UUIDSerializer.class)
     protected UUID customIconUuid;
     
     @JacksonXmlProperty(localName = "Times")
     protected Times times;
     
     @JacksonXmlProperty(localName = "IsExpanded")
-    @JsonDeserialize(converter = StringToBooleanConverter.class)
-    @JsonSerialize(converter = BooleanToStringConverter.class)
+    @JsonDeserialize(using = BooleanDeserializer.class)
+    @JsonSerialize(using = BooleanSerializer.class)
     protected Boolean isExpanded;
     
     @JacksonXmlProperty(localName = "DefaultAutoTypeSequence")
     protected String defaultAutoTypeSequence;
     
     @JacksonXmlProperty(localName = "EnableAutoType")
-    @JsonDeserialize(converter = StringToBooleanConverter.class)
-    @JsonSerialize(converter = BooleanToStringConverter.class)
+    @JsonDeserialize(using = BooleanDeserializer.class)
+    @JsonSerialize(using = BooleanSerializer.class)
     protected Boolean enableAutoType;
     
     @JacksonXmlProperty(localName = "EnableSearching")
-    @JsonDeserialize(converter = StringToBooleanConverter.class)
-    @JsonSerialize(converter = BooleanToStringConverter.class)
+    @JsonDeserialize(using = BooleanDeserializer.class)
+    @JsonSerialize(using = BooleanSerializer.class)
     protected Boolean enableSearching;
 
     @JacksonXmlProperty(localName = "LastTopVisibleEntry")
-    @JsonDeserialize(converter = Base64ToUUIDConverter.class)
-    @JsonSerialize(converter = UUIDToBase64Converter.class)
+    @JsonDeserialize(using = UUIDDeserializer.class)
+    @JsonSerialize(using = UUIDSerializer.class)
     protected UUID lastTopVisibleEntry;
 
     @JacksonXmlProperty(localName = "PreviousParentGroup")
-    @JsonDeserialize(converter = Base64ToUUIDConverter.class)
-    @JsonSerialize(converter = UUIDToBase64Converter.class)
+    @JsonDeserialize(using = UUIDDeserializer.class)
+    @JsonSerialize(using = UUIDSerializer.class)
     protected UUID previousParentGroup;
 
     @JacksonXmlProperty(localName = "Tags")
@@ -17,16 +17,22 @@ package org.linguafranca.pwdb.kdbx.jackson;
 
 import com.ctc.wstx.api.WstxInputProperties;
 import com.ctc.wstx.api.WstxOutputProperties;
+import com.ctc.wstx.stax.WstxOutputFactory;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
+import org.linguafranca.pwdb.BinaryPool;
 import org.linguafranca.pwdb.PropertyValue;
 import org.linguafranca.pwdb.SerializableDatabase;
+import org.linguafranca.pwdb.kdbx.FormatContext;
 import org.linguafranca.pwdb.kdbx.Helpers;
+import org.linguafranca.pwdb.kdbx.jackson.converter.FormatContextHandlerInstantiator;
 import org.linguafranca.pwdb.kdbx.jackson.converter.ValueDeserializer;
 import org.linguafranca.pwdb.kdbx.jackson.converter.ValueSerializer;
 import org.linguafranca.pwdb.kdbx.jackson.model.KeePassFile;
@@ -38,9 +44,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
-public class JacksonSerializableDatabase implements SerializableDatabase {
+public class JacksonSerializableDatabase implements SerializableDatabase, FormatContext.Aware {
 
     /**
      * By default, deserialization will fail if an unknown property is found. Historically,
@@ -48,17 +56,88 @@ public class JacksonSerializableDatabase implements SerializableDatabase {
      * So use this feature with caution, if at all.
       */
     public static boolean FAIL_ON_UNKNOWN_PROPERTIES = true;
+    /**
+     * When true, protected values are not decrypted on load but held as ciphertext and decrypted
+     * when first accessed, and values that have not been accessed are saved without decryption where
+     * possible. See {@link PropertyValue.DeferredStore}. Only applies to inner stream ciphers that can
+     * be positioned, i.e. Salsa20 and ChaCha20.
+     */
+    public static boolean DEFER_PROTECTED_VALUE_DECRYPTION = false;
     public KeePassFile keePassFile;
     private StreamEncryptor encryptor;
+    private FormatContext formatContext = FormatContext.V3;
+    private BinaryPool binaryPool = new BinaryPool();
 
     private PropertyValue.Strategy propertyValueStrategy = new PropertyValue.Strategy.Default();
 
+    /**
+     * Mappers are costly to build and thread safe once configured, so one is shared by all loads and one by
+     * all saves of each format. The converters for timestamps depend on the format, which is why there is one
+     * per format, while the encryptor and property value strategy of each load or save are passed to the value
+     * (de)serializers as attributes of the {@link ObjectReader} or {@link ObjectWriter} used.
+     */
+    private static class Mappers {
+        private static final XmlMapper LOAD_V3 = createLoadMapper(FormatContext.V3);
+        private static final XmlMapper LOAD_V4 = createLoadMapper(FormatContext.V4);
+        private static final XmlMapper SAVE_V3 = createSaveMapper(FormatContext.V3);
+        private static final XmlMapper SAVE_V4 = createSaveMapper(FormatContext.V4);
+
+        // Woodstox, rather than whichever factory is configured for the JVM
+        private static final XMLOutputFactory xmlOutputFactory = new WstxOutputFactory();
+        static {
+            xmlOutputFactory.setProperty(WstxOutputProperties.P_USE_DOUBLE_QUOTES_IN_XML_DECL, true);
+            xmlOutputFactory.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, false);
+            xmlOutputFactory.setProperty(WstxInputProperties.P_RETURN_NULL_FOR_DEFAULT_NAMESPACE, true);
+        }
+
+        private static XmlMapper createLoadMapper(FormatContext formatContext) {
+            XmlMapper mapper = new XmlMapper();
+            SimpleModule module = new SimpleModule();
+            module.addDeserializer(PropertyValue.class, new ValueDeserializer());
+            mapper.registerModule(module);
+            mapper.setHandlerInstantiator(new FormatContextHandlerInstantiator(formatContext));
+            return mapper;
+        }
+
+        private static XmlMapper createSaveMapper(FormatContext formatContext) {
+            SimpleModule module = new SimpleModule();
+            module.addSerializer(PropertyValue.class, new ValueSerializer());
+            // disable auto-detection, only use annotated values
+            XmlMapper mapper = XmlMapper.builder()
+                    .disable(MapperFeature.AUTO_DETECT_CREATORS,
+                            MapperFeature.AUTO_DETECT_FIELDS,
+                            MapperFeature.AUTO_DETECT_GETTERS,
+                            MapperFeature.AUTO_DETECT_SETTERS,
+                            MapperFeature.AUTO_DETECT_IS_GETTERS)
+                    .build();
+            mapper.registerModule(module);
+            mapper.setHandlerInstantiator(new FormatContextHandlerInstantiator(formatContext));
+            mapper.enable(ToXmlGenerator.Feature.WRITE_XML_DECLARATION);
+            mapper.enable(SerializationFeature.INDENT_OUTPUT);
+            mapper.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+            mapper.setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
+            return mapper;
+        }
+
+        private static ObjectReader reader(FormatContext formatContext) {
+            return (formatContext.isV4() ? LOAD_V4 : LOAD_V3).readerFor(KeePassFile.class);
+        }
+
+        private static XmlMapper getSaveMapper(FormatContext formatContext) {
+            return formatContext.isV4() ? SAVE_V4 : SAVE_V3;
+        }
+    }
+
     public static KeePassFile createEmptyDatabase() throws IOException {
 
         InputStream inputStream = JacksonSerializableDatabase.class.getClassLoader()
                 .getResourceAsStream("base.kdbx.xml");
-        XmlMapper mapper = new XmlMapper();
-        return mapper.readValue(inputStream, KeePassFile.class);
+        KeePassFile keePassFile = Mappers.reader(FormatContext.V3)
+                .withAttribute(ValueDeserializer.ENCRYPTOR, new StreamEncryptor.None())
+                .withAttribute(ValueDeserializer.STRATEGY, new PropertyValue.Strategy.Default())
+                .readValue(inputStream);
+        poolBinaries(keePassFile);
+        return keePassFile;
 
     }
 
@@ -67,17 +146,23 @@ public class JacksonSerializableDatabase implements SerializableDatabase {
 
     public JacksonSerializableDatabase(KeePassFile keePassFile) {
         this.keePassFile = keePassFile;
+        this.binaryPool = keePassFile.binaryPool;
     }
 
     @Override
     public JacksonSerializableDatabase load(InputStream inputStream) throws IOException {
-        XmlMapper mapper = new XmlMapper();
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES,
-                JacksonSerializableDatabase.FAIL_ON_UNKNOWN_PROPERTIES);
-        SimpleModule module = new SimpleModule();
-        module.addDeserializer(PropertyValue.class, new ValueDeserializer(encryptor, propertyValueStrategy));
-        mapper.registerModule(module);
-        keePassFile = mapper.readValue(inputStream, KeePassFile.class);
+        ObjectReader reader = Mappers.reader(formatContext)
+                .withAttribute(ValueDeserializer.ENCRYPTOR, encryptor)
+                .withAttribute(ValueDeserializer.STRATEGY, propertyValueStrategy)
+                .withAttribute(ValueDeserializer.DEFER_DECRYPTION,
+                        JacksonSerializableDatabase.DEFER_PROTECTED_VALUE_DECRYPTION);
+        reader = JacksonSerializableDatabase.FAIL_ON_UNKNOWN_PROPERTIES ?
+                reader.with(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES) :
+                reader.without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        keePassFile = reader.readValue(inputStream);
+        // V4 attachments may already have been read into the pool
+        keePassFile.binaryPool = binaryPool;
+        poolBinaries(keePassFile);
         return this;
     }
 
@@ -85,38 +170,22 @@ public class JacksonSerializableDatabase implements SerializableDatabase {
     @Override
     public void save(OutputStream outputStream) {
         try {
-            SimpleModule module = new SimpleModule();
-            module.addSerializer(PropertyValue.class, new ValueSerializer(encryptor, propertyValueStrategy));
-            // disable auto-detection, only use annotated values
-            XmlMapper mapper = XmlMapper.builder()
-                    .disable(MapperFeature.AUTO_DETECT_CREATORS,
-                            MapperFeature.AUTO_DETECT_FIELDS,
-                            MapperFeature.AUTO_DETECT_GETTERS,
-                            MapperFeature.AUTO_DETECT_SETTERS,
-                            MapperFeature.AUTO_DETECT_IS_GETTERS)
-                    .build();
-            mapper.registerModule(module);
-            mapper.enable(ToXmlGenerator.Feature.WRITE_XML_DECLARATION);
-            mapper.enable(SerializationFeature.INDENT_OUTPUT);
-            mapper.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
-            mapper.setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
-
-            // set the serializer to Woodstox
-            System.setProperty("javax.xml.stream.XMLOutputFactory", "com.ctc.wstx.stax.WstxOutputFactory");
-            XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newFactory();
-            xmlOutputFactory.setProperty(WstxOutputProperties.P_USE_DOUBLE_QUOTES_IN_XML_DECL, true);
-            xmlOutputFactory.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, false);
-            xmlOutputFactory.setProperty(WstxInputProperties.P_RETURN_NULL_FOR_DEFAULT_NAMESPACE, true);
-            
             OutputStreamWriter osw = new OutputStreamWriter(outputStream);
-            XMLStreamWriter sw = xmlOutputFactory.createXMLStreamWriter(osw);
+            XMLStreamWriter sw = Mappers.xmlOutputFactory.createXMLStreamWriter(osw);
+            // V4 attachments are written in the inner header, V3 attachments in the XML
+            if (!formatContext.isV4()) {
+                keePassFile.meta.binaries = unpoolBinaries(keePassFile);
+            }
             try {
                 sw.setPrefix("xml", "http://www.w3.org/XML/1998/namespace");
 
-                mapper.writeValue(sw, keePassFile);
+                XmlMapper mapper = Mappers.getSaveMapper(formatContext);
+                ObjectWriter writer = mapper.writer().withAttribute(ValueSerializer.ENCRYPTOR, encryptor);
+                writer.writeValue(mapper.createGenerator(sw), keePassFile);
 
                 sw.writeEndDocument();
             } finally {
+                keePassFile.meta.binaries = null;
                 sw.close();
                 osw.close();
             }
@@ -138,30 +207,72 @@ public class JacksonSerializableDatabase implements SerializableDatabase {
 
     
     public static void addBinary(KeePassFile keePassFile, int index, byte[] payload) {
-        KeePassFile.Binary newBin = new KeePassFile.Binary();
-        newBin.setId(index);
-        newBin.setValue(Helpers.encodeBase64Content(payload, true));
-        newBin.setCompressed(true);
-        if (keePassFile.meta.binaries == null) {
-            keePassFile.createBinaries();
+        keePassFile.binaryPool.set(index, payload);
+    }
+
+    /**
+     * Move attachments from their XML form in Meta into the binary pool
+     *
+     * @param keePassFile the file
+     */
+    public static void poolBinaries(KeePassFile keePassFile) {
+        if (Objects.isNull(keePassFile.meta) || Objects.isNull(keePassFile.meta.binaries)) {
+            return;
         }
-        keePassFile.meta.binaries.add(newBin);
+        for (KeePassFile.Binary binary : keePassFile.meta.binaries) {
+            byte[] content = Helpers.decodeBase64Content(binary.getValue().getBytes(),
+                    Boolean.TRUE.equals(binary.getCompressed()));
+            keePassFile.binaryPool.set(binary.getId(), content);
+        }
+        keePassFile.meta.binaries = null;
+    }
+
+    /**
+     * Create the XML form of the attachments in the binary pool
+     *
+     * @param keePassFile the file
+     * @return a list of binaries, or null if there are none
+     */
+    public static List<KeePassFile.Binary> unpoolBinaries(KeePassFile keePassFile) {
+        BinaryPool pool = keePassFile.binaryPool;
+        if (pool.size() == 0) {
+            return null;
+        }
+        List<KeePassFile.Binary> binaries = new ArrayList<>();
+        for (int i = 0; i < pool.size(); i++) {
+            if (pool.contains(i)) {
+                KeePassFile.Binary binary = new KeePassFile.Binary();
+                binary.setId(i);
+                binary.setValue(Helpers.encodeBase64Content(pool.get(i), true));
+                binary.setCompressed(true);
+                binaries.add(binary);
+            }
+        }
+        return binaries;
     }
 
-    // TODO this gets binary at index but does not get binary with ID
     @Override
     public byte[] getBinary(int index) {
-        KeePassFile.Binary binary = keePassFile.meta.binaries.get(index);
-        String value = binary.getValue();
-        return Helpers.decodeBase64Content(value.getBytes(), binary.getCompressed());
+        return binaryPool.get(index);
     }
 
     @Override
     public int getBinaryCount() {
-        if (Objects.isNull(keePassFile.meta.binaries)){
-            return 0;
-        }
-        return keePassFile.meta.binaries.size();
+        return binaryPool.size();
+    }
+
+    @Override
+    public BinaryPool getBinaryPool() {
+        return binaryPool;
+    }
+
+    /**
+     * Set the pool to load attachments into, e.g. one with a memory budget
+     *
+     * @param binaryPool the pool
+     */
+    public void setBinaryPool(BinaryPool binaryPool) {
+        this.binaryPool = binaryPool;
     }
 
     /**
@@ -193,6 +304,11 @@ public class JacksonSerializableDatabase implements SerializableDatabase {
        this.encryptor = encryption;
     }
 
+    @Override
+    public void setFormatContext(FormatContext formatContext) {
+        this.formatContext = formatContext;
+    }
+
     @Override
     public void addBinary(int index, byte[] payload) {
         addBinary(keePassFile, index, payload);
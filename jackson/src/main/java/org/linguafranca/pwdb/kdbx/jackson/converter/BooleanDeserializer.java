@@ -0,0 +1,42 @@
+/*
+ * Copyright 2023 Giuseppe Valente
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linguafranca.pwdb.kdbx.jackson.converter;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import org.linguafranca.pwdb.kdbx.Helpers;
+
+import java.io.IOException;
+
+/**
+ * Reads a KeePass boolean straight from the parser, in place of {@link StringToBooleanConverter}
+ */
+public class BooleanDeserializer extends StdScalarDeserializer<Boolean> {
+
+    public BooleanDeserializer() {
+        super(Boolean.class);
+    }
+
+    @Override
+    public Boolean deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (!p.hasToken(JsonToken.VALUE_STRING)) {
+            return (Boolean) ctxt.handleUnexpectedToken(Boolean.class, p);
+        }
+        return Helpers.toBoolean(p.getText());
+    }
+}
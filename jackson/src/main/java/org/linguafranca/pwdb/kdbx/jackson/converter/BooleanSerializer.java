@@ -0,0 +1,38 @@
+/*
+ * Copyright 2023 Giuseppe Valente
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linguafranca.pwdb.kdbx.jackson.converter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdScalarSerializer;
+import org.linguafranca.pwdb.kdbx.Helpers;
+
+import java.io.IOException;
+
+/**
+ * Writes a KeePass boolean, in place of {@link BooleanToStringConverter}
+ */
+public class BooleanSerializer extends StdScalarSerializer<Boolean> {
+
+    public BooleanSerializer() {
+        super(Boolean.class);
+    }
+
+    @Override
+    public void serialize(Boolean value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeString(Helpers.fromBoolean(value));
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2023 Giuseppe Valente
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linguafranca.pwdb.kdbx.jackson.converter;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import org.linguafranca.pwdb.kdbx.FormatContext;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Reads a timestamp straight from the parser, in place of {@link StringToDateConverter}.
+ * The {@link FormatContext} is supplied by {@link FormatContextHandlerInstantiator}.
+ */
+public class DateDeserializer extends StdScalarDeserializer<Date> {
+
+    private final FormatContext formatContext;
+
+    public DateDeserializer() {
+        this(FormatContext.V3);
+    }
+
+    public DateDeserializer(FormatContext formatContext) {
+        super(Date.class);
+        this.formatContext = formatContext;
+    }
+
+    @Override
+    public Date deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (!p.hasToken(JsonToken.VALUE_STRING)) {
+            return (Date) ctxt.handleUnexpectedToken(Date.class, p);
+        }
+        String value = p.getText();
+        if (value.isEmpty()) {
+            return null;
+        }
+        if (value.equals("${creationDate}")) {
+            return new Date();
+        }
+        return formatContext.toDate(value);
+    }
+}
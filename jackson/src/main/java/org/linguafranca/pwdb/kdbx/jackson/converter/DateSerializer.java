@@ -0,0 +1,47 @@
+/*
+ * Copyright 2023 Giuseppe Valente
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linguafranca.pwdb.kdbx.jackson.converter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdScalarSerializer;
+import org.linguafranca.pwdb.kdbx.FormatContext;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Writes a timestamp according to a {@link FormatContext}, in place of {@link DateToStringConverter}.
+ * The {@link FormatContext} is supplied by {@link FormatContextHandlerInstantiator}.
+ */
+public class DateSerializer extends StdScalarSerializer<Date> {
+
+    private final FormatContext formatContext;
+
+    public DateSerializer() {
+        this(FormatContext.V3);
+    }
+
+    public DateSerializer(FormatContext formatContext) {
+        super(Date.class);
+        this.formatContext = formatContext;
+    }
+
+    @Override
+    public void serialize(Date value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeString(formatContext.fromDate(value));
+    }
+}
@@ -18,15 +18,29 @@ package org.linguafranca.pwdb.kdbx.jackson.converter;
 
 import java.util.Date;
 
-import org.linguafranca.pwdb.kdbx.Helpers;
+import org.linguafranca.pwdb.kdbx.FormatContext;
 
 import com.fasterxml.jackson.databind.util.StdConverter;
 
+/**
+ * Formats timestamps according to a {@link FormatContext}, which is supplied by
+ * {@link FormatContextHandlerInstantiator}
+ */
 public class DateToStringConverter extends StdConverter<Date, String> {
 
+    private final FormatContext formatContext;
+
+    public DateToStringConverter() {
+        this(FormatContext.V3);
+    }
+
+    public DateToStringConverter(FormatContext formatContext) {
+        this.formatContext = formatContext;
+    }
+
     @Override
     public String convert(Date date) {
-       return Helpers.fromDate(date);
+       return formatContext.fromDate(date);
     }
     
 }
@@ -18,12 +18,25 @@ package org.linguafranca.pwdb.kdbx.jackson.converter;
 import java.util.Date;
 import java.util.Objects;
 
-import org.linguafranca.pwdb.kdbx.Helpers;
+import org.linguafranca.pwdb.kdbx.FormatContext;
 
 import com.fasterxml.jackson.databind.util.StdConverter;
 
+/**
+ * Parses timestamps in either format, see {@link FormatContext#toDate(CharSequence)}
+ */
 public class StringToDateConverter extends StdConverter<String, Date> {
 
+    private final FormatContext formatContext;
+
+    public StringToDateConverter() {
+        this(FormatContext.V3);
+    }
+
+    public StringToDateConverter(FormatContext formatContext) {
+        this.formatContext = formatContext;
+    }
+
     @Override
     public Date convert(String value) {
         // TODO: It would really be better if we could inhibit deserialize date elements that are not present
@@ -33,6 +46,6 @@ public class StringToDateConverter extends StdConverter<String, Date> {
         if(value.equals("${creationDate}")) {
             return new Date();
         }
-        return Helpers.toDate(value);
+        return formatContext.toDate(value);
     }
 }
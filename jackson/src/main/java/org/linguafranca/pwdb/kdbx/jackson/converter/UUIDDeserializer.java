@@ -0,0 +1,49 @@
+/*
+ * Copyright 2023 Giuseppe Valente
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linguafranca.pwdb.kdbx.jackson.converter;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Reads a Base64 encoded UUID straight from the parser, in place of {@link Base64ToUUIDConverter}.
+ * As there, an empty value is given a random UUID.
+ */
+public class UUIDDeserializer extends StdScalarDeserializer<UUID> {
+
+    public UUIDDeserializer() {
+        super(UUID.class);
+    }
+
+    @Override
+    public UUID deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (!p.hasToken(JsonToken.VALUE_STRING)) {
+            return (UUID) ctxt.handleUnexpectedToken(UUID.class, p);
+        }
+        byte[] buffer = p.getBinaryValue();
+        if (buffer.length == 0) {
+            return UUID.randomUUID();
+        }
+        ByteBuffer b = ByteBuffer.wrap(buffer);
+        return new UUID(b.getLong(), b.getLong(8));
+    }
+}
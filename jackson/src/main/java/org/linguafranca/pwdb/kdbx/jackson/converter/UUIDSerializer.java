@@ -0,0 +1,44 @@
+/*
+ * Copyright 2023 Giuseppe Valente
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linguafranca.pwdb.kdbx.jackson.converter;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdScalarSerializer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Writes a UUID as Base64 text, in place of {@link UUIDToBase64Converter}
+ */
+public class UUIDSerializer extends StdScalarSerializer<UUID> {
+
+    public UUIDSerializer() {
+        super(UUID.class);
+    }
+
+    @Override
+    public void serialize(UUID value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        byte[] buffer = new byte[16];
+        ByteBuffer b = ByteBuffer.wrap(buffer);
+        b.putLong(value.getMostSignificantBits());
+        b.putLong(8, value.getLeastSignificantBits());
+        gen.writeString(Base64Variants.getDefaultVariant().encode(buffer));
+    }
+}
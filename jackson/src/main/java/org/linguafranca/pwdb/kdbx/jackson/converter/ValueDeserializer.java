@@ -16,56 +16,107 @@
 package org.linguafranca.pwdb.kdbx.jackson.converter;
 
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
-import org.apache.commons.codec.binary.Base64;
 import org.linguafranca.pwdb.Database;
 import org.linguafranca.pwdb.PropertyValue;
 import org.linguafranca.pwdb.kdbx.Helpers;
 import org.linguafranca.pwdb.kdbx.jackson.model.EntryClasses;
+import org.linguafranca.pwdb.security.SeekableStreamEncryptor;
 import org.linguafranca.pwdb.security.StreamEncryptor;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Objects;
 
 public class ValueDeserializer extends StdDeserializer<PropertyValue> {
 
+    /**
+     * Names of the attributes of a deserialization that a shared deserializer takes its settings from,
+     * see {@link com.fasterxml.jackson.databind.ObjectReader#withAttribute(Object, Object)}
+     */
+    public static final String ENCRYPTOR = "encryptor";
+    public static final String STRATEGY = "strategy";
+    public static final String DEFER_DECRYPTION = "deferDecryption";
+
     private final StreamEncryptor encryptor;
     private final PropertyValue.Strategy strategy;
+    private final boolean deferDecryption;
+
+    /**
+     * A deserializer that can be shared by deserializations with different encryptors, taking its
+     * settings from the attributes {@link #ENCRYPTOR}, {@link #STRATEGY} and {@link #DEFER_DECRYPTION}
+     */
+    public ValueDeserializer() {
+        this(null, null, false);
+    }
 
     public ValueDeserializer(StreamEncryptor encryptor, PropertyValue.Strategy strategy) {
+        this(encryptor, strategy, false);
+    }
+
+    /**
+     * @param deferDecryption if true and the encryptor is seekable, protected values are kept
+     *                        encrypted until first accessed, see {@link PropertyValue.DeferredStore}
+     */
+    public ValueDeserializer(StreamEncryptor encryptor, PropertyValue.Strategy strategy, boolean deferDecryption) {
         super(ValueDeserializer.class);
         this.encryptor = encryptor;
         this.strategy = strategy;
+        this.deferDecryption = deferDecryption;
     }
 
     @Override
     public PropertyValue deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
 
-        JsonNode node = p.getCodec().readTree(p);
+        StreamEncryptor encryptor = Objects.nonNull(this.encryptor) ? this.encryptor :
+                (StreamEncryptor) ctxt.getAttribute(ENCRYPTOR);
+        PropertyValue.Strategy strategy = Objects.nonNull(this.strategy) ? this.strategy :
+                (PropertyValue.Strategy) ctxt.getAttribute(STRATEGY);
+        boolean deferDecryption = this.deferDecryption || Boolean.TRUE.equals(ctxt.getAttribute(DEFER_DECRYPTION));
 
-        if (node.isTextual()) {
-            return strategy.newUnprotected().of(node.textValue());
+        // <Value>text</Value>
+        if (p.hasToken(JsonToken.VALUE_STRING)) {
+            return strategy.newUnprotected().of(p.getText());
         }
 
-        if (node.isObject()) {
-            // TODO not clear what is happening here, looks like it's not exactly correct
-            //We need to decrypt all Protected values
-            String cipherText = "";
-            if (node.has("")) {
-                cipherText = node.get("").asText();
-            }
+        if (!p.isExpectedStartObjectToken()) {
+            throw new IllegalStateException("Error parsing XML token is " + p.currentToken());
+        }
 
-            if (node.has("Protected") && Boolean.TRUE.equals(Helpers.toBoolean(node.get("Protected").asText()))) {
-                    //Decode to byte the Base64 text
-                    byte[] encrypted = Base64.decodeBase64(cipherText.getBytes());
-                    byte[] decrypted = encryptor.decrypt(encrypted);
-                    return strategy.newProtected().of(decrypted);
+        // <Value Protected="True">text</Value> arrives as attribute fields followed by the text,
+        // which has an empty field name, and is read token by token rather than as a tree
+        boolean isProtected = false;
+        String text = "";
+        byte[] encrypted = new byte[0];
+        for (String name = p.nextFieldName(); Objects.nonNull(name); name = p.nextFieldName()) {
+            p.nextToken();
+            if (name.isEmpty()) {
+                if (isProtected && p.hasToken(JsonToken.VALUE_STRING)) {
+                    // getBinaryValue decodes the Base64 text into a new array, which is decrypted in place
+                    encrypted = p.getBinaryValue();
+                } else {
+                    text = p.getValueAsString("");
+                }
+            } else if (name.equals("Protected")) {
+                isProtected = Boolean.TRUE.equals(Helpers.toBoolean(p.getValueAsString()));
+            } else {
+                p.skipChildren();
             }
-            return strategy.newUnprotected().of(cipherText);
         }
 
-        throw new IllegalStateException("Error parsing XML node type is " + node.getClass());
+        if (!isProtected) {
+            return strategy.newUnprotected().of(text);
+        }
+        if (deferDecryption && encryptor instanceof SeekableStreamEncryptor) {
+            // note where the value is in the keystream and move on
+            SeekableStreamEncryptor seekable = (SeekableStreamEncryptor) encryptor;
+            long position = seekable.getPosition();
+            seekable.skip(encrypted.length);
+            return new PropertyValue.DeferredStore(seekable, position, encrypted, strategy.newProtected());
+        }
+        encryptor.decrypt(encrypted, 0, encrypted.length);
+        return strategy.newProtected().of(encrypted);
     }
 }
\ No newline at end of file
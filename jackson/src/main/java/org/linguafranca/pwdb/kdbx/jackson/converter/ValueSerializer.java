@@ -21,37 +21,68 @@ import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
 import org.apache.commons.codec.binary.Base64;
 import org.linguafranca.pwdb.PropertyValue;
+import org.linguafranca.pwdb.security.SeekableStreamEncryptor;
 import org.linguafranca.pwdb.security.StreamEncryptor;
 
 import java.io.IOException;
+import java.util.Objects;
 
 
 public class ValueSerializer extends StdSerializer<PropertyValue> {
 
+    /**
+     * Name of the attribute of a serialization that a shared serializer takes its encryptor from,
+     * see {@link com.fasterxml.jackson.databind.ObjectWriter#withAttribute(Object, Object)}
+     */
+    public static final String ENCRYPTOR = "encryptor";
+
     private final StreamEncryptor encryptor;
     private final PropertyValue.Strategy propertyValueStrategy;
 
+    /**
+     * A serializer that can be shared by serializations with different encryptors, taking its
+     * encryptor from the attribute {@link #ENCRYPTOR}
+     */
+    public ValueSerializer() {
+        this(null, null);
+    }
+
     public ValueSerializer(StreamEncryptor encryptor, PropertyValue.Strategy propertyValueStrategy) {
         super(ValueSerializer.class, false);
         this.encryptor = encryptor;
         this.propertyValueStrategy = propertyValueStrategy;
     }
 
-    private String encrypt(byte[] bytes) {
-        //Cipher
-        byte[] encrypted = encryptor.encrypt(bytes);
+    private String encrypt(PropertyValue value, StreamEncryptor encryptor) {
+        // a value that was loaded but not read can be written as it was, if the keystream is unchanged
+        if (value instanceof PropertyValue.DeferredStore && encryptor instanceof SeekableStreamEncryptor) {
+            SeekableStreamEncryptor seekable = (SeekableStreamEncryptor) encryptor;
+            byte[] cipherText = ((PropertyValue.DeferredStore) value).getCipherText(seekable);
+            if (cipherText != null) {
+                seekable.skip(cipherText.length);
+                return new String(Base64.encodeBase64(cipherText));
+            }
+        }
+        return encrypt(value.getValueAsBytes(), encryptor);
+    }
+
+    private String encrypt(byte[] bytes, StreamEncryptor encryptor) {
+        //Cipher in place, getValueAsBytes returns a new array each time
+        encryptor.encrypt(bytes, 0, bytes.length);
         //Convert to base64
-        return new String(Base64.encodeBase64(encrypted));
+        return new String(Base64.encodeBase64(bytes));
     }
 
     @Override
     public void serialize(PropertyValue value, JsonGenerator gen, SerializerProvider provider) throws IOException {
 
+        StreamEncryptor encryptor = Objects.nonNull(this.encryptor) ? this.encryptor :
+                (StreamEncryptor) provider.getAttribute(ENCRYPTOR);
         final ToXmlGenerator xmlGenerator = (ToXmlGenerator) gen;
         xmlGenerator.writeStartObject();
 
         String stringToWrite = value.isProtected() ?
-                encrypt(value.getValueAsBytes()) :
+                encrypt(value, encryptor) :
                 value.getValueAsString();
 
         if (value.isProtected()) {
@@ -21,8 +21,8 @@ import java.util.List;
 
 import org.linguafranca.pwdb.PropertyValue;
 import org.linguafranca.pwdb.kdbx.jackson.JacksonEntry;
-import org.linguafranca.pwdb.kdbx.jackson.converter.BooleanToStringConverter;
-import org.linguafranca.pwdb.kdbx.jackson.converter.StringToBooleanConverter;
+import org.linguafranca.pwdb.kdbx.jackson.converter.BooleanDeserializer;
+import org.linguafranca.pwdb.kdbx.jackson.converter.BooleanSerializer;
 
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
@@ -54,8 +54,8 @@ public abstract class EntryClasses {
 
     public static class AutoType {
         @JacksonXmlProperty(localName = "Enabled")
-        @JsonDeserialize(converter = StringToBooleanConverter.class)
-        @JsonSerialize(converter = BooleanToStringConverter.class)
+        @JsonDeserialize(using = BooleanDeserializer.class)
+        @JsonSerialize(using = BooleanSerializer.class)
         protected Boolean enabled;
 
         @JacksonXmlProperty(localName = "DataTransferObfuscation")
@@ -21,17 +21,19 @@ import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
+import org.linguafranca.pwdb.BinaryPool;
 import org.linguafranca.pwdb.Entry;
 import org.linguafranca.pwdb.kdbx.jackson.JacksonGroup;
 import org.linguafranca.pwdb.kdbx.jackson.converter.Base64ToByteConverter;
-import org.linguafranca.pwdb.kdbx.jackson.converter.Base64ToUUIDConverter;
-import org.linguafranca.pwdb.kdbx.jackson.converter.BooleanToStringConverter;
+import org.linguafranca.pwdb.kdbx.jackson.converter.BooleanDeserializer;
+import org.linguafranca.pwdb.kdbx.jackson.converter.BooleanSerializer;
 import org.linguafranca.pwdb.kdbx.jackson.converter.ByteToBase64Converter;
-import org.linguafranca.pwdb.kdbx.jackson.converter.DateToStringConverter;
-import org.linguafranca.pwdb.kdbx.jackson.converter.StringToBooleanConverter;
-import org.linguafranca.pwdb.kdbx.jackson.converter.StringToDateConverter;
-import org.linguafranca.pwdb.kdbx.jackson.converter.UUIDToBase64Converter;
+import org.linguafranca.pwdb.kdbx.jackson.converter.DateDeserializer;
+import org.linguafranca.pwdb.kdbx.jackson.converter.DateSerializer;
+import org.linguafranca.pwdb.kdbx.jackson.converter.UUIDDeserializer;
+import org.linguafranca.pwdb.kdbx.jackson.converter.UUIDSerializer;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
@@ -48,6 +50,12 @@ public class KeePassFile {
     @JacksonXmlProperty(localName = "Root")
     public Root root;
 
+    /**
+     * Attachments are held here rather than in {@link Meta#binaries}, which is only populated when writing V3
+     */
+    @JsonIgnore
+    public BinaryPool binaryPool = new BinaryPool();
+
     public void createBinaries() {
         meta.binaries = new ArrayList<>();
     }
@@ -114,24 +122,24 @@ public class KeePassFile {
         public String databaseName;
 
         @JacksonXmlProperty(localName = "DatabaseNameChanged")
-        @JsonDeserialize(converter = StringToDateConverter.class)
-        @JsonSerialize(converter = DateToStringConverter.class)
+        @JsonDeserialize(using = DateDeserializer.class)
+        @JsonSerialize(using = DateSerializer.class)
         public Date databaseNameChanged;
 
         @JacksonXmlProperty(localName = "DatabaseDescription")
         public String databaseDescription;
 
         @JacksonXmlProperty(localName = "DatabaseDescriptionChanged")
-        @JsonDeserialize(converter = StringToDateConverter.class)
-        @JsonSerialize(converter = DateToStringConverter.class)
+        @JsonDeserialize(using = DateDeserializer.class)
+        @JsonSerialize(using = DateSerializer.class)
         public Date databaseDescriptionChanged;
 
         @JacksonXmlProperty(localName = "DefaultUserName")
         protected String defaultUserName;
 
         @JacksonXmlProperty(localName = "DefaultUserNameChanged")
-        @JsonDeserialize(converter = StringToDateConverter.class)
-        @JsonSerialize(converter = DateToStringConverter.class)
+        @JsonDeserialize(using = DateDeserializer.class)
+        @JsonSerialize(using = DateSerializer.class)
         protected Date defaultUserNameChanged;
 
         @JacksonXmlProperty(localName = "MaintenanceHistoryDays")
@@ -141,8 +149,8 @@ public class KeePassFile {
         protected String color;
 
         @JacksonXmlProperty(localName = "MasterKeyChanged")
-        @JsonDeserialize(converter = StringToDateConverter.class)
-        @JsonSerialize(converter = DateToStringConverter.class)
+        @JsonDeserialize(using = DateDeserializer.class)
+        @JsonSerialize(using = DateSerializer.class)
         protected Date masterKeyChanged;
 
         @JacksonXmlProperty(localName = "MasterKeyChangeRec")
@@ -152,8 +160,8 @@ public class KeePassFile {
         protected int masterKeyChangeForce;
 
         @JacksonXmlProperty(localName = "MasterKeyChangeForceOnce")
-        @JsonDeserialize(converter = StringToBooleanConverter.class)
-        @JsonSerialize(converter = BooleanToStringConverter.class)
+        @JsonDeserialize(using = BooleanDeserializer.class)
+        @JsonSerialize(using = BooleanSerializer.class)
         protected Boolean masterKeyChangeForceOnce;
 
         @JacksonXmlProperty(localName = "MemoryProtection")
@@ -163,38 +171,38 @@ public class KeePassFile {
         protected ArrayList<Icon> customIcons;
 
         @JacksonXmlProperty(localName = "RecycleBinEnabled")
-        @JsonDeserialize(converter = StringToBooleanConverter.class)
-        @JsonSerialize(converter = BooleanToStringConverter.class)
+        @JsonDeserialize(using = BooleanDeserializer.class)
+        @JsonSerialize(using = BooleanSerializer.class)
         public Boolean recycleBinEnabled;
 
         @JacksonXmlProperty(localName = "RecycleBinUUID")
-        @JsonDeserialize(converter = Base64ToUUIDConverter.class)
-        @JsonSerialize(converter = UUIDToBase64Converter.class)
+        @JsonDeserialize(using = UUIDDeserializer.class)
+        @JsonSerialize(using = UUIDSerializer.class)
         public UUID recycleBinUUID;
 
         @JacksonXmlProperty(localName = "RecycleBinChanged")
-        @JsonDeserialize(converter = StringToDateConverter.class)
-        @JsonSerialize(converter = DateToStringConverter.class)
+        @JsonDeserialize(using = DateDeserializer.class)
+        @JsonSerialize(using = DateSerializer.class)
         public Date recycleBinChanged;
 
         @JacksonXmlProperty(localName = "EntryTemplatesGroup")
-        @JsonDeserialize(converter = Base64ToUUIDConverter.class)
-        @JsonSerialize(converter = UUIDToBase64Converter.class)
+        @JsonDeserialize(using = UUIDDeserializer.class)
+        @JsonSerialize(using = UUIDSerializer.class)
         protected UUID entryTemplatesGroup;
 
         @JacksonXmlProperty(localName = "EntryTemplatesGroupChanged")
-        @JsonDeserialize(converter = StringToDateConverter.class)
-        @JsonSerialize(converter = DateToStringConverter.class)
+        @JsonDeserialize(using = DateDeserializer.class)
+        @JsonSerialize(using = DateSerializer.class)
         protected Date entryTemplatesGroupChanged;
 
         @JacksonXmlProperty(localName = "LastSelectedGroup")
-        @JsonDeserialize(converter = Base64ToUUIDConverter.class)
-        @JsonSerialize(converter = UUIDToBase64Converter.class)
+        @JsonDeserialize(using = UUIDDeserializer.class)
+        @JsonSerialize(using = UUIDSerializer.class)
         protected UUID lastSelectedGroup;
 
         @JacksonXmlProperty(localName = "LastTopVisibleGroup")
-        @JsonDeserialize(converter = Base64ToUUIDConverter.class)
-        @JsonSerialize(converter = UUIDToBase64Converter.class)
+        @JsonDeserialize(using = UUIDDeserializer.class)
+        @JsonSerialize(using = UUIDSerializer.class)
         protected UUID lastTopVisibleGroup;
 
         @JacksonXmlProperty(localName = "HistoryMaxItems")
@@ -212,8 +220,8 @@ public class KeePassFile {
         /* version 4  */
 
         @JacksonXmlProperty(localName = "SettingsChanged")
-        @JsonDeserialize(converter = StringToDateConverter.class)
-        @JsonSerialize(converter = DateToStringConverter.class)
+        @JsonDeserialize(using = DateDeserializer.class)
+        @JsonSerialize(using = DateSerializer.class)
         protected Date settingsChanged;
     }
 
@@ -229,28 +237,28 @@ public class KeePassFile {
         }
 
         @JacksonXmlProperty(localName = "ProtectTitle")
-        @JsonDeserialize(converter = StringToBooleanConverter.class)
-        @JsonSerialize(converter = BooleanToStringConverter.class)
+        @JsonDeserialize(using = BooleanDeserializer.class)
+        @JsonSerialize(using = BooleanSerializer.class)
         protected Boolean protectTitle;
 
         @JacksonXmlProperty(localName = "ProtectUserName")
-        @JsonDeserialize(converter = StringToBooleanConverter.class)
-        @JsonSerialize(converter = BooleanToStringConverter.class)
+        @JsonDeserialize(using = BooleanDeserializer.class)
+        @JsonSerialize(using = BooleanSerializer.class)
         protected Boolean protectUserName;
 
         @JacksonXmlProperty(localName = "ProtectPassword")
-        @JsonDeserialize(converter = StringToBooleanConverter.class)
-        @JsonSerialize(converter = BooleanToStringConverter.class)
+        @JsonDeserialize(using = BooleanDeserializer.class)
+        @JsonSerialize(using = BooleanSerializer.class)
         protected Boolean protectPassword;
 
         @JacksonXmlProperty(localName = "ProtectURL")
-        @JsonDeserialize(converter = StringToBooleanConverter.class)
-        @JsonSerialize(converter = BooleanToStringConverter.class)
+        @JsonDeserialize(using = BooleanDeserializer.class)
+        @JsonSerialize(using = BooleanSerializer.class)
         protected Boolean protectURL;
 
         @JacksonXmlProperty(localName = "ProtectNotes")
-        @JsonDeserialize(converter = StringToBooleanConverter.class)
-        @JsonSerialize(converter = BooleanToStringConverter.class)
+        @JsonDeserialize(using = BooleanDeserializer.class)
+        @JsonSerialize(using = BooleanSerializer.class)
         protected Boolean protectNotes;
 
         public Boolean shouldProtect(String name) {
@@ -287,8 +295,8 @@ public class KeePassFile {
         protected Integer id;
 
         @JacksonXmlProperty(localName = "Compressed", isAttribute = true)
-        @JsonDeserialize(converter = StringToBooleanConverter.class)
-        @JsonSerialize(converter = BooleanToStringConverter.class)
+        @JsonDeserialize(using = BooleanDeserializer.class)
+        @JsonSerialize(using = BooleanSerializer.class)
         protected Boolean compressed;
 
         public String getValue() {
@@ -321,16 +329,16 @@ public class KeePassFile {
         }
 
         @JacksonXmlProperty(localName = "UUID")
-        @JsonDeserialize(converter = Base64ToUUIDConverter.class)
-        @JsonSerialize(converter = UUIDToBase64Converter.class)
+        @JsonDeserialize(using = UUIDDeserializer.class)
+        @JsonSerialize(using = UUIDSerializer.class)
         protected UUID uuid;
 
         @JacksonXmlProperty(localName = "Name")
         protected String name;
         
         @JacksonXmlProperty(localName = "LastModificationTime")
-        @JsonDeserialize(converter = StringToDateConverter.class)
-        @JsonSerialize(converter = DateToStringConverter.class)
+        @JsonDeserialize(using = DateDeserializer.class)
+        @JsonSerialize(using = DateSerializer.class)
         protected Date lastModificationTime;
         
         @JacksonXmlProperty(localName = "Data")
@@ -351,8 +359,8 @@ public class KeePassFile {
             @JacksonXmlProperty(localName = "Value")
             public String value;
             @JacksonXmlProperty(localName = "LastModificationTime")
-            @JsonDeserialize(converter = StringToDateConverter.class)
-            @JsonSerialize(converter = DateToStringConverter.class)
+            @JsonDeserialize(using = DateDeserializer.class)
+            @JsonSerialize(using = DateSerializer.class)
             public Date lastModificationTime;
         }
 
@@ -18,8 +18,8 @@ package org.linguafranca.pwdb.kdbx.jackson.model;
 
 import java.util.Date;
 
-import org.linguafranca.pwdb.kdbx.jackson.converter.DateToStringConverter;
-import org.linguafranca.pwdb.kdbx.jackson.converter.StringToDateConverter;
+import org.linguafranca.pwdb.kdbx.jackson.converter.DateDeserializer;
+import org.linguafranca.pwdb.kdbx.jackson.converter.DateSerializer;
 
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
@@ -27,23 +27,23 @@ import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
 
 public class Times {
     @JacksonXmlProperty(localName = "LastModificationTime")
-    @JsonDeserialize(converter = StringToDateConverter.class)
-    @JsonSerialize(converter = DateToStringConverter.class)
+    @JsonDeserialize(using = DateDeserializer.class)
+    @JsonSerialize(using = DateSerializer.class)
     protected Date lastModificationTime;
 
     @JacksonXmlProperty(localName = "CreationTime")
-    @JsonDeserialize(converter = StringToDateConverter.class)
-    @JsonSerialize(converter = DateToStringConverter.class)
+    @JsonDeserialize(using = DateDeserializer.class)
+    @JsonSerialize(using = DateSerializer.class)
     protected Date creationTime;
 
     @JacksonXmlProperty(localName = "LastAccessTime")
-    @JsonDeserialize(converter = StringToDateConverter.class)
-    @JsonSerialize(converter = DateToStringConverter.class)
+    @JsonDeserialize(using = DateDeserializer.class)
+    @JsonSerialize(using = DateSerializer.class)
     protected Date lastAccessTime;
 
     @JacksonXmlProperty(localName = "ExpiryTime")
-    @JsonSerialize(converter = DateToStringConverter.class)
-    @JsonDeserialize(converter = StringToDateConverter.class)
+    @JsonSerialize(using = DateSerializer.class)
+    @JsonDeserialize(using = DateDeserializer.class)
     protected Date expiryTime;
 
     @JacksonXmlProperty(localName = "Expires")
@@ -53,8 +53,8 @@ public class Times {
     protected int usageCount;
 
     @JacksonXmlProperty(localName = "LocationChanged")
-    @JsonDeserialize(converter = StringToDateConverter.class)
-    @JsonSerialize(converter = DateToStringConverter.class)
+    @JsonDeserialize(using = DateDeserializer.class)
+    @JsonSerialize(using = DateSerializer.class)
     protected Date locationChanged;
 
     public Date getLastModificationTime() {
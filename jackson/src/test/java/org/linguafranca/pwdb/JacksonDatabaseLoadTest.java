@@ -15,13 +15,26 @@
  */
 package org.linguafranca.pwdb;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
+import com.google.common.io.ByteStreams;
 import org.junit.Test;
+import org.linguafranca.pwdb.kdbx.FormatContext;
 import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.kdbx.KdbxStreamFormat;
 import org.linguafranca.pwdb.kdbx.jackson.JacksonDatabase;
+import org.linguafranca.pwdb.kdbx.jackson.JacksonEntry;
+import org.linguafranca.pwdb.kdbx.jackson.JacksonSerializableDatabase;
+import org.linguafranca.pwdb.security.StreamEncryptor;
 
+import static org.junit.Assert.*;
 import static org.linguafranca.test.util.TestUtil.getTestPrintStream;
 
 public class JacksonDatabaseLoadTest {
@@ -69,4 +82,139 @@ public class JacksonDatabaseLoadTest {
          database.visit(new Visitor.Print(printStream));
      }
 
+    private static List<PropertyValue> getPasswords(Database<?, ?, ?, ?> database) {
+        List<PropertyValue> result = new ArrayList<>();
+        database.visit(new Visitor.Default() {
+            @Override
+            public void visit(Entry entry) {
+                result.add(entry.getPropertyValue(Entry.STANDARD_PROPERTY_NAME_PASSWORD));
+            }
+        });
+        return result;
+    }
+
+    @Test
+    public void deferredDecryption() throws Exception {
+        Credentials credentials = new KdbxCreds("123".getBytes());
+        // V3 uses Salsa20, V4 ChaCha20
+        for (String resource : new String[]{"test123.kdbx", "V4-AES-Argon2.kdbx"}) {
+            JacksonDatabase expected = JacksonDatabase.load(credentials, getClass().getClassLoader().getResourceAsStream(resource));
+            JacksonDatabase deferred;
+            JacksonSerializableDatabase.DEFER_PROTECTED_VALUE_DECRYPTION = true;
+            try {
+                deferred = JacksonDatabase.load(credentials, getClass().getClassLoader().getResourceAsStream(resource));
+            } finally {
+                JacksonSerializableDatabase.DEFER_PROTECTED_VALUE_DECRYPTION = false;
+            }
+            // listing titles decrypts nothing
+            deferred.visit(new Visitor.Print(printStream));
+            List<PropertyValue> passwords = getPasswords(deferred);
+            assertFalse(passwords.isEmpty());
+            for (PropertyValue password : passwords) {
+                assertFalse(((PropertyValue.DeferredStore) password).isDecrypted());
+            }
+
+            // saving untouched values reuses their ciphertext
+            ByteArrayOutputStream untouched = new ByteArrayOutputStream();
+            deferred.save(credentials, untouched);
+            for (PropertyValue password : passwords) {
+                assertFalse(((PropertyValue.DeferredStore) password).isDecrypted());
+            }
+
+            List<PropertyValue> expectedPasswords = getPasswords(expected);
+            for (int i = 0; i < passwords.size(); i++) {
+                assertEquals(resource, expectedPasswords.get(i).getValueAsString(), passwords.get(i).getValueAsString());
+            }
+
+            JacksonDatabase reloaded = JacksonDatabase.load(credentials, new ByteArrayInputStream(untouched.toByteArray()));
+            List<PropertyValue> reloadedPasswords = getPasswords(reloaded);
+            for (int i = 0; i < passwords.size(); i++) {
+                assertEquals(resource, expectedPasswords.get(i).getValueAsString(), reloadedPasswords.get(i).getValueAsString());
+            }
+        }
+    }
+
+    @Test
+    public void arenaStrategy() throws Exception {
+        Credentials credentials = new KdbxCreds("123".getBytes());
+        List<PropertyValue> expected = getPasswords(JacksonDatabase.load(credentials, getClass().getClassLoader().getResourceAsStream("V4-AES-Argon2.kdbx")));
+        JacksonDatabase database = JacksonDatabase.load(credentials, getClass().getClassLoader().getResourceAsStream("V4-AES-Argon2.kdbx"),
+                new PropertyValue.Strategy.Arena());
+        List<PropertyValue> passwords = getPasswords(database);
+        for (int i = 0; i < passwords.size(); i++) {
+            assertTrue(passwords.get(i) instanceof PropertyValue.ArenaStore);
+            assertEquals(expected.get(i).getValueAsString(), passwords.get(i).getValueAsString());
+        }
+        database.close();
+        try {
+            passwords.get(0).getValueAsString();
+            fail("Expected closed arena");
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    @Test
+    public void binaryPool() throws Exception {
+        Credentials credentials = new KdbxCreds("123".getBytes());
+        JacksonDatabase database = JacksonDatabase.load(credentials, getClass().getClassLoader().getResourceAsStream("V4-ChaCha20-Argon2-Attachment.kdbx"));
+        BinaryPool pool = database.getBinaryPool();
+        assertTrue(pool.size() > 0);
+
+        // saving more than once does not duplicate attachments
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            database.save(credentials, outputStream);
+            JacksonDatabase reloaded = JacksonDatabase.load(credentials, new ByteArrayInputStream(outputStream.toByteArray()));
+            assertEquals(pool.size(), reloaded.getBinaryPool().size());
+            for (int j = 0; j < pool.size(); j++) {
+                assertArrayEquals(pool.get(j), reloaded.getBinaryPool().get(j));
+            }
+        }
+
+        // attachments are only in V3 XML
+        JacksonSerializableDatabase serializableDatabase = new JacksonSerializableDatabase();
+        new KdbxStreamFormat().load(serializableDatabase, credentials, getClass().getClassLoader().getResourceAsStream("V4-ChaCha20-Argon2-Attachment.kdbx"));
+        serializableDatabase.setEncryption(new StreamEncryptor.None());
+        for (FormatContext formatContext : new FormatContext[]{FormatContext.V3, FormatContext.V4}) {
+            serializableDatabase.setFormatContext(formatContext);
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            serializableDatabase.save(outputStream);
+            assertEquals(formatContext.toString(), !formatContext.isV4(), outputStream.toString("UTF-8").contains("<Binaries>"));
+        }
+    }
+
+    @Test
+    public void spilledBinaryPool() throws Exception {
+        Credentials credentials = new KdbxCreds("123".getBytes());
+        JacksonDatabase expected = JacksonDatabase.load(credentials, getClass().getClassLoader().getResourceAsStream("V4-ChaCha20-Argon2-Attachment.kdbx"));
+        // nothing is held in memory
+        JacksonDatabase database = JacksonDatabase.load(credentials, getClass().getClassLoader().getResourceAsStream("V4-ChaCha20-Argon2-Attachment.kdbx"),
+                new BinaryPool(0, null));
+        assertEquals(0, database.getBinaryPool().getMemoryBytes());
+        JacksonEntry entry = database.findEntries("Test 2 attachment").get(0);
+        JacksonEntry expectedEntry = expected.findEntries("Test 2 attachment").get(0);
+        assertFalse(entry.getBinaryPropertyNames().isEmpty());
+        for (String name : entry.getBinaryPropertyNames()) {
+            assertArrayEquals(expectedEntry.getBinaryProperty(name), ByteStreams.toByteArray(entry.getBinaryPropertyStream(name)));
+        }
+
+        byte[] streamed = new byte[200_000];
+        new Random(7).nextBytes(streamed);
+        try (OutputStream outputStream = entry.newBinaryPropertyStream("streamed")) {
+            outputStream.write(streamed);
+        }
+        entry.setBinaryPropertyStream("copied", new ByteArrayInputStream(streamed));
+        assertEquals(0, database.getBinaryPool().getMemoryBytes());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        database.save(credentials, outputStream);
+        database.close();
+        JacksonDatabase reloaded = JacksonDatabase.load(credentials, new ByteArrayInputStream(outputStream.toByteArray()));
+        JacksonEntry reloadedEntry = reloaded.findEntries("Test 2 attachment").get(0);
+        for (String name : expectedEntry.getBinaryPropertyNames()) {
+            assertArrayEquals(expectedEntry.getBinaryProperty(name), reloadedEntry.getBinaryProperty(name));
+        }
+        assertArrayEquals(streamed, reloadedEntry.getBinaryProperty("streamed"));
+        assertArrayEquals(streamed, reloadedEntry.getBinaryProperty("copied"));
+    }
 }
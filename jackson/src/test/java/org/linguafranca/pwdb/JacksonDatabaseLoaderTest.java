@@ -15,7 +15,9 @@
  */
 package org.linguafranca.pwdb;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 
 import org.linguafranca.pwdb.checks.DatabaseLoaderChecks;
 import org.linguafranca.pwdb.kdbx.KdbxCreds;
@@ -31,4 +33,8 @@ public class JacksonDatabaseLoaderTest extends DatabaseLoaderChecks{
         super.database = JacksonDatabase.load(credentials, inputStream);
     }
 
+    @Override
+    protected JacksonDatabase loadFromPath(Path path) throws IOException {
+        return JacksonDatabase.load(new KdbxCreds("123".getBytes()), path);
+    }
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2023 Giuseppe Valente
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linguafranca.pwdb.kdbx.jackson.converter;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
+import org.junit.Test;
+import org.linguafranca.pwdb.kdbx.FormatContext;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the UUID, timestamp and boolean serializers and deserializers against the text KeePass writes
+ */
+public class ScalarSerializerTest {
+
+    private static final UUID UUID_VALUE = UUID.fromString("4d1a4e1b-83a8-44d7-ae1c-8c9e1d706de0");
+    private static final String UUID_TEXT = "TRpOG4OoRNeuHIyeHXBt4A==";
+    /* 2023-05-15T21:56:45Z */
+    private static final Date DATE = new Date(1684187805000L);
+    private static final String V3_DATE = "2023-05-15T21:56:45Z";
+    private static final String V4_DATE = "naH02w4AAAA=";
+
+    @JacksonXmlRootElement(localName = "Item")
+    public static class Item {
+        @JacksonXmlProperty(localName = "UUID")
+        @JsonDeserialize(using = UUIDDeserializer.class)
+        @JsonSerialize(using = UUIDSerializer.class)
+        public UUID uuid;
+
+        @JacksonXmlProperty(localName = "Time")
+        @JsonDeserialize(using = DateDeserializer.class)
+        @JsonSerialize(using = DateSerializer.class)
+        public Date time;
+
+        @JacksonXmlProperty(localName = "Flag")
+        @JsonDeserialize(using = BooleanDeserializer.class)
+        @JsonSerialize(using = BooleanSerializer.class)
+        public Boolean flag;
+    }
+
+    @Test
+    public void testUuid() throws IOException {
+        Item item = read(FormatContext.V4, "<Item><UUID>" + UUID_TEXT + "</UUID></Item>");
+        assertEquals(UUID_VALUE, item.uuid);
+        assertTrue(write(FormatContext.V4, item).contains("<UUID>" + UUID_TEXT + "</UUID>"));
+    }
+
+    @Test
+    public void testEmptyUuid() throws IOException {
+        Item empty = read(FormatContext.V4, "<Item><UUID></UUID></Item>");
+        Item other = read(FormatContext.V4, "<Item><UUID></UUID></Item>");
+        // a random UUID is given
+        assertNotNull(empty.uuid);
+        assertNotEquals(empty.uuid, other.uuid);
+    }
+
+    @Test
+    public void testV3Date() throws IOException {
+        Item item = read(FormatContext.V3, "<Item><Time>" + V3_DATE + "</Time></Item>");
+        assertEquals(DATE, item.time);
+        assertTrue(write(FormatContext.V3, item).contains("<Time>" + V3_DATE + "</Time>"));
+    }
+
+    @Test
+    public void testV4Date() throws IOException {
+        Item item = read(FormatContext.V4, "<Item><Time>" + V4_DATE + "</Time></Item>");
+        assertEquals(DATE, item.time);
+        assertTrue(write(FormatContext.V4, item).contains("<Time>" + V4_DATE + "</Time>"));
+    }
+
+    @Test
+    public void testCreationDatePlaceholder() throws IOException {
+        long before = System.currentTimeMillis();
+        Item item = read(FormatContext.V3, "<Item><Time>${creationDate}</Time></Item>");
+        long after = System.currentTimeMillis();
+        assertNotNull(item.time);
+        assertTrue(item.time.getTime() >= before && item.time.getTime() <= after);
+    }
+
+    @Test
+    public void testBoolean() throws IOException {
+        assertEquals(Boolean.TRUE, read(FormatContext.V4, "<Item><Flag>True</Flag></Item>").flag);
+        assertEquals(Boolean.FALSE, read(FormatContext.V4, "<Item><Flag>False</Flag></Item>").flag);
+
+        Item item = new Item();
+        item.flag = true;
+        assertTrue(write(FormatContext.V4, item).contains("<Flag>True</Flag>"));
+        item.flag = false;
+        assertTrue(write(FormatContext.V4, item).contains("<Flag>False</Flag>"));
+    }
+
+    private static Item read(FormatContext formatContext, String xml) throws IOException {
+        return mapper(formatContext).readValue(xml, Item.class);
+    }
+
+    private static String write(FormatContext formatContext, Item item) throws IOException {
+        return mapper(formatContext).writeValueAsString(item);
+    }
+
+    /* the date converters are given the format by the handler instantiator, as on load and save */
+    private static XmlMapper mapper(FormatContext formatContext) {
+        XmlMapper mapper = new XmlMapper();
+        mapper.setHandlerInstantiator(new FormatContextHandlerInstantiator(formatContext));
+        return mapper;
+    }
+}
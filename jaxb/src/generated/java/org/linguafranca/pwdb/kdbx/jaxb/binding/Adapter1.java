@@ -21,7 +21,7 @@ public class Adapter1
     }
 
     public String marshal(Date value) {
-        return (org.linguafranca.pwdb.kdbx.jaxb.util.DateAdapter.toString(value));
+        return (org.linguafranca.pwdb.kdbx.jaxb.util.DateAdapter.print(value));
     }
 
 }
@@ -29,6 +29,7 @@ import org.linguafranca.pwdb.kdbx.jaxb.binding.ObjectFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Path;
 import java.util.Date;
 import java.util.Objects;
 import java.util.UUID;
@@ -74,6 +75,17 @@ public class JaxbDatabase extends AbstractDatabase<JaxbDatabase, JaxbGroup, Jaxb
         return new JaxbDatabase(db.getKeePassFile(), format);
     }
 
+    public static JaxbDatabase load(Credentials creds, Path path) throws IOException {
+        return load(new KdbxStreamFormat(), creds, path);
+    }
+
+    @NotNull
+    public static <C extends StreamConfiguration> JaxbDatabase load(StreamFormat<C> format, Credentials creds, Path path) throws IOException {
+        JaxbSerializableDatabase db = new JaxbSerializableDatabase();
+        format.load(db, creds, path);
+        return new JaxbDatabase(db.getKeePassFile(), format);
+    }
+
     @Override
     public void save(Credentials creds, OutputStream outputStream) throws IOException {
         if (Objects.isNull(this.streamFormat)){
@@ -20,9 +20,11 @@ import com.sun.xml.txw2.output.IndentingXMLStreamWriter;
 import org.apache.commons.codec.binary.Base64;
 import org.jetbrains.annotations.NotNull;
 import org.linguafranca.pwdb.SerializableDatabase;
+import org.linguafranca.pwdb.kdbx.FormatContext;
 import org.linguafranca.pwdb.kdbx.Helpers;
 import org.linguafranca.pwdb.kdbx.jaxb.base.ValueBinding;
 import org.linguafranca.pwdb.kdbx.jaxb.binding.*;
+import org.linguafranca.pwdb.kdbx.jaxb.util.DateAdapter;
 import org.linguafranca.pwdb.security.StreamEncryptor;
 
 import javax.xml.bind.JAXBContext;
@@ -43,11 +45,31 @@ import java.util.Objects;
  * @author jo
  */
 @SuppressWarnings("WeakerAccess")
-public class JaxbSerializableDatabase implements SerializableDatabase {
+public class JaxbSerializableDatabase implements SerializableDatabase, FormatContext.Aware {
+
+    /**
+     * Creating a context is costly, and contexts are thread safe, so they are shared by all loads and
+     * saves. Marshallers and unmarshallers are not thread safe, but are cheap to create from a context.
+     */
+    private static class Contexts {
+        private static final JAXBContext LOAD = newContext(KeePassFile.class, ValueBinding.class);
+        private static final JAXBContext SAVE = newContext(KeePassFile.class);
+
+        private static JAXBContext newContext(Class<?>... classes) {
+            try {
+                return JAXBContext.newInstance(classes);
+            } catch (JAXBException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
 
     private final ObjectFactory objectFactory = new ObjectFactory();
     protected KeePassFile keePassFile;
     private StreamEncryptor encryption;
+    private FormatContext formatContext = FormatContext.V3;
 
     public JaxbSerializableDatabase() {
 
@@ -72,8 +94,8 @@ public class JaxbSerializableDatabase implements SerializableDatabase {
     @Override
     public JaxbSerializableDatabase load(InputStream inputStream) {
         try {
-            JAXBContext jc = JAXBContext.newInstance(KeePassFile.class, ValueBinding.class);
-            Unmarshaller u = jc.createUnmarshaller();
+            Unmarshaller u = Contexts.LOAD.createUnmarshaller();
+            u.setAdapter(Adapter1.class, DateAdapter.forContext(formatContext));
             u.setListener(new Unmarshaller.Listener() {
                 @Override
                 public void afterUnmarshal(Object target, Object parent) {
@@ -81,7 +103,8 @@ public class JaxbSerializableDatabase implements SerializableDatabase {
                         StringField.Value value = (StringField.Value) target;
                         if (value.getProtected() != null && value.getProtected()) {
                             byte[] encrypted = Base64.decodeBase64(value.getValue().getBytes());
-                            String decrypted = new String(encryption.decrypt(encrypted), StandardCharsets.UTF_8);
+                            encryption.decrypt(encrypted, 0, encrypted.length);
+                            String decrypted = new String(encrypted, StandardCharsets.UTF_8);
                             value.setValue(decrypted);
                             value.setProtected(null);
                             value.protectOnOutput=true;
@@ -106,11 +129,10 @@ public class JaxbSerializableDatabase implements SerializableDatabase {
     public void save(OutputStream outputStream) {
 
         try {
-            JAXBContext jc = JAXBContext.newInstance(KeePassFile.class);
-            Marshaller marshaller = jc.createMarshaller();
+            Marshaller marshaller = Contexts.SAVE.createMarshaller();
             marshaller.setListener(createMarshallerListener(getToEncrypt()));
+            marshaller.setAdapter(Adapter1.class, DateAdapter.forContext(formatContext));
 
-            XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
             XMLStreamWriter xmlStreamWriter = xmlOutputFactory.createXMLStreamWriter(outputStream);
 
             // this tidies up output of boolean ="False" attributes and indentation, which is incorrect
@@ -157,7 +179,8 @@ public class JaxbSerializableDatabase implements SerializableDatabase {
                     StringField field = (StringField) source;
                     if (toEncrypt.contains(field.getKey()) || field.getValue().protectOnOutput) {
                         savedValue = field.getValue().getValue();
-                        byte [] encrypted = encryption.encrypt(field.getValue().getValue().getBytes(StandardCharsets.UTF_8));
+                        byte [] encrypted = field.getValue().getValue().getBytes(StandardCharsets.UTF_8);
+                        encryption.encrypt(encrypted, 0, encrypted.length);
                         byte [] base64Encoded = Base64.encodeBase64(encrypted);
                         field.getValue().setValue(new String(base64Encoded));
                         field.getValue().setProtected(true);
@@ -220,6 +243,11 @@ public class JaxbSerializableDatabase implements SerializableDatabase {
         this.encryption = encryption;
     }
 
+    @Override
+    public void setFormatContext(FormatContext formatContext) {
+        this.formatContext = formatContext;
+    }
+
     @Override
     public byte[] getHeaderHash() {
         return keePassFile.getMeta().getHeaderHash();
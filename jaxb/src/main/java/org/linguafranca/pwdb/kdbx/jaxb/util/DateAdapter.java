@@ -16,7 +16,9 @@
 
 package org.linguafranca.pwdb.kdbx.jaxb.util;
 
+import org.linguafranca.pwdb.kdbx.FormatContext;
 import org.linguafranca.pwdb.kdbx.Helpers;
+import org.linguafranca.pwdb.kdbx.jaxb.binding.Adapter1;
 
 import java.util.Date;
 
@@ -25,10 +27,22 @@ import java.util.Date;
  * @author jo
  */
 public class DateAdapter {
+    /**
+     * @deprecated formats according to {@link Helpers#isV4}, use {@link #forContext(FormatContext)}
+     */
+    @Deprecated
     public static String toString(Date date) {
         return Helpers.fromDate(date);
     }
 
+    /**
+     * The print method of the generated adapter, which formats as V3 (ISO-8601). Set the adapter
+     * from {@link #forContext(FormatContext)} on a marshaller to format for a particular version.
+     */
+    public static String print(Date date) {
+        return FormatContext.V3.fromDate(date);
+    }
+
     public static Date fromString(String string) {
         // this is found in the base template
         if (string.equals("${creationDate}")) {
@@ -36,4 +50,25 @@ public class DateAdapter {
         }
         return Helpers.toDate(string);
     }
+
+    /**
+     * An instance of the generated adapter to set on a marshaller or unmarshaller, which formats
+     * timestamps according to the context rather than {@link Helpers#isV4}
+     *
+     * @param formatContext the format of the stream
+     * @return an adapter
+     */
+    public static Adapter1 forContext(final FormatContext formatContext) {
+        return new Adapter1() {
+            @Override
+            public Date unmarshal(String value) {
+                return fromString(value);
+            }
+
+            @Override
+            public String marshal(Date value) {
+                return formatContext.fromDate(value);
+            }
+        };
+    }
 }
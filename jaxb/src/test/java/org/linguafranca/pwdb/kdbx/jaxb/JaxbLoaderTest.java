@@ -21,6 +21,7 @@ import org.linguafranca.pwdb.kdbx.KdbxCreds;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 
 /**
  * @author jo
@@ -37,4 +38,9 @@ public class JaxbLoaderTest extends DatabaseLoaderChecks {
         // through a org.linguafranca.keepass.Database interface.
         super.database = JaxbDatabase.load(credentials, inputStream);
     }
+
+    @Override
+    protected JaxbDatabase loadFromPath(Path path) throws IOException {
+        return JaxbDatabase.load(new KdbxCreds("123".getBytes()), path);
+    }
 }
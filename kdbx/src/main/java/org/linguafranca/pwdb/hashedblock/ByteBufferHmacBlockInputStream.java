@@ -0,0 +1,105 @@
+package org.linguafranca.pwdb.hashedblock;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Provides the content of HMAC Hashed Blocks held in a {@link ByteBuffer}, e.g. a memory mapped file, as a stream.
+ * <p>
+ * The format and verification are as for {@link HmacBlockInputStream}, but blocks are verified and read
+ * from slices of the buffer rather than being copied into arrays first. As there, a block whose HMAC does not
+ * match causes an {@link IllegalStateException} before any of its content is provided.
+ */
+public class ByteBufferHmacBlockInputStream extends InputStream {
+
+    private final byte[] key;
+    private final ByteOrder byteOrder;
+    private final ByteBuffer buffer;
+    private final byte[] hmacSha256 = new byte[32];
+    private ByteBuffer block;
+    private boolean finished = false;
+    private long blockCount = 0;
+
+    /**
+     * Create an HMac Block input stream
+     *
+     * @param key          the key digest
+     * @param buffer       the blocks, from the position of the buffer, whose position is advanced
+     * @param littleEndian true if the blocks are little endian
+     */
+    public ByteBufferHmacBlockInputStream(byte[] key, ByteBuffer buffer, boolean littleEndian) throws IOException {
+        this.key = key;
+        this.byteOrder = littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        // the caller's buffer keeps its own byte order
+        this.buffer = buffer;
+        getBlock();
+    }
+
+    private void getBlock() throws IOException {
+        if (buffer.remaining() < hmacSha256.length + 4) {
+            throw new EOFException();
+        }
+        buffer.get(hmacSha256);
+        int blockSize = buffer.duplicate().order(byteOrder).getInt();
+        // Buffer rather than ByteBuffer methods for Java 8 compatibility
+        ((Buffer) buffer).position(buffer.position() + 4);
+        if (blockSize < 0 || blockSize > buffer.remaining()) {
+            throw new EOFException();
+        }
+        ByteBuffer next = buffer.slice();
+        ((Buffer) next).limit(blockSize);
+        ((Buffer) buffer).position(buffer.position() + blockSize);
+
+        if (!Arrays.equals(HmacBlocks.computeHmac(key, blockCount, byteOrder, next.duplicate()), hmacSha256)) {
+            throw new IllegalStateException("Block HMAC does not match");
+        }
+        block = next;
+        blockCount++;
+        finished = blockSize == 0;
+    }
+
+    /**
+     * Make a block with content current
+     *
+     * @return false if there are no more blocks
+     */
+    private boolean nextBlock() throws IOException {
+        while (!finished && !block.hasRemaining()) {
+            getBlock();
+        }
+        return !finished;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlock()) {
+            return -1;
+        }
+        return block.get() & 0xFF;
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextBlock()) {
+            return -1;
+        }
+        int count = Math.min(len, block.remaining());
+        block.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return finished ? 0 : block.remaining();
+    }
+}
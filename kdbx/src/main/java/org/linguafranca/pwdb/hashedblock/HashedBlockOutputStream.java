@@ -18,7 +18,6 @@ package org.linguafranca.pwdb.hashedblock;
 
 import org.jetbrains.annotations.NotNull;
 
-import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -47,7 +46,7 @@ import java.security.NoSuchAlgorithmException;
  */
 public class HashedBlockOutputStream extends OutputStream {
 
-    private static final int BLOCK_SIZE = 8 * 1024;
+    public static final int DEFAULT_BLOCK_SIZE = 8 * 1024;
     private static final int HASH_SIZE = 32;
     private static final byte[] ZERO_HASH = new byte[HASH_SIZE];
 
@@ -55,7 +54,9 @@ public class HashedBlockOutputStream extends OutputStream {
     private int nextSequenceNumber = 0;
     private boolean littleEndian = false;
     private OutputStream outputStream;
-    private ByteArrayOutputStream blockOutputStream = new ByteArrayOutputStream();
+    private final byte[] block;
+    private int blockLength = 0;
+    private final byte[] intBuffer = new byte[4];
     private boolean isClosed = false;
 
     /**
@@ -74,8 +75,23 @@ public class HashedBlockOutputStream extends OutputStream {
      * @param littleEndian true to encode in a little endian way
      */
     public HashedBlockOutputStream(OutputStream outputStream, boolean littleEndian) {
+        this(outputStream, littleEndian, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Create a Hash Block Output Stream with choice of endian encoding and block size
+     *
+     * @param outputStream the output stream to receive the hash blocks
+     * @param littleEndian true to encode in a little endian way
+     * @param blockSize    the maximum size of the content of a block
+     */
+    public HashedBlockOutputStream(OutputStream outputStream, boolean littleEndian, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
         this.outputStream = outputStream;
         this.littleEndian = littleEndian;
+        this.block = new byte[blockSize];
         try {
             sha256 = MessageDigest.getInstance("SHA-256");
         } catch (NoSuchAlgorithmException e) {
@@ -85,9 +101,13 @@ public class HashedBlockOutputStream extends OutputStream {
 
     @Override
     public void write(int i) throws IOException {
-        byte[] buf = new byte[1];
-        buf[0] = (byte) i;
-        put(buf, 0, 1);
+        if (isClosed) {
+            throw new EOFException();
+        }
+        block[blockLength++] = (byte) i;
+        if (blockLength == block.length) {
+            save();
+        }
     }
 
     @Override
@@ -99,6 +119,7 @@ public class HashedBlockOutputStream extends OutputStream {
     @Override
     public void flush() throws IOException {
         save();
+        outputStream.flush();
     }
 
     @Override
@@ -106,7 +127,7 @@ public class HashedBlockOutputStream extends OutputStream {
         if (isClosed) {
             throw new EOFException();
         }
-        flush();
+        save();
         writeInt(nextSequenceNumber);
         outputStream.write(ZERO_HASH);
         writeInt(0);
@@ -117,7 +138,7 @@ public class HashedBlockOutputStream extends OutputStream {
 
     /**
      * Writes to the internal buffer, and writes to the underlying output stream
-     * as necessary as {@link #BLOCK_SIZE} blocks
+     * as necessary as blocks of the block size
      *
      * @param b      the byte array to write
      * @param offset offset in the byte array
@@ -129,9 +150,10 @@ public class HashedBlockOutputStream extends OutputStream {
             throw new EOFException();
         }
         while (length > 0) {
-            int bytesToWrite = Math.min(BLOCK_SIZE - blockOutputStream.size(), length);
-            blockOutputStream.write(b, offset, bytesToWrite);
-            if (blockOutputStream.size() >= BLOCK_SIZE) {
+            int bytesToWrite = Math.min(block.length - blockLength, length);
+            System.arraycopy(b, offset, block, blockLength, bytesToWrite);
+            blockLength += bytesToWrite;
+            if (blockLength == block.length) {
                 save();
             }
             offset += bytesToWrite;
@@ -146,28 +168,24 @@ public class HashedBlockOutputStream extends OutputStream {
      */
     protected void save() throws IOException {
         // if there's nothing to save don't do anything
-        if (blockOutputStream.size() == 0) {
+        if (blockLength == 0) {
             return;
         }
         // write and increment the block sequence no
         writeInt(nextSequenceNumber++);
 
         // calculate the hash of the buffer
-        byte[] buffer = blockOutputStream.toByteArray();
-        sha256.update(buffer);
+        sha256.update(block, 0, blockLength);
         outputStream.write(sha256.digest());
 
         // write the buffer's length
-        writeInt(buffer.length);
+        writeInt(blockLength);
 
         // write the buffer
-        outputStream.write(buffer);
-
-        // push the contents to disk etc.
-        outputStream.flush();
+        outputStream.write(block, 0, blockLength);
 
-        // reset the internal output buffer for reuse
-        blockOutputStream.reset();
+        // reset the internal buffer for reuse
+        blockLength = 0;
     }
 
     /**
@@ -181,7 +199,10 @@ public class HashedBlockOutputStream extends OutputStream {
         if (littleEndian) {
             output = Integer.reverseBytes(value);
         }
-        outputStream.write(new byte[]{(byte) (output >> 24), (byte) (output >> 16),
-                (byte) (output >> 8), (byte) output});
+        intBuffer[0] = (byte) (output >> 24);
+        intBuffer[1] = (byte) (output >> 16);
+        intBuffer[2] = (byte) (output >> 8);
+        intBuffer[3] = (byte) output;
+        outputStream.write(intBuffer);
     }
 }
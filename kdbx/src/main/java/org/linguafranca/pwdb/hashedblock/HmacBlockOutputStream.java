@@ -1,12 +1,7 @@
 package org.linguafranca.pwdb.hashedblock;
 
-import static org.linguafranca.pwdb.kdbx.Helpers.toBytes;
-import static org.linguafranca.pwdb.security.Encryption.getHMacSha256Instance;
-import static org.linguafranca.pwdb.security.Encryption.transformHmacKey;
-
 import java.io.*;
 import java.nio.ByteOrder;
-import javax.crypto.Mac;
 import org.jetbrains.annotations.NotNull;
 import com.google.common.io.LittleEndianDataOutputStream;
 
@@ -29,11 +24,12 @@ import com.google.common.io.LittleEndianDataOutputStream;
  */
 
 public class HmacBlockOutputStream extends FilterOutputStream {
-    private static final int BLOCK_SIZE = (int) Math.pow(2, 20); // blocks can technically be bigger but KeePass supposedly splits them into this size
+    public static final int DEFAULT_BLOCK_SIZE = (int) Math.pow(2, 20); // blocks can technically be bigger but KeePass supposedly splits them into this size
 
     private final byte[] key;
 
-    private final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+    private final byte[] block;
+    private int blockLength = 0;
     /** the encrypted, compressed output stream */
     private final DataOutput output;
     private final ByteOrder byteOrder;
@@ -56,8 +52,23 @@ public class HmacBlockOutputStream extends FilterOutputStream {
      * @param littleEndian true to encode in a little endian way
      */
     public HmacBlockOutputStream(byte [] key, OutputStream outputStream, boolean littleEndian) throws IOException {
+        this(key, outputStream, littleEndian, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Create a HmacBlockOutputStream with choice of endian encoding and block size
+     * @param key credentials for this database
+     * @param outputStream the output stream to receive the hash blocks
+     * @param littleEndian true to encode in a little endian way
+     * @param blockSize the maximum size of the content of a block
+     */
+    public HmacBlockOutputStream(byte [] key, OutputStream outputStream, boolean littleEndian, int blockSize) throws IOException {
         super(outputStream);
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
         this.key = key;
+        this.block = new byte[blockSize];
         this.byteOrder = littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
         if (this.byteOrder.equals(ByteOrder.LITTLE_ENDIAN)) {
             //noinspection UnstableApiUsage
@@ -73,33 +84,26 @@ public class HmacBlockOutputStream extends FilterOutputStream {
             throw new EOFException();
         }
         // clear unwritten data
-        flush();
+        save();
         // write final block
-        writeBlock(new byte [0]);
+        writeBlock(new byte [0], 0);
         // push the contents to disk etc.
         out.flush();
         out.close();
         isClosed = true;
     }
 
-    private void writeBlock(byte [] buffer) throws IOException {
-        final byte[] transformedKey = transformHmacKey(this.key, toBytes(nextSequenceNumber, byteOrder));
-        final Mac mac = getHMacSha256Instance(transformedKey);
-        mac.update(toBytes(nextSequenceNumber++, byteOrder));
-        mac.update(toBytes(buffer.length, byteOrder));
-        mac.update(buffer);
-        byte[] finalMac =  mac.doFinal();
-        output.write(finalMac);
+    private void writeBlock(byte [] buffer, int length) throws IOException {
+        output.write(HmacBlocks.computeHmac(key, nextSequenceNumber++, byteOrder, buffer, 0, length));
 
         // write the buffer's length
-        output.writeInt(buffer.length);
-        output.write(buffer);
-        out.flush();
+        output.writeInt(length);
+        output.write(buffer, 0, length);
     }
 
     /**
      * Writes to the internal buffer, and writes to the underlying output stream
-     * as necessary as {@link #BLOCK_SIZE} blocks
+     * as necessary as blocks of the block size
      * @param b the byte array to write
      * @param offset offset in the byte array
      * @param length number of bytes to write
@@ -110,10 +114,11 @@ public class HmacBlockOutputStream extends FilterOutputStream {
         }
 
         while (length > 0) {
-            int bytesToWrite = Math.min(BLOCK_SIZE - outputBuffer.size(), length);
-            outputBuffer.write(b, offset, bytesToWrite);
+            int bytesToWrite = Math.min(block.length - blockLength, length);
+            System.arraycopy(b, offset, block, blockLength, bytesToWrite);
+            blockLength += bytesToWrite;
 
-            if (outputBuffer.size() >= BLOCK_SIZE) {
+            if (blockLength == block.length) {
                 save();
             }
 
@@ -126,18 +131,22 @@ public class HmacBlockOutputStream extends FilterOutputStream {
      * Save the internal buffer to the underlying stream as a Hmac block
      */
     protected void save() throws IOException {
-        if (outputBuffer.size() == 0) {
+        if (blockLength == 0) {
             return;
         }
-        writeBlock(outputBuffer.toByteArray());
-        outputBuffer.reset();
+        writeBlock(block, blockLength);
+        blockLength = 0;
     }
 
     @Override
     public void write(int i) throws IOException {
-        byte[] buf = new byte[1];
-        buf[0] = (byte) i;
-        put(buf, 0, 1);
+        if (isClosed) {
+            throw new EOFException();
+        }
+        block[blockLength++] = (byte) i;
+        if (blockLength == block.length) {
+            save();
+        }
     }
 
     @Override
@@ -148,5 +157,6 @@ public class HmacBlockOutputStream extends FilterOutputStream {
     @Override
     public void flush() throws IOException {
         save();
+        out.flush();
     }
 }
\ No newline at end of file
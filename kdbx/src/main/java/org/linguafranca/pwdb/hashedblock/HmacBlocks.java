@@ -0,0 +1,82 @@
+package org.linguafranca.pwdb.hashedblock;
+
+import org.linguafranca.pwdb.security.Encryption;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+import static org.linguafranca.pwdb.kdbx.Helpers.toBytes;
+
+/**
+ * HMAC block calculation using a digest and a Mac per thread rather than per block
+ */
+final class HmacBlocks {
+
+    private static final ThreadLocal<MessageDigest> sha512 =
+            ThreadLocal.withInitial(Encryption::getSha512MessageDigestInstance);
+
+    private static final ThreadLocal<Mac> hmacSha256 = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance("HmacSHA256");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not supported", e);
+        }
+    });
+
+    private HmacBlocks() {
+    }
+
+    /**
+     * Calculate the HMAC of a block, as {@link Encryption#transformHmacKey} and {@link Encryption#getHMacSha256Instance}
+     *
+     * @param key         the HMAC key digest
+     * @param blockNumber the block number
+     * @param byteOrder   the byte order of the stream
+     * @param buffer      the block content
+     * @param offset      offset of the content in buffer
+     * @param length      length of the content
+     * @return the HMAC
+     */
+    static byte[] computeHmac(byte[] key, long blockNumber, ByteOrder byteOrder, byte[] buffer, int offset, int length) {
+        Mac mac = getMac(key, blockNumber, byteOrder);
+        mac.update(toBytes(blockNumber, byteOrder));
+        mac.update(toBytes(length, byteOrder));
+        mac.update(buffer, offset, length);
+        return mac.doFinal();
+    }
+
+    /**
+     * Calculate the HMAC of a block held in a ByteBuffer, without copying it
+     *
+     * @param key         the HMAC key digest
+     * @param blockNumber the block number
+     * @param byteOrder   the byte order of the stream
+     * @param content     the block content, from its position to its limit, which are consumed
+     * @return the HMAC
+     */
+    static byte[] computeHmac(byte[] key, long blockNumber, ByteOrder byteOrder, ByteBuffer content) {
+        Mac mac = getMac(key, blockNumber, byteOrder);
+        mac.update(toBytes(blockNumber, byteOrder));
+        mac.update(toBytes(content.remaining(), byteOrder));
+        mac.update(content);
+        return mac.doFinal();
+    }
+
+    /* the Mac for this thread initialised with the key for the block */
+    private static Mac getMac(byte[] key, long blockNumber, ByteOrder byteOrder) {
+        MessageDigest md = sha512.get();
+        md.update(toBytes(blockNumber, byteOrder));
+        byte[] transformedKey = md.digest(key);
+        Mac mac = hmacSha256.get();
+        try {
+            mac.init(new SecretKeySpec(transformedKey, "HmacSHA256"));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not supported", e);
+        }
+        return mac;
+    }
+}
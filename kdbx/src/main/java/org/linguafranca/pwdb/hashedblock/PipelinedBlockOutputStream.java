@@ -0,0 +1,167 @@
+package org.linguafranca.pwdb.hashedblock;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Base for block writers which hash and write completed blocks in the background.
+ * <p>
+ * Content is collected in one of two reusable buffers. When a buffer is full it is handed to
+ * {@link #writeBlock} on an {@link Executor}, while the other buffer is being filled. Blocks are
+ * written in order, one at a time. The underlying stream is flushed only on {@link #close()}.
+ * <p>
+ * An error writing a block is reported by a later write or by close.
+ */
+public abstract class PipelinedBlockOutputStream extends OutputStream {
+
+    protected final OutputStream outputStream;
+
+    private final Executor executor;
+    private final byte[][] buffers;
+    private final CompletableFuture<?>[] pending = new CompletableFuture<?>[2];
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+    private int current = 0;
+    private int count = 0;
+    private long nextBlockNumber = 0;
+    private boolean isClosed = false;
+
+    /**
+     * @param outputStream the output stream to receive the blocks
+     * @param blockSize    the maximum size of the content of a block
+     * @param executor     an executor to write blocks on, or null to write on the calling thread
+     */
+    protected PipelinedBlockOutputStream(OutputStream outputStream, int blockSize, Executor executor) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.outputStream = outputStream;
+        this.executor = executor;
+        this.buffers = new byte[][]{new byte[blockSize], new byte[blockSize]};
+    }
+
+    /**
+     * Write a block to {@link #outputStream}. Called for each block in order, not necessarily on the same thread.
+     *
+     * @param blockNumber the block number, starting from 0
+     * @param buffer      the content
+     * @param length      the length of the content
+     */
+    protected abstract void writeBlock(long blockNumber, byte[] buffer, int length) throws IOException;
+
+    /**
+     * Write whatever terminates the stream of blocks
+     *
+     * @param blockNumber the number of the block following the last
+     */
+    protected abstract void writeEnd(long blockNumber) throws IOException;
+
+    @Override
+    public void write(int i) throws IOException {
+        if (isClosed) {
+            throw new EOFException();
+        }
+        buffers[current][count++] = (byte) i;
+        if (count == buffers[current].length) {
+            submit();
+        }
+    }
+
+    @Override
+    public void write(@NotNull byte[] b, int offset, int length) throws IOException {
+        if (isClosed) {
+            throw new EOFException();
+        }
+        while (length > 0) {
+            byte[] buffer = buffers[current];
+            int bytesToWrite = Math.min(buffer.length - count, length);
+            System.arraycopy(b, offset, buffer, count, bytesToWrite);
+            count += bytesToWrite;
+            if (count == buffer.length) {
+                submit();
+            }
+            offset += bytesToWrite;
+            length -= bytesToWrite;
+        }
+    }
+
+    /**
+     * Hand the current buffer to be written and wait for the other to be free
+     */
+    private void submit() throws IOException {
+        final byte[] buffer = buffers[current];
+        final int length = count;
+        final long blockNumber = nextBlockNumber++;
+        pending[current] = then(() -> writeBlock(blockNumber, buffer, length));
+        current ^= 1;
+        count = 0;
+        if (pending[current] != null) {
+            await(pending[current]);
+            pending[current] = null;
+        }
+    }
+
+    private interface BlockWriter {
+        void write() throws IOException;
+    }
+
+    private CompletableFuture<Void> then(BlockWriter writer) {
+        Runnable runnable = () -> {
+            try {
+                writer.write();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        tail = executor == null ? tail.thenRun(runnable) : tail.thenRunAsync(runnable, executor);
+        return tail;
+    }
+
+    private static void await(CompletableFuture<?> future) throws IOException {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException("Block writing failed", e.getCause());
+        } catch (CancellationException e) {
+            throw new IOException("Block writing cancelled", e);
+        }
+    }
+
+    /**
+     * Blocks are written only when full or on close, so this does nothing
+     */
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            throw new EOFException();
+        }
+        isClosed = true;
+        try {
+            if (count > 0) {
+                final byte[] buffer = buffers[current];
+                final int length = count;
+                final long blockNumber = nextBlockNumber++;
+                then(() -> writeBlock(blockNumber, buffer, length));
+            }
+            final long endBlockNumber = nextBlockNumber;
+            await(then(() -> writeEnd(endBlockNumber)));
+            outputStream.flush();
+        } finally {
+            outputStream.close();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.linguafranca.pwdb.hashedblock;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Executor;
+
+/**
+ * Formats a stream of data as Hashed Blocks, see {@link HashedBlockOutputStream}, hashing and writing
+ * completed blocks in the background while the next is being filled.
+ */
+public class PipelinedHashedBlockOutputStream extends PipelinedBlockOutputStream {
+
+    private static final int HASH_SIZE = 32;
+
+    private final MessageDigest sha256;
+    private final ByteBuffer header;
+
+    /**
+     * Create a Hash Block Output Stream
+     *
+     * @param outputStream the output stream to receive the hash blocks
+     * @param littleEndian true to encode in a little endian way
+     * @param blockSize    the maximum size of the content of a block
+     * @param executor     an executor to hash and write blocks on, or null to do so on the calling thread
+     */
+    public PipelinedHashedBlockOutputStream(OutputStream outputStream, boolean littleEndian, int blockSize, Executor executor) {
+        super(outputStream, blockSize, executor);
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        header = ByteBuffer.allocate(4 + HASH_SIZE + 4)
+                .order(littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+    }
+
+    @Override
+    protected void writeBlock(long blockNumber, byte[] buffer, int length) throws IOException {
+        sha256.update(buffer, 0, length);
+        writeHeader(blockNumber, sha256.digest(), length);
+        outputStream.write(buffer, 0, length);
+    }
+
+    @Override
+    protected void writeEnd(long blockNumber) throws IOException {
+        writeHeader(blockNumber, new byte[HASH_SIZE], 0);
+    }
+
+    private void writeHeader(long blockNumber, byte[] hash, int length) throws IOException {
+        header.clear();
+        header.putInt((int) blockNumber).put(hash).putInt(length);
+        outputStream.write(header.array());
+    }
+}
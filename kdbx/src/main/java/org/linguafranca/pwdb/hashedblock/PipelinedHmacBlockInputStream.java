@@ -0,0 +1,206 @@
+package org.linguafranca.pwdb.hashedblock;
+
+import com.google.common.io.LittleEndianDataInputStream;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Provides the content of a stream of HMAC Hashed Blocks, verifying blocks ahead of their being read.
+ * <p>
+ * The stream format is as for {@link HmacBlockInputStream}. A number of blocks are read ahead
+ * from the underlying stream and their HMACs verified concurrently on an {@link Executor}, so that
+ * verification of later blocks takes place while earlier blocks are being consumed, e.g. decrypted.
+ * <p>
+ * No content of a block is provided before it has been verified. As with {@link HmacBlockInputStream}
+ * a block whose HMAC does not match causes an {@link IllegalStateException}.
+ */
+public class PipelinedHmacBlockInputStream extends FilterInputStream {
+
+    public static final int DEFAULT_BLOCKS_AHEAD = 4;
+
+    private final ByteOrder byteOrder;
+    private final byte[] key;
+    private final DataInput input;
+    private final Executor executor;
+    private final int blocksAhead;
+    private final Deque<CompletableFuture<byte[]>> blocks = new ArrayDeque<>();
+
+    private long blockCount = 0;
+    private boolean endOfBlocks = false;
+    private byte[] current = new byte[0];
+    private int currentPosition = 0;
+
+    /**
+     * Create an HMac Block input stream which verifies blocks ahead
+     *
+     * @param key          the key digest
+     * @param inputStream  the stream to process
+     * @param littleEndian true if the stream is little endian
+     * @param executor     an executor to verify blocks on, or null to verify on the calling thread
+     */
+    public PipelinedHmacBlockInputStream(byte[] key, InputStream inputStream, boolean littleEndian, Executor executor) {
+        this(key, inputStream, littleEndian, executor, DEFAULT_BLOCKS_AHEAD);
+    }
+
+    /**
+     * Create an HMac Block input stream which verifies blocks ahead
+     *
+     * @param key          the key digest
+     * @param inputStream  the stream to process
+     * @param littleEndian true if the stream is little endian
+     * @param executor     an executor to verify blocks on, or null to verify on the calling thread
+     * @param blocksAhead  the number of blocks to read and verify ahead of the current block
+     */
+    public PipelinedHmacBlockInputStream(byte[] key, InputStream inputStream, boolean littleEndian, Executor executor, int blocksAhead) {
+        super(inputStream);
+        if (blocksAhead < 1) {
+            throw new IllegalArgumentException("Blocks ahead must be at least 1");
+        }
+        this.byteOrder = littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        this.key = key;
+        if (littleEndian) {
+            input = new LittleEndianDataInputStream(in);
+        } else {
+            input = new DataInputStream(in);
+        }
+        this.executor = executor;
+        this.blocksAhead = blocksAhead;
+    }
+
+    /**
+     * Read blocks up to the read ahead limit or the terminating empty block
+     */
+    private void readAhead() throws IOException {
+        while (!endOfBlocks && blocks.size() < blocksAhead) {
+            // get the HMAC
+            byte[] hmacSha256 = new byte[32];
+            input.readFully(hmacSha256);
+
+            // get the block size
+            int blockSize = input.readInt();
+            if (blockSize < 0) {
+                throw new IOException("Invalid block size " + blockSize);
+            }
+            endOfBlocks = blockSize == 0;
+
+            // read the new block
+            byte[] buffer = new byte[blockSize];
+            input.readFully(buffer);
+
+            final long blockNumber = blockCount++;
+            CompletableFuture<byte[]> block = executor == null ?
+                    CompletableFuture.completedFuture(verify(buffer, blockNumber, hmacSha256)) :
+                    CompletableFuture.supplyAsync(() -> verify(buffer, blockNumber, hmacSha256), executor);
+            blocks.addLast(block);
+        }
+    }
+
+    private byte[] verify(byte[] buffer, long blockNumber, byte[] hmacSha256) {
+        if (!Arrays.equals(HmacBlocks.computeHmac(key, blockNumber, byteOrder, buffer, 0, buffer.length), hmacSha256)) {
+            throw new IllegalStateException("Block HMAC does not match");
+        }
+        return buffer;
+    }
+
+    /**
+     * Make the next verified block current
+     *
+     * @return false if there are no more blocks
+     */
+    private boolean nextBlock() throws IOException {
+        while (currentPosition == current.length) {
+            readAhead();
+            CompletableFuture<byte[]> block = blocks.pollFirst();
+            if (block == null) {
+                return false;
+            }
+            try {
+                current = block.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IOException("Block verification failed", e.getCause());
+            } catch (CancellationException e) {
+                throw new IOException("Block verification cancelled", e);
+            }
+            currentPosition = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public int read(@NotNull byte[] b) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextBlock()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - currentPosition);
+        System.arraycopy(current, currentPosition, b, off, count);
+        currentPosition += count;
+        return count;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlock()) {
+            return -1;
+        }
+        return current[currentPosition++] & 0xFF;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && nextBlock()) {
+            int count = (int) Math.min(n - skipped, current.length - currentPosition);
+            currentPosition += count;
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return current.length - currentPosition;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (CompletableFuture<byte[]> block : blocks) {
+            block.cancel(false);
+        }
+        blocks.clear();
+        super.close();
+    }
+}
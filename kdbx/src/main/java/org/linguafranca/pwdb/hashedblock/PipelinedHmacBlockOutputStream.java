@@ -0,0 +1,47 @@
+package org.linguafranca.pwdb.hashedblock;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.Executor;
+
+/**
+ * Formats a stream of data as HMAC Hashed Blocks, see {@link HmacBlockOutputStream}, calculating
+ * HMACs and writing completed blocks in the background while the next is being filled.
+ */
+public class PipelinedHmacBlockOutputStream extends PipelinedBlockOutputStream {
+
+    private final byte[] key;
+    private final ByteOrder byteOrder;
+    private final ByteBuffer header;
+
+    /**
+     * Create an HMac Block Output Stream
+     *
+     * @param key          the HMAC key digest
+     * @param outputStream the output stream to receive the blocks
+     * @param littleEndian true to encode in a little endian way
+     * @param blockSize    the maximum size of the content of a block
+     * @param executor     an executor to calculate HMACs and write blocks on, or null to do so on the calling thread
+     */
+    public PipelinedHmacBlockOutputStream(byte[] key, OutputStream outputStream, boolean littleEndian, int blockSize, Executor executor) {
+        super(outputStream, blockSize, executor);
+        this.key = key;
+        this.byteOrder = littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        this.header = ByteBuffer.allocate(32 + 4).order(byteOrder);
+    }
+
+    @Override
+    protected void writeBlock(long blockNumber, byte[] buffer, int length) throws IOException {
+        header.clear();
+        header.put(HmacBlocks.computeHmac(key, blockNumber, byteOrder, buffer, 0, length)).putInt(length);
+        outputStream.write(header.array());
+        outputStream.write(buffer, 0, length);
+    }
+
+    @Override
+    protected void writeEnd(long blockNumber) throws IOException {
+        writeBlock(blockNumber, new byte[0], 0);
+    }
+}
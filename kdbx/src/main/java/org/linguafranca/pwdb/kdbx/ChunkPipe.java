@@ -0,0 +1,182 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * A bounded ring of reusable byte chunks connecting two threads of a {@link KdbxLoadPipeline}.
+ * <p>
+ * The producing thread {@link #pump pumps} a stream into chunks taken from the free queue and
+ * passes them to the full queue, the consuming thread reads them via {@link #getInputStream()} and
+ * returns them to the free queue. The end of the stream, or an error, is passed on as a chunk too.
+ */
+class ChunkPipe {
+
+    private static final class Chunk {
+        final byte[] data;
+        int length;
+        Throwable error;
+
+        Chunk(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    private static final Chunk END = new Chunk(new byte[0]);
+
+    private final BlockingQueue<Chunk> free;
+    private final BlockingQueue<Chunk> full;
+    private final Supplier<KdbxLoadPipeline.Stage> consumer;
+
+    /**
+     * @param chunkSize the size of a chunk
+     * @param chunks    the number of chunks
+     * @param consumer  the stage which reads the pipe, to record time waiting for input
+     */
+    ChunkPipe(int chunkSize, int chunks, Supplier<KdbxLoadPipeline.Stage> consumer) {
+        this.free = new ArrayBlockingQueue<>(chunks);
+        // room for the end or an error as well as all the chunks
+        this.full = new ArrayBlockingQueue<>(chunks + 1);
+        this.consumer = consumer;
+        for (int i = 0; i < chunks; i++) {
+            free.add(new Chunk(new byte[chunkSize]));
+        }
+    }
+
+    /**
+     * Copy a stream into the pipe until its end, an error or interruption
+     *
+     * @param source   the stream to read
+     * @param producer the stage doing so, to record time waiting for output
+     */
+    void pump(InputStream source, KdbxLoadPipeline.Stage producer) {
+        try {
+            while (true) {
+                long start = System.nanoTime();
+                Chunk chunk = free.take();
+                producer.outputWaitNanos += System.nanoTime() - start;
+                int length = source.read(chunk.data, 0, chunk.data.length);
+                if (length < 0) {
+                    free.add(chunk);
+                    // finished before the consumer can see the end
+                    producer.finish();
+                    full.put(END);
+                    return;
+                }
+                chunk.length = length;
+                producer.bytes += length;
+                full.put(chunk);
+            }
+        } catch (InterruptedException e) {
+            // cancelled, the consumer has gone away
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            Chunk error = new Chunk(new byte[0]);
+            error.error = e;
+            producer.finish();
+            full.offer(error);
+        }
+    }
+
+    /**
+     * The stream of the content of the pipe, to be read by a single thread
+     */
+    InputStream getInputStream() {
+        return new InputStream() {
+            private Chunk current = null;
+            private int position = 0;
+
+            /* make the next chunk current, false at the end */
+            private boolean nextChunk() throws IOException {
+                while (true) {
+                    if (current == END) {
+                        return false;
+                    }
+                    if (current != null) {
+                        if (current.error != null) {
+                            rethrow(current.error);
+                        }
+                        if (position < current.length) {
+                            return true;
+                        }
+                        free.add(current);
+                        current = null;
+                    }
+                    long start = System.nanoTime();
+                    try {
+                        current = full.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted waiting for input");
+                    } finally {
+                        consumer.get().inputWaitNanos += System.nanoTime() - start;
+                    }
+                    position = 0;
+                }
+            }
+
+            @Override
+            public int read() throws IOException {
+                if (!nextChunk()) {
+                    return -1;
+                }
+                return current.data[position++] & 0xFF;
+            }
+
+            @Override
+            public int read(@NotNull byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!nextChunk()) {
+                    return -1;
+                }
+                int count = Math.min(len, current.length - position);
+                System.arraycopy(current.data, position, b, off, count);
+                position += count;
+                return count;
+            }
+
+            @Override
+            public int available() {
+                return current == null || current == END ? 0 : current.length - position;
+            }
+        };
+    }
+
+    /* the consumer sees the same exception as it would have without the pipe */
+    private static void rethrow(Throwable error) throws IOException {
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        throw new IOException(error);
+    }
+}
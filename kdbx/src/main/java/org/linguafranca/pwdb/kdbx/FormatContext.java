@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx;
+
+import java.util.Date;
+
+/**
+ * The format of the KDBX stream being read or written, passed explicitly to the
+ * converters of a serializer, in place of the thread local {@link Helpers#isV4}.
+ */
+public final class FormatContext {
+
+    public static final FormatContext V3 = new FormatContext(3);
+    public static final FormatContext V4 = new FormatContext(4);
+
+    private final int version;
+
+    private FormatContext(int version) {
+        this.version = version;
+    }
+
+    /**
+     * Implemented by serializable databases that pass the format to their converters
+     */
+    public interface Aware {
+        /**
+         * Set the format of the stream about to be loaded or saved
+         *
+         * @param formatContext the format
+         */
+        void setFormatContext(FormatContext formatContext);
+    }
+
+    /**
+     * The context for a major KDBX version
+     *
+     * @param version 3 or 4
+     * @return a context
+     */
+    public static FormatContext forVersion(int version) {
+        switch (version) {
+            case 3:
+                return V3;
+            case 4:
+                return V4;
+            default:
+                throw new IllegalArgumentException("Unknown KDBX version " + version);
+        }
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public boolean isV4() {
+        return version == 4;
+    }
+
+    /**
+     * Format a timestamp, ISO-8601 for V3, base64 encoded seconds for V4
+     */
+    public String fromDate(Date value) {
+        return isV4() ? TimestampCodec.encodeV4(value) : TimestampCodec.encodeV3(value);
+    }
+
+    /**
+     * Parse a timestamp in either format
+     */
+    public Date toDate(CharSequence value) {
+        return TimestampCodec.decode(value);
+    }
+
+    @Override
+    public String toString() {
+        return "KDBX V" + version;
+    }
+}
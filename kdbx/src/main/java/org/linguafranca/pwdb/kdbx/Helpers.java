@@ -26,9 +26,8 @@ import java.io.IOException;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.time.*;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.Date;
 import java.util.UUID;
 import java.util.zip.GZIPInputStream;
@@ -42,7 +41,10 @@ public class Helpers {
     /**
      *  Oftentimes we have no way of communicating which version we are using, say in an adapter that
      *  is buried deep in the internals of JAXB marshalling
+     *  @deprecated the version is passed to serializers in a {@link FormatContext}, this is
+     *  set for the benefit of those that are not {@link FormatContext.Aware}
      */
+    @Deprecated
     public static ThreadLocal<Boolean> isV4 = ThreadLocal.withInitial(() -> false);
 
     public static String base64FromUuid(UUID uuid) {
@@ -103,36 +105,24 @@ public class Helpers {
 
     // in V3 this is just a date, in V4 it's a base64 encoded serial number of seconds after the base date above
     public static Date toDate(String value) {
-        try {
-            ZonedDateTime zdt = ZonedDateTime.parse(value);
-            Instant instant = zdt.toInstant();
-            return Date.from(instant);
-        } catch (DateTimeParseException e) {
-               // let's see if it is a V4 date
-        }
-        // V4 dates are base 64 encoded seconds since baseDate
-        byte [] b = decodeBase64Content(value.getBytes());
-        long secondsSinceBaseDate = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN).getLong();
-        Instant instant = Instant.ofEpochSecond(secondsSinceBaseDate + baseDate.getTime()/1000);
-        return Date.from(instant);
+        return TimestampCodec.decode(value);
     }
 
     /**
      * Formats the value according to the value of {@link Helpers#isV4}
      * @param value a date
      * @return a formatted date
+     * @deprecated use {@link FormatContext#fromDate(Date)}
      */
+    @Deprecated
     public static String fromDate(Date value) {
         return isV4.get() ? fromDateV4(value) : fromDateV3(value);
     }
     public static String fromDateV3(Date value) {
-        return dateTimeFormatter.format(value.toInstant().atZone(ZoneId.of("Z")));
+        return TimestampCodec.encodeV3(value);
     }
     public static String fromDateV4(Date value) {
-        long keepassInstant = value.toInstant().toEpochMilli() - baseDate.getTime();
-        long secondsSinceBaseDate = keepassInstant / 1000;
-        byte []  asBytes = toBytes(secondsSinceBaseDate, ByteOrder.LITTLE_ENDIAN);
-        return encodeBase64Content(asBytes);
+        return TimestampCodec.encodeV4(value);
     }
 
 
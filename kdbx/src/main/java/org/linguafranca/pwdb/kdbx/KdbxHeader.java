@@ -16,6 +16,7 @@
 
 package org.linguafranca.pwdb.kdbx;
 
+import org.linguafranca.pwdb.BinaryPool;
 import org.linguafranca.pwdb.Credentials;
 import org.linguafranca.pwdb.StreamConfiguration;
 import org.linguafranca.pwdb.security.*;
@@ -24,15 +25,14 @@ import javax.crypto.Mac;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
-
-import static org.linguafranca.pwdb.security.Encryption.getSha256MessageDigestInstance;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
 
 /**
  * This class represents the header portion of a KeePass KDBX file or stream. The header is received in
@@ -55,6 +55,9 @@ public class KdbxHeader implements StreamConfiguration {
         NONE, GZIP
     }
 
+    /* the parallel AES stream needs JCE AES, which cannot appear or disappear while running, so probe it once */
+    private static final boolean JCE_AES_AVAILABLE = new JceAes().isAvailable();
+
     private final List<Integer> allowableVersions = new ArrayList<>(Arrays.asList(3, 4));
 
 
@@ -93,6 +96,9 @@ public class KdbxHeader implements StreamConfiguration {
     */
     List<byte[]> binaries = new ArrayList<>();
 
+    /* V4 when set binaries are read into and written from here rather than the list above */
+    private BinaryPool binaryPool;
+
     /* V3 not transmitted as part of the header, used in the XML payload, so calculated
      * on transmission or receipt */
     private byte[] headerHash;
@@ -100,6 +106,19 @@ public class KdbxHeader implements StreamConfiguration {
     /* the bytes that compose the outer header, required for V4 to calculate the HMac */
     private byte[] headerBytes;
 
+    /* not part of the file format, executor for parallel payload encryption, decryption and verification, null for none */
+    private Executor cipherExecutor;
+
+    /* not part of the file format, maximum size of the content of hashed or HMAC blocks when writing, 0 for the default */
+    private int blockSize = 0;
+
+    /* not part of the file format, pipeline for loading, null for none */
+    private KdbxLoadPipeline loadPipeline;
+
+    /* not part of the file format, Deflater level and strategy for GZIP compression when writing */
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private int compressionStrategy = Deflater.DEFAULT_STRATEGY;
+
     // Make static and try to use SHA1PRNG per
     // https://stackoverflow.com/questions/137212/how-to-deal-with-a-slow-securerandom-generator
     // and comment on issue #12. If you don't like this then you can of course set this
@@ -112,6 +131,10 @@ public class KdbxHeader implements StreamConfiguration {
             random = new SecureRandom();
         }
     }
+
+    // opt-in cache of transformed keys, see setTransformedKeyCache
+    private static volatile TransformedKeyCache transformedKeyCache;
+
     /**
      * Provides for choice of version number and crypto options for V3 and V4
      */
@@ -204,10 +227,7 @@ public class KdbxHeader implements StreamConfiguration {
      * @return the digest
      */
     public byte[] getHmacKey(Credentials credentials) {
-        MessageDigest md = Encryption.getSha512MessageDigestInstance();
-        md.update(getMasterSeed());
-        md.update(getTransformedKeyDigest(credentials.getKey()));
-        return md.digest(new byte[]{1});
+        return new KdbxKeySchedule(this, credentials).getHmacKey();
     }
 
     /**
@@ -233,12 +253,25 @@ public class KdbxHeader implements StreamConfiguration {
      * @return a decrypted stream
      */
     public InputStream createDecryptedStream(byte[] digest, InputStream inputStream) {
-        // return digest of master seed and hash
-        MessageDigest md = getSha256MessageDigestInstance();
-        md.update(masterSeed);
-        byte[] finalKeyDigest = md.digest(getTransformedKeyDigest(digest));
+        return createDecryptedStream(new KdbxKeySchedule(this, digest), inputStream);
+    }
+
+    /**
+     * Create a decrypted input stream using the cipher key of a key schedule already computed for this header
+     *
+     * @param keySchedule the key schedule
+     * @param inputStream the encrypted input stream
+     * @return a decrypted stream
+     */
+    public InputStream createDecryptedStream(KdbxKeySchedule keySchedule, InputStream inputStream) {
+        if (cipherExecutor != null && cipherUuid.equals(Aes.getInstance().getCipherUuid()) && JCE_AES_AVAILABLE) {
+            return new ParallelAesCbcInputStream(inputStream, keySchedule.getCipherKey(), encryptionIv, cipherExecutor);
+        }
+        if (cipherExecutor != null && cipherUuid.equals(ChaCha.getInstance().getCipherUuid())) {
+            return new ParallelChaChaInputStream(inputStream, keySchedule.getCipherKey(), encryptionIv, cipherExecutor);
+        }
         CipherAlgorithm ca = Encryption.Cipher.getCipherAlgorithm(cipherUuid);
-        return ca.getDecryptedInputStream(inputStream, finalKeyDigest, encryptionIv);
+        return ca.getDecryptedInputStream(inputStream, keySchedule.getCipherKey(), encryptionIv);
     }
 
     public StreamEncryptor getInnerStreamEncryptor() {
@@ -251,12 +284,38 @@ public class KdbxHeader implements StreamConfiguration {
      * @return the transformed digest
      */
     public byte[] getTransformedKeyDigest(byte[] digest) {
+        TransformedKeyCache cache = transformedKeyCache;
         // v3 doesn't have a kdf therefore AES
         if (kdfParameters == null) {
-            return Aes.getTransformedKey(digest, transformSeed, transformRounds);
+            if (cache == null) {
+                return Aes.getTransformedKey(digest, transformSeed, transformRounds);
+            }
+            VariantDictionary v3Parameters = Aes.getInstance().createKdfParameters();
+            v3Parameters.putByteArray(Aes.KdfKeys.ParamSeed, transformSeed);
+            v3Parameters.putULong(Aes.KdfKeys.ParamRounds, transformRounds);
+            return cache.getTransformedKey(digest, v3Parameters,
+                    () -> Aes.getTransformedKey(digest, transformSeed, transformRounds));
         }
         KeyDerivationFunction kdf = Encryption.KeyDerivationFunction.getKdf(kdfParameters.mustGet("$UUID").asUuid());
-        return kdf.getTransformedKey(digest, kdfParameters);
+        if (cache == null) {
+            return kdf.getTransformedKey(digest, kdfParameters);
+        }
+        return cache.getTransformedKey(digest, kdfParameters, () -> kdf.getTransformedKey(digest, kdfParameters));
+    }
+
+    /**
+     * Set a cache to be used by all headers for the results of key derivation, null (the default) for no caching
+     * @param cache a cache or null
+     */
+    public static void setTransformedKeyCache(TransformedKeyCache cache) {
+        transformedKeyCache = cache;
+    }
+
+    /**
+     * The cache for the results of key derivation, if any
+     */
+    public static TransformedKeyCache getTransformedKeyCache() {
+        return transformedKeyCache;
     }
 
     /**
@@ -268,11 +327,21 @@ public class KdbxHeader implements StreamConfiguration {
      * @return an output stream to write unencrypted data to
      */
     public OutputStream createEncryptedStream(byte[] digest, OutputStream outputStream) {
-        // return digest of master seed and hash
-        MessageDigest md = getSha256MessageDigestInstance();
-        md.update(masterSeed);
-        byte[] finalKeyDigest = md.digest(getTransformedKeyDigest(digest));
-        return cipherAlgorithm.getEncryptedOutputStream(outputStream, finalKeyDigest, getEncryptionIv());
+        return createEncryptedStream(new KdbxKeySchedule(this, digest), outputStream);
+    }
+
+    /**
+     * Create an unencrypted outputStream using the cipher key of a key schedule already computed for this header
+     *
+     * @param keySchedule  the key schedule
+     * @param outputStream the output stream which is the destination for encrypted data
+     * @return an output stream to write unencrypted data to
+     */
+    public OutputStream createEncryptedStream(KdbxKeySchedule keySchedule, OutputStream outputStream) {
+        if (cipherExecutor != null && cipherUuid.equals(ChaCha.getInstance().getCipherUuid())) {
+            return new ParallelChaChaOutputStream(outputStream, keySchedule.getCipherKey(), getEncryptionIv(), cipherExecutor);
+        }
+        return cipherAlgorithm.getEncryptedOutputStream(outputStream, keySchedule.getCipherKey(), getEncryptionIv());
     }
 
     //<editor-fold desc="Getters/ Setters">
@@ -401,7 +470,7 @@ public class KdbxHeader implements StreamConfiguration {
     }
 
     public void setCipherUuid(UUID uuid) {
-        if (!uuid.equals(Aes.getInstance().getCipherUuid()) && !uuid.equals(ChaCha.getInstance().getCipherUuid())) {
+        if (!CipherAlgorithmRegistry.isKnown(uuid)) {
             throw new IllegalStateException("Unknown Cipher UUID " + uuid);
         }
         this.cipherUuid = uuid;
@@ -444,6 +513,18 @@ public class KdbxHeader implements StreamConfiguration {
         return binaries;
     }
 
+    /**
+     * V4 binaries from the inner header are streamed into and out of this pool, when set,
+     * rather than being held in {@link #getBinaries()}
+     */
+    public BinaryPool getBinaryPool() {
+        return binaryPool;
+    }
+
+    public void setBinaryPool(BinaryPool binaryPool) {
+        this.binaryPool = binaryPool;
+    }
+
     /**
      * V4 provide access to the header as bytes for verification
      */
@@ -459,5 +540,93 @@ public class KdbxHeader implements StreamConfiguration {
         System.arraycopy(headerBytes, 0, copy, 0, headerBytes.length);
         this.headerBytes = copy;
     }
+
+    /**
+     * An executor for parallel decryption, encryption and verification of the payload, null (the default) for none.
+     * Currently AES decryption, ChaCha20 decryption and encryption, V4 HMAC block verification and GZIP
+     * compression are parallel, and hashed and HMAC blocks are written in the background.
+     */
+    public Executor getCipherExecutor() {
+        return cipherExecutor;
+    }
+
+    /**
+     * Set an executor for parallel decryption, encryption and verification of the payload
+     * @param cipherExecutor an executor, null for none
+     */
+    public void setCipherExecutor(Executor cipherExecutor) {
+        this.cipherExecutor = cipherExecutor;
+    }
+
+    /**
+     * The maximum size of the content of hashed blocks (V3) or HMAC blocks (V4) when writing,
+     * 0 (the default) for the default of the block writer
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Set the maximum size of the content of hashed or HMAC blocks when writing
+     * @param blockSize a positive size, or 0 for the default
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize < 0) {
+            throw new IllegalArgumentException("Block size must not be negative");
+        }
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * A pipeline to run the stages of loading on separate threads, null (the default) for none
+     */
+    public KdbxLoadPipeline getLoadPipeline() {
+        return loadPipeline;
+    }
+
+    /**
+     * Set a pipeline to run the stages of loading on separate threads, and report on them
+     * @param loadPipeline a pipeline, null for none
+     */
+    public void setLoadPipeline(KdbxLoadPipeline loadPipeline) {
+        this.loadPipeline = loadPipeline;
+    }
+
+    /**
+     * The {@link Deflater} level for GZIP compression when writing, default {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Set the level for GZIP compression when writing
+     * @param compressionLevel a {@link Deflater} level, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if ((compressionLevel < 0 || compressionLevel > 9) && compressionLevel != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * The {@link Deflater} strategy for GZIP compression when writing, default {@link Deflater#DEFAULT_STRATEGY}
+     */
+    public int getCompressionStrategy() {
+        return compressionStrategy;
+    }
+
+    /**
+     * Set the strategy for GZIP compression when writing
+     * @param compressionStrategy {@link Deflater#DEFAULT_STRATEGY}, {@link Deflater#FILTERED} or {@link Deflater#HUFFMAN_ONLY}
+     */
+    public void setCompressionStrategy(int compressionStrategy) {
+        if (compressionStrategy != Deflater.DEFAULT_STRATEGY && compressionStrategy != Deflater.FILTERED
+                && compressionStrategy != Deflater.HUFFMAN_ONLY) {
+            throw new IllegalArgumentException("Invalid compression strategy " + compressionStrategy);
+        }
+        this.compressionStrategy = compressionStrategy;
+    }
     //</editor-fold>
 }
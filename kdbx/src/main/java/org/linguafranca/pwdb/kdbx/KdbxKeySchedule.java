@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx;
+
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.security.Encryption;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * The keys derived from a set of credentials for a single load or save of a KDBX stream.
+ * <p>
+ * The key derivation function is by design expensive (Argon2 in particular takes a lot of time and memory)
+ * and the transformed key it produces is needed in several places: the final key for the payload cipher,
+ * and in V4 the base key for the HMAC blocks and the header HMAC. A schedule runs the KDF exactly once,
+ * when it is constructed, derives the other keys from the result and then discards the transformed key.
+ * <p>
+ * The master seed and KDF parameters are taken from the {@link KdbxHeader} at construction, so on load
+ * the schedule must be created after the outer header has been read, and on save after the header
+ * has been set up.
+ * <p>
+ * From "KdbxFile.cs ComputeKeys"
+ */
+public class KdbxKeySchedule {
+
+    private final byte[] cipherKey;
+    private final byte[] hmacKey;
+    private boolean destroyed = false;
+
+    /**
+     * Create a key schedule
+     * @param kdbxHeader the header supplying master seed and key derivation parameters
+     * @param credentials the credentials
+     */
+    public KdbxKeySchedule(KdbxHeader kdbxHeader, Credentials credentials) {
+        this(kdbxHeader, credentials.getKey());
+    }
+
+    /**
+     * Create a key schedule
+     * @param kdbxHeader the header supplying master seed and key derivation parameters
+     * @param digest the digest of the composite credentials, see {@link Credentials#getKey()}
+     */
+    public KdbxKeySchedule(KdbxHeader kdbxHeader, byte[] digest) {
+        byte[] transformedKey = kdbxHeader.getTransformedKeyDigest(digest);
+        try {
+            MessageDigest md = Encryption.getSha256MessageDigestInstance();
+            md.update(kdbxHeader.getMasterSeed());
+            cipherKey = md.digest(transformedKey);
+
+            MessageDigest md512 = Encryption.getSha512MessageDigestInstance();
+            md512.update(kdbxHeader.getMasterSeed());
+            md512.update(transformedKey);
+            hmacKey = md512.digest(new byte[]{1});
+        } finally {
+            Arrays.fill(transformedKey, (byte) 0);
+        }
+    }
+
+    /**
+     * The key for the payload cipher, i.e. SHA-256 of master seed and transformed key
+     */
+    public byte[] getCipherKey() {
+        checkNotDestroyed();
+        return cipherKey;
+    }
+
+    /**
+     * V4 the key from which block and header HMAC keys are derived,
+     * i.e. SHA-512 of master seed, transformed key and the byte 1
+     */
+    public byte[] getHmacKey() {
+        checkNotDestroyed();
+        return hmacKey;
+    }
+
+    /**
+     * Overwrite the keys held by this schedule. HMAC block streams created from the schedule
+     * refer to its HMAC key, so destroy only once they have been closed. {@link KdbxSerializer}
+     * does this for the schedules it creates when the stream it returns is closed.
+     */
+    public void destroy() {
+        Arrays.fill(cipherKey, (byte) 0);
+        Arrays.fill(hmacKey, (byte) 0);
+        destroyed = true;
+    }
+
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+
+    private void checkNotDestroyed() {
+        if (destroyed) {
+            throw new IllegalStateException("Key schedule has been destroyed");
+        }
+    }
+}
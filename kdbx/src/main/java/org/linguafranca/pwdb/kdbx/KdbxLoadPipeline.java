@@ -0,0 +1,239 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opt-in pipelined loading of KDBX streams.
+ * <p>
+ * When set on a {@link KdbxHeader} using {@link KdbxHeader#setLoadPipeline}, {@link KdbxSerializer#createUnencryptedInputStream}
+ * runs each stage of loading - reading blocks, decryption and inflation - on its own thread, so that they overlap
+ * with each other and with parsing, which remains on the calling thread. Stages are connected by bounded
+ * rings of reusable chunks.
+ * <p>
+ * After a load, {@link #getStages()} reports the time each stage spent busy and waiting for input or
+ * for room for its output, to show which is the bottleneck. Closing the loaded stream stops any stages still
+ * running and waits for them. A pipeline should be used for one load at a time.
+ */
+public class KdbxLoadPipeline {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final int DEFAULT_CHUNKS = 8;
+
+    /**
+     * Statistics for a stage of the pipeline
+     */
+    public static class Stage {
+        private final String name;
+        private final long startNanos = System.nanoTime();
+        private volatile long endNanos;
+        volatile long inputWaitNanos;
+        volatile long outputWaitNanos;
+        volatile long bytes;
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return time spent waiting for the previous stage
+         */
+        public long getInputWaitNanos() {
+            return inputWaitNanos;
+        }
+
+        /**
+         * @return time spent waiting for the next stage to make room
+         */
+        public long getOutputWaitNanos() {
+            return outputWaitNanos;
+        }
+
+        /**
+         * @return time spent working, so far if the stage has not finished
+         */
+        public long getBusyNanos() {
+            long end = endNanos == 0 ? System.nanoTime() : endNanos;
+            return Math.max(0, end - startNanos - inputWaitNanos - outputWaitNanos);
+        }
+
+        /**
+         * @return the number of bytes output by the stage, 0 for the final stage
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public boolean isFinished() {
+            return endNanos != 0;
+        }
+
+        void finish() {
+            if (endNanos == 0) {
+                endNanos = System.nanoTime();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name + ": busy " + TimeUnit.NANOSECONDS.toMillis(getBusyNanos()) + "ms" +
+                    ", waiting for input " + TimeUnit.NANOSECONDS.toMillis(inputWaitNanos) + "ms" +
+                    ", waiting for output " + TimeUnit.NANOSECONDS.toMillis(outputWaitNanos) + "ms" +
+                    ", " + bytes + " bytes";
+        }
+    }
+
+    private final int chunkSize;
+    private final int chunks;
+    private final List<Stage> stages = Collections.synchronizedList(new ArrayList<>());
+    private final List<Thread> threads = new ArrayList<>();
+    private Stage finalStage;
+
+    /**
+     * A pipeline with default chunk size and number of chunks between stages
+     */
+    public KdbxLoadPipeline() {
+        this(DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS);
+    }
+
+    /**
+     * @param chunkSize the size of chunks passed between stages
+     * @param chunks    the number of chunks between each pair of stages
+     */
+    public KdbxLoadPipeline(int chunkSize, int chunks) {
+        if (chunkSize <= 0 || chunks <= 0) {
+            throw new IllegalArgumentException("Chunk size and number of chunks must be positive");
+        }
+        this.chunkSize = chunkSize;
+        this.chunks = chunks;
+    }
+
+    /**
+     * The stages of the most recent load, in order, the last being the parse stage on the calling thread
+     */
+    public List<Stage> getStages() {
+        synchronized (stages) {
+            return new ArrayList<>(stages);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Stage stage : getStages()) {
+            builder.append(stage).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Start a new load, discarding statistics of any previous one
+     */
+    void start() {
+        stopThreads();
+        stages.clear();
+        finalStage = new Stage("parse");
+    }
+
+    /**
+     * Run a stage on a new thread
+     *
+     * @param name   the name of the stage
+     * @param source the stream the stage reads, which does the work of the stage
+     * @return a stream of the output of the stage
+     */
+    InputStream stage(String name, InputStream source) {
+        final Stage stage = new Stage(name);
+        stages.add(stage);
+        final int index = stages.size() - 1;
+        // the consumer of this stage's output is the following stage, if there is one by the time it reads
+        ChunkPipe pipe = new ChunkPipe(chunkSize, chunks, () -> index + 1 < stages.size() ? stages.get(index + 1) : finalStage);
+        Thread thread = new Thread(() -> {
+            try {
+                pipe.pump(source, stage);
+            } finally {
+                stage.finish();
+                try {
+                    source.close();
+                } catch (IOException ignored) {
+                    // nothing more to read
+                }
+            }
+        }, "KdbxLoadPipeline-" + name);
+        thread.setDaemon(true);
+        threads.add(thread);
+        thread.start();
+        return pipe.getInputStream();
+    }
+
+    /**
+     * Finish building the pipeline
+     *
+     * @param source the stream to be parsed on the calling thread
+     * @return a stream which stops the pipeline when closed
+     */
+    InputStream finish(InputStream source) {
+        stages.add(finalStage);
+        return new FilterInputStream(source) {
+            @Override
+            public void close() throws IOException {
+                finalStage.finish();
+                stopThreads();
+                super.close();
+            }
+        };
+    }
+
+    /**
+     * Stop the stages, when the pipeline could not be built
+     */
+    void cancel() {
+        stopThreads();
+    }
+
+    /* stages still running are cancelled, e.g. on close before the end or on a parse error, and waited for */
+    private void stopThreads() {
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        threads.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
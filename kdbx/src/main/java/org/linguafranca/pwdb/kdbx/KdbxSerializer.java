@@ -16,8 +16,11 @@
 
 package org.linguafranca.pwdb.kdbx;
 
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
 import com.google.common.io.LittleEndianDataInputStream;
 import com.google.common.io.LittleEndianDataOutputStream;
+import org.linguafranca.pwdb.BinaryPool;
 import org.linguafranca.pwdb.Credentials;
 import org.linguafranca.pwdb.hashedblock.*;
 import org.linguafranca.pwdb.security.Encryption;
@@ -25,6 +28,7 @@ import org.linguafranca.pwdb.security.VariantDictionary;
 
 import javax.crypto.Mac;
 import java.io.*;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
@@ -34,6 +38,7 @@ import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.function.IntConsumer;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -93,34 +98,85 @@ public class KdbxSerializer {
      * @param credentials credentials for decryption of the stream
      * @param kdbxHeader a KdbxHeader for the encryption parameters and so on
      * @param inputStream a KDBX formatted input stream
-     * @return an unencrypted input stream, to be read and closed by the caller
+     * @return an unencrypted input stream, to be read and closed by the caller, closing it overwrites the derived keys
      * @throws IOException on error
      */
     public static InputStream createUnencryptedInputStream(Credentials credentials, KdbxHeader kdbxHeader, InputStream inputStream) throws IOException {
         // read plaintext outer header
         readOuterHeader(inputStream, kdbxHeader);
 
-        InputStream plainTextStream;
+        // run the key derivation function once only
+        KdbxKeySchedule keySchedule = new KdbxKeySchedule(kdbxHeader, credentials);
+        try {
+            InputStream blockStream = inputStream;
+            if (kdbxHeader.getVersion() >= 4) {
+                // verify the header hashes
+                readOuterHeaderVerification(kdbxHeader, keySchedule, new DataInputStream(inputStream));
+                blockStream = createHmacBlockInputStream(kdbxHeader, keySchedule, inputStream);
+            }
+            return destroyOnClose(createPlainTextStream(kdbxHeader, keySchedule, blockStream), keySchedule);
+        } catch (IOException | RuntimeException e) {
+            keySchedule.destroy();
+            throw e;
+        }
+    }
 
-        if (kdbxHeader.getVersion() >= 4) {
-            // verify the header hashes
-            readOuterHeaderVerification(kdbxHeader, credentials, new DataInputStream(inputStream));
-            // create an HMac Block input stream
-            HmacBlockInputStream hmacBlockInputStream = new HmacBlockInputStream(kdbxHeader.getHmacKey(credentials), inputStream, true);
-            // decrypt the contents of the blocks
-            plainTextStream = kdbxHeader.createDecryptedStream(credentials.getKey(), hmacBlockInputStream);
-
-        } else {// V3
-            // decrypt the input stream
-            InputStream decryptedInputStream = kdbxHeader.createDecryptedStream(credentials.getKey(), inputStream);
-            // the unencrypted stream starts with a byte pattern
-            checkStartBytes(kdbxHeader, decryptedInputStream);
-            // unencrypted stream consists of hashed blocks
-            plainTextStream = new HashedBlockInputStream(decryptedInputStream, true);
+    /**
+     * Provides the payload of a KDBX file held in a {@link ByteBuffer}, e.g. a memory mapped file, as an unencrypted
+     * {@link InputStream}. The outer header and V4 HMAC blocks are read directly from the buffer.
+     * @param credentials credentials for decryption of the stream
+     * @param kdbxHeader a KdbxHeader for the encryption parameters and so on
+     * @param buffer a KDBX formatted buffer, read from its position, which is advanced
+     * @return an unencrypted input stream, to be read and closed by the caller, closing it overwrites the derived keys
+     * @throws IOException on error
+     */
+    public static InputStream createUnencryptedInputStream(Credentials credentials, KdbxHeader kdbxHeader, ByteBuffer buffer) throws IOException {
+        // read plaintext outer header
+        readOuterHeader(buffer, kdbxHeader);
+
+        // run the key derivation function once only
+        KdbxKeySchedule keySchedule = new KdbxKeySchedule(kdbxHeader, credentials);
+        try {
+            InputStream blockStream;
+            if (kdbxHeader.getVersion() >= 4) {
+                // verify the header hashes
+                readOuterHeaderVerification(kdbxHeader, keySchedule, new DataInputStream(new ByteBufferInputStream(buffer)));
+                blockStream = new ByteBufferHmacBlockInputStream(keySchedule.getHmacKey(), buffer, true);
+            } else {
+                blockStream = new ByteBufferInputStream(buffer);
+            }
+            return destroyOnClose(createPlainTextStream(kdbxHeader, keySchedule, blockStream), keySchedule);
+        } catch (IOException | RuntimeException e) {
+            keySchedule.destroy();
+            throw e;
         }
-        // need to decompress the stream
-        if (kdbxHeader.getCompressionFlags().equals(KdbxHeader.CompressionFlags.GZIP)) {
-            plainTextStream = new GZIPInputStream(plainTextStream);
+    }
+
+    /**
+     * Decrypt, check and decompress the content following the outer header and its verification
+     * @param blockStream in V4 the content of the HMAC blocks, in V3 the encrypted stream
+     */
+    private static InputStream createPlainTextStream(KdbxHeader kdbxHeader, KdbxKeySchedule keySchedule, InputStream blockStream) throws IOException {
+        InputStream plainTextStream;
+        if (kdbxHeader.getLoadPipeline() != null) {
+            plainTextStream = createPipelinedStream(kdbxHeader.getLoadPipeline(), kdbxHeader, keySchedule, blockStream);
+        } else {
+            if (kdbxHeader.getVersion() >= 4) {
+                // decrypt the contents of the blocks
+                plainTextStream = kdbxHeader.createDecryptedStream(keySchedule, blockStream);
+
+            } else {// V3
+                // decrypt the input stream
+                InputStream decryptedInputStream = kdbxHeader.createDecryptedStream(keySchedule, blockStream);
+                // the unencrypted stream starts with a byte pattern
+                checkStartBytes(kdbxHeader, decryptedInputStream);
+                // unencrypted stream consists of hashed blocks
+                plainTextStream = new HashedBlockInputStream(decryptedInputStream, true);
+            }
+            // need to decompress the stream
+            if (kdbxHeader.getCompressionFlags().equals(KdbxHeader.CompressionFlags.GZIP)) {
+                plainTextStream = new GZIPInputStream(plainTextStream);
+            }
         }
         // read inner header in V4
         if (kdbxHeader.getVersion() >= 4) {
@@ -130,39 +186,105 @@ public class KdbxSerializer {
         return plainTextStream;
     }
 
+    /**
+     * Create an HMac Block input stream, verifying blocks ahead if there is an executor
+     */
+    private static InputStream createHmacBlockInputStream(KdbxHeader kdbxHeader, KdbxKeySchedule keySchedule, InputStream inputStream) throws IOException {
+        return kdbxHeader.getCipherExecutor() == null ?
+                new HmacBlockInputStream(keySchedule.getHmacKey(), inputStream, true) :
+                new PipelinedHmacBlockInputStream(keySchedule.getHmacKey(), inputStream, true, kdbxHeader.getCipherExecutor());
+    }
+
+    /**
+     * As {@link #createPlainTextStream} with reading blocks, decryption and inflation each on its own thread
+     */
+    private static InputStream createPipelinedStream(KdbxLoadPipeline pipeline, KdbxHeader kdbxHeader, KdbxKeySchedule keySchedule, InputStream blockStream) throws IOException {
+        pipeline.start();
+        try {
+            InputStream stream = pipeline.stage("read", blockStream);
+            stream = pipeline.stage("decrypt", kdbxHeader.createDecryptedStream(keySchedule, stream));
+            boolean inflate = false;
+            if (kdbxHeader.getVersion() < 4) {
+                // check start bytes on the calling thread, so bad credentials are reported here
+                checkStartBytes(kdbxHeader, stream);
+                stream = new HashedBlockInputStream(stream, true);
+                inflate = true;
+            }
+            if (kdbxHeader.getCompressionFlags().equals(KdbxHeader.CompressionFlags.GZIP)) {
+                stream = new GZIPInputStream(stream);
+                inflate = true;
+            }
+            if (inflate) {
+                stream = pipeline.stage("inflate", stream);
+            }
+            return pipeline.finish(stream);
+        } catch (IOException | RuntimeException e) {
+            pipeline.cancel();
+            throw e;
+        }
+    }
+
     /**
      * Provides an {@link OutputStream} to be encoded and encrypted in KDBX format
      *
      * @param credentials credentials for encryption of the stream
      * @param kdbxHeader a KDBX header to control the formatting and encryption operation
      * @param outputStream output stream to contain the KDBX formatted output
-     * @return an unencrypted output stream, to be written to, flushed and closed by the caller
+     * @return an unencrypted output stream, to be written to, flushed and closed by the caller,
+     * closing it overwrites the derived keys
      * @throws IOException on error
      */
     public static OutputStream createEncryptedOutputStream(Credentials credentials, KdbxHeader kdbxHeader, OutputStream outputStream) throws IOException {
         // write plain text header
         writeKdbxHeader(kdbxHeader, outputStream);
 
+        // run the key derivation function once only
+        KdbxKeySchedule keySchedule = new KdbxKeySchedule(kdbxHeader, credentials);
+        try {
+            return destroyOnClose(createEncryptedStream(kdbxHeader, keySchedule, outputStream), keySchedule);
+        } catch (IOException | RuntimeException e) {
+            keySchedule.destroy();
+            throw e;
+        }
+    }
+
+    /**
+     * Write the outer header verification and wrap the output in blocks, encryption and compression
+     * as the header requires, then write the V4 inner header
+     */
+    private static OutputStream createEncryptedStream(KdbxHeader kdbxHeader, KdbxKeySchedule keySchedule, OutputStream outputStream) throws IOException {
         OutputStream result;
 
         if (kdbxHeader.getVersion() >= 4) {
             // write in plaintext
-            writeOuterHeaderVerification(kdbxHeader, credentials, new DataOutputStream(outputStream));
-            // write encrypted blocks
-            OutputStream blockOutputStream = new HmacBlockOutputStream(kdbxHeader.getHmacKey(credentials), outputStream, true);
+            writeOuterHeaderVerification(kdbxHeader, keySchedule, new DataOutputStream(outputStream));
+            // write encrypted blocks, in the background if there is an executor
+            int blockSize = kdbxHeader.getBlockSize() == 0 ? HmacBlockOutputStream.DEFAULT_BLOCK_SIZE : kdbxHeader.getBlockSize();
+            OutputStream blockOutputStream = kdbxHeader.getCipherExecutor() == null ?
+                    new HmacBlockOutputStream(keySchedule.getHmacKey(), outputStream, true, blockSize) :
+                    new PipelinedHmacBlockOutputStream(keySchedule.getHmacKey(), outputStream, true, blockSize, kdbxHeader.getCipherExecutor());
             // accept plaintext
-            result = kdbxHeader.createEncryptedStream(credentials.getKey(), blockOutputStream);
+            result = kdbxHeader.createEncryptedStream(keySchedule, blockOutputStream);
 
         } else {
-            OutputStream encryptedOutputStream = kdbxHeader.createEncryptedStream(credentials.getKey(), outputStream);
+            OutputStream encryptedOutputStream = kdbxHeader.createEncryptedStream(keySchedule, outputStream);
             // write encrypted
             writeStartBytes(kdbxHeader, encryptedOutputStream);
-            // input is plaintext, output is encrypted after
-            result = new HashedBlockOutputStream(encryptedOutputStream, true);
+            // input is plaintext, output is encrypted after, hashed in the background if there is an executor
+            int blockSize = kdbxHeader.getBlockSize() == 0 ? HashedBlockOutputStream.DEFAULT_BLOCK_SIZE : kdbxHeader.getBlockSize();
+            result = kdbxHeader.getCipherExecutor() == null ?
+                    new HashedBlockOutputStream(encryptedOutputStream, true, blockSize) :
+                    new PipelinedHashedBlockOutputStream(encryptedOutputStream, true, blockSize, kdbxHeader.getCipherExecutor());
         }
 
         if(kdbxHeader.getCompressionFlags().equals(KdbxHeader.CompressionFlags.GZIP)) {
-            result = new GZIPOutputStream(result);
+            if (kdbxHeader.getCipherExecutor() == null && kdbxHeader.getCompressionLevel() == Deflater.DEFAULT_COMPRESSION
+                    && kdbxHeader.getCompressionStrategy() == Deflater.DEFAULT_STRATEGY) {
+                result = new GZIPOutputStream(result);
+            } else {
+                result = new ParallelGZIPOutputStream(result, kdbxHeader.getCompressionLevel(),
+                        kdbxHeader.getCompressionStrategy(), kdbxHeader.getCipherExecutor());
+            }
         }
 
         if (kdbxHeader.getVersion() >= 4) {
@@ -172,6 +294,43 @@ public class KdbxSerializer {
         return result;
     }
 
+    /**
+     * Wrap a stream so that the keys it was created with are overwritten once it is closed
+     */
+    private static InputStream destroyOnClose(InputStream inputStream, KdbxKeySchedule keySchedule) {
+        return new FilterInputStream(inputStream) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    keySchedule.destroy();
+                }
+            }
+        };
+    }
+
+    /**
+     * Wrap a stream so that the keys it was created with are overwritten once it is closed
+     */
+    private static OutputStream destroyOnClose(OutputStream outputStream, KdbxKeySchedule keySchedule) {
+        return new FilterOutputStream(outputStream) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    out.close();
+                } finally {
+                    keySchedule.destroy();
+                }
+            }
+        };
+    }
+
     /**
      * Checks that the decrypted stream starts with the expected bytes in V3 format
      * @param kdbxHeader the header
@@ -260,6 +419,41 @@ public class KdbxSerializer {
         return kdbxHeader;
     }
 
+    /**
+     * Read the outer header directly from a buffer, e.g. a memory mapped file
+     * @param buffer the buffer, whose position is advanced past the header
+     * @param kdbxHeader a header to populate
+     * @return the header
+     * @throws IOException on error
+     */
+    public static KdbxHeader readOuterHeader(ByteBuffer buffer, KdbxHeader kdbxHeader) throws IOException {
+        int start = buffer.position();
+        LittleEndianDataInputStream ledis = new LittleEndianDataInputStream(new ByteBufferInputStream(buffer));
+
+        // file starts with magic number
+        if (!verifyMagicNumber(ledis)) {
+            throw new IllegalStateException("Magic number did not match");
+        }
+        // followed by a file version number
+        int fullVersion = ledis.readInt();
+        kdbxHeader.setVersion(fullVersion >> 16);
+
+        // read header fields
+        getOuterHeaderFields(kdbxHeader, ledis);
+
+        // the header bytes are digested and kept for the HMAC calculation
+        ByteBuffer header = buffer.duplicate();
+        // Buffer rather than ByteBuffer methods for Java 8 compatibility
+        ((Buffer) header).position(start);
+        ((Buffer) header).limit(buffer.position());
+        byte[] headerBytes = new byte[header.remaining()];
+        header.get(headerBytes);
+        kdbxHeader.setHeaderHash(Encryption.getSha256MessageDigestInstance().digest(headerBytes));
+        kdbxHeader.setHeaderBytes(headerBytes);
+
+        return kdbxHeader;
+    }
+
     /**
      * V4 header is followed by an SHA256 and then contains an HMAC SHA256 after that.
      * @param kdbxHeader the header containing the relevant parameters
@@ -268,13 +462,29 @@ public class KdbxSerializer {
      * @throws IOException on error
      */
     public static void readOuterHeaderVerification(KdbxHeader kdbxHeader, Credentials credentials, DataInput input) throws IOException {
+        KdbxKeySchedule keySchedule = new KdbxKeySchedule(kdbxHeader, credentials);
+        try {
+            readOuterHeaderVerification(kdbxHeader, keySchedule, input);
+        } finally {
+            keySchedule.destroy();
+        }
+    }
+
+    /**
+     * V4 header is followed by an SHA256 and then contains an HMAC SHA256 after that.
+     * @param kdbxHeader the header containing the relevant parameters
+     * @param keySchedule keys already derived for this header - used to verify the HMAC
+     * @param input an input source
+     * @throws IOException on error
+     */
+    public static void readOuterHeaderVerification(KdbxHeader kdbxHeader, KdbxKeySchedule keySchedule, DataInput input) throws IOException {
         // check the SHA
         byte [] receivedSha256 = getBytes(32, input);
         if (!Arrays.equals(kdbxHeader.getHeaderHash(), receivedSha256)) {
             throw new IllegalStateException("Header hash does not match");
         }
 
-        byte[] hmacKey = kdbxHeader.getHmacKey(credentials);
+        byte[] hmacKey = keySchedule.getHmacKey();
         // get the key for the header Hmac (using sequence number -1)
         // KdbxFile.cs ComputeHeaderHmac
         byte [] hmacKey64 = Encryption.transformHmacKey(hmacKey, Helpers.toBytes(-1L, ByteOrder.LITTLE_ENDIAN));
@@ -289,16 +499,16 @@ public class KdbxSerializer {
     /**
      * Write the hashes required after the header for V4
      * @param kdbxHeader the header whose hashes need to be written
-     * @param credentials database credentials
+     * @param keySchedule keys derived for this header
      * @param dataOutputStream somewhere to write to
      */
 
-    private static void writeOuterHeaderVerification(KdbxHeader kdbxHeader, Credentials credentials, DataOutputStream dataOutputStream) throws IOException {
+    private static void writeOuterHeaderVerification(KdbxHeader kdbxHeader, KdbxKeySchedule keySchedule, DataOutputStream dataOutputStream) throws IOException {
         // the SHA digest
         dataOutputStream.write(kdbxHeader.getHeaderHash());
 
         // the HMac
-        byte[] hmacKey = kdbxHeader.getHmacKey(credentials);
+        byte[] hmacKey = keySchedule.getHmacKey();
         byte[] hmacKey64 = Encryption.transformHmacKey(hmacKey, Helpers.toBytes(-1L, ByteOrder.LITTLE_ENDIAN));
         Mac mac = Encryption.getHMacSha256Instance(hmacKey64);
         byte[] hashedHeaderBytes = mac.doFinal(kdbxHeader.getHeaderBytes());
@@ -484,6 +694,8 @@ public class KdbxSerializer {
      */
     private static void readInnerHeader(KdbxHeader kdbxHeader, InputStream plainTextStream) throws IOException {
         DataInput input = new LittleEndianDataInputStream(plainTextStream);
+        BinaryPool binaryPool = kdbxHeader.getBinaryPool();
+        int binaryIndex = 0;
 
         byte headerType;
         do {
@@ -507,7 +719,20 @@ public class KdbxSerializer {
                 }
 
                 case InnerHeaderType.BINARY: {
-                    kdbxHeader.addBinary(getBytes(length, input));
+                    if (binaryPool == null) {
+                        kdbxHeader.addBinary(getBytes(length, input));
+                        break;
+                    }
+                    if (length < 1) {
+                        throw new IllegalStateException("Invalid binary length " + length);
+                    }
+                    // skip the flags byte and stream the content into the pool
+                    input.readByte();
+                    CountingInputStream content = new CountingInputStream(ByteStreams.limit(plainTextStream, length - 1));
+                    binaryPool.set(binaryIndex++, content);
+                    if (content.getCount() != length - 1) {
+                        throw new EOFException("Binary is truncated");
+                    }
                     break;
                 }
 
@@ -533,6 +758,18 @@ public class KdbxSerializer {
             output.write(binary);
         }
 
+        BinaryPool binaryPool = kdbxHeader.getBinaryPool();
+        if (binaryPool != null) {
+            for (int i = 0; i < binaryPool.size(); i++) {
+                output.writeByte(InnerHeaderType.BINARY);
+                output.writeInt(Math.max(0, binaryPool.getLength(i)) + 1);
+                // flags byte
+                output.writeByte(0);
+                // the data output does not buffer
+                binaryPool.writeTo(i, outputStream);
+            }
+        }
+
         output.writeByte(InnerHeaderType.END);
         output.writeInt(0);
     }
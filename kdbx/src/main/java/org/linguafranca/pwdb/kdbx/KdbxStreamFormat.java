@@ -23,6 +23,10 @@ import org.linguafranca.pwdb.StreamFormat;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 
 /**
@@ -60,15 +64,41 @@ public class KdbxStreamFormat implements StreamFormat<KdbxHeader> {
 
     @Override
     public void load(SerializableDatabase serializableDatabase, Credentials credentials, InputStream encryptedInputStream) throws IOException {
-        try (InputStream decryptedInputStream = KdbxSerializer.createUnencryptedInputStream(credentials, kdbxHeader, encryptedInputStream)) {
+        prepareBinaries(serializableDatabase);
+        load(serializableDatabase, KdbxSerializer.createUnencryptedInputStream(credentials, kdbxHeader, encryptedInputStream));
+    }
+
+    /**
+     * Load from a file which is memory mapped, so that the header and (in V4) the HMAC blocks are read
+     * directly from the mapped file rather than copied through a stream. Files too large to be
+     * mapped in one piece are read as a stream.
+     */
+    @Override
+    public void load(SerializableDatabase serializableDatabase, Credentials credentials, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                StreamFormat.super.load(serializableDatabase, credentials, path);
+                return;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            prepareBinaries(serializableDatabase);
+            load(serializableDatabase, KdbxSerializer.createUnencryptedInputStream(credentials, kdbxHeader, buffer));
+        }
+    }
+
+    private void load(SerializableDatabase serializableDatabase, InputStream unencryptedInputStream) throws IOException {
+        try (InputStream decryptedInputStream = unencryptedInputStream) {
+            setFormatContext(serializableDatabase);
             serializableDatabase.setEncryption(kdbxHeader.getStreamEncryptor());
             serializableDatabase.load(decryptedInputStream);
             if (kdbxHeader.getVersion() == 3 && !Arrays.equals(serializableDatabase.getHeaderHash(), kdbxHeader.getHeaderHash())) {
                 throw new IllegalStateException("Header hash does not match");
             }
+            // binaries have been read into the database's pool if it has one
             if (kdbxHeader.getVersion() == 4) {
                 int count = 0;
                 for (byte[] binary : kdbxHeader.getBinaries()) {
+                    // the content follows a flags byte
                     serializableDatabase.addBinary(count, Arrays.copyOfRange(binary, 1, binary.length));
                     count++;
                 }
@@ -78,16 +108,19 @@ public class KdbxStreamFormat implements StreamFormat<KdbxHeader> {
 
     @Override
     public void save(SerializableDatabase serializableDatabase, Credentials credentials, OutputStream outputStream) throws IOException {
-        Helpers.isV4.set(kdbxHeader.getVersion() == 4);
+        setFormatContext(serializableDatabase);
+        prepareBinaries(serializableDatabase);
         if (kdbxHeader.getVersion() == 4) {
-            for (int a = 0; a < serializableDatabase.getBinaryCount(); a++) {
-                int attachmentLength = serializableDatabase.getBinary(a).length;
-                byte[] binary = new byte[attachmentLength + 1];
-                binary[0] = 0;
-                System.arraycopy(serializableDatabase.getBinary(a),0, binary, 1, attachmentLength);
-                kdbxHeader.addBinary(binary);
+            // databases with a pool have attachments streamed from it, and leave them out of V4 XML
+            if (kdbxHeader.getBinaryPool() == null) {
+                for (int a = 0; a < serializableDatabase.getBinaryCount(); a++) {
+                    byte[] attachment = serializableDatabase.getBinary(a);
+                    byte[] binary = new byte[attachment.length + 1];
+                    System.arraycopy(attachment, 0, binary, 1, attachment.length);
+                    kdbxHeader.addBinary(binary);
+                }
+                // TODO the binaries should now be removed so they don't get serialized in XML
             }
-            // TODO the binaries should now be removed so they don't get serialized in XML
         }
 
         try (OutputStream encryptedOutputStream = KdbxSerializer.createEncryptedOutputStream(credentials, kdbxHeader, outputStream)) {
@@ -100,6 +133,22 @@ public class KdbxStreamFormat implements StreamFormat<KdbxHeader> {
         }
     }
 
+    /* replace binaries from a previous load or save, and read or write them using the database's pool if it has one */
+    private void prepareBinaries(SerializableDatabase serializableDatabase) {
+        kdbxHeader.getBinaries().clear();
+        kdbxHeader.setBinaryPool(serializableDatabase.getBinaryPool());
+    }
+
+    /* tell the database the format of the stream, and set the thread local for those that don't want to know */
+    @SuppressWarnings("deprecation")
+    private void setFormatContext(SerializableDatabase serializableDatabase) {
+        FormatContext formatContext = FormatContext.forVersion(kdbxHeader.getVersion());
+        if (serializableDatabase instanceof FormatContext.Aware) {
+            ((FormatContext.Aware) serializableDatabase).setFormatContext(formatContext);
+        }
+        Helpers.isV4.set(formatContext.isV4());
+    }
+
     @Override
     public KdbxHeader getStreamConfiguration() {
         return kdbxHeader;
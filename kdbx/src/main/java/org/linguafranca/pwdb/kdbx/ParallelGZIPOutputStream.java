@@ -0,0 +1,241 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a single gzip member, compressing chunks of the content in parallel, in the manner of pigz.
+ * <p>
+ * Each chunk is deflated independently on an {@link Executor}, using the last 32KiB of the previous
+ * chunk as a preset dictionary so that compression is close to that of a single deflate stream.
+ * All but the last chunk end with a sync flush, so the compressed chunks concatenate into one valid
+ * deflate stream, which {@link java.util.zip.GZIPInputStream} and KeePass can read. The CRC is
+ * calculated on the calling thread.
+ * <p>
+ * {@link #flush()} writes only chunks already compressed, the remainder is written on {@link #close()}.
+ */
+public class ParallelGZIPOutputStream extends FilterOutputStream {
+
+    public static final int DEFAULT_CHUNK_SIZE = 128 * 1024;
+    public static final int DEFAULT_CHUNKS_IN_FLIGHT = 8;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private final int level;
+    private final int strategy;
+    private final Executor executor;
+    private final int chunkSize;
+    private final int chunksInFlight;
+    private final Deque<CompletableFuture<byte[]>> chunks = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+
+    private byte[] buffer;
+    private int count = 0;
+    private byte[] previous = null;
+    private int previousLength = 0;
+    private long totalIn = 0;
+    private boolean closed = false;
+
+    /**
+     * Compress with default chunk size and chunks in flight
+     *
+     * @param outputStream the stream to write compressed content to
+     * @param level        a {@link Deflater} compression level
+     * @param strategy     a {@link Deflater} strategy
+     * @param executor     an executor to compress chunks on, or null to compress on the calling thread
+     */
+    public ParallelGZIPOutputStream(OutputStream outputStream, int level, int strategy, Executor executor) throws IOException {
+        this(outputStream, level, strategy, executor, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS_IN_FLIGHT);
+    }
+
+    /**
+     * Compress
+     *
+     * @param outputStream   the stream to write compressed content to
+     * @param level          a {@link Deflater} compression level
+     * @param strategy       a {@link Deflater} strategy
+     * @param executor       an executor to compress chunks on, or null to compress on the calling thread
+     * @param chunkSize      the size of chunks to compress
+     * @param chunksInFlight the number of chunks to compress before waiting for the first
+     */
+    public ParallelGZIPOutputStream(OutputStream outputStream, int level, int strategy, Executor executor,
+                                    int chunkSize, int chunksInFlight) throws IOException {
+        super(outputStream);
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        if (chunksInFlight < 1) {
+            throw new IllegalArgumentException("Chunks in flight must be at least 1");
+        }
+        // check level and strategy now rather than on a worker
+        new Deflater(level, true).end();
+        if (strategy != Deflater.DEFAULT_STRATEGY && strategy != Deflater.FILTERED && strategy != Deflater.HUFFMAN_ONLY) {
+            throw new IllegalArgumentException("Invalid strategy " + strategy);
+        }
+        this.level = level;
+        this.strategy = strategy;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.chunksInFlight = chunksInFlight;
+        this.buffer = new byte[chunkSize];
+        out.write(HEADER);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        crc.update(b);
+        totalIn++;
+        buffer[count++] = (byte) b;
+        if (count == chunkSize) {
+            submit(false);
+        }
+    }
+
+    @Override
+    public void write(@NotNull byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        crc.update(b, off, len);
+        totalIn += len;
+        while (len > 0) {
+            int copy = Math.min(len, chunkSize - count);
+            System.arraycopy(b, off, buffer, count, copy);
+            count += copy;
+            off += copy;
+            len -= copy;
+            if (count == chunkSize) {
+                submit(false);
+            }
+        }
+    }
+
+    private void submit(boolean last) throws IOException {
+        final byte[] input = buffer;
+        final int length = count;
+        // prime with the end of the previous chunk
+        final byte[] dictionary = previous == null ? null :
+                Arrays.copyOfRange(previous, Math.max(0, previousLength - DICTIONARY_SIZE), previousLength);
+        Supplier<byte[]> task = () -> deflate(input, length, dictionary, last);
+        chunks.addLast(executor == null ?
+                CompletableFuture.completedFuture(task.get()) :
+                CompletableFuture.supplyAsync(task, executor));
+        previous = input;
+        previousLength = length;
+        buffer = new byte[chunkSize];
+        count = 0;
+        while (chunks.size() > chunksInFlight) {
+            writeFirst();
+        }
+    }
+
+    private byte[] deflate(byte[] input, int length, byte[] dictionary, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setStrategy(strategy);
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(input, 0, length);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(length / 2 + 64);
+            byte[] block = new byte[Math.max(length / 4, 1024)];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    output.write(block, 0, deflater.deflate(block));
+                }
+            } else {
+                // end on a byte boundary so the next chunk can follow
+                int written;
+                do {
+                    written = deflater.deflate(block, 0, block.length, Deflater.SYNC_FLUSH);
+                    output.write(block, 0, written);
+                } while (written == block.length || !deflater.needsInput());
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeFirst() throws IOException {
+        byte[] output;
+        try {
+            output = chunks.removeFirst().join();
+        } catch (CompletionException | CancellationException e) {
+            throw new IOException("Chunk compression failed", e.getCause() == null ? e : e.getCause());
+        }
+        out.write(output);
+    }
+
+    /**
+     * Write all compressed chunks and flush the underlying stream
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!chunks.isEmpty() && chunks.peekFirst().isDone()) {
+            writeFirst();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            submit(true);
+            while (!chunks.isEmpty()) {
+                writeFirst();
+            }
+            writeIntLittleEndian((int) crc.getValue());
+            writeIntLittleEndian((int) totalIn);
+            out.flush();
+        } finally {
+            closed = true;
+            out.close();
+        }
+    }
+
+    private void writeIntLittleEndian(int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+        out.write((value >> 16) & 0xFF);
+        out.write((value >> 24) & 0xFF);
+    }
+}
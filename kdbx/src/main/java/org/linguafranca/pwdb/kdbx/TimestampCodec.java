@@ -0,0 +1,253 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Encodes and decodes KDBX timestamps.
+ * <p>
+ * V3 timestamps are ISO-8601, V4 timestamps are base64 encoded little endian seconds since
+ * midnight 0001-01-01. The format is detected from the first characters of the value, and both
+ * formats are decoded directly from the characters, so that decoding a well-formed timestamp
+ * neither throws an exception nor creates intermediate strings or arrays.
+ */
+public final class TimestampCodec {
+
+    /* seconds from 0001-01-01T00:00:00Z to the epoch */
+    static final long BASE_EPOCH_SECONDS = -62135596800L;
+
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+        for (int i = 0; i < BASE64.length; i++) {
+            BASE64_VALUES[BASE64[i]] = (byte) i;
+        }
+        // accept URL safe base64 as commons codec does
+        BASE64_VALUES['-'] = 62;
+        BASE64_VALUES['_'] = 63;
+    }
+
+    private TimestampCodec() {
+    }
+
+    /**
+     * Decode a timestamp in either format
+     *
+     * @param value the timestamp
+     * @return a date
+     * @throws IllegalArgumentException if the value is neither ISO-8601 nor base64 of at least 8 bytes
+     */
+    public static Date decode(CharSequence value) {
+        if (isIso(value)) {
+            long millis = parseIso(value);
+            if (millis != Long.MIN_VALUE) {
+                return new Date(millis);
+            }
+            // lenient parse of less usual forms
+            try {
+                return Date.from(ZonedDateTime.parse(value).toInstant());
+            } catch (DateTimeParseException e) {
+                // see if it is a V4 date after all
+            }
+        }
+        return new Date((decodeBase64Long(value) + BASE_EPOCH_SECONDS) * 1000);
+    }
+
+    /**
+     * Encode a timestamp as ISO-8601 in UTC to the second, e.g. 2023-05-17T10:23:19Z
+     */
+    public static String encodeV3(Date value) {
+        LocalDateTime time = LocalDateTime.ofEpochSecond(Math.floorDiv(value.getTime(), 1000), 0, ZoneOffset.UTC);
+        if (time.getYear() < 0 || time.getYear() > 9999) {
+            return Helpers.dateTimeFormatter.format(value.toInstant().atZone(ZoneOffset.UTC));
+        }
+        char[] result = new char[20];
+        digits(result, 0, time.getYear(), 4);
+        result[4] = '-';
+        digits(result, 5, time.getMonthValue(), 2);
+        result[7] = '-';
+        digits(result, 8, time.getDayOfMonth(), 2);
+        result[10] = 'T';
+        digits(result, 11, time.getHour(), 2);
+        result[13] = ':';
+        digits(result, 14, time.getMinute(), 2);
+        result[16] = ':';
+        digits(result, 17, time.getSecond(), 2);
+        result[19] = 'Z';
+        return new String(result);
+    }
+
+    /**
+     * Encode a timestamp as base64 encoded seconds since 0001-01-01
+     */
+    public static String encodeV4(Date value) {
+        long seconds = (value.getTime() - BASE_EPOCH_SECONDS * 1000) / 1000;
+        // 8 little endian bytes make 11 base64 characters and a pad
+        char[] result = new char[12];
+        int position = 0;
+        for (int i = 0; i < 8; i += 3) {
+            int group = 0;
+            int count = Math.min(3, 8 - i);
+            for (int j = 0; j < 3; j++) {
+                group <<= 8;
+                if (j < count) {
+                    group |= (int) (seconds >>> (8 * (i + j))) & 0xFF;
+                }
+            }
+            for (int j = 0; j < 4; j++) {
+                result[position++] = j <= count ? BASE64[(group >>> (18 - 6 * j)) & 0x3F] : '=';
+            }
+        }
+        return new String(result);
+    }
+
+    private static void digits(char[] target, int offset, int value, int count) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            target[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /* looks like yyyy-MM-ddT */
+    private static boolean isIso(CharSequence value) {
+        return value.length() >= 11 &&
+                value.charAt(4) == '-' && value.charAt(7) == '-' &&
+                (value.charAt(10) == 'T' || value.charAt(10) == 't');
+    }
+
+    /**
+     * Parse yyyy-MM-ddTHH:mm:ss[.fraction](Z|+hh:mm|-hh:mm|+hhmm|+hh)
+     *
+     * @return epoch millis or Long.MIN_VALUE if the value is not in this form
+     */
+    private static long parseIso(CharSequence value) {
+        int length = value.length();
+        if (length < 20 || value.charAt(13) != ':' || value.charAt(16) != ':') {
+            return Long.MIN_VALUE;
+        }
+        int year = number(value, 0, 4);
+        int month = number(value, 5, 2);
+        int day = number(value, 8, 2);
+        int hour = number(value, 11, 2);
+        int minute = number(value, 14, 2);
+        int second = number(value, 17, 2);
+        if ((year | month | day | hour | minute | second) < 0) {
+            return Long.MIN_VALUE;
+        }
+        int position = 19;
+        int millis = 0;
+        if (value.charAt(position) == '.' || value.charAt(position) == ',') {
+            position++;
+            int scale = 100;
+            while (position < length && isDigit(value.charAt(position))) {
+                millis += (value.charAt(position) - '0') * scale;
+                scale /= 10;
+                position++;
+            }
+        }
+        if (position >= length) {
+            return Long.MIN_VALUE;
+        }
+        int offsetSeconds;
+        char zone = value.charAt(position);
+        if ((zone == 'Z' || zone == 'z') && position == length - 1) {
+            offsetSeconds = 0;
+        } else if (zone == '+' || zone == '-') {
+            int remaining = length - position - 1;
+            int offsetHours = number(value, position + 1, 2);
+            int offsetMinutes;
+            if (remaining == 2) {
+                offsetMinutes = 0;
+            } else if (remaining == 5 && value.charAt(position + 3) == ':') {
+                offsetMinutes = number(value, position + 4, 2);
+            } else if (remaining == 4) {
+                offsetMinutes = number(value, position + 3, 2);
+            } else {
+                return Long.MIN_VALUE;
+            }
+            if ((offsetHours | offsetMinutes) < 0) {
+                return Long.MIN_VALUE;
+            }
+            offsetSeconds = (offsetHours * 3600 + offsetMinutes * 60) * (zone == '-' ? -1 : 1);
+        } else {
+            return Long.MIN_VALUE;
+        }
+        try {
+            long epochSecond = LocalDateTime.of(year, month, day, hour, minute, second)
+                    .toEpochSecond(ZoneOffset.ofTotalSeconds(offsetSeconds));
+            return epochSecond * 1000 + millis;
+        } catch (DateTimeException e) {
+            // out of range field
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /* a non-negative number or -1 */
+    private static int number(CharSequence value, int offset, int count) {
+        int result = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char c = value.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    /* the first 8 bytes of base64, little endian */
+    private static long decodeBase64Long(CharSequence value) {
+        long result = 0;
+        int bytes = 0;
+        int bits = 0;
+        int buffer = 0;
+        for (int i = 0; i < value.length() && bytes < 8; i++) {
+            char c = value.charAt(i);
+            if (c == '=') {
+                break;
+            }
+            // other characters are ignored, as by commons codec
+            if (c >= 128 || BASE64_VALUES[c] < 0) {
+                continue;
+            }
+            buffer = (buffer << 6) | BASE64_VALUES[c];
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                result |= ((long) ((buffer >>> bits) & 0xFF)) << (8 * bytes);
+                bytes++;
+            }
+        }
+        if (bytes < 8) {
+            throw new IllegalArgumentException("Not a timestamp: " + value);
+        }
+        return result;
+    }
+}
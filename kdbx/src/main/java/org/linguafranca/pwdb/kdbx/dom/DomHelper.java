@@ -84,7 +84,7 @@ public class DomHelper {
     static class DateValueCreator implements ValueCreator {
         @Override
         public String getValue() {
-            return Helpers.fromDate(Date.from(Instant.now()));
+            return Helpers.fromDateV3(Date.from(Instant.now()));
         }
     }
 
@@ -255,7 +255,7 @@ public class DomHelper {
 
     @NotNull
     static Element touchElement(String elementPath, Element parentElement) {
-        return setElementContent(elementPath, parentElement, Helpers.fromDate(new Date()));
+        return setElementContent(elementPath, parentElement, Helpers.fromDateV3(new Date()));
     }
 
     private static Element createHierarchically(String elementPath, Element startElement) {
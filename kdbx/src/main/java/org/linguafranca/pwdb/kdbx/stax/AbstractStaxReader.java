@@ -0,0 +1,263 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.stax;
+
+import org.apache.commons.codec.binary.Base64;
+import org.linguafranca.pwdb.PropertyValue;
+import org.linguafranca.pwdb.kdbx.FormatContext;
+import org.linguafranca.pwdb.kdbx.Helpers;
+import org.linguafranca.pwdb.security.StreamEncryptor;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static javax.xml.stream.XMLStreamConstants.*;
+
+/**
+ * Reading of the elements of a KDBX XML document that are common to single pass readers, such as
+ * the StAX database and {@link org.linguafranca.pwdb.kdbx.stream.KdbxStreamReader}.
+ * <p>
+ * Methods that read an element are called with the reader on its start tag and leave it on its
+ * end tag. Protected values are decrypted as they are read, so must be read in document order.
+ */
+public abstract class AbstractStaxReader {
+
+    /**
+     * A timestamp in database templates that stands for the time of reading
+     */
+    public static final String CREATION_DATE = "${creationDate}";
+
+    protected final XMLStreamReader reader;
+    protected final StreamEncryptor encryption;
+    protected final PropertyValue.Strategy strategy;
+    protected final FormatContext formatContext;
+
+    /**
+     * Receives the attachments of a KDBX V3 Binaries element
+     */
+    protected interface BinaryTarget<X extends Exception> {
+        void binary(int index, byte[] content) throws X;
+    }
+
+    protected AbstractStaxReader(XMLStreamReader reader, StreamEncryptor encryption, PropertyValue.Strategy strategy,
+                                 FormatContext formatContext) {
+        this.reader = reader;
+        this.encryption = encryption;
+        this.strategy = strategy;
+        this.formatContext = formatContext;
+    }
+
+    /**
+     * Read the attachments of a KDBX V3 Meta/Binaries element
+     */
+    protected <X extends Exception> void readBinaries(BinaryTarget<X> target) throws XMLStreamException, X {
+        while (reader.nextTag() == START_ELEMENT) {
+            String id = reader.getAttributeValue(null, "ID");
+            String compressed = reader.getAttributeValue(null, "Compressed");
+            String content = reader.getElementText();
+            if (id == null) {
+                continue;
+            }
+            target.binary(Integer.parseInt(id.trim()), Helpers.decodeBase64Content(
+                    content.getBytes(StandardCharsets.US_ASCII), compressed != null && Helpers.toBoolean(compressed)));
+        }
+    }
+
+    /**
+     * Read a String element of an entry
+     *
+     * @return the name and value of the property, or null if it has no name
+     */
+    protected Map.Entry<String, PropertyValue> readString() throws XMLStreamException {
+        String key = null;
+        PropertyValue value = null;
+        while (reader.nextTag() == START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case "Key":
+                    key = reader.getElementText();
+                    break;
+                case "Value":
+                    String isProtected = reader.getAttributeValue(null, "Protected");
+                    String text = reader.getElementText();
+                    if (isProtected != null && Helpers.toBoolean(isProtected)) {
+                        byte[] bytes = Base64.decodeBase64(text.getBytes(StandardCharsets.US_ASCII));
+                        // decrypt in place, in document order
+                        encryption.decrypt(bytes, 0, bytes.length);
+                        value = strategy.newProtected().of(bytes);
+                    } else {
+                        value = strategy.newUnprotected().of(text);
+                    }
+                    break;
+                default:
+                    skip();
+            }
+        }
+        if (key == null) {
+            return null;
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(key, value == null ? strategy.newUnprotected().of("") : value);
+    }
+
+    /**
+     * Read a Binary element of an entry
+     *
+     * @return the name of the attachment and its index in the database's attachments, or null
+     * if either is missing
+     */
+    protected Map.Entry<String, Integer> readBinary() throws XMLStreamException {
+        String key = null;
+        String ref = null;
+        while (reader.nextTag() == START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case "Key":
+                    key = reader.getElementText();
+                    break;
+                case "Value":
+                    ref = reader.getAttributeValue(null, "Ref");
+                    reader.getElementText();
+                    break;
+                default:
+                    skip();
+            }
+        }
+        if (key == null || ref == null) {
+            return null;
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(key, Integer.parseInt(ref.trim()));
+    }
+
+    protected Times readTimes() throws XMLStreamException {
+        Times times = new Times();
+        while (reader.nextTag() == START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case "LastModificationTime":
+                    times.setLastModificationTime(readDate());
+                    break;
+                case "CreationTime":
+                    times.setCreationTime(readDate());
+                    break;
+                case "LastAccessTime":
+                    times.setLastAccessTime(readDate());
+                    break;
+                case "ExpiryTime":
+                    times.setExpiryTime(readDate());
+                    break;
+                case "Expires":
+                    times.setExpires(Boolean.TRUE.equals(Helpers.toBoolean(reader.getElementText().trim())));
+                    break;
+                case "UsageCount":
+                    times.setUsageCount(Long.parseLong(reader.getElementText().trim()));
+                    break;
+                case "LocationChanged":
+                    times.setLocationChanged(readDate());
+                    break;
+                default:
+                    skip();
+            }
+        }
+        return times;
+    }
+
+    protected long readDate() throws XMLStreamException {
+        return toMillis(reader.getElementText(), formatContext);
+    }
+
+    /**
+     * Parse a timestamp in either format, or {@link #CREATION_DATE}
+     */
+    public static long toMillis(String text, FormatContext formatContext) {
+        if (text.equals(CREATION_DATE)) {
+            return System.currentTimeMillis();
+        }
+        return formatContext.toDate(text).getTime();
+    }
+
+    protected int readInt() throws XMLStreamException {
+        return Integer.parseInt(reader.getElementText().trim());
+    }
+
+    /**
+     * @return the UUID, or null if the element is empty
+     */
+    protected UUID readUuid() throws XMLStreamException {
+        String text = reader.getElementText();
+        return text.isEmpty() ? null : Helpers.uuidFromBase64(text);
+    }
+
+    /**
+     * Read an element and its descendants as a node
+     */
+    protected Node readNode() throws XMLStreamException {
+        Node node = new Node(reader.getLocalName());
+        int count = reader.getAttributeCount();
+        if (count > 0) {
+            node.attributes = new String[count * 2];
+            for (int i = 0; i < count; i++) {
+                node.attributes[i * 2] = reader.getAttributeLocalName(i);
+                node.attributes[i * 2 + 1] = reader.getAttributeValue(i);
+            }
+        }
+        String text = null;
+        StringBuilder builder = null;
+        while (true) {
+            switch (reader.next()) {
+                case START_ELEMENT:
+                    node.addChild(readNode());
+                    break;
+                case CHARACTERS:
+                case CDATA:
+                case SPACE:
+                case ENTITY_REFERENCE:
+                    if (text == null) {
+                        text = reader.getText();
+                    } else {
+                        if (builder == null) {
+                            builder = new StringBuilder(text);
+                        }
+                        builder.append(reader.getText());
+                    }
+                    break;
+                case END_ELEMENT:
+                    if (node.children == null) {
+                        node.text = builder != null ? builder.toString() : text != null ? text : "";
+                    }
+                    return node;
+                default:
+                    // comments and processing instructions
+            }
+        }
+    }
+
+    /**
+     * Skip an element and its descendants
+     */
+    protected void skip() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == START_ELEMENT) {
+                depth++;
+            } else if (event == END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+}
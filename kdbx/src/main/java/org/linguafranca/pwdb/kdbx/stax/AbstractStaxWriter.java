@@ -0,0 +1,253 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.stax;
+
+import org.apache.commons.codec.binary.Base64;
+import org.linguafranca.pwdb.BinaryPool;
+import org.linguafranca.pwdb.PropertyValue;
+import org.linguafranca.pwdb.kdbx.FormatContext;
+import org.linguafranca.pwdb.kdbx.Helpers;
+import org.linguafranca.pwdb.security.StreamEncryptor;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writing of the elements of a KDBX XML document that are common to single pass writers, such as
+ * the StAX database and {@link org.linguafranca.pwdb.kdbx.stream.KdbxStreamWriter}, indented
+ * with tabs as KeePass does.
+ * <p>
+ * Protected values are encrypted as they are written, so must be written in document order.
+ * Timestamps are written in the format of the stream, including those in elements that are not
+ * otherwise modelled, which are taken to be those whose names end in "Time" or "Changed".
+ */
+public abstract class AbstractStaxWriter {
+
+    /* unmodelled elements which precede Times in a group or entry */
+    private static final Set<String> BEFORE_TIMES = new HashSet<>(Arrays.asList(
+            "CustomIconUUID", "ForegroundColor", "BackgroundColor", "OverrideURL", "Tags"));
+
+    private static final String[] INDENTS = new String[32];
+
+    static {
+        StringBuilder indent = new StringBuilder("\n");
+        for (int i = 0; i < INDENTS.length; i++) {
+            INDENTS[i] = indent.toString();
+            indent.append('\t');
+        }
+    }
+
+    protected final XMLStreamWriter writer;
+    protected final StreamEncryptor encryption;
+    protected final FormatContext formatContext;
+    private final String creationDate;
+    private int depth = 0;
+
+    protected AbstractStaxWriter(XMLStreamWriter writer, StreamEncryptor encryption, FormatContext formatContext) {
+        this.writer = writer;
+        this.encryption = encryption;
+        this.formatContext = formatContext;
+        this.creationDate = formatContext.fromDate(new Date());
+    }
+
+    /**
+     * Write attachments as a KDBX V3 Meta/Binaries element, V4 attachments are written in the
+     * inner header, so nothing is written for V4
+     */
+    protected void writeBinaries(BinaryPool pool) throws XMLStreamException {
+        if (formatContext.isV4() || pool.size() == 0) {
+            return;
+        }
+        start("Binaries");
+        for (int i = 0; i < pool.size(); i++) {
+            if (!pool.contains(i)) {
+                continue;
+            }
+            indent();
+            writer.writeStartElement("Binary");
+            writer.writeAttribute("ID", String.valueOf(i));
+            writer.writeAttribute("Compressed", "True");
+            writer.writeCharacters(Helpers.encodeBase64Content(pool.get(i), true));
+            writer.writeEndElement();
+        }
+        end();
+    }
+
+    /**
+     * Write a String element of an entry
+     *
+     * @param protect whether to protect the value if it is not already protected, e.g. according to Meta
+     */
+    protected void writeString(String name, PropertyValue value, boolean protect) throws XMLStreamException {
+        start("String");
+        leaf("Key", name);
+        indent();
+        if (value.isProtected() || protect) {
+            // a copy of the value, which is encrypted in place
+            byte[] bytes = value.getValueAsBytes();
+            encryption.encrypt(bytes, 0, bytes.length);
+            writer.writeStartElement("Value");
+            writer.writeAttribute("Protected", "True");
+            writer.writeCharacters(new String(Base64.encodeBase64(bytes), StandardCharsets.US_ASCII));
+            writer.writeEndElement();
+        } else {
+            String text = value.getValueAsString();
+            if (text.isEmpty()) {
+                writer.writeEmptyElement("Value");
+            } else {
+                writer.writeStartElement("Value");
+                writer.writeCharacters(text);
+                writer.writeEndElement();
+            }
+        }
+        end();
+    }
+
+    /**
+     * Write a Binary element of an entry
+     *
+     * @param index the index of the attachment in the database's attachments
+     */
+    protected void writeBinary(String name, int index) throws XMLStreamException {
+        start("Binary");
+        leaf("Key", name);
+        indent();
+        writer.writeEmptyElement("Value");
+        writer.writeAttribute("Ref", String.valueOf(index));
+        end();
+    }
+
+    protected void writeTimes(Times times) throws XMLStreamException {
+        start("Times");
+        date("LastModificationTime", times.getLastModificationTime());
+        date("CreationTime", times.getCreationTime());
+        date("LastAccessTime", times.getLastAccessTime());
+        date("ExpiryTime", times.getExpiryTime());
+        leaf("Expires", Helpers.fromBoolean(times.getExpires()));
+        leaf("UsageCount", String.valueOf(times.getUsageCount()));
+        date("LocationChanged", times.getLocationChanged());
+        end();
+    }
+
+    /**
+     * Write those unmodelled elements of a group or entry that go either before or after Times
+     *
+     * @param nodes the elements, or null
+     */
+    protected void writeNodes(List<Node> nodes, boolean beforeTimes) throws XMLStreamException {
+        if (nodes == null) {
+            return;
+        }
+        for (Node node : nodes) {
+            if (BEFORE_TIMES.contains(node.name) == beforeTimes) {
+                writeNode(node);
+            }
+        }
+    }
+
+    protected void writeNode(Node node) throws XMLStreamException {
+        if (node.hasChildren()) {
+            start(node.name);
+            writeAttributes(node);
+            for (Node child : node.children) {
+                writeNode(child);
+            }
+            end();
+            return;
+        }
+        indent();
+        if (node.text == null || node.text.isEmpty()) {
+            writer.writeEmptyElement(node.name);
+            writeAttributes(node);
+            return;
+        }
+        writer.writeStartElement(node.name);
+        writeAttributes(node);
+        writer.writeCharacters(isTimestamp(node.name) ? reformat(node.text) : node.text);
+        writer.writeEndElement();
+    }
+
+    private void writeAttributes(Node node) throws XMLStreamException {
+        if (node.attributes != null) {
+            for (int i = 0; i < node.attributes.length; i += 2) {
+                writer.writeAttribute(node.attributes[i], node.attributes[i + 1]);
+            }
+        }
+    }
+
+    private static boolean isTimestamp(String name) {
+        return name.endsWith("Time") || name.endsWith("Changed");
+    }
+
+    /* a timestamp in the format of the stream, or as it is if it isn't one */
+    private String reformat(String text) {
+        if (text.equals(AbstractStaxReader.CREATION_DATE)) {
+            return creationDate;
+        }
+        try {
+            return formatContext.fromDate(formatContext.toDate(text));
+        } catch (IllegalArgumentException e) {
+            return text;
+        }
+    }
+
+    protected void date(String name, long millis) throws XMLStreamException {
+        leaf(name, formatContext.fromDate(new Date(millis)));
+    }
+
+    /**
+     * An element with text content, omitted if the text is null
+     */
+    protected void leaf(String name, String text) throws XMLStreamException {
+        if (text == null) {
+            return;
+        }
+        indent();
+        if (text.isEmpty()) {
+            writer.writeEmptyElement(name);
+            return;
+        }
+        writer.writeStartElement(name);
+        writer.writeCharacters(text);
+        writer.writeEndElement();
+    }
+
+    /**
+     * Start an element which has element children
+     */
+    protected void start(String name) throws XMLStreamException {
+        indent();
+        writer.writeStartElement(name);
+        depth++;
+    }
+
+    protected void end() throws XMLStreamException {
+        depth--;
+        indent();
+        writer.writeEndElement();
+    }
+
+    protected void indent() throws XMLStreamException {
+        writer.writeCharacters(INDENTS[Math.min(depth, INDENTS.length - 1)]);
+    }
+}
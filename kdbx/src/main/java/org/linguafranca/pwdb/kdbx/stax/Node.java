@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.stax;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An XML element that is not otherwise modelled, kept as read so that it can be written
+ * back out, e.g. AutoType, CustomData and most of Meta.
+ * <p>
+ * An element has either text or children, mixed content does not occur in KDBX.
+ */
+public final class Node {
+
+    final String name;
+    /* alternate attribute names and values, or null */
+    String[] attributes;
+    String text;
+    List<Node> children;
+
+    public Node(String name) {
+        this.name = name;
+    }
+
+    public Node(String name, String text) {
+        this.name = name;
+        this.text = text;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The text of the element, null or empty if it has children
+     */
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    /**
+     * The value of an attribute
+     *
+     * @return the value, or null if there is no such attribute
+     */
+    public String getAttribute(String name) {
+        if (attributes != null) {
+            for (int i = 0; i < attributes.length; i += 2) {
+                if (attributes[i].equals(name)) {
+                    return attributes[i + 1];
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The child elements, in document order
+     */
+    public List<Node> getChildren() {
+        return children == null ? Collections.<Node>emptyList() : children;
+    }
+
+    public void addChild(Node child) {
+        if (children == null) {
+            children = new ArrayList<>();
+        }
+        children.add(child);
+    }
+
+    public boolean hasChildren() {
+        return children != null && !children.isEmpty();
+    }
+
+    /**
+     * The first child element with a name
+     *
+     * @return the child, or null if there is no such child
+     */
+    public Node getChild(String name) {
+        if (children != null) {
+            for (Node child : children) {
+                if (child.name.equals(name)) {
+                    return child;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The text of a child element
+     *
+     * @return the text, or null if there is no such child
+     */
+    public String getChildText(String name) {
+        Node child = getChild(name);
+        return child == null ? null : child.text;
+    }
+
+    /**
+     * Set the text of a child element, adding it if it is not present
+     */
+    public void setChildText(String name, String text) {
+        Node child = getChild(name);
+        if (child == null) {
+            addChild(new Node(name, text));
+        } else {
+            child.text = text;
+        }
+    }
+}
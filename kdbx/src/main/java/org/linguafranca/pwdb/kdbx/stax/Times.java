@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linguafranca.pwdb.kdbx.stax;
+
+/**
+ * The Times of a group or entry, held as milliseconds rather than as Dates
+ */
+public final class Times {
+
+    private long lastModificationTime;
+    private long creationTime;
+    private long lastAccessTime;
+    private long expiryTime;
+    private boolean expires;
+    private long usageCount;
+    private long locationChanged;
+
+    /**
+     * Times for a newly created group or entry
+     */
+    public static Times now() {
+        Times times = new Times();
+        long now = System.currentTimeMillis();
+        times.lastModificationTime = now;
+        times.creationTime = now;
+        times.lastAccessTime = now;
+        times.expiryTime = now;
+        times.locationChanged = now;
+        return times;
+    }
+
+    public long getLastModificationTime() {
+        return lastModificationTime;
+    }
+
+    public void setLastModificationTime(long lastModificationTime) {
+        this.lastModificationTime = lastModificationTime;
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    public void setCreationTime(long creationTime) {
+        this.creationTime = creationTime;
+    }
+
+    public long getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    public void setLastAccessTime(long lastAccessTime) {
+        this.lastAccessTime = lastAccessTime;
+    }
+
+    public long getExpiryTime() {
+        return expiryTime;
+    }
+
+    public void setExpiryTime(long expiryTime) {
+        this.expiryTime = expiryTime;
+    }
+
+    public boolean getExpires() {
+        return expires;
+    }
+
+    public void setExpires(boolean expires) {
+        this.expires = expires;
+    }
+
+    public long getUsageCount() {
+        return usageCount;
+    }
+
+    public void setUsageCount(long usageCount) {
+        this.usageCount = usageCount;
+    }
+
+    public long getLocationChanged() {
+        return locationChanged;
+    }
+
+    public void setLocationChanged(long locationChanged) {
+        this.locationChanged = locationChanged;
+    }
+}
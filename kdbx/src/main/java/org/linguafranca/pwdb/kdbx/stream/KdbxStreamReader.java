@@ -0,0 +1,353 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.stream;
+
+import org.apache.commons.codec.binary.Base64;
+import org.linguafranca.pwdb.BinaryPool;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.PropertyValue;
+import org.linguafranca.pwdb.kdbx.FormatContext;
+import org.linguafranca.pwdb.kdbx.Helpers;
+import org.linguafranca.pwdb.kdbx.KdbxHeader;
+import org.linguafranca.pwdb.kdbx.KdbxSerializer;
+import org.linguafranca.pwdb.kdbx.stax.AbstractStaxReader;
+import org.linguafranca.pwdb.kdbx.stax.Node;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+/**
+ * Reads a KDBX stream in a single pass, without building a {@link org.linguafranca.pwdb.Database},
+ * and passes what it finds to a {@link Listener} as it finds it. Only the entry being read and
+ * the path of the group it is in are held, so the memory used does not depend on the number of
+ * entries in the database.
+ * <p>
+ * Events arrive in document order, which is:
+ * <ol>
+ *     <li>attachments, each as {@link Listener#binary}</li>
+ *     <li>{@link Listener#meta}</li>
+ *     <li>for each group, depth first, {@link Listener#startGroup}, then its entries as
+ *     {@link Listener#entry}, then its subgroups, then {@link Listener#endGroup}</li>
+ *     <li>any other elements of Root, each as {@link Listener#rootElement}</li>
+ * </ol>
+ * Protected values are decrypted as they are read and held according to the
+ * {@link PropertyValue.Strategy} of the reader.
+ * <p>
+ * For example, to list the titles of all entries:
+ * <pre>
+ * new KdbxStreamReader(credentials).read(inputStream, new KdbxStreamReader.Listener() {
+ *     public void entry(StreamEntry entry) {
+ *         System.out.println(entry.getPath() + " " + entry.getProperty("Title"));
+ *     }
+ * });
+ * </pre>
+ *
+ * @author jo
+ */
+public class KdbxStreamReader {
+
+    /**
+     * Receives the content of a database as it is read. Exceptions thrown by the listener
+     * end reading and are passed to the caller of {@link #read}.
+     */
+    public interface Listener {
+        /**
+         * An attachment, to be read before returning
+         *
+         * @param index   the index by which entries refer to the attachment
+         * @param content the content of the attachment
+         */
+        default void binary(int index, InputStream content) throws IOException {
+        }
+
+        default void meta(StreamMeta meta) throws IOException {
+        }
+
+        default void startGroup(StreamGroup group) throws IOException {
+        }
+
+        default void entry(StreamEntry entry) throws IOException {
+        }
+
+        default void endGroup(StreamGroup group) throws IOException {
+        }
+
+        /**
+         * An element of Root other than the root group, e.g. DeletedObjects, following the
+         * {@link #endGroup} of the root group
+         */
+        default void rootElement(Node node) throws IOException {
+        }
+    }
+
+    private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+
+    static {
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final Credentials credentials;
+    private PropertyValue.Strategy propertyValueStrategy = new PropertyValue.Strategy.Default();
+    private BinaryPool binaryPool;
+
+    public KdbxStreamReader(Credentials credentials) {
+        this.credentials = credentials;
+    }
+
+    public PropertyValue.Strategy getPropertyValueStrategy() {
+        return propertyValueStrategy;
+    }
+
+    /**
+     * Set the strategy by which property values are held, protected values are held as
+     * protected whatever the strategy says
+     */
+    public void setPropertyValueStrategy(PropertyValue.Strategy propertyValueStrategy) {
+        this.propertyValueStrategy = propertyValueStrategy;
+    }
+
+    /**
+     * Set a pool to hold the attachments of KDBX V4 streams while they are passed to the listener,
+     * e.g. one with a memory budget. V4 attachments precede the XML, so they must be held until
+     * it is read. By default a pool is created for each read and closed at its end, a pool set
+     * here is left to the caller to close.
+     */
+    public void setBinaryPool(BinaryPool binaryPool) {
+        this.binaryPool = binaryPool;
+    }
+
+    /**
+     * Read a KDBX stream
+     *
+     * @param encryptedInputStream the stream, which is not closed
+     * @param listener             receives the content of the stream
+     * @return the header of the stream
+     * @throws IOException on error reading the stream, or thrown by the listener
+     */
+    public KdbxHeader read(InputStream encryptedInputStream, Listener listener) throws IOException {
+        KdbxHeader kdbxHeader = new KdbxHeader();
+        BinaryPool pool = binaryPool == null ? new BinaryPool() : binaryPool;
+        kdbxHeader.setBinaryPool(pool);
+        // closing the decrypted stream would otherwise close the caller's stream
+        InputStream shieldedInputStream = new FilterInputStream(encryptedInputStream) {
+            @Override
+            public void close() {
+            }
+        };
+        try (InputStream plainTextStream = KdbxSerializer.createUnencryptedInputStream(credentials, kdbxHeader, shieldedInputStream)) {
+            // V4 attachments were in the inner header
+            for (int i = 0; i < pool.size(); i++) {
+                if (pool.contains(i)) {
+                    try (InputStream content = pool.getInputStream(i)) {
+                        listener.binary(i, content);
+                    }
+                }
+            }
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(plainTextStream, "UTF-8");
+            try {
+                new Reading(reader, kdbxHeader, propertyValueStrategy, listener).read();
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            if (binaryPool == null) {
+                pool.close();
+            }
+        }
+        return kdbxHeader;
+    }
+
+    /* the state of a single read */
+    private static final class Reading extends AbstractStaxReader {
+        private final KdbxHeader kdbxHeader;
+        private final Listener listener;
+        private UUID recycleBinUuid;
+
+        Reading(XMLStreamReader reader, KdbxHeader kdbxHeader, PropertyValue.Strategy strategy, Listener listener) {
+            super(reader, kdbxHeader.getStreamEncryptor(), strategy, FormatContext.forVersion(kdbxHeader.getVersion()));
+            this.kdbxHeader = kdbxHeader;
+            this.listener = listener;
+        }
+
+        void read() throws XMLStreamException, IOException {
+            reader.nextTag();
+            reader.require(START_ELEMENT, null, "KeePassFile");
+            while (reader.nextTag() == START_ELEMENT) {
+                switch (reader.getLocalName()) {
+                    case "Meta":
+                        readMeta();
+                        break;
+                    case "Root":
+                        readRoot();
+                        break;
+                    default:
+                        skip();
+                }
+            }
+        }
+
+        private void readMeta() throws XMLStreamException, IOException {
+            StreamMeta meta = new StreamMeta();
+            while (reader.nextTag() == START_ELEMENT) {
+                if (reader.getLocalName().equals("Binaries")) {
+                    // V3 attachments, marking their place
+                    readBinaries((index, content) -> listener.binary(index, new ByteArrayInputStream(content)));
+                    meta.getNode().addChild(new Node("Binaries"));
+                } else {
+                    meta.getNode().addChild(readNode());
+                }
+            }
+            if (kdbxHeader.getVersion() == 3) {
+                String headerHash = meta.get("HeaderHash");
+                byte[] hash = headerHash == null ? null : Base64.decodeBase64(headerHash.getBytes(StandardCharsets.US_ASCII));
+                if (!Arrays.equals(hash, kdbxHeader.getHeaderHash())) {
+                    throw new IllegalStateException("Header hash does not match");
+                }
+            }
+            String recycleBin = meta.get("RecycleBinUUID");
+            if (recycleBin != null && !recycleBin.isEmpty()) {
+                recycleBinUuid = Helpers.uuidFromBase64(recycleBin);
+            }
+            listener.meta(meta);
+        }
+
+        private void readRoot() throws XMLStreamException, IOException {
+            while (reader.nextTag() == START_ELEMENT) {
+                if (reader.getLocalName().equals("Group")) {
+                    readGroup(Collections.<String>emptyList());
+                } else {
+                    listener.rootElement(readNode());
+                }
+            }
+        }
+
+        private void readGroup(List<String> parentPath) throws XMLStreamException, IOException {
+            StreamGroup group = new StreamGroup();
+            boolean started = false;
+            while (reader.nextTag() == START_ELEMENT) {
+                String name = reader.getLocalName();
+                if (!started && (name.equals("Entry") || name.equals("Group"))) {
+                    startGroup(group, parentPath);
+                    started = true;
+                }
+                switch (name) {
+                    case "UUID":
+                        UUID uuid = readUuid();
+                        if (uuid != null) {
+                            group.setUuid(uuid);
+                        }
+                        break;
+                    case "Name":
+                        group.setName(reader.getElementText());
+                        break;
+                    case "Notes":
+                        group.setNotes(reader.getElementText());
+                        break;
+                    case "IconID":
+                        group.setIconId(readInt());
+                        break;
+                    case "Times":
+                        group.setTimes(new StreamTimes(readTimes()));
+                        break;
+                    case "Entry":
+                        StreamEntry entry = readEntry();
+                        entry.setPath(group.getPath());
+                        listener.entry(entry);
+                        break;
+                    case "Group":
+                        readGroup(group.getPath());
+                        break;
+                    default:
+                        group.getNodes().add(readNode());
+                }
+            }
+            if (!started) {
+                startGroup(group, parentPath);
+            }
+            listener.endGroup(group);
+        }
+
+        private void startGroup(StreamGroup group, List<String> parentPath) throws IOException {
+            List<String> path = new ArrayList<>(parentPath.size() + 1);
+            path.addAll(parentPath);
+            path.add(group.getName());
+            group.setPath(Collections.unmodifiableList(path));
+            group.setRecycleBin(group.getUuid().equals(recycleBinUuid));
+            listener.startGroup(group);
+        }
+
+        private StreamEntry readEntry() throws XMLStreamException {
+            StreamEntry entry = new StreamEntry();
+            while (reader.nextTag() == START_ELEMENT) {
+                switch (reader.getLocalName()) {
+                    case "UUID":
+                        UUID uuid = readUuid();
+                        if (uuid != null) {
+                            entry.setUuid(uuid);
+                        }
+                        break;
+                    case "IconID":
+                        entry.setIconId(readInt());
+                        break;
+                    case "Tags":
+                        entry.setTags(reader.getElementText());
+                        break;
+                    case "Times":
+                        entry.setTimes(new StreamTimes(readTimes()));
+                        break;
+                    case "String":
+                        Map.Entry<String, PropertyValue> property = readString();
+                        if (property != null) {
+                            entry.setPropertyValue(property.getKey(), property.getValue());
+                        }
+                        break;
+                    case "Binary":
+                        Map.Entry<String, Integer> binary = readBinary();
+                        if (binary != null) {
+                            entry.getBinaries().put(binary.getKey(), binary.getValue());
+                        }
+                        break;
+                    case "History":
+                        while (reader.nextTag() == START_ELEMENT) {
+                            entry.getHistory().add(readEntry());
+                        }
+                        break;
+                    default:
+                        entry.getNodes().add(readNode());
+                }
+            }
+            return entry;
+        }
+    }
+}
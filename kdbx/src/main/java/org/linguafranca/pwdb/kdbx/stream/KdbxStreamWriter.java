@@ -0,0 +1,385 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.stream;
+
+import org.apache.commons.codec.binary.Base64;
+import org.linguafranca.pwdb.BinaryPool;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.PropertyValue;
+import org.linguafranca.pwdb.kdbx.FormatContext;
+import org.linguafranca.pwdb.kdbx.Helpers;
+import org.linguafranca.pwdb.kdbx.KdbxHeader;
+import org.linguafranca.pwdb.kdbx.KdbxSerializer;
+import org.linguafranca.pwdb.kdbx.stax.AbstractStaxWriter;
+import org.linguafranca.pwdb.kdbx.stax.Node;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+
+/**
+ * Writes a KDBX stream a group and an entry at a time, without building a
+ * {@link org.linguafranca.pwdb.Database}, so the memory used does not depend on the number of
+ * entries written. Protected values are encrypted as they are written.
+ * <p>
+ * Calls must be made in document order:
+ * <ol>
+ *     <li>attachments, using {@link #addBinary}, since in KDBX V4 they precede the XML</li>
+ *     <li>{@link #start}, which writes the header and Meta</li>
+ *     <li>the root group, using {@link #startGroup}, its entries, using {@link #entry},
+ *     its subgroups, in the same way, and then {@link #endGroup}</li>
+ *     <li>optionally, other elements of Root, using {@link #rootElement}</li>
+ *     <li>{@link #close}</li>
+ * </ol>
+ * The writer is also a {@link KdbxStreamReader.Listener}, events from which arrive in this order,
+ * so that a database can be copied or transformed without loading it. Elements that
+ * {@link StreamMeta}, {@link StreamGroup} and {@link StreamEntry} do not model, such as custom
+ * icons, AutoType and CustomData, are written back out as they were read. Generator is set to
+ * KeePassJava2 and, in KDBX V3, HeaderHash is that of the header written.
+ *
+ * @author jo
+ */
+public class KdbxStreamWriter implements KdbxStreamReader.Listener, Closeable {
+
+    private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+    private final Credentials credentials;
+    private final KdbxHeader kdbxHeader;
+    private final OutputStream outputStream;
+    private final FormatContext formatContext;
+    private BinaryPool binaryPool = new BinaryPool();
+
+    private OutputStream encryptedOutputStream;
+    private Writing writing;
+    /* for each open group, whether it has subgroups, after which it may not have entries */
+    private final Deque<Boolean> groups = new ArrayDeque<>();
+    private boolean rootWritten;
+    private boolean deletedObjectsWritten;
+
+    /**
+     * A writer of KDBX V4 with default encryption
+     *
+     * @param credentials  credentials to use
+     * @param outputStream where to write, closed by {@link #close}
+     */
+    public KdbxStreamWriter(Credentials credentials, OutputStream outputStream) {
+        this(credentials, new KdbxHeader(4), outputStream);
+    }
+
+    /**
+     * A writer using the version and encryption of a header
+     *
+     * @param credentials  credentials to use
+     * @param kdbxHeader   the header to write
+     * @param outputStream where to write, closed by {@link #close}
+     */
+    public KdbxStreamWriter(Credentials credentials, KdbxHeader kdbxHeader, OutputStream outputStream) {
+        this.credentials = credentials;
+        this.kdbxHeader = kdbxHeader;
+        this.outputStream = outputStream;
+        this.formatContext = FormatContext.forVersion(kdbxHeader.getVersion());
+    }
+
+    /**
+     * Set the pool in which to hold attachments until they are written, e.g. one with a memory
+     * budget. The pool is not closed by the writer.
+     */
+    public void setBinaryPool(BinaryPool binaryPool) {
+        checkNotStarted();
+        this.binaryPool = binaryPool;
+    }
+
+    /**
+     * Add an attachment
+     *
+     * @param content the content of the attachment
+     * @return the index by which entries refer to the attachment
+     */
+    public int addBinary(byte[] content) {
+        checkNotStarted();
+        return binaryPool.add(content);
+    }
+
+    /**
+     * Add an attachment, reading it from a stream
+     *
+     * @param content the content of the attachment, which is read but not closed
+     * @return the index by which entries refer to the attachment
+     */
+    public int addBinary(InputStream content) throws IOException {
+        checkNotStarted();
+        return binaryPool.add(content);
+    }
+
+    @Override
+    public void binary(int index, InputStream content) throws IOException {
+        checkNotStarted();
+        binaryPool.set(index, content);
+    }
+
+    @Override
+    public void meta(StreamMeta meta) throws IOException {
+        start(meta);
+    }
+
+    /**
+     * Write the header and the Meta element
+     *
+     * @param meta the content of Meta, e.g. from {@link StreamMeta#create}
+     */
+    public void start(StreamMeta meta) throws IOException {
+        checkNotStarted();
+        if (kdbxHeader.getVersion() == 4) {
+            kdbxHeader.getBinaries().clear();
+            kdbxHeader.setBinaryPool(binaryPool);
+        }
+        encryptedOutputStream = KdbxSerializer.createEncryptedOutputStream(credentials, kdbxHeader, outputStream);
+        try {
+            writing = new Writing(outputFactory.createXMLStreamWriter(encryptedOutputStream, "UTF-8"),
+                    kdbxHeader, formatContext, meta);
+            writing.writeStart(binaryPool);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void startGroup(StreamGroup group) throws IOException {
+        checkStarted();
+        if (groups.isEmpty()) {
+            if (rootWritten) {
+                throw new IllegalStateException("There can only be one root group");
+            }
+            rootWritten = true;
+        } else {
+            groups.pop();
+            groups.push(true);
+        }
+        groups.push(false);
+        try {
+            writing.writeGroupStart(group);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Write an entry in the current group, which must not yet have had subgroups written
+     */
+    @Override
+    public void entry(StreamEntry entry) throws IOException {
+        checkStarted();
+        if (groups.isEmpty()) {
+            throw new IllegalStateException("Entries must be in a group");
+        }
+        if (groups.peek()) {
+            throw new IllegalStateException("Entries must precede the subgroups of a group");
+        }
+        try {
+            writing.writeEntry(entry, true);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void endGroup(StreamGroup group) throws IOException {
+        endGroup();
+    }
+
+    /**
+     * End the current group
+     */
+    public void endGroup() throws IOException {
+        checkStarted();
+        if (groups.isEmpty()) {
+            throw new IllegalStateException("No group to end");
+        }
+        groups.pop();
+        try {
+            writing.writeGroupEnd();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Write an element of Root other than the root group, which must have ended. Unless one
+     * is written, an empty DeletedObjects is written on {@link #close}.
+     */
+    @Override
+    public void rootElement(Node node) throws IOException {
+        checkStarted();
+        if (!rootWritten || !groups.isEmpty()) {
+            throw new IllegalStateException("Elements of Root must follow the root group");
+        }
+        if (node.getName().equals("DeletedObjects")) {
+            deletedObjectsWritten = true;
+        }
+        try {
+            writing.writeRootElement(node);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * End any groups still open and finish the stream, closing the output stream
+     */
+    @Override
+    public void close() throws IOException {
+        if (writing == null) {
+            outputStream.close();
+            return;
+        }
+        try {
+            while (!groups.isEmpty()) {
+                endGroup();
+            }
+            if (!rootWritten) {
+                throw new IllegalStateException("No root group has been written");
+            }
+            writing.writeEnd(!deletedObjectsWritten);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            writing = null;
+            encryptedOutputStream.close();
+        }
+    }
+
+    private void checkNotStarted() {
+        if (encryptedOutputStream != null) {
+            throw new IllegalStateException("Already started");
+        }
+    }
+
+    private void checkStarted() {
+        if (writing == null) {
+            throw new IllegalStateException(encryptedOutputStream == null ? "Not started" : "Closed");
+        }
+    }
+
+    /* the state of a single write */
+    private static final class Writing extends AbstractStaxWriter {
+        private final KdbxHeader kdbxHeader;
+        private final StreamMeta meta;
+
+        Writing(XMLStreamWriter writer, KdbxHeader kdbxHeader, FormatContext formatContext, StreamMeta meta) {
+            super(writer, kdbxHeader.getStreamEncryptor(), formatContext);
+            this.kdbxHeader = kdbxHeader;
+            this.meta = meta;
+        }
+
+        void writeStart(BinaryPool binaryPool) throws XMLStreamException {
+            writer.writeStartDocument("UTF-8", "1.0");
+            start("KeePassFile");
+            writeMeta(binaryPool);
+            start("Root");
+        }
+
+        void writeRootElement(Node node) throws XMLStreamException {
+            writeNode(node);
+        }
+
+        void writeEnd(boolean withDeletedObjects) throws XMLStreamException {
+            if (withDeletedObjects) {
+                leaf("DeletedObjects", "");
+            }
+            end();
+            end();
+            writer.writeEndDocument();
+            writer.flush();
+            writer.close();
+        }
+
+        private void writeMeta(BinaryPool binaryPool) throws XMLStreamException {
+            start("Meta");
+            leaf("Generator", "KeePassJava2");
+            if (kdbxHeader.getVersion() == 3) {
+                leaf("HeaderHash", new String(Base64.encodeBase64(kdbxHeader.getHeaderHash()), StandardCharsets.US_ASCII));
+            }
+            boolean binariesWritten = false;
+            for (Node node : meta.getNode().getChildren()) {
+                switch (node.getName()) {
+                    case "Generator":
+                    case "HeaderHash":
+                        break;
+                    case "Binaries":
+                        writeBinaries(binaryPool);
+                        binariesWritten = true;
+                        break;
+                    default:
+                        writeNode(node);
+                }
+            }
+            if (!binariesWritten) {
+                writeBinaries(binaryPool);
+            }
+            end();
+        }
+
+        void writeGroupStart(StreamGroup group) throws XMLStreamException {
+            start("Group");
+            leaf("UUID", Helpers.base64FromUuid(group.getUuid()));
+            leaf("Name", group.getName());
+            leaf("Notes", group.getNotes());
+            leaf("IconID", String.valueOf(group.getIconId()));
+            writeNodes(group.getNodes(), true);
+            writeTimes(group.getTimes().toTimes());
+            writeNodes(group.getNodes(), false);
+        }
+
+        void writeGroupEnd() throws XMLStreamException {
+            end();
+        }
+
+        void writeEntry(StreamEntry entry, boolean withHistory) throws XMLStreamException {
+            start("Entry");
+            leaf("UUID", Helpers.base64FromUuid(entry.getUuid()));
+            leaf("IconID", String.valueOf(entry.getIconId()));
+            writeNodes(entry.getNodes(), true);
+            if (entry.getTags() != null) {
+                leaf("Tags", entry.getTags());
+            }
+            writeTimes(entry.getTimes().toTimes());
+            for (Map.Entry<String, PropertyValue> property : entry.getProperties().entrySet()) {
+                writeString(property.getKey(), property.getValue(), meta.shouldProtect(property.getKey()));
+            }
+            for (Map.Entry<String, Integer> binary : entry.getBinaries().entrySet()) {
+                writeBinary(binary.getKey(), binary.getValue());
+            }
+            writeNodes(entry.getNodes(), false);
+            if (withHistory && !entry.getHistory().isEmpty()) {
+                start("History");
+                for (StreamEntry historic : entry.getHistory()) {
+                    writeEntry(historic, false);
+                }
+                end();
+            }
+            end();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.stream;
+
+import org.linguafranca.pwdb.PropertyValue;
+import org.linguafranca.pwdb.kdbx.stax.Node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * An entry as it is streamed, with its property values decrypted and held according to a
+ * {@link PropertyValue.Strategy}, and its attachments referred to by their index in the
+ * database's attachments
+ *
+ * @author jo
+ */
+public class StreamEntry {
+
+    private UUID uuid = UUID.randomUUID();
+    private int iconId;
+    private String tags;
+    private StreamTimes times = new StreamTimes();
+    private List<String> path = Collections.emptyList();
+    private final Map<String, PropertyValue> properties = new LinkedHashMap<>();
+    private final Map<String, Integer> binaries = new LinkedHashMap<>();
+    private final List<StreamEntry> history = new ArrayList<>();
+    private final List<Node> nodes = new ArrayList<>();
+
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    public void setUuid(UUID uuid) {
+        this.uuid = uuid;
+    }
+
+    public int getIconId() {
+        return iconId;
+    }
+
+    public void setIconId(int iconId) {
+        this.iconId = iconId;
+    }
+
+    public String getTags() {
+        return tags;
+    }
+
+    public void setTags(String tags) {
+        this.tags = tags;
+    }
+
+    public StreamTimes getTimes() {
+        return times;
+    }
+
+    public void setTimes(StreamTimes times) {
+        this.times = times;
+    }
+
+    /**
+     * The names of the groups from the root group to the group containing this entry, both inclusive
+     */
+    public List<String> getPath() {
+        return path;
+    }
+
+    public void setPath(List<String> path) {
+        this.path = path;
+    }
+
+    /**
+     * The value of a property as a string
+     *
+     * @param name the name of the property
+     * @return the value or null if there is no such property
+     */
+    public String getProperty(String name) {
+        PropertyValue value = properties.get(name);
+        return value == null ? null : value.getValueAsString();
+    }
+
+    public PropertyValue getPropertyValue(String name) {
+        return properties.get(name);
+    }
+
+    public void setPropertyValue(String name, PropertyValue value) {
+        properties.put(name, value);
+    }
+
+    /**
+     * The properties of the entry, in document order
+     */
+    public Map<String, PropertyValue> getProperties() {
+        return properties;
+    }
+
+    /**
+     * The attachments of the entry, by name, as their index in the attachments of the database
+     */
+    public Map<String, Integer> getBinaries() {
+        return binaries;
+    }
+
+    /**
+     * Previous versions of the entry, oldest first
+     */
+    public List<StreamEntry> getHistory() {
+        return history;
+    }
+
+    /**
+     * Elements of the entry that are not otherwise modelled, as read, e.g. AutoType, CustomData
+     * and CustomIconUUID, which a {@link KdbxStreamWriter} writes back out
+     */
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    @Override
+    public String toString() {
+        return String.join("/", path) + "/" + getProperty("Title");
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.stream;
+
+import org.linguafranca.pwdb.kdbx.stax.Node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A group as it is streamed, without its entries and subgroups, which are streamed separately
+ *
+ * @author jo
+ */
+public class StreamGroup {
+
+    private UUID uuid = UUID.randomUUID();
+    private String name = "";
+    private String notes = "";
+    private int iconId;
+    private StreamTimes times = new StreamTimes();
+    private List<String> path = Collections.emptyList();
+    private boolean recycleBin;
+    private final List<Node> nodes = new ArrayList<>();
+
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    public void setUuid(UUID uuid) {
+        this.uuid = uuid;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getNotes() {
+        return notes;
+    }
+
+    public void setNotes(String notes) {
+        this.notes = notes;
+    }
+
+    public int getIconId() {
+        return iconId;
+    }
+
+    public void setIconId(int iconId) {
+        this.iconId = iconId;
+    }
+
+    public StreamTimes getTimes() {
+        return times;
+    }
+
+    public void setTimes(StreamTimes times) {
+        this.times = times;
+    }
+
+    /**
+     * The names of the groups from the root group to this one, both inclusive
+     */
+    public List<String> getPath() {
+        return path;
+    }
+
+    public void setPath(List<String> path) {
+        this.path = path;
+    }
+
+    /**
+     * True if this is the group that the database's Meta names as its recycle bin
+     */
+    public boolean isRecycleBin() {
+        return recycleBin;
+    }
+
+    public void setRecycleBin(boolean recycleBin) {
+        this.recycleBin = recycleBin;
+    }
+
+    /**
+     * Elements of the group that are not otherwise modelled, as read, e.g. IsExpanded,
+     * EnableAutoType and CustomIconUUID, which a {@link KdbxStreamWriter} writes back out
+     */
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    @Override
+    public String toString() {
+        return String.join("/", path);
+    }
+}
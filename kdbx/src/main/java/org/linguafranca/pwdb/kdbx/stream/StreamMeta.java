@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.stream;
+
+import org.linguafranca.pwdb.kdbx.TimestampCodec;
+import org.linguafranca.pwdb.kdbx.stax.Node;
+
+import java.util.Date;
+
+/**
+ * The Meta element of a database, as read, including elements that repeat such as CustomIcons/Icon
+ * and CustomData/Item. The text of elements can be got and set by their path below Meta, e.g.
+ * "DatabaseName" or "MemoryProtection/ProtectPassword". Attachments are streamed separately and
+ * are not included.
+ *
+ * @author jo
+ */
+public class StreamMeta {
+
+    private final Node node;
+
+    /**
+     * An empty Meta
+     */
+    public StreamMeta() {
+        this(new Node("Meta"));
+    }
+
+    /**
+     * @param node the Meta element
+     */
+    public StreamMeta(Node node) {
+        this.node = node;
+    }
+
+    /**
+     * Meta for a new database, with the same content as that of the other implementations
+     *
+     * @param name the name of the database
+     */
+    public static StreamMeta create(String name) {
+        String now = TimestampCodec.encodeV3(new Date());
+        String none = "AAAAAAAAAAAAAAAAAAAAAA==";
+        StreamMeta meta = new StreamMeta();
+        meta.set("Generator", "KeePassJava2");
+        meta.set("DatabaseName", name);
+        meta.set("DatabaseNameChanged", now);
+        meta.set("DatabaseDescription", "");
+        meta.set("DatabaseDescriptionChanged", now);
+        meta.set("DefaultUserName", "");
+        meta.set("DefaultUserNameChanged", now);
+        meta.set("MaintenanceHistoryDays", "365");
+        meta.set("Color", "");
+        meta.set("MasterKeyChanged", now);
+        meta.set("MasterKeyChangeRec", "-1");
+        meta.set("MasterKeyChangeForce", "-1");
+        meta.set("MemoryProtection/ProtectTitle", "False");
+        meta.set("MemoryProtection/ProtectUserName", "False");
+        meta.set("MemoryProtection/ProtectPassword", "True");
+        meta.set("MemoryProtection/ProtectURL", "False");
+        meta.set("MemoryProtection/ProtectNotes", "False");
+        meta.set("RecycleBinEnabled", "True");
+        meta.set("RecycleBinUUID", none);
+        meta.set("RecycleBinChanged", now);
+        meta.set("EntryTemplatesGroup", none);
+        meta.set("EntryTemplatesGroupChanged", now);
+        meta.set("LastSelectedGroup", none);
+        meta.set("LastTopVisibleGroup", none);
+        meta.set("HistoryMaxItems", "10");
+        meta.set("HistoryMaxSize", "6291456");
+        return meta;
+    }
+
+    /**
+     * The text of an element, the first in document order if the path repeats
+     *
+     * @param path the path of the element below Meta
+     * @return the text, or null if there is no such element
+     */
+    public String get(String path) {
+        Node target = node;
+        for (String name : path.split("/")) {
+            target = target.getChild(name);
+            if (target == null) {
+                return null;
+            }
+        }
+        return target.getText();
+    }
+
+    /**
+     * Set the text of an element, the first in document order if the path repeats, adding it
+     * and the elements containing it if they are not present
+     *
+     * @param path the path of the element below Meta
+     */
+    public void set(String path, String value) {
+        String[] names = path.split("/");
+        Node target = node;
+        for (int i = 0; i < names.length - 1; i++) {
+            Node child = target.getChild(names[i]);
+            if (child == null) {
+                child = new Node(names[i]);
+                target.addChild(child);
+            }
+            target = child;
+        }
+        target.setChildText(names[names.length - 1], value);
+    }
+
+    /**
+     * The Meta element, with all it contains in document order. Where a KDBX V3 stream had
+     * attachments there is an empty Binaries element, in whose place they are written.
+     */
+    public Node getNode() {
+        return node;
+    }
+
+    public String getName() {
+        return get("DatabaseName");
+    }
+
+    public String getDescription() {
+        return get("DatabaseDescription");
+    }
+
+    public String getGenerator() {
+        return get("Generator");
+    }
+
+    /**
+     * Whether a standard property should be protected, according to MemoryProtection
+     *
+     * @param propertyName the name of the property, e.g. "Password"
+     */
+    public boolean shouldProtect(String propertyName) {
+        return "True".equalsIgnoreCase(get("MemoryProtection/Protect" + propertyName));
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.stream;
+
+import org.linguafranca.pwdb.kdbx.stax.Times;
+
+import java.util.Date;
+
+/**
+ * The Times element of a group or entry
+ *
+ * @author jo
+ */
+public class StreamTimes {
+
+    private Date lastModificationTime;
+    private Date creationTime;
+    private Date lastAccessTime;
+    private Date expiryTime;
+    private boolean expires;
+    private long usageCount;
+    private Date locationChanged;
+
+    /**
+     * Times all set to now, not expiring
+     */
+    public StreamTimes() {
+        Date now = new Date();
+        lastModificationTime = now;
+        creationTime = now;
+        lastAccessTime = now;
+        expiryTime = now;
+        locationChanged = now;
+    }
+
+    /* times as read */
+    StreamTimes(Times times) {
+        lastModificationTime = new Date(times.getLastModificationTime());
+        creationTime = new Date(times.getCreationTime());
+        lastAccessTime = new Date(times.getLastAccessTime());
+        expiryTime = new Date(times.getExpiryTime());
+        expires = times.getExpires();
+        usageCount = times.getUsageCount();
+        locationChanged = new Date(times.getLocationChanged());
+    }
+
+    /* times to write, those not set are now */
+    Times toTimes() {
+        Times times = Times.now();
+        long now = times.getCreationTime();
+        times.setLastModificationTime(millis(lastModificationTime, now));
+        times.setCreationTime(millis(creationTime, now));
+        times.setLastAccessTime(millis(lastAccessTime, now));
+        times.setExpiryTime(millis(expiryTime, now));
+        times.setExpires(expires);
+        times.setUsageCount(usageCount);
+        times.setLocationChanged(millis(locationChanged, now));
+        return times;
+    }
+
+    private static long millis(Date date, long defaultValue) {
+        return date == null ? defaultValue : date.getTime();
+    }
+
+    public Date getLastModificationTime() {
+        return lastModificationTime;
+    }
+
+    public void setLastModificationTime(Date lastModificationTime) {
+        this.lastModificationTime = lastModificationTime;
+    }
+
+    public Date getCreationTime() {
+        return creationTime;
+    }
+
+    public void setCreationTime(Date creationTime) {
+        this.creationTime = creationTime;
+    }
+
+    public Date getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    public void setLastAccessTime(Date lastAccessTime) {
+        this.lastAccessTime = lastAccessTime;
+    }
+
+    public Date getExpiryTime() {
+        return expiryTime;
+    }
+
+    public void setExpiryTime(Date expiryTime) {
+        this.expiryTime = expiryTime;
+    }
+
+    public boolean getExpires() {
+        return expires;
+    }
+
+    public void setExpires(boolean expires) {
+        this.expires = expires;
+    }
+
+    public long getUsageCount() {
+        return usageCount;
+    }
+
+    public void setUsageCount(long usageCount) {
+        this.usageCount = usageCount;
+    }
+
+    public Date getLocationChanged() {
+        return locationChanged;
+    }
+
+    public void setLocationChanged(Date locationChanged) {
+        this.locationChanged = locationChanged;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.hashedblock;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.kdbx.KdbxHeader;
+import org.linguafranca.pwdb.kdbx.KdbxSerializer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that reading HMAC blocks and KDBX files from buffers gives the same results as from streams
+ */
+public class ByteBufferHmacBlockInputStreamTest {
+
+    private static final Random random = new Random(13);
+    private static final int BLOCK_LENGTH = 1000;
+
+    /* write blocks of BLOCK_LENGTH */
+    private static byte[] createBlocks(byte[] key, byte[] content) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        HmacBlockOutputStream outputStream = new HmacBlockOutputStream(key, baos, true);
+        for (int i = 0; i < content.length; i += BLOCK_LENGTH) {
+            outputStream.write(content, i, Math.min(BLOCK_LENGTH, content.length - i));
+            outputStream.flush();
+        }
+        outputStream.close();
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void sameAsStream() throws IOException {
+        byte[] key = new byte[64];
+        random.nextBytes(key);
+        for (int length : new int[]{0, 1, BLOCK_LENGTH, 20_500}) {
+            byte[] content = new byte[length];
+            random.nextBytes(content);
+            byte[] blocks = createBlocks(key, content);
+            // blocks that do not start at the beginning of the buffer
+            byte[] offsetBlocks = new byte[blocks.length + 10];
+            System.arraycopy(blocks, 0, offsetBlocks, 7, blocks.length);
+            ByteBuffer buffer = ByteBuffer.wrap(offsetBlocks, 7, blocks.length);
+
+            InputStream inputStream = new ByteBufferHmacBlockInputStream(key, buffer, true);
+            assertArrayEquals("length " + length, content, ByteStreams.toByteArray(inputStream));
+            assertEquals(7 + blocks.length, buffer.position());
+        }
+    }
+
+    @Test
+    public void badBlockIsNotProvided() throws IOException {
+        byte[] key = new byte[64];
+        byte[] content = new byte[BLOCK_LENGTH * 5];
+        random.nextBytes(content);
+        byte[] blocks = createBlocks(key, content);
+        // corrupt the content of the fourth block, after its hmac and length
+        int blockLength = 32 + 4 + BLOCK_LENGTH;
+        blocks[3 * blockLength + 40] ^= 1;
+
+        InputStream inputStream = new ByteBufferHmacBlockInputStream(key, ByteBuffer.wrap(blocks), true);
+        byte[] buffer = new byte[100];
+        int total = 0;
+        try {
+            int read;
+            while ((read = inputStream.read(buffer)) >= 0) {
+                total += read;
+            }
+            fail("Expected HMAC failure");
+        } catch (IllegalStateException e) {
+            assertEquals("Block HMAC does not match", e.getMessage());
+        }
+        assertEquals(3 * BLOCK_LENGTH, total);
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedBlocks() throws IOException {
+        byte[] key = new byte[64];
+        byte[] blocks = createBlocks(key, new byte[BLOCK_LENGTH * 2]);
+        InputStream inputStream = new ByteBufferHmacBlockInputStream(key, ByteBuffer.wrap(Arrays.copyOf(blocks, blocks.length - 50)), true);
+        ByteStreams.toByteArray(inputStream);
+    }
+
+    @Test
+    public void mappedFileSameAsStream() throws IOException {
+        Credentials credentials = new KdbxCreds("123".getBytes());
+        for (String resource : new String[]{"Attachment.kdbx", "V4-AES-Argon2.kdbx", "V4-ChaCha20-AES.kdbx"}) {
+            InputStream inputStream = getClass().getClassLoader().getResourceAsStream(resource);
+            byte[] expected = ByteStreams.toByteArray(KdbxSerializer.createUnencryptedInputStream(credentials, new KdbxHeader(), inputStream));
+
+            Path path = Files.createTempFile("mapped", ".kdbx");
+            try {
+                Files.copy(getClass().getClassLoader().getResourceAsStream(resource), path, StandardCopyOption.REPLACE_EXISTING);
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    KdbxHeader header = new KdbxHeader();
+                    InputStream mapped = KdbxSerializer.createUnencryptedInputStream(credentials, header, buffer);
+                    assertArrayEquals(resource, expected, ByteStreams.toByteArray(mapped));
+                    assertNotNull(header.getHeaderHash());
+                }
+            } finally {
+                Files.delete(path);
+            }
+        }
+    }
+}
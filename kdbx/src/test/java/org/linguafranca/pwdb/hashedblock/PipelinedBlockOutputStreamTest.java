@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.hashedblock;
+
+import com.google.common.io.ByteStreams;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.kdbx.KdbxHeader;
+import org.linguafranca.pwdb.kdbx.KdbxSerializer;
+
+import java.io.*;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that pipelined block writers give the same output as sequential
+ */
+public class PipelinedBlockOutputStreamTest {
+
+    private static final ExecutorService executorService = Executors.newFixedThreadPool(2);
+    private static final Random random = new Random(3);
+
+    @AfterClass
+    public static void shutdown() {
+        executorService.shutdown();
+    }
+
+    private static byte[] write(OutputStream outputStream, ByteArrayOutputStream baos, byte[] content) throws IOException {
+        // write in odd sized pieces, and a single byte
+        int i = 0;
+        if (content.length > 0) {
+            outputStream.write(content[i++]);
+        }
+        for (; i < content.length; i += 777) {
+            outputStream.write(content, i, Math.min(777, content.length - i));
+        }
+        outputStream.close();
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void sameAsSequential() throws IOException {
+        byte[] key = new byte[64];
+        random.nextBytes(key);
+        for (int length : new int[]{0, 1, 100, 1000, 10_000, 100_000}) {
+            byte[] content = new byte[length];
+            random.nextBytes(content);
+            for (int blockSize : new int[]{100, 1000, 8 * 1024}) {
+                String message = "length " + length + " block " + blockSize;
+
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                byte[] hashed = write(new HashedBlockOutputStream(baos, true, blockSize), baos, content);
+                baos = new ByteArrayOutputStream();
+                byte[] hmac = write(new HmacBlockOutputStream(key, baos, true, blockSize), baos, content);
+                assertArrayEquals(message, content, ByteStreams.toByteArray(new HashedBlockInputStream(new ByteArrayInputStream(hashed), true)));
+                assertArrayEquals(message, content, ByteStreams.toByteArray(new HmacBlockInputStream(key, new ByteArrayInputStream(hmac), true)));
+
+                for (ExecutorService executor : new ExecutorService[]{null, executorService}) {
+                    baos = new ByteArrayOutputStream();
+                    assertArrayEquals(message, hashed, write(new PipelinedHashedBlockOutputStream(baos, true, blockSize, executor), baos, content));
+                    baos = new ByteArrayOutputStream();
+                    assertArrayEquals(message, hmac, write(new PipelinedHmacBlockOutputStream(key, baos, true, blockSize, executor), baos, content));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void errorIsReported() {
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Disk full");
+            }
+        };
+        OutputStream outputStream = new PipelinedHashedBlockOutputStream(failing, true, 100, executorService);
+        try {
+            outputStream.write(new byte[1000]);
+            outputStream.close();
+            fail("Expected exception");
+        } catch (IOException e) {
+            assertEquals("Disk full", e.getMessage());
+        }
+    }
+
+    @Test
+    public void serializerUsesExecutorAndBlockSize() throws IOException {
+        Credentials credentials = new KdbxCreds("123".getBytes());
+        byte[] content = new byte[50_000];
+        random.nextBytes(content);
+        for (int version : new int[]{3, 4}) {
+            KdbxHeader header = new KdbxHeader(version);
+            header.setCipherExecutor(executorService);
+            header.setBlockSize(1000);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            OutputStream outputStream = KdbxSerializer.createEncryptedOutputStream(credentials, header, baos);
+            outputStream.write(content);
+            outputStream.close();
+            InputStream inputStream = KdbxSerializer.createUnencryptedInputStream(credentials, new KdbxHeader(), new ByteArrayInputStream(baos.toByteArray()));
+            assertArrayEquals("version " + version, content, ByteStreams.toByteArray(inputStream));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.hashedblock;
+
+import com.google.common.io.ByteStreams;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that pipelined HMAC block verification gives the same results as sequential
+ */
+public class PipelinedHmacBlockInputStreamTest {
+
+    private static final ExecutorService executorService = Executors.newFixedThreadPool(3);
+    private static final Random random = new Random(5);
+    private static final int BLOCK_LENGTH = 1000;
+
+    @AfterClass
+    public static void shutdown() {
+        executorService.shutdown();
+    }
+
+    /* write blocks of BLOCK_LENGTH */
+    private static byte[] createBlocks(byte[] key, byte[] content) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        HmacBlockOutputStream outputStream = new HmacBlockOutputStream(key, baos, true);
+        for (int i = 0; i < content.length; i += BLOCK_LENGTH) {
+            outputStream.write(content, i, Math.min(BLOCK_LENGTH, content.length - i));
+            outputStream.flush();
+        }
+        outputStream.close();
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void sameAsSequential() throws IOException {
+        byte[] key = new byte[64];
+        random.nextBytes(key);
+        for (int length : new int[]{0, 1, BLOCK_LENGTH, 20_500}) {
+            byte[] content = new byte[length];
+            random.nextBytes(content);
+            byte[] blocks = createBlocks(key, content);
+            assertArrayEquals(content, ByteStreams.toByteArray(new HmacBlockInputStream(key, new ByteArrayInputStream(blocks), true)));
+            for (int blocksAhead : new int[]{1, 4, 100}) {
+                for (ExecutorService executor : new ExecutorService[]{null, executorService}) {
+                    InputStream inputStream = new PipelinedHmacBlockInputStream(key, new ByteArrayInputStream(blocks), true, executor, blocksAhead);
+                    assertArrayEquals("length " + length, content, ByteStreams.toByteArray(inputStream));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void badBlockIsNotProvided() throws IOException {
+        byte[] key = new byte[64];
+        byte[] content = new byte[BLOCK_LENGTH * 5];
+        random.nextBytes(content);
+        byte[] blocks = createBlocks(key, content);
+        // corrupt the content of the fourth block, after its hmac and length
+        int blockLength = 32 + 4 + BLOCK_LENGTH;
+        blocks[3 * blockLength + 40] ^= 1;
+
+        InputStream inputStream = new PipelinedHmacBlockInputStream(key, new ByteArrayInputStream(blocks), true, executorService, 4);
+        byte[] buffer = new byte[100];
+        int total = 0;
+        try {
+            int read;
+            while ((read = inputStream.read(buffer)) >= 0) {
+                total += read;
+            }
+            fail("Expected HMAC failure");
+        } catch (IllegalStateException e) {
+            assertEquals("Block HMAC does not match", e.getMessage());
+        }
+        assertEquals(3 * BLOCK_LENGTH, total);
+    }
+}
@@ -47,10 +47,10 @@ public class HelpersTest {
 
     @Test
     public void fromDate() throws ParseException {
-        Helpers.isV4.set(false);
-        assertEquals(testDate, Helpers.fromDate(testDateAsDate));
-        Helpers.isV4.set(true);
-        assertEquals(v4Encoding, Helpers.fromDate(testDateAsDate));
+        assertEquals(testDate, FormatContext.V3.fromDate(testDateAsDate));
+        assertEquals(v4Encoding, FormatContext.V4.fromDate(testDateAsDate));
+        assertEquals(testDate, TimestampCodec.encodeV3(testDateAsDate));
+        assertEquals(v4Encoding, TimestampCodec.encodeV4(testDateAsDate));
     }
 
     @Test
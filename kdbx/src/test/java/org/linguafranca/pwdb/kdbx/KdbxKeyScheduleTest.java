@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that the key derivation function is run once only per load and save
+ */
+public class KdbxKeyScheduleTest {
+
+    /**
+     * A header that counts the number of times the KDF is invoked
+     */
+    private static class CountingHeader extends KdbxHeader {
+        int count = 0;
+
+        CountingHeader() {
+            super();
+        }
+
+        CountingHeader(int version) {
+            super(version);
+        }
+
+        @Override
+        public byte[] getTransformedKeyDigest(byte[] digest) {
+            count++;
+            return super.getTransformedKeyDigest(digest);
+        }
+    }
+
+    /**
+     * A header that keeps the key schedule the serializer used for the payload cipher
+     */
+    private static class CapturingHeader extends KdbxHeader {
+        KdbxKeySchedule keySchedule;
+
+        CapturingHeader() {
+            super();
+        }
+
+        CapturingHeader(int version) {
+            super(version);
+        }
+
+        @Override
+        public InputStream createDecryptedStream(KdbxKeySchedule keySchedule, InputStream inputStream) {
+            this.keySchedule = keySchedule;
+            return super.createDecryptedStream(keySchedule, inputStream);
+        }
+
+        @Override
+        public OutputStream createEncryptedStream(KdbxKeySchedule keySchedule, OutputStream outputStream) {
+            this.keySchedule = keySchedule;
+            return super.createEncryptedStream(keySchedule, outputStream);
+        }
+    }
+
+    private final Credentials credentials = new KdbxCreds("123".getBytes());
+
+    private void checkLoad(String resourceName) throws IOException {
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream(resourceName);
+        CountingHeader header = new CountingHeader();
+        InputStream plainText = KdbxSerializer.createUnencryptedInputStream(credentials, header, inputStream);
+        assertTrue(ByteStreams.toByteArray(plainText).length > 0);
+        assertEquals(1, header.count);
+    }
+
+    @Test
+    public void loadV3() throws IOException {
+        checkLoad("Attachment.kdbx");
+    }
+
+    @Test
+    public void loadV4ChaCha() throws IOException {
+        checkLoad("V4-ChaCha20-AES.kdbx");
+    }
+
+    @Test
+    public void loadV4Argon() throws IOException {
+        checkLoad("V4-AES-Argon2.kdbx");
+    }
+
+    private void checkSaveAndLoad(int version) throws IOException {
+        CountingHeader header = new CountingHeader(version);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        OutputStream outputStream = KdbxSerializer.createEncryptedOutputStream(credentials, header, baos);
+        outputStream.write("<KeePassFile/>".getBytes(StandardCharsets.UTF_8));
+        outputStream.close();
+        assertEquals(1, header.count);
+
+        CountingHeader readHeader = new CountingHeader();
+        InputStream inputStream = KdbxSerializer.createUnencryptedInputStream(credentials, readHeader, new ByteArrayInputStream(baos.toByteArray()));
+        assertEquals("<KeePassFile/>", new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8));
+        assertEquals(1, readHeader.count);
+    }
+
+    @Test
+    public void saveV3() throws IOException {
+        checkSaveAndLoad(3);
+    }
+
+    @Test
+    public void saveV4() throws IOException {
+        checkSaveAndLoad(4);
+    }
+
+    @Test
+    public void keysMatchHeader() throws IOException {
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream("V4-AES-Argon2.kdbx");
+        KdbxHeader header = KdbxSerializer.readOuterHeader(inputStream, new KdbxHeader());
+        KdbxKeySchedule keySchedule = new KdbxKeySchedule(header, credentials);
+        assertArrayEquals(header.getHmacKey(credentials), keySchedule.getHmacKey());
+        assertEquals(64, keySchedule.getHmacKey().length);
+        assertEquals(32, keySchedule.getCipherKey().length);
+    }
+
+    @Test
+    public void destroy() throws IOException {
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream("V4-ChaCha20-AES.kdbx");
+        KdbxHeader header = KdbxSerializer.readOuterHeader(inputStream, new KdbxHeader());
+        KdbxKeySchedule keySchedule = new KdbxKeySchedule(header, credentials);
+        byte[] cipherKey = keySchedule.getCipherKey();
+        keySchedule.destroy();
+        assertTrue(keySchedule.isDestroyed());
+        assertArrayEquals(new byte[32], cipherKey);
+        try {
+            keySchedule.getHmacKey();
+            fail("Expected exception");
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    private void checkDestroyedOnClose(int version) throws IOException {
+        CapturingHeader header = new CapturingHeader(version);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        OutputStream outputStream = KdbxSerializer.createEncryptedOutputStream(credentials, header, baos);
+        outputStream.write("<KeePassFile/>".getBytes(StandardCharsets.UTF_8));
+        assertFalse(header.keySchedule.isDestroyed());
+        outputStream.close();
+        assertTrue(header.keySchedule.isDestroyed());
+
+        CapturingHeader readHeader = new CapturingHeader();
+        InputStream inputStream = KdbxSerializer.createUnencryptedInputStream(credentials, readHeader, new ByteArrayInputStream(baos.toByteArray()));
+        assertEquals("<KeePassFile/>", new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8));
+        assertFalse(readHeader.keySchedule.isDestroyed());
+        inputStream.close();
+        assertTrue(readHeader.keySchedule.isDestroyed());
+    }
+
+    @Test
+    public void destroyedOnCloseV3() throws IOException {
+        checkDestroyedOnClose(3);
+    }
+
+    @Test
+    public void destroyedOnCloseV4() throws IOException {
+        checkDestroyedOnClose(4);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.linguafranca.test.util.TestUtil.getTestPrintStream;
+
+/**
+ * Check that pipelined loading gives the same result as loading on the calling thread
+ */
+public class KdbxLoadPipelineTest {
+
+    static PrintStream printStream = getTestPrintStream();
+
+    private static final Credentials credentials = new KdbxCreds("123".getBytes());
+
+    private byte[] getResource(String name) throws IOException {
+        return ByteStreams.toByteArray(getClass().getClassLoader().getResourceAsStream(name));
+    }
+
+    private static byte[] load(byte[] file, KdbxHeader header) throws IOException {
+        try (InputStream inputStream = KdbxSerializer.createUnencryptedInputStream(credentials, header, new ByteArrayInputStream(file))) {
+            return ByteStreams.toByteArray(inputStream);
+        }
+    }
+
+    @Test
+    public void sameAsUnpipelined() throws IOException {
+        for (String name : new String[]{"Attachment.kdbx", "V4-AES-Argon2.kdbx", "V4-ChaCha20-AES.kdbx"}) {
+            byte[] file = getResource(name);
+            byte[] expected = load(file, new KdbxHeader());
+            for (KdbxLoadPipeline pipeline : new KdbxLoadPipeline[]{new KdbxLoadPipeline(), new KdbxLoadPipeline(100, 2)}) {
+                KdbxHeader header = new KdbxHeader();
+                header.setLoadPipeline(pipeline);
+                assertArrayEquals(name, expected, load(file, header));
+
+                List<String> names = new ArrayList<>();
+                for (KdbxLoadPipeline.Stage stage : pipeline.getStages()) {
+                    names.add(stage.getName());
+                    assertTrue(stage.isFinished());
+                }
+                assertEquals(Arrays.asList("read", "decrypt", "inflate", "parse"), names);
+                assertTrue(pipeline.getStages().get(2).getBytes() > 0);
+                printStream.println(name + "\n" + pipeline);
+            }
+        }
+    }
+
+    @Test
+    public void badCredentialsV3() throws IOException {
+        KdbxHeader header = new KdbxHeader();
+        header.setLoadPipeline(new KdbxLoadPipeline());
+        try {
+            KdbxSerializer.createUnencryptedInputStream(new KdbxCreds("wrong".getBytes()), header, new ByteArrayInputStream(getResource("Attachment.kdbx")));
+            fail("Expected failure");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().startsWith("Inconsistent stream start bytes"));
+        }
+    }
+
+    @Test
+    public void badBlockV4() throws IOException {
+        byte[] file = getResource("V4-AES-Argon2.kdbx");
+        // in the last block of content, before the empty terminating block
+        file[file.length - 36 - 10] ^= 1;
+        KdbxHeader header = new KdbxHeader();
+        header.setLoadPipeline(new KdbxLoadPipeline(100, 2));
+        try {
+            load(file, header);
+            fail("Expected failure");
+        } catch (IllegalStateException e) {
+            assertEquals("Block HMAC does not match", e.getMessage());
+        }
+    }
+}
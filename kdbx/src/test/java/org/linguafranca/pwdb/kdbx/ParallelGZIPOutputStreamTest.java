@@ -0,0 +1,131 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx;
+
+import com.google.common.io.ByteStreams;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that parallel gzip output is readable and compresses about as well as sequential
+ */
+public class ParallelGZIPOutputStreamTest {
+
+    private static final ExecutorService executorService = Executors.newFixedThreadPool(3);
+    private static final Random random = new Random(17);
+
+    @AfterClass
+    public static void shutdown() {
+        executorService.shutdown();
+    }
+
+    /* compressible, XML-like content */
+    private static byte[] content(int length) {
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < length) {
+            builder.append("<Entry><String><Key>Title</Key><Value>").append(random.nextInt(1000)).append("</Value></String></Entry>\n");
+        }
+        return builder.substring(0, length).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] compress(OutputStream outputStream, ByteArrayOutputStream baos, byte[] content) throws IOException {
+        // write in odd sized pieces
+        for (int i = 0; i < content.length; i += 10_001) {
+            outputStream.write(content, i, Math.min(10_001, content.length - i));
+        }
+        outputStream.close();
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void readableAndComparable() throws IOException {
+        for (int length : new int[]{0, 1, 1000, 128 * 1024 - 1, 128 * 1024, 128 * 1024 + 1, 1024 * 1024}) {
+            byte[] content = content(length);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            int sequential = compress(new GZIPOutputStream(baos), baos, content).length;
+            for (ExecutorService executor : new ExecutorService[]{null, executorService}) {
+                baos = new ByteArrayOutputStream();
+                byte[] compressed = compress(new ParallelGZIPOutputStream(baos, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY, executor), baos, content);
+                assertArrayEquals("length " + length, content, ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+                // within 1% of a single deflate stream, chunks have their own block headers
+                assertTrue("length " + length + " " + compressed.length + " vs " + sequential,
+                        compressed.length <= sequential * 1.01 + 64);
+            }
+        }
+    }
+
+    @Test
+    public void singleBytes() throws IOException {
+        byte[] content = content(3000);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        // small chunks, so that single bytes fill them
+        OutputStream outputStream = new ParallelGZIPOutputStream(baos, Deflater.DEFAULT_COMPRESSION,
+                Deflater.DEFAULT_STRATEGY, executorService, 1000, 2);
+        for (byte b : content) {
+            outputStream.write(b);
+        }
+        outputStream.close();
+        assertArrayEquals(content, ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(baos.toByteArray()))));
+    }
+
+    @Test
+    public void levelsAndStrategies() throws IOException {
+        byte[] content = content(300_000);
+        for (int level : new int[]{0, 1, 9}) {
+            for (int strategy : new int[]{Deflater.DEFAULT_STRATEGY, Deflater.FILTERED, Deflater.HUFFMAN_ONLY}) {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                byte[] compressed = compress(new ParallelGZIPOutputStream(baos, level, strategy, executorService, 1000, 4), baos, content);
+                assertArrayEquals(content, ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+            }
+        }
+    }
+
+    @Test
+    public void serializerUsesHeaderSettings() throws IOException {
+        Credentials credentials = new KdbxCreds("123".getBytes());
+        byte[] content = content(500_000);
+        for (int version : new int[]{3, 4}) {
+            KdbxHeader header = new KdbxHeader(version);
+            header.setCipherExecutor(executorService);
+            header.setCompressionLevel(9);
+            header.setCompressionStrategy(Deflater.FILTERED);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            OutputStream outputStream = KdbxSerializer.createEncryptedOutputStream(credentials, header, baos);
+            outputStream.write(content);
+            outputStream.close();
+            InputStream inputStream = KdbxSerializer.createUnencryptedInputStream(credentials, new KdbxHeader(), new ByteArrayInputStream(baos.toByteArray()));
+            assertArrayEquals("version " + version, content, ByteStreams.toByteArray(inputStream));
+        }
+        try {
+            new KdbxHeader().setCompressionLevel(10);
+            fail("Expected invalid level");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Check the timestamp codec against the JDK and commons codec
+ */
+public class TimestampCodecTest {
+
+    private static final Random random = new Random(7);
+
+    /* a date to the second between 1900 and 2200 */
+    private static Date randomDate() {
+        long seconds = -2208988800L + (long) (random.nextDouble() * 300 * 365.25 * 24 * 3600);
+        return new Date(seconds * 1000);
+    }
+
+    @Test
+    public void sameAsReference() {
+        for (int i = 0; i < 1000; i++) {
+            Date date = randomDate();
+            String v3 = Helpers.dateTimeFormatter.format(date.toInstant().atZone(ZoneOffset.UTC));
+            long seconds = (date.getTime() - Helpers.baseDate.getTime()) / 1000;
+            String v4 = Base64.encodeBase64String(Helpers.toBytes(seconds, ByteOrder.LITTLE_ENDIAN));
+
+            assertEquals(v3, TimestampCodec.encodeV3(date));
+            assertEquals(v4, TimestampCodec.encodeV4(date));
+            assertEquals(date, TimestampCodec.decode(v3));
+            assertEquals(date, TimestampCodec.decode(v4));
+        }
+    }
+
+    @Test
+    public void lenientIso() {
+        for (String value : new String[]{
+                "2023-05-09T16:11:29Z",
+                "2023-05-09T16:11:29.123Z",
+                "2023-05-09T16:11:29.1234567Z",
+                "2023-05-09T17:11:29+01:00",
+                "2023-05-09T13:41:29-02:30",
+                "2023-05-09T17:11:29+01:00[Europe/London]"}) {
+            assertEquals(value, Date.from(ZonedDateTime.parse(value).toInstant()), TimestampCodec.decode(value));
+        }
+    }
+
+    @Test
+    public void v4BeyondEightBytes() {
+        // only the first 8 bytes are significant
+        byte[] bytes = new byte[12];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putLong(63819245489L);
+        assertEquals(Helpers.toDate("sWfs2w4AAAA="), TimestampCodec.decode(Base64.encodeBase64String(bytes)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notATimestamp() {
+        TimestampCodec.decode("AAAA");
+    }
+
+    @Test
+    public void formatContext() {
+        Date date = Helpers.toDate("2023-05-09T16:11:29Z");
+        assertEquals("2023-05-09T16:11:29Z", FormatContext.forVersion(3).fromDate(date));
+        assertEquals("sWfs2w4AAAA=", FormatContext.forVersion(4).fromDate(date));
+        assertEquals(date, FormatContext.V3.toDate("sWfs2w4AAAA="));
+    }
+}
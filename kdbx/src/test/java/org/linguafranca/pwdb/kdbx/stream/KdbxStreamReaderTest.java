@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.stream;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.kdbx.KdbxHeader;
+import org.linguafranca.pwdb.kdbx.KdbxSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author jo
+ */
+public class KdbxStreamReaderTest {
+
+    /**
+     * Events for the test123 file, which should contain the same as the loaded database
+     */
+    @Test
+    public void testV3() throws IOException {
+        final List<StreamEntry> entries = new ArrayList<>();
+        final Deque<StreamGroup> groups = new ArrayDeque<>();
+        final StreamMeta[] meta = new StreamMeta[1];
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream("test123.kdbx");
+        KdbxHeader header = new KdbxStreamReader(new KdbxCreds("123".getBytes())).read(inputStream, new KdbxStreamReader.Listener() {
+            @Override
+            public void meta(StreamMeta streamMeta) {
+                assertTrue(groups.isEmpty());
+                meta[0] = streamMeta;
+            }
+
+            @Override
+            public void startGroup(StreamGroup group) {
+                assertNotNull(meta[0]);
+                assertEquals(groups.size() + 1, group.getPath().size());
+                groups.push(group);
+            }
+
+            @Override
+            public void entry(StreamEntry entry) {
+                assertEquals(groups.peek().getPath(), entry.getPath());
+                entries.add(entry);
+            }
+
+            @Override
+            public void endGroup(StreamGroup group) {
+                assertSame(groups.pop(), group);
+            }
+        });
+        assertEquals(3, header.getVersion());
+        assertTrue(groups.isEmpty());
+        assertEquals("test123", meta[0].getName());
+        assertTrue(meta[0].shouldProtect("Password"));
+        assertTrue(10 <= entries.size());
+
+        StreamEntry hello = null;
+        int passwords = 0;
+        for (StreamEntry entry : entries) {
+            if ("hello world".equals(entry.getProperty("Title"))) {
+                hello = entry;
+            }
+            if (entry.getProperty("Title").toLowerCase().contains("password")) {
+                assertEquals(entry.getProperty("Title"), entry.getProperty("Password"));
+                passwords++;
+            }
+        }
+        assertEquals(4, passwords);
+        assertNotNull(hello);
+        assertEquals(Arrays.asList("Root"), hello.getPath());
+        assertEquals("pass", hello.getProperty("Password"));
+        assertTrue(hello.getPropertyValue("Password").isProtected());
+        assertFalse(hello.getHistory().isEmpty());
+    }
+
+    /**
+     * Attachments precede the entries that refer to them
+     */
+    @Test
+    public void testV4Attachments() throws IOException {
+        final Map<Integer, byte[]> binaries = new HashMap<>();
+        final List<StreamEntry> withBinaries = new ArrayList<>();
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream("V4-ChaCha20-Argon2-Attachment.kdbx");
+        KdbxHeader header = new KdbxStreamReader(new KdbxCreds("123".getBytes())).read(inputStream, new KdbxStreamReader.Listener() {
+            @Override
+            public void binary(int index, InputStream content) throws IOException {
+                binaries.put(index, ByteStreams.toByteArray(content));
+            }
+
+            @Override
+            public void entry(StreamEntry entry) {
+                for (int index : entry.getBinaries().values()) {
+                    assertTrue(binaries.containsKey(index));
+                }
+                if (!entry.getBinaries().isEmpty()) {
+                    withBinaries.add(entry);
+                }
+            }
+        });
+        assertEquals(4, header.getVersion());
+        assertFalse(withBinaries.isEmpty());
+
+        byte[] letterJ = ByteStreams.toByteArray(getClass().getClassLoader().getResourceAsStream("letter J.jpeg"));
+        boolean found = false;
+        for (StreamEntry entry : withBinaries) {
+            Integer index = entry.getBinaries().get("letter J.jpeg");
+            if (index != null) {
+                assertArrayEquals(letterJ, binaries.get(index));
+                found = true;
+            }
+        }
+        assertTrue(found);
+    }
+
+    /**
+     * The caller's stream is left open
+     */
+    @Test
+    public void testNotClosed() throws IOException {
+        for (String resource : Arrays.asList("test123.kdbx", "V4-ChaCha20-Argon2-Attachment.kdbx")) {
+            final boolean[] closed = new boolean[1];
+            InputStream inputStream = new FilterInputStream(getClass().getClassLoader().getResourceAsStream(resource)) {
+                @Override
+                public void close() throws IOException {
+                    closed[0] = true;
+                    super.close();
+                }
+            };
+            new KdbxStreamReader(new KdbxCreds("123".getBytes())).read(inputStream, new KdbxStreamReader.Listener() {});
+            assertFalse(resource, closed[0]);
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Comments are not part of the text of Meta elements
+     */
+    @Test
+    public void testMetaComment() throws IOException {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                "<KeePassFile><Meta><DatabaseName>Commented<!-- not the name --> Database</DatabaseName></Meta>" +
+                "<Root><Group><UUID>AAAAAAAAAAAAAAAAAAAAAA==</UUID><Name>Root</Name></Group></Root></KeePassFile>";
+        KdbxCreds credentials = new KdbxCreds("123".getBytes());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (OutputStream encrypted = KdbxSerializer.createEncryptedOutputStream(credentials, new KdbxHeader(4), outputStream)) {
+            encrypted.write(xml.getBytes(StandardCharsets.UTF_8));
+        }
+        final StreamMeta[] meta = new StreamMeta[1];
+        new KdbxStreamReader(credentials).read(new ByteArrayInputStream(outputStream.toByteArray()), new KdbxStreamReader.Listener() {
+            @Override
+            public void meta(StreamMeta streamMeta) {
+                meta[0] = streamMeta;
+            }
+        });
+        assertEquals("Commented Database", meta[0].getName());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWrongCredentials() throws IOException {
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream("test123.kdbx");
+        new KdbxStreamReader(new KdbxCreds("wrong".getBytes())).read(inputStream, new KdbxStreamReader.Listener() {});
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.stream;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.PropertyValue;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.kdbx.KdbxHeader;
+import org.linguafranca.pwdb.kdbx.stax.Node;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author jo
+ */
+public class KdbxStreamWriterTest {
+
+    private static final Credentials credentials = new KdbxCreds("123".getBytes());
+
+    @Test
+    public void testWriteV3() throws IOException {
+        writeAndRead(new KdbxHeader(3));
+    }
+
+    @Test
+    public void testWriteV4() throws IOException {
+        writeAndRead(new KdbxHeader(4));
+    }
+
+    /**
+     * Write groups, entries and an attachment and read them back
+     */
+    private void writeAndRead(KdbxHeader header) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] attachment = "attachment content".getBytes();
+        try (KdbxStreamWriter writer = new KdbxStreamWriter(credentials, header, outputStream)) {
+            int index = writer.addBinary(attachment);
+            writer.start(StreamMeta.create("Streamed"));
+            writer.startGroup(group("Root"));
+            for (int g = 0; g < 3; g++) {
+                writer.startGroup(group("Group " + g));
+                for (int e = 0; e < 100; e++) {
+                    StreamEntry entry = new StreamEntry();
+                    entry.setPropertyValue("Title", PropertyValue.BytesStore.getFactory().of("Entry " + g + "-" + e));
+                    entry.setPropertyValue("Password", PropertyValue.BytesStore.getFactory().of("secret " + e));
+                    if (e == 0) {
+                        entry.getBinaries().put("attachment.txt", index);
+                    }
+                    writer.entry(entry);
+                }
+                writer.endGroup();
+            }
+            writer.endGroup();
+        }
+
+        final Map<Integer, byte[]> binaries = new HashMap<>();
+        final List<StreamEntry> entries = new ArrayList<>();
+        final List<String> groups = new ArrayList<>();
+        final StreamMeta[] meta = new StreamMeta[1];
+        KdbxHeader readHeader = new KdbxStreamReader(credentials).read(new ByteArrayInputStream(outputStream.toByteArray()), new KdbxStreamReader.Listener() {
+            @Override
+            public void binary(int index, InputStream content) throws IOException {
+                binaries.put(index, ByteStreams.toByteArray(content));
+            }
+
+            @Override
+            public void meta(StreamMeta streamMeta) {
+                meta[0] = streamMeta;
+            }
+
+            @Override
+            public void startGroup(StreamGroup group) {
+                groups.add(group.toString());
+            }
+
+            @Override
+            public void entry(StreamEntry entry) {
+                entries.add(entry);
+            }
+        });
+        assertEquals(header.getVersion(), readHeader.getVersion());
+        assertEquals("Streamed", meta[0].getName());
+        assertEquals(Arrays.asList("Root", "Root/Group 0", "Root/Group 1", "Root/Group 2"), groups);
+        assertEquals(300, entries.size());
+        StreamEntry first = entries.get(0);
+        assertEquals(Arrays.asList("Root", "Group 0"), first.getPath());
+        assertEquals("Entry 0-0", first.getProperty("Title"));
+        assertEquals("secret 0", first.getProperty("Password"));
+        // protected according to Meta
+        assertTrue(first.getPropertyValue("Password").isProtected());
+        assertEquals("secret 99", entries.get(299).getProperty("Password"));
+        assertArrayEquals(attachment, binaries.get(first.getBinaries().get("attachment.txt")));
+    }
+
+    /**
+     * A database read by the reader and written by the writer has the same content
+     */
+    @Test
+    public void testCopy() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream("V4-ChaCha20-Argon2-Attachment.kdbx");
+        try (KdbxStreamWriter writer = new KdbxStreamWriter(credentials, outputStream)) {
+            new KdbxStreamReader(credentials).read(inputStream, writer);
+        }
+
+        List<String> original = list(getClass().getClassLoader().getResourceAsStream("V4-ChaCha20-Argon2-Attachment.kdbx"));
+        List<String> copy = list(new ByteArrayInputStream(outputStream.toByteArray()));
+        assertFalse(original.isEmpty());
+        assertEquals(original, copy);
+    }
+
+    /**
+     * Custom icons, AutoType associations, deleted objects and other elements that are not
+     * modelled survive a copy
+     */
+    @Test
+    public void testCopyUnmodelled() throws IOException {
+        List<String> icons = copyUnmodelled("V3-CustomIcon.kdbx");
+        assertTrue(icons.contains("Meta CustomIcons"));
+        assertTrue(icons.contains("Entry CustomIconUUID"));
+        assertTrue(icons.contains("Root DeletedObjects"));
+
+        List<String> autoType = copyUnmodelled("V4-AES-Argon2.kdbx");
+        assertTrue(autoType.contains("Entry AutoType"));
+        assertTrue(autoType.contains("Group IsExpanded"));
+    }
+
+    /* copy a KDBX V4 resource and check the copy has the same unmodelled elements, returning their names */
+    private List<String> copyUnmodelled(String resourceName) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream(resourceName);
+        try (KdbxStreamWriter writer = new KdbxStreamWriter(credentials, outputStream)) {
+            new KdbxStreamReader(credentials).read(inputStream, writer);
+        }
+
+        List<String> original = listUnmodelled(getClass().getClassLoader().getResourceAsStream(resourceName));
+        List<String> copy = listUnmodelled(new ByteArrayInputStream(outputStream.toByteArray()));
+        assertEquals(original, copy);
+        List<String> names = new ArrayList<>();
+        for (String node : original) {
+            names.add(node.substring(0, node.indexOf('=')));
+        }
+        return names;
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEntryAfterSubgroup() throws IOException {
+        KdbxStreamWriter writer = new KdbxStreamWriter(credentials, new ByteArrayOutputStream());
+        writer.start(StreamMeta.create("Order"));
+        writer.startGroup(group("Root"));
+        writer.startGroup(group("Subgroup"));
+        writer.endGroup();
+        writer.entry(new StreamEntry());
+    }
+
+    private static StreamGroup group(String name) {
+        StreamGroup group = new StreamGroup();
+        group.setName(name);
+        return group;
+    }
+
+    /* the unmodelled elements of a stream as text, prefixed by what contains them */
+    private static List<String> listUnmodelled(InputStream inputStream) throws IOException {
+        final List<String> result = new ArrayList<>();
+        new KdbxStreamReader(credentials).read(inputStream, new KdbxStreamReader.Listener() {
+            @Override
+            public void meta(StreamMeta meta) {
+                for (Node node : meta.getNode().getChildren()) {
+                    // rewritten by the writer
+                    if (!node.getName().equals("Generator") && !node.getName().equals("HeaderHash")) {
+                        result.add("Meta " + text(node));
+                    }
+                }
+            }
+
+            @Override
+            public void startGroup(StreamGroup group) {
+                for (Node node : group.getNodes()) {
+                    result.add("Group " + text(node));
+                }
+            }
+
+            @Override
+            public void entry(StreamEntry entry) {
+                for (Node node : entry.getNodes()) {
+                    result.add("Entry " + text(node));
+                }
+                for (StreamEntry historic : entry.getHistory()) {
+                    entry(historic);
+                }
+            }
+
+            @Override
+            public void rootElement(Node node) {
+                result.add("Root " + text(node));
+            }
+        });
+        return result;
+    }
+
+    private static String text(Node node) {
+        StringBuilder builder = new StringBuilder(node.getName()).append('=');
+        if (node.hasChildren()) {
+            builder.append('[');
+            for (Node child : node.getChildren()) {
+                builder.append(text(child)).append(' ');
+            }
+            builder.append(']');
+        } else {
+            builder.append(node.getText());
+        }
+        return builder.toString();
+    }
+
+    /* the groups, entries and attachments of a stream as text */
+    private static List<String> list(InputStream inputStream) throws IOException {
+        final List<String> result = new ArrayList<>();
+        new KdbxStreamReader(credentials).read(inputStream, new KdbxStreamReader.Listener() {
+            @Override
+            public void binary(int index, InputStream content) throws IOException {
+                result.add(index + " " + Arrays.hashCode(ByteStreams.toByteArray(content)));
+            }
+
+            @Override
+            public void startGroup(StreamGroup group) {
+                result.add(group.getUuid() + " " + group);
+            }
+
+            @Override
+            public void entry(StreamEntry entry) {
+                StringBuilder builder = new StringBuilder(entry.getUuid().toString());
+                for (Map.Entry<String, PropertyValue> property : entry.getProperties().entrySet()) {
+                    builder.append(' ').append(property.getKey()).append('=').append(property.getValue().getValueAsString());
+                }
+                builder.append(' ').append(entry.getBinaries()).append(' ').append(entry.getHistory().size());
+                builder.append(' ').append(entry.getTimes().getLastModificationTime());
+                result.add(builder.toString());
+            }
+        });
+        return result;
+    }
+}
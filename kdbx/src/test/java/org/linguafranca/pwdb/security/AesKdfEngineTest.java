@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.security;
+
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check that the AES KDF engine gives the same result as a sequential BouncyCastle computation
+ */
+public class AesKdfEngineTest {
+
+    private static final Random random = new Random(4321);
+
+    /**
+     * The original sequential implementation
+     */
+    private static byte[] reference(byte[] key, byte[] seed, long rounds) {
+        BlockCipher engine = AESEngine.newInstance();
+        engine.init(true, new KeyParameter(seed));
+        byte[] transformedKey = key.clone();
+        for (long round = 0; round < rounds; round++) {
+            engine.processBlock(transformedKey, 0, transformedKey, 0);
+            engine.processBlock(transformedKey, 16, transformedKey, 16);
+        }
+        return Encryption.getSha256MessageDigestInstance().digest(transformedKey);
+    }
+
+    private static void check(AesKdfEngine engine, long rounds) {
+        byte[] key = new byte[32];
+        byte[] seed = new byte[32];
+        random.nextBytes(key);
+        random.nextBytes(seed);
+        byte[] keyCopy = key.clone();
+        assertArrayEquals(reference(key, seed, rounds), engine.getTransformedKey(key, seed, rounds));
+        // input is not altered
+        assertArrayEquals(keyCopy, key);
+    }
+
+    @Test
+    public void sameAsSequential() {
+        assertTrue(AesKdfEngine.isJceAvailable());
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            AesKdfEngine[] engines = {
+                    new AesKdfEngine(),
+                    new AesKdfEngine(null),
+                    new AesKdfEngine(executorService, false),
+                    new AesKdfEngine(executorService, true)
+            };
+            for (AesKdfEngine engine : engines) {
+                for (long rounds : new long[]{0, 1, 6000, AesKdfEngine.PARALLEL_THRESHOLD, 60_000}) {
+                    check(engine, rounds);
+                }
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void staticMethod() {
+        byte[] key = new byte[32];
+        byte[] seed = new byte[32];
+        random.nextBytes(key);
+        random.nextBytes(seed);
+        assertArrayEquals(reference(key, seed, 20_000), Aes.getTransformedKey(key, seed, 20_000));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.security;
+
+import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
+import org.bouncycastle.crypto.params.Argon2Parameters;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Check that the parallel Argon2 engine produces the same output as BouncyCastle
+ */
+public class Argon2EngineTest {
+
+    private static final Random random = new Random(1234);
+
+    private static byte[] bytes(int length) {
+        byte[] result = new byte[length];
+        random.nextBytes(result);
+        return result;
+    }
+
+    private static void compare(Argon2Engine engine, Argon2Parameters parameters, byte[] password, int outputLength) {
+        byte[] expected = new byte[outputLength];
+        Argon2BytesGenerator generator = new Argon2BytesGenerator();
+        generator.init(parameters);
+        generator.generateBytes(password, expected);
+
+        byte[] actual = new byte[outputLength];
+        engine.generateBytes(parameters, password, actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void sameAsBouncyCastle() {
+        Argon2Engine engine = new Argon2Engine();
+        int[] types = {Argon2Parameters.ARGON2_d, Argon2Parameters.ARGON2_i, Argon2Parameters.ARGON2_id};
+        int[] versions = {Argon2Parameters.ARGON2_VERSION_10, Argon2Parameters.ARGON2_VERSION_13};
+        for (int type : types) {
+            for (int version : versions) {
+                for (int lanes : new int[]{1, 2, 3, 8}) {
+                    Argon2Parameters parameters = new Argon2Parameters.Builder(type)
+                            .withVersion(version)
+                            .withIterations(3)
+                            .withMemoryAsKB(256 + 13)
+                            .withParallelism(lanes)
+                            .withSalt(bytes(16))
+                            .build();
+                    compare(engine, parameters, bytes(32), 32);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void secretAndAssociatedData() {
+        Argon2Parameters parameters = new Argon2Parameters.Builder(Argon2Parameters.ARGON2_id)
+                .withIterations(2)
+                .withMemoryAsKB(64)
+                .withParallelism(4)
+                .withSalt(bytes(16))
+                .withSecret(bytes(8))
+                .withAdditional(bytes(12))
+                .build();
+        // a long tag exercises the variable length hash
+        compare(new Argon2Engine(), parameters, bytes(32), 100);
+    }
+
+    @Test
+    public void rfc9106TestVector() {
+        // RFC 9106 section 5.3 Argon2id
+        Argon2Parameters parameters = new Argon2Parameters.Builder(Argon2Parameters.ARGON2_id)
+                .withVersion(Argon2Parameters.ARGON2_VERSION_13)
+                .withIterations(3)
+                .withMemoryAsKB(32)
+                .withParallelism(4)
+                .withSalt(Hex.decode("02020202020202020202020202020202"))
+                .withSecret(Hex.decode("0303030303030303"))
+                .withAdditional(Hex.decode("040404040404040404040404"))
+                .build();
+        byte[] password = new byte[32];
+        java.util.Arrays.fill(password, (byte) 1);
+        byte[] actual = new byte[32];
+        new Argon2Engine().generateBytes(parameters, password, actual);
+        assertArrayEquals(Hex.decode("0d640df58d78766c08c037a34a8b53c9d01ef0452d75b65eb52520e96b01e659"), actual);
+    }
+
+    @Test
+    public void executors() {
+        Argon2Parameters parameters = new Argon2Parameters.Builder(Argon2Parameters.ARGON2_d)
+                .withIterations(2)
+                .withMemoryAsKB(1024)
+                .withParallelism(4)
+                .withSalt(bytes(32))
+                .build();
+        byte[] password = bytes(32);
+        compare(new Argon2Engine(null), parameters, password, 32);
+        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        try {
+            compare(new Argon2Engine(executorService), parameters, password, 32);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+}
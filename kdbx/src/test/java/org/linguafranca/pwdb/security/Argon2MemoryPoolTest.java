@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.security;
+
+import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
+import org.bouncycastle.crypto.params.Argon2Parameters;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check the budget and re-use of Argon2 memory
+ */
+public class Argon2MemoryPoolTest {
+
+    @Test
+    public void reuseAndZero() throws InterruptedException {
+        Argon2MemoryPool pool = new Argon2MemoryPool(1024);
+        long[][] memory = pool.acquire(300);
+        assertEquals(2, memory.length);
+        assertEquals(512, pool.getAvailableKiB());
+        long[] first = memory[0];
+        long[] second = memory[1];
+        first[17] = 42;
+        second[4] = 43;
+        pool.release(memory);
+        assertEquals(1024, pool.getAvailableKiB());
+        assertEquals(512, pool.getPooledKiB());
+        assertEquals(0, first[17]);
+        assertEquals(0, second[4]);
+
+        long[][] again = pool.acquire(256);
+        assertTrue(again[0] == first || again[0] == second);
+        pool.release(again);
+        pool.trim();
+        assertEquals(0, pool.getPooledKiB());
+    }
+
+    @Test
+    public void waitsForBudget() throws Exception {
+        Argon2MemoryPool pool = new Argon2MemoryPool(512);
+        long[][] held = pool.acquire(512);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            Future<long[][]> waiting = executorService.submit(() -> pool.acquire(256));
+            try {
+                waiting.get(200, TimeUnit.MILLISECONDS);
+                fail("Expected to wait for memory");
+            } catch (TimeoutException ignored) {
+            }
+            pool.release(held);
+            assertEquals(1, waiting.get(5, TimeUnit.SECONDS).length);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void largerThanBudget() throws InterruptedException {
+        Argon2MemoryPool pool = new Argon2MemoryPool(512);
+        long[][] memory = pool.acquire(1024);
+        assertEquals(4, memory.length);
+        assertEquals(0, pool.getAvailableKiB());
+        pool.release(memory);
+        // only the budget is kept
+        assertEquals(512, pool.getAvailableKiB());
+        assertEquals(512, pool.getPooledKiB());
+    }
+
+    @Test
+    public void concurrentDerivations() throws Exception {
+        // each derivation needs the whole budget, so they must queue
+        Argon2Engine engine = new Argon2Engine(ForkJoinPool.commonPool(), new Argon2MemoryPool(512));
+        Argon2Parameters parameters = new Argon2Parameters.Builder(Argon2Parameters.ARGON2_d)
+                .withIterations(2)
+                .withMemoryAsKB(512)
+                .withParallelism(2)
+                .withSalt(new byte[16])
+                .build();
+        byte[] expected = new byte[32];
+        Argon2BytesGenerator generator = new Argon2BytesGenerator();
+        generator.init(parameters);
+        generator.generateBytes(new byte[32], expected);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executorService.submit(() -> {
+                    byte[] out = new byte[32];
+                    engine.generateBytes(parameters, new byte[32], out);
+                    return out;
+                }));
+            }
+            for (Future<byte[]> result : results) {
+                assertArrayEquals(expected, result.get(60, TimeUnit.SECONDS));
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        assertEquals(512, engine.getMemoryPool().getAvailableKiB());
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.security;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.kdbx.KdbxHeader;
+import org.linguafranca.pwdb.kdbx.KdbxSerializer;
+
+import java.io.*;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that the cipher implementations found by the registry are interchangeable
+ */
+public class CipherAlgorithmRegistryTest {
+
+    private static final UUID AES = Aes.getInstance().getCipherUuid();
+    private static final UUID CHA_CHA = ChaCha.getInstance().getCipherUuid();
+
+    private static byte[] encrypt(CipherAlgorithm algorithm, byte[] key, byte[] iv, byte[] plainText) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        OutputStream outputStream = algorithm.getEncryptedOutputStream(baos, key, iv);
+        // write in odd sized pieces
+        for (int i = 0; i < plainText.length; i += 1000) {
+            outputStream.write(plainText, i, Math.min(1000, plainText.length - i));
+        }
+        outputStream.close();
+        return baos.toByteArray();
+    }
+
+    private static byte[] decrypt(CipherAlgorithm algorithm, byte[] key, byte[] iv, byte[] cipherText) throws IOException {
+        return ByteStreams.toByteArray(algorithm.getDecryptedInputStream(new ByteArrayInputStream(cipherText), key, iv));
+    }
+
+    private static void checkInterchangeable(UUID uuid, int ivLength) throws IOException {
+        List<CipherAlgorithm> algorithms = CipherAlgorithmRegistry.getAll(uuid);
+        // BouncyCastle and JCE
+        assertEquals(2, algorithms.size());
+        Random random = new Random(99);
+        byte[] key = new byte[32];
+        byte[] iv = new byte[ivLength];
+        random.nextBytes(key);
+        random.nextBytes(iv);
+        for (int length : new int[]{0, 1, 15, 16, 17, 100_000, 200_003}) {
+            byte[] plainText = new byte[length];
+            random.nextBytes(plainText);
+            byte[] expected = encrypt(algorithms.get(0), key, iv, plainText);
+            for (CipherAlgorithm encryptor : algorithms) {
+                assertArrayEquals(encryptor.getName(), expected, encrypt(encryptor, key, iv, plainText));
+                for (CipherAlgorithm decryptor : algorithms) {
+                    assertArrayEquals(decryptor.getName(), plainText, decrypt(decryptor, key, iv, expected));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void aesImplementations() throws IOException {
+        assertTrue(new JceAes().isAvailable());
+        checkInterchangeable(AES, 16);
+    }
+
+    @Test
+    public void chaChaImplementations() throws IOException {
+        // Java 11 onwards
+        assertTrue(new JceChaCha().isAvailable());
+        checkInterchangeable(CHA_CHA, 12);
+    }
+
+    @Test
+    public void badPaddingIsReported() throws IOException {
+        byte[] key = new byte[32];
+        byte[] iv = new byte[16];
+        byte[] cipherText = encrypt(new JceAes(), key, iv, new byte[100]);
+        key[0] = 1;
+        try {
+            decrypt(new JceAes(), key, iv, cipherText);
+            fail("Expected padding failure");
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test
+    public void preferred() {
+        CipherAlgorithm chosen = CipherAlgorithmRegistry.getPreferred(AES);
+        assertTrue(CipherAlgorithmRegistry.getAll(AES).contains(chosen));
+        try {
+            CipherAlgorithmRegistry.setPreferred(AES, ChaCha.getInstance());
+            fail("Expected wrong UUID to be refused");
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            CipherAlgorithmRegistry.setPreferred(AES, Aes.getInstance());
+            assertSame(Aes.getInstance(), CipherAlgorithmRegistry.getPreferred(AES));
+        } finally {
+            CipherAlgorithmRegistry.setPreferred(AES, null);
+        }
+        // the enum constants are still what is found for known UUIDs
+        assertSame(Encryption.Cipher.AES, Encryption.Cipher.getCipherAlgorithm(AES));
+    }
+
+    @Test
+    public void loadWithEachImplementation() throws IOException {
+        Credentials credentials = new KdbxCreds("123".getBytes());
+        String[][] files = {{"Attachment.kdbx"}, {"V4-AES-Argon2.kdbx"}, {"V4-ChaCha20-AES.kdbx"}};
+        for (UUID uuid : new UUID[]{AES, CHA_CHA}) {
+            try {
+                for (CipherAlgorithm algorithm : CipherAlgorithmRegistry.getAll(uuid)) {
+                    CipherAlgorithmRegistry.setPreferred(uuid, algorithm);
+                    for (String[] file : files) {
+                        InputStream inputStream = getClass().getClassLoader().getResourceAsStream(file[0]);
+                        InputStream plainText = KdbxSerializer.createUnencryptedInputStream(credentials, new KdbxHeader(), inputStream);
+                        assertTrue(ByteStreams.toByteArray(plainText).length > 0);
+                    }
+                }
+            } finally {
+                CipherAlgorithmRegistry.setPreferred(uuid, null);
+            }
+        }
+    }
+}
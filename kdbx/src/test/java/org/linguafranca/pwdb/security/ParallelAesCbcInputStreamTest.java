@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.security;
+
+import com.google.common.io.ByteStreams;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.kdbx.KdbxHeader;
+import org.linguafranca.pwdb.kdbx.KdbxSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that parallel CBC decryption gives the same result as sequential
+ */
+public class ParallelAesCbcInputStreamTest {
+
+    private static final ExecutorService executorService = Executors.newFixedThreadPool(3);
+    private static final Random random = new Random(7);
+
+    @AfterClass
+    public static void shutdown() {
+        executorService.shutdown();
+    }
+
+    private static byte[] encrypt(byte[] key, byte[] iv, byte[] plainText) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        OutputStream outputStream = Aes.getInstance().getEncryptedOutputStream(baos, key, iv);
+        outputStream.write(plainText);
+        outputStream.close();
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void sameAsSequential() throws IOException {
+        byte[] key = new byte[32];
+        byte[] iv = new byte[16];
+        random.nextBytes(key);
+        random.nextBytes(iv);
+        for (int length : new int[]{0, 1, 15, 16, 63, 64, 65, 128, 1000, 100_000}) {
+            byte[] plainText = new byte[length];
+            random.nextBytes(plainText);
+            byte[] cipherText = encrypt(key, iv, plainText);
+            for (int chunkSize : new int[]{16, 64, 1024, ParallelAesCbcInputStream.DEFAULT_CHUNK_SIZE}) {
+                for (ExecutorService executor : new ExecutorService[]{null, executorService}) {
+                    InputStream inputStream = new ParallelAesCbcInputStream(new ByteArrayInputStream(cipherText),
+                            key, iv, executor, chunkSize, 2);
+                    assertArrayEquals("length " + length + " chunk " + chunkSize, plainText, ByteStreams.toByteArray(inputStream));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void badInput() throws IOException {
+        byte[] key = new byte[32];
+        byte[] iv = new byte[16];
+        byte[] cipherText = encrypt(key, iv, new byte[100]);
+        // empty, and not a multiple of the block size
+        byte[][] bad = {new byte[0], Arrays.copyOf(cipherText, cipherText.length - 1)};
+        for (byte[] input : bad) {
+            try {
+                ByteStreams.toByteArray(new ParallelAesCbcInputStream(new ByteArrayInputStream(input), key, iv, executorService));
+                fail("Expected exception");
+            } catch (IOException ignored) {
+            }
+        }
+        // wrong key gives bad padding
+        byte[] wrongKey = key.clone();
+        wrongKey[0] = 1;
+        try {
+            ByteStreams.toByteArray(new ParallelAesCbcInputStream(new ByteArrayInputStream(cipherText), wrongKey, iv, executorService));
+            fail("Expected exception");
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test
+    public void headerUsesExecutor() throws IOException {
+        Credentials credentials = new KdbxCreds("123".getBytes());
+        for (String file : new String[]{"Attachment.kdbx", "V4-AES-Argon2.kdbx", "V4-ChaCha20-AES.kdbx"}) {
+            InputStream inputStream = getClass().getClassLoader().getResourceAsStream(file);
+            byte[] expected = ByteStreams.toByteArray(KdbxSerializer.createUnencryptedInputStream(credentials, new KdbxHeader(), inputStream));
+
+            KdbxHeader header = new KdbxHeader();
+            header.setCipherExecutor(executorService);
+            inputStream = getClass().getClassLoader().getResourceAsStream(file);
+            assertArrayEquals(file, expected, ByteStreams.toByteArray(KdbxSerializer.createUnencryptedInputStream(credentials, header, inputStream)));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.security;
+
+import com.google.common.io.ByteStreams;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.kdbx.KdbxHeader;
+import org.linguafranca.pwdb.kdbx.KdbxSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that parallel ChaCha20 encryption and decryption give the same result as sequential
+ */
+public class ParallelChaChaStreamTest {
+
+    private static final ExecutorService executorService = Executors.newFixedThreadPool(3);
+    private static final Random random = new Random(11);
+
+    @AfterClass
+    public static void shutdown() {
+        executorService.shutdown();
+    }
+
+    private static byte[] write(OutputStream outputStream, ByteArrayOutputStream baos, byte[] plainText) throws IOException {
+        // write in odd sized pieces
+        for (int i = 0; i < plainText.length; i += 1000) {
+            outputStream.write(plainText, i, Math.min(1000, plainText.length - i));
+        }
+        outputStream.close();
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void sameAsSequential() throws IOException {
+        byte[] key = new byte[32];
+        byte[] iv = new byte[12];
+        random.nextBytes(key);
+        random.nextBytes(iv);
+        for (int length : new int[]{0, 1, 63, 64, 65, 128, 1000, 100_000}) {
+            byte[] plainText = new byte[length];
+            random.nextBytes(plainText);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] expected = write(ChaCha.getInstance().getEncryptedOutputStream(baos, key, iv), baos, plainText);
+            for (int chunkSize : new int[]{64, 1024, ParallelChunkedInputStream.DEFAULT_CHUNK_SIZE}) {
+                for (ExecutorService executor : new ExecutorService[]{null, executorService}) {
+                    String message = "length " + length + " chunk " + chunkSize;
+                    InputStream inputStream = new ParallelChaChaInputStream(new ByteArrayInputStream(expected),
+                            key, iv, executor, chunkSize, 2);
+                    assertArrayEquals(message, plainText, ByteStreams.toByteArray(inputStream));
+
+                    baos = new ByteArrayOutputStream();
+                    OutputStream outputStream = new ParallelChaChaOutputStream(baos, key, iv, executor, chunkSize, 2);
+                    assertArrayEquals(message, expected, write(outputStream, baos, plainText));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void seekingSameWithAndWithoutJce() {
+        byte[] key = new byte[32];
+        byte[] iv = new byte[12];
+        random.nextBytes(key);
+        random.nextBytes(iv);
+        byte[] input = new byte[1000];
+        random.nextBytes(input);
+        for (long position : new long[]{0, 64, 64 * 1000, 64L * 1_000_000_000}) {
+            assertArrayEquals(ParallelChaChaInputStream.process(key, iv, false, position, input, input.length),
+                    ParallelChaChaInputStream.process(key, iv, true, position, input, input.length));
+        }
+    }
+
+    @Test
+    public void singleBytes() throws IOException {
+        byte[] key = new byte[32];
+        byte[] iv = new byte[12];
+        random.nextBytes(key);
+        random.nextBytes(iv);
+        byte[] plainText = new byte[1000];
+        random.nextBytes(plainText);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] expected = write(ChaCha.getInstance().getEncryptedOutputStream(baos, key, iv), baos, plainText);
+
+        baos = new ByteArrayOutputStream();
+        // small chunks, so that single bytes fill them
+        OutputStream outputStream = new ParallelChaChaOutputStream(baos, key, iv, executorService, 64, 2);
+        for (byte b : plainText) {
+            outputStream.write(b);
+        }
+        outputStream.close();
+        assertArrayEquals(expected, baos.toByteArray());
+    }
+
+    @Test
+    public void flushWritesCompleteChunks() throws IOException {
+        byte[] key = new byte[32];
+        byte[] iv = new byte[12];
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        OutputStream outputStream = new ParallelChaChaOutputStream(baos, key, iv, executorService, 64, 4);
+        outputStream.write(new byte[100]);
+        outputStream.flush();
+        assertEquals(64, baos.size());
+        outputStream.close();
+        assertEquals(100, baos.size());
+    }
+
+    @Test
+    public void headerUsesExecutor() throws IOException {
+        Credentials credentials = new KdbxCreds("123".getBytes());
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream("V4-ChaCha20-AES.kdbx");
+        byte[] expected = ByteStreams.toByteArray(KdbxSerializer.createUnencryptedInputStream(credentials, new KdbxHeader(), inputStream));
+
+        KdbxHeader header = new KdbxHeader();
+        header.setCipherExecutor(executorService);
+        inputStream = getClass().getClassLoader().getResourceAsStream("V4-ChaCha20-AES.kdbx");
+        assertArrayEquals(expected, ByteStreams.toByteArray(KdbxSerializer.createUnencryptedInputStream(credentials, header, inputStream)));
+
+        // and round trip
+        header = new KdbxHeader(4);
+        header.setCipherAlgorithm(Encryption.Cipher.CHA_CHA_20);
+        header.setCipherExecutor(executorService);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        OutputStream outputStream = KdbxSerializer.createEncryptedOutputStream(credentials, header, baos);
+        outputStream.write(expected);
+        outputStream.close();
+        InputStream reloaded = KdbxSerializer.createUnencryptedInputStream(credentials, new KdbxHeader(), new ByteArrayInputStream(baos.toByteArray()));
+        assertArrayEquals(expected, ByteStreams.toByteArray(reloaded));
+    }
+}
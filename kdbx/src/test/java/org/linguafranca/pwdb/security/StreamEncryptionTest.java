@@ -20,8 +20,14 @@ import org.junit.Test;
 import org.linguafranca.pwdb.security.StreamEncryptor.*;
 
 import java.io.PrintStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.linguafranca.test.util.TestUtil.getTestPrintStream;
 
@@ -67,4 +73,67 @@ public class StreamEncryptionTest {
         printStream.println(t1);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void inPlaceSameAsCopying() {
+        byte[] key = SecureRandom.getSeed(32);
+        byte[][] values = {"new secret".getBytes(), new byte[0], "secret 2".getBytes(), "third secret".getBytes()};
+        StreamEncryptor copying = new ChaCha20(key);
+        List<byte[]> expected = new ArrayList<>();
+        for (byte[] value : values) {
+            expected.add(copying.encrypt(value));
+        }
+
+        // part of an array, a heap buffer, a direct buffer
+        StreamEncryptor inPlace = new ChaCha20(key);
+        byte[] padded = new byte[values[0].length + 4];
+        System.arraycopy(values[0], 0, padded, 2, values[0].length);
+        inPlace.encrypt(padded, 2, values[0].length);
+        assertArrayEquals(expected.get(0), Arrays.copyOfRange(padded, 2, 2 + values[0].length));
+        ByteBuffer heap = ByteBuffer.wrap(values[1].clone());
+        inPlace.encrypt(heap);
+        assertEquals(heap.limit(), heap.position());
+        ByteBuffer direct = ByteBuffer.allocateDirect(values[2].length);
+        direct.put(values[2]);
+        ((Buffer) direct).flip();
+        inPlace.encrypt(direct);
+        assertEquals(direct.limit(), direct.position());
+        byte[] directContent = new byte[values[2].length];
+        ((Buffer) direct).flip();
+        direct.get(directContent);
+        assertArrayEquals(expected.get(2), directContent);
+
+        // a batch
+        List<byte[]> batch = new ArrayList<>();
+        for (byte[] value : values) {
+            batch.add(value.clone());
+        }
+        new ChaCha20(key).encrypt(batch);
+        for (int i = 0; i < values.length; i++) {
+            assertArrayEquals(expected.get(i), batch.get(i));
+        }
+        new ChaCha20(key).decrypt(batch);
+        for (int i = 0; i < values.length; i++) {
+            assertArrayEquals(values[i], batch.get(i));
+        }
+    }
+
+    @Test
+    public void seekingSameAsSequential() {
+        byte[] key = SecureRandom.getSeed(32);
+        for (SeekableStreamEncryptor[] pair : new SeekableStreamEncryptor[][]{
+                {new Salsa20(key), new Salsa20(key)}, {new ChaCha20(key), new ChaCha20(key)}}) {
+            byte[] first = pair[0].encrypt("new secret".getBytes());
+            byte[] second = pair[0].encrypt("secret 2".getBytes());
+
+            // skip the first value, decrypt the second, then the first
+            SeekableStreamEncryptor seekable = pair[1];
+            assertEquals(0, seekable.getPosition());
+            seekable.skip(first.length);
+            assertEquals("secret 2", new String(seekable.decrypt(first.length, second)));
+            assertEquals("new secret", new String(seekable.decrypt(0, first)));
+            // sequential position is unaffected
+            assertEquals(first.length, seekable.getPosition());
+            assertEquals("secret 2", new String(seekable.decrypt(second)));
+        }
+    }
+}
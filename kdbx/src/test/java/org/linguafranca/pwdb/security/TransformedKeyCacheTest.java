@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.security;
+
+import org.junit.After;
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.kdbx.KdbxHeader;
+import org.linguafranca.pwdb.kdbx.KdbxSerializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check caching of the results of key derivation
+ */
+public class TransformedKeyCacheTest {
+
+    private static VariantDictionary parameters(long rounds) {
+        VariantDictionary vd = Aes.getInstance().createKdfParameters();
+        vd.putULong(Aes.KdfKeys.ParamRounds, rounds);
+        return vd;
+    }
+
+    @After
+    public void resetHeaderCache() {
+        KdbxHeader.setTransformedKeyCache(null);
+    }
+
+    @Test
+    public void hitsAndMisses() {
+        TransformedKeyCache cache = new TransformedKeyCache(4, 1, TimeUnit.HOURS);
+        AtomicInteger count = new AtomicInteger();
+        byte[] digest = new byte[32];
+        VariantDictionary vd = parameters(10);
+
+        byte[] first = cache.getTransformedKey(digest, vd, () -> new byte[]{(byte) count.incrementAndGet()});
+        // the caller may overwrite what it gets back
+        first[0] = 0;
+        byte[] second = cache.getTransformedKey(digest, vd.copy(), () -> new byte[]{(byte) count.incrementAndGet()});
+        assertArrayEquals(new byte[]{1}, second);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // different parameters or different credentials are different keys
+        cache.getTransformedKey(digest, parameters(11), () -> new byte[]{(byte) count.incrementAndGet()});
+        cache.getTransformedKey(new byte[]{1}, vd, () -> new byte[]{(byte) count.incrementAndGet()});
+        assertEquals(3, count.get());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedEviction() {
+        TransformedKeyCache cache = new TransformedKeyCache(2, 1, TimeUnit.HOURS);
+        byte[] digest = new byte[32];
+        byte[] one = {1};
+        cache.getTransformedKey(digest, parameters(1), () -> one);
+        cache.getTransformedKey(digest, parameters(2), () -> new byte[]{2});
+        // touch 1 so that 2 is least recently used
+        cache.getTransformedKey(digest, parameters(1), () -> new byte[]{9});
+        cache.getTransformedKey(digest, parameters(3), () -> new byte[]{3});
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+
+        assertArrayEquals(new byte[]{1}, cache.getTransformedKey(digest, parameters(1), () -> new byte[]{9}));
+        assertArrayEquals(new byte[]{4}, cache.getTransformedKey(digest, parameters(2), () -> new byte[]{4}));
+    }
+
+    @Test
+    public void timeToLive() {
+        AtomicLong now = new AtomicLong();
+        TransformedKeyCache cache = new TransformedKeyCache(2, 10, TimeUnit.NANOSECONDS, now::get);
+        byte[] digest = new byte[32];
+        cache.getTransformedKey(digest, parameters(1), () -> new byte[]{1});
+        now.set(9);
+        assertArrayEquals(new byte[]{1}, cache.getTransformedKey(digest, parameters(1), () -> new byte[]{2}));
+        now.set(10);
+        assertArrayEquals(new byte[]{2}, cache.getTransformedKey(digest, parameters(1), () -> new byte[]{2}));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void expiredEntriesAreWiped() {
+        AtomicLong now = new AtomicLong();
+        TransformedKeyCache cache = new TransformedKeyCache(4, 10, TimeUnit.NANOSECONDS, now::get);
+        byte[] digest = new byte[32];
+        cache.getTransformedKey(digest, parameters(1), () -> new byte[]{1});
+        now.set(5);
+        cache.getTransformedKey(digest, parameters(2), () -> new byte[]{2});
+        // used more recently than 2, but older
+        cache.getTransformedKey(digest, parameters(1), () -> new byte[]{9});
+        now.set(10);
+        // looking up another key discards 1, though it is not least recently used
+        cache.getTransformedKey(digest, parameters(2), () -> new byte[]{9});
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertArrayEquals(new byte[]{3}, cache.getTransformedKey(digest, parameters(1), () -> new byte[]{3}));
+    }
+
+    private static void load(String resourceName) throws IOException {
+        Credentials credentials = new KdbxCreds("123".getBytes());
+        InputStream inputStream = TransformedKeyCacheTest.class.getClassLoader().getResourceAsStream(resourceName);
+        InputStream plainText = KdbxSerializer.createUnencryptedInputStream(credentials, new KdbxHeader(), inputStream);
+        plainText.close();
+    }
+
+    @Test
+    public void headerUsesCache() throws IOException {
+        TransformedKeyCache cache = new TransformedKeyCache(4, 1, TimeUnit.HOURS);
+        KdbxHeader.setTransformedKeyCache(cache);
+        load("V4-AES-Argon2.kdbx");
+        load("V4-AES-Argon2.kdbx");
+        load("Attachment.kdbx");
+        load("Attachment.kdbx");
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+}
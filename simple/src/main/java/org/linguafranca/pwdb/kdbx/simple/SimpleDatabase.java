@@ -20,6 +20,7 @@ import org.linguafranca.pwdb.Credentials;
 import org.linguafranca.pwdb.StreamConfiguration;
 import org.linguafranca.pwdb.StreamFormat;
 import org.linguafranca.pwdb.base.AbstractDatabase;
+import org.linguafranca.pwdb.kdbx.FormatContext;
 import org.linguafranca.pwdb.kdbx.KdbxHeader;
 import org.linguafranca.pwdb.kdbx.KdbxStreamFormat;
 import org.linguafranca.pwdb.kdbx.simple.model.KeePassFile;
@@ -29,13 +30,13 @@ import org.linguafranca.pwdb.security.StreamEncryptor;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Path;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
 
 import static org.linguafranca.pwdb.kdbx.simple.SimpleSerializableDatabase.createEmptyDatabase;
-import static org.linguafranca.pwdb.kdbx.simple.SimpleSerializableDatabase.getSerializer;
 
 /**
  * Implementation of {@link org.linguafranca.pwdb.Database} using the Simple XML framework.
@@ -73,7 +74,7 @@ public class SimpleDatabase extends AbstractDatabase<SimpleDatabase, SimpleGroup
      * @throws Exception on load failure
      */
     public static SimpleDatabase loadXml(InputStream inputStream) throws Exception {
-        KeePassFile result =  getSerializer(new StreamEncryptor.None()).read(KeePassFile.class, inputStream);
+        KeePassFile result = SimpleSerializableDatabase.read(inputStream, new StreamEncryptor.None(), FormatContext.V3);
         result.root.group.uuid = UUID.randomUUID();
         return new SimpleDatabase(result, null);
     }
@@ -92,6 +93,20 @@ public class SimpleDatabase extends AbstractDatabase<SimpleDatabase, SimpleGroup
         return new SimpleDatabase(simpleSerializableDatabase.getKeePassFile(), streamFormat);
     }
 
+    /**
+     * Load kdbx file, reading the file memory mapped
+     *
+     * @param credentials credentials to use
+     * @param path the file to load
+     * @return a new database
+     */
+    public static SimpleDatabase load(Credentials credentials, Path path) throws IOException {
+        SimpleSerializableDatabase simpleSerializableDatabase = new SimpleSerializableDatabase();
+        StreamFormat<?> streamFormat = new KdbxStreamFormat();
+        streamFormat.load(simpleSerializableDatabase, credentials, path);
+        return new SimpleDatabase(simpleSerializableDatabase.getKeePassFile(), streamFormat);
+    }
+
     /**
      * Save the database with the same stream format that it was loaded with, or V4 default if none
      * @param credentials credentials to use
@@ -17,8 +17,13 @@
 package org.linguafranca.pwdb.kdbx.simple;
 
 import org.linguafranca.pwdb.SerializableDatabase;
+import org.linguafranca.pwdb.kdbx.FormatContext;
 import org.linguafranca.pwdb.kdbx.Helpers;
 import org.linguafranca.pwdb.kdbx.simple.converter.EmptyStringConverter;
+import org.linguafranca.pwdb.kdbx.simple.converter.EncryptionNodes;
+import org.linguafranca.pwdb.kdbx.simple.converter.TimeConverter;
+import org.linguafranca.pwdb.kdbx.simple.converter.UuidConverter;
+import org.linguafranca.pwdb.kdbx.simple.converter.UuidMatcher;
 import org.linguafranca.pwdb.kdbx.simple.converter.ValueConverter;
 import org.linguafranca.pwdb.kdbx.simple.model.EntryClasses;
 import org.linguafranca.pwdb.kdbx.simple.model.KeePassFile;
@@ -29,20 +34,35 @@ import org.simpleframework.xml.convert.Registry;
 import org.simpleframework.xml.convert.RegistryStrategy;
 import org.simpleframework.xml.core.Persister;
 import org.simpleframework.xml.strategy.Strategy;
+import org.simpleframework.xml.stream.NodeBuilder;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
 import java.util.Objects;
+import java.util.UUID;
 
 /**
  * @author jo
  */
 @SuppressWarnings("WeakerAccess")
-public class SimpleSerializableDatabase implements SerializableDatabase {
+public class SimpleSerializableDatabase implements SerializableDatabase, FormatContext.Aware {
+
+    /**
+     * Persisters cache what they learn about the annotated classes, which is costly to
+     * build, so one is shared by all loads and saves of each format. The inner stream
+     * encryption of each load and save is carried by the nodes passed to the persister.
+     */
+    private static final Serializer V3_SERIALIZER = createSerializer(new ValueConverter(), FormatContext.V3);
+    private static final Serializer V4_SERIALIZER = createSerializer(new ValueConverter(), FormatContext.V4);
 
     public KeePassFile keePassFile;
     private StreamEncryptor encryption;
+    private FormatContext formatContext = FormatContext.V3;
 
     public  SimpleSerializableDatabase(){
 
@@ -60,7 +80,7 @@ public class SimpleSerializableDatabase implements SerializableDatabase {
     static KeePassFile createEmptyDatabase() {
         InputStream inputStream = SimpleDatabase.class.getClassLoader().getResourceAsStream("base.kdbx.xml");
         try {
-            return getSerializer(new StreamEncryptor.None()).read(KeePassFile.class, inputStream);
+            return read(inputStream, new StreamEncryptor.None(), FormatContext.V3);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -72,7 +92,7 @@ public class SimpleSerializableDatabase implements SerializableDatabase {
             // decrypt the encrypted fields in the inner XML stream
             // InputStream plainTextXmlStream = new XmlInputStreamFilter(inputStream, new KdbxInputTransformer(encryption));
             // read the now entirely decrypted stream into database
-            keePassFile = getSerializer(encryption).read(KeePassFile.class, inputStream);
+            keePassFile = read(inputStream, encryption, formatContext);
             // ensure that parent fields are set
             fixUp(keePassFile.root.group);
             return this;
@@ -91,26 +111,62 @@ public class SimpleSerializableDatabase implements SerializableDatabase {
 
         // and save the database out
         try {
-            getSerializer(encryption).write(this.keePassFile, outputStream);
+            Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+            getSharedSerializer(formatContext).write(this.keePassFile, EncryptionNodes.output(NodeBuilder.write(writer), encryption));
+            writer.flush();
         } catch (Exception e) {
             throw new IOException(e);
         }
     }
 
     /**
-     * Utility to get a simple framework persister
+     * Read a KeePassFile using the shared serializer for its format
+     * @param inputStream the plaintext XML
+     * @param encryption the inner stream encryption
+     * @param formatContext the format of the stream
+     * @return the file
+     * @throws Exception on failure
+     */
+    static KeePassFile read(InputStream inputStream, StreamEncryptor encryption, FormatContext formatContext) throws Exception {
+        return getSharedSerializer(formatContext).read(KeePassFile.class, EncryptionNodes.input(NodeBuilder.read(inputStream), encryption));
+    }
+
+    private static Serializer getSharedSerializer(FormatContext formatContext) {
+        return formatContext.isV4() ? V4_SERIALIZER : V3_SERIALIZER;
+    }
+
+    /**
+     * Utility to get a simple framework persister, which writes V3 timestamps
      * @return a persister
      */
      public static Serializer getSerializer(StreamEncryptor encryption) {
+        return getSerializer(encryption, FormatContext.V3);
+    }
+
+    /**
+     * Utility to get a simple framework persister
+     * @param encryption the inner stream encryption
+     * @param formatContext the format of the stream
+     * @return a persister
+     */
+    public static Serializer getSerializer(StreamEncryptor encryption, FormatContext formatContext) {
+        return createSerializer(new ValueConverter(encryption), formatContext);
+    }
+
+    private static Serializer createSerializer(ValueConverter valueConverter, FormatContext formatContext) {
         Registry registry = new Registry();
         try {
             registry.bind(String.class, EmptyStringConverter.class);
-            registry.bind(EntryClasses.StringProperty.Value.class, new ValueConverter(encryption));
+            registry.bind(UUID.class, UuidConverter.class);
+            // all dates are timestamps
+            registry.bind(Date.class, new TimeConverter(formatContext));
+            registry.bind(EntryClasses.StringProperty.Value.class, valueConverter);
         } catch (Exception e) {
             throw new IllegalStateException(e);
         }
         Strategy strategy = new AnnotationStrategy(new RegistryStrategy(registry));
-        return new Persister(strategy);
+        // UUID is a primitive, so its private fields are not reflected on
+        return new Persister(strategy, new UuidMatcher());
     }
 
     /**
@@ -164,6 +220,11 @@ public class SimpleSerializableDatabase implements SerializableDatabase {
         this.encryption = encryption;
     }
 
+    @Override
+    public void setFormatContext(FormatContext formatContext) {
+        this.formatContext = formatContext;
+    }
+
     @Override
     public byte[] getHeaderHash() {
         return keePassFile.meta.headerHash.getContent();
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.simple.converter;
+
+import org.linguafranca.pwdb.security.StreamEncryptor;
+import org.simpleframework.xml.stream.InputNode;
+import org.simpleframework.xml.stream.Mode;
+import org.simpleframework.xml.stream.NamespaceMap;
+import org.simpleframework.xml.stream.Node;
+import org.simpleframework.xml.stream.NodeMap;
+import org.simpleframework.xml.stream.OutputNode;
+import org.simpleframework.xml.stream.Position;
+
+import java.util.Iterator;
+
+/**
+ * Nodes that carry the inner stream encryption of the load or save they belong to, so that a
+ * {@link ValueConverter} shared by a persister used for many streams can find it. Wrapping the
+ * root node given to the persister wraps every node it reaches from there.
+ */
+public final class EncryptionNodes {
+
+    private EncryptionNodes() {
+    }
+
+    /**
+     * Wrap the root node of a stream being read
+     */
+    public static InputNode input(InputNode node, StreamEncryptor encryption) {
+        return node == null ? null : new Input(node, encryption);
+    }
+
+    /**
+     * Wrap the root node of a stream being written
+     */
+    public static OutputNode output(OutputNode node, StreamEncryptor encryption) {
+        return node == null ? null : new Output(node, encryption);
+    }
+
+    /**
+     * The encryption of the stream a node belongs to
+     *
+     * @throws IllegalStateException if the node was not reached from a wrapped root
+     */
+    public static StreamEncryptor getEncryption(Node node) {
+        if (node instanceof Input) {
+            return ((Input) node).encryption;
+        }
+        if (node instanceof Output) {
+            return ((Output) node).encryption;
+        }
+        throw new IllegalStateException("No inner stream encryption for " + node.getName());
+    }
+
+    private static final class Input implements InputNode {
+        private final InputNode node;
+        private final StreamEncryptor encryption;
+
+        Input(InputNode node, StreamEncryptor encryption) {
+            this.node = node;
+            this.encryption = encryption;
+        }
+
+        @Override
+        public boolean isRoot() {
+            return node.isRoot();
+        }
+
+        @Override
+        public boolean isElement() {
+            return node.isElement();
+        }
+
+        @Override
+        public String getName() {
+            return node.getName();
+        }
+
+        @Override
+        public String getValue() throws Exception {
+            return node.getValue();
+        }
+
+        @Override
+        public String getPrefix() {
+            return node.getPrefix();
+        }
+
+        @Override
+        public String getReference() {
+            return node.getReference();
+        }
+
+        @Override
+        public Position getPosition() {
+            return node.getPosition();
+        }
+
+        @Override
+        public InputNode getAttribute(String name) {
+            return node.getAttribute(name);
+        }
+
+        @Override
+        public NodeMap<InputNode> getAttributes() {
+            return new Attributes<InputNode>(this, node.getAttributes());
+        }
+
+        @Override
+        public InputNode getParent() {
+            return input(node.getParent(), encryption);
+        }
+
+        @Override
+        public Object getSource() {
+            return node.getSource();
+        }
+
+        @Override
+        public InputNode getNext() throws Exception {
+            return input(node.getNext(), encryption);
+        }
+
+        @Override
+        public InputNode getNext(String name) throws Exception {
+            return input(node.getNext(name), encryption);
+        }
+
+        @Override
+        public void skip() throws Exception {
+            node.skip();
+        }
+
+        @Override
+        public boolean isEmpty() throws Exception {
+            return node.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return node.toString();
+        }
+    }
+
+    private static final class Output implements OutputNode {
+        private final OutputNode node;
+        private final StreamEncryptor encryption;
+
+        Output(OutputNode node, StreamEncryptor encryption) {
+            this.node = node;
+            this.encryption = encryption;
+        }
+
+        @Override
+        public boolean isRoot() {
+            return node.isRoot();
+        }
+
+        @Override
+        public String getName() {
+            return node.getName();
+        }
+
+        @Override
+        public String getValue() throws Exception {
+            return node.getValue();
+        }
+
+        @Override
+        public NodeMap<OutputNode> getAttributes() {
+            return new Attributes<OutputNode>(this, node.getAttributes());
+        }
+
+        @Override
+        public Mode getMode() {
+            return node.getMode();
+        }
+
+        @Override
+        public void setMode(Mode mode) {
+            node.setMode(mode);
+        }
+
+        @Override
+        public void setData(boolean data) {
+            node.setData(data);
+        }
+
+        @Override
+        public String getPrefix() {
+            return node.getPrefix();
+        }
+
+        @Override
+        public String getPrefix(boolean inherit) {
+            return node.getPrefix(inherit);
+        }
+
+        @Override
+        public String getReference() {
+            return node.getReference();
+        }
+
+        @Override
+        public void setReference(String reference) {
+            node.setReference(reference);
+        }
+
+        @Override
+        public NamespaceMap getNamespaces() {
+            return node.getNamespaces();
+        }
+
+        @Override
+        public String getComment() {
+            return node.getComment();
+        }
+
+        @Override
+        public void setComment(String comment) {
+            node.setComment(comment);
+        }
+
+        @Override
+        public void setValue(String value) {
+            node.setValue(value);
+        }
+
+        @Override
+        public void setName(String name) {
+            node.setName(name);
+        }
+
+        @Override
+        public OutputNode setAttribute(String name, String value) {
+            return node.setAttribute(name, value);
+        }
+
+        @Override
+        public OutputNode getParent() {
+            return output(node.getParent(), encryption);
+        }
+
+        @Override
+        public OutputNode getChild(String name) throws Exception {
+            return output(node.getChild(name), encryption);
+        }
+
+        @Override
+        public void remove() throws Exception {
+            node.remove();
+        }
+
+        @Override
+        public void commit() throws Exception {
+            node.commit();
+        }
+
+        @Override
+        public boolean isCommitted() {
+            return node.isCommitted();
+        }
+
+        @Override
+        public String toString() {
+            return node.toString();
+        }
+    }
+
+    /* the attributes of a node, which give strategies and converters the wrapped node */
+    private static final class Attributes<T extends Node> implements NodeMap<T> {
+        private final T node;
+        private final NodeMap<T> attributes;
+
+        Attributes(T node, NodeMap<T> attributes) {
+            this.node = node;
+            this.attributes = attributes;
+        }
+
+        @Override
+        public T getNode() {
+            return node;
+        }
+
+        @Override
+        public String getName() {
+            return attributes.getName();
+        }
+
+        @Override
+        public T get(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public T remove(String name) {
+            return attributes.remove(name);
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return attributes.iterator();
+        }
+
+        @Override
+        public T put(String name, String value) {
+            return attributes.put(name, value);
+        }
+    }
+}
@@ -16,7 +16,7 @@
 
 package org.linguafranca.pwdb.kdbx.simple.converter;
 
-import org.linguafranca.pwdb.kdbx.Helpers;
+import org.linguafranca.pwdb.kdbx.FormatContext;
 import org.simpleframework.xml.convert.Converter;
 import org.simpleframework.xml.stream.InputNode;
 import org.simpleframework.xml.stream.OutputNode;
@@ -24,20 +24,33 @@ import org.simpleframework.xml.stream.OutputNode;
 import java.util.Date;
 
 /**
+ * Converts timestamps in the format given by a {@link FormatContext}
+ *
  * @author jo
  */
 public class TimeConverter implements Converter<Date>{
+
+    private final FormatContext formatContext;
+
+    public TimeConverter() {
+        this(FormatContext.V3);
+    }
+
+    public TimeConverter(FormatContext formatContext) {
+        this.formatContext = formatContext;
+    }
+
     @Override
     public Date read(InputNode inputNode) throws Exception {
         String value = inputNode.getValue();
         if (value.equals("${creationDate}")) {
             return new Date();
         }
-        return Helpers.toDate(value);
+        return formatContext.toDate(value);
     }
 
     @Override
     public void write(OutputNode outputNode, Date date) throws Exception {
-        outputNode.setValue(Helpers.fromDate(date));
+        outputNode.setValue(formatContext.fromDate(date));
     }
 }
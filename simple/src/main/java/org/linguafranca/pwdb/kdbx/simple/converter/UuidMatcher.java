@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.simple.converter;
+
+import org.linguafranca.pwdb.kdbx.Helpers;
+import org.simpleframework.xml.transform.Matcher;
+import org.simpleframework.xml.transform.Transform;
+
+import java.util.UUID;
+
+/**
+ * Makes UUID a primitive type for Simple, which otherwise reflects on the private fields of each
+ * UUID it writes, refused by default from Java 9. UUID elements are still read and written by
+ * {@link UuidConverter}, which gives empty values a random UUID.
+ */
+public class UuidMatcher implements Matcher {
+
+    private static final Transform<UUID> TRANSFORM = new Transform<UUID>() {
+        @Override
+        public UUID read(String value) {
+            return Helpers.uuidFromBase64(value);
+        }
+
+        @Override
+        public String write(UUID value) {
+            return Helpers.base64FromUuid(value);
+        }
+    };
+
+    @Override
+    public Transform match(Class type) {
+        return type == UUID.class ? TRANSFORM : null;
+    }
+}
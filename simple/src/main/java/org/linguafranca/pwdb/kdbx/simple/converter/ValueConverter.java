@@ -5,6 +5,7 @@ import org.linguafranca.pwdb.kdbx.simple.model.EntryClasses;
 import org.linguafranca.pwdb.security.StreamEncryptor;
 import org.simpleframework.xml.convert.Converter;
 import org.simpleframework.xml.stream.InputNode;
+import org.simpleframework.xml.stream.Node;
 import org.simpleframework.xml.stream.OutputNode;
 
 import java.nio.charset.StandardCharsets;
@@ -17,6 +18,14 @@ public class ValueConverter implements Converter<EntryClasses.StringProperty.Val
 
     private final StreamEncryptor encryption;
 
+    /**
+     * A converter that uses the encryption carried by the nodes it is given, see {@link EncryptionNodes},
+     * so that it can be shared by loads and saves of different streams
+     */
+    public ValueConverter() {
+        this(null);
+    }
+
     public ValueConverter(StreamEncryptor encryption) {
         this.encryption = encryption;
     }
@@ -37,7 +46,8 @@ public class ValueConverter implements Converter<EntryClasses.StringProperty.Val
             if (Objects.nonNull(text)) {
                 encrypted = Base64.decodeBase64(text.getBytes());
             }
-            String decrypted = new String(encryption.decrypt(encrypted), StandardCharsets.UTF_8);
+            getEncryption(node).decrypt(encrypted, 0, encrypted.length);
+            String decrypted = new String(encrypted, StandardCharsets.UTF_8);
             value.setText(decrypted);
             value.setProtected(null);
             value.setProtectOnOutput(true);
@@ -56,7 +66,8 @@ public class ValueConverter implements Converter<EntryClasses.StringProperty.Val
     @Override
     public void write(OutputNode node, EntryClasses.StringProperty.Value value) throws Exception {
         if (value.getProtectOnOutput()) {
-            byte [] encrypted = encryption.encrypt(value.getText().getBytes(StandardCharsets.UTF_8));
+            byte [] encrypted = value.getText().getBytes(StandardCharsets.UTF_8);
+            getEncryption(node).encrypt(encrypted, 0, encrypted.length);
             byte [] base64Encoded = Base64.encodeBase64(encrypted);
             node.setValue(new String(base64Encoded));
             node.getAttributes().put("Protected", "True");
@@ -65,4 +76,8 @@ public class ValueConverter implements Converter<EntryClasses.StringProperty.Val
         }
         //node.getAttributes().remove("protectInMemory");
     }
+
+    private StreamEncryptor getEncryption(Node node) {
+        return Objects.nonNull(encryption) ? encryption : EncryptionNodes.getEncryption(node);
+    }
 }
@@ -20,7 +20,6 @@ import org.linguafranca.pwdb.Entry;
 import org.linguafranca.pwdb.kdbx.simple.SimpleGroup;
 import org.linguafranca.pwdb.kdbx.simple.converter.Base64ByteArrayConverter;
 import org.linguafranca.pwdb.kdbx.simple.converter.KeePassBooleanConverter;
-import org.linguafranca.pwdb.kdbx.simple.converter.TimeConverter;
 import org.linguafranca.pwdb.kdbx.simple.converter.UuidConverter;
 import org.simpleframework.xml.*;
 import org.simpleframework.xml.convert.Convert;
@@ -71,24 +70,20 @@ public class KeePassFile {
         @Element(name = "DatabaseName")
         public String databaseName;
         @Element(name = "DatabaseNameChanged", type = Date.class)
-        @Convert(TimeConverter.class)
         public Date databaseNameChanged;
         @Element(name = "DatabaseDescription")
         public String databaseDescription;
         @Element(name = "DatabaseDescriptionChanged", type = Date.class)
-        @Convert(TimeConverter.class)
         public Date databaseDescriptionChanged;
         @Element(name = "DefaultUserName")
         protected String defaultUserName;
         @Element(name = "DefaultUserNameChanged", type = Date.class)
-        @Convert(TimeConverter.class)
         protected Date defaultUserNameChanged;
         @Element(name = "MaintenanceHistoryDays")
         protected int maintenanceHistoryDays;
         @Element(name = "Color")
         protected String color;
         @Element(name = "MasterKeyChanged", type = Date.class)
-        @Convert(TimeConverter.class)
         protected Date masterKeyChanged;
         @Element(name = "MasterKeyChangeRec")
         protected int masterKeyChangeRec;
@@ -105,13 +100,11 @@ public class KeePassFile {
         @Convert(UuidConverter.class)
         public UUID recycleBinUUID;
         @Element(name = "RecycleBinChanged", type = Date.class)
-        @Convert(TimeConverter.class)
         public Date recycleBinChanged;
         @Element(name = "EntryTemplatesGroup", type = UUID.class)
         @Convert(UuidConverter.class)
         protected UUID entryTemplatesGroup;
         @Element(name = "EntryTemplatesGroupChanged", type = Date.class)
-        @Convert(TimeConverter.class)
         protected Date entryTemplatesGroupChanged;
         @Element(name = "LastSelectedGroup", type = UUID.class)
         @Convert(UuidConverter.class)
@@ -131,7 +124,6 @@ public class KeePassFile {
         /* version 4 */
 
         @Element(name = "SettingsChanged", required = false, type = Date.class)
-        @Convert(TimeConverter.class)
         protected Date settingsChanged;
     }
 
@@ -218,7 +210,6 @@ public class KeePassFile {
         @Element(name = "Name")
         protected String name;
         @Element(name = "LastModificationTime", type=Date.class)
-        @Convert(TimeConverter.class)
         protected Date lastModificationTime;
         @Element(name = "Data")
         @Convert(Base64ByteArrayConverter.class)
@@ -260,7 +251,6 @@ public class KeePassFile {
         @Convert(UuidConverter.class)
         protected UUID uuid;
         @Element(name = "DeletionTime", type = Date.class)
-        @Convert(TimeConverter.class)
         protected Date deletionTime;
     }
 }
@@ -17,7 +17,6 @@
 package org.linguafranca.pwdb.kdbx.simple.model;
 
 import org.linguafranca.pwdb.kdbx.simple.converter.KeePassBooleanConverter;
-import org.linguafranca.pwdb.kdbx.simple.converter.TimeConverter;
 import org.simpleframework.xml.Element;
 import org.simpleframework.xml.Root;
 import org.simpleframework.xml.convert.Convert;
@@ -31,16 +30,12 @@ import java.util.Date;
 @Root
 public class Times {
     @Element(name = "LastModificationTime", type = Date.class)
-    @Convert(TimeConverter.class)
     protected Date lastModificationTime;
     @Element(name = "CreationTime", type = Date.class)
-    @Convert(TimeConverter.class)
     protected Date creationTime;
     @Element(name = "LastAccessTime", type = Date.class)
-    @Convert(TimeConverter.class)
     protected Date lastAccessTime;
     @Element(name = "ExpiryTime", type = Date.class)
-    @Convert(TimeConverter.class)
     protected Date expiryTime;
     @Element(name = "Expires", type = Boolean.class)
     @Convert(KeePassBooleanConverter.class)
@@ -48,7 +43,6 @@ public class Times {
     @Element(name = "UsageCount")
     protected int usageCount;
     @Element(name = "LocationChanged", type = Date.class)
-    @Convert(TimeConverter.class)
     protected Date locationChanged;
 
     public Date getLastModificationTime() {
@@ -21,6 +21,8 @@ import org.linguafranca.pwdb.kdbx.KdbxCreds;
 import org.linguafranca.pwdb.Credentials;
 
 import java.io.InputStream;
+import java.io.IOException;
+import java.nio.file.Path;
 
 /**
  * @author jo
@@ -34,4 +36,9 @@ public class SimpleDatabaseLoaderTest extends DatabaseLoaderChecks {
         super.database = SimpleDatabase.load(credentials, inputStream);
 
     }
+
+    @Override
+    protected SimpleDatabase loadFromPath(Path path) throws IOException {
+        return SimpleDatabase.load(new KdbxCreds("123".getBytes()), path);
+    }
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linguafranca.pwdb.kdbx.stax;
+
+import org.linguafranca.pwdb.BinaryPool;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The content of a KDBX XML document. Meta is kept as read, other than attachments,
+ * which are held in the binary pool whatever the version of the file.
+ */
+final class KeePassFile {
+
+    Node meta;
+    StaxGroup rootGroup;
+    /* the children of Root other than the root group, e.g. DeletedObjects */
+    final List<Node> rootNodes = new ArrayList<>();
+    BinaryPool binaryPool = new BinaryPool();
+
+    /**
+     * Whether MemoryProtection in Meta asks for a standard property to be protected
+     */
+    boolean shouldProtect(String propertyName) {
+        Node memoryProtection = meta.getChild("MemoryProtection");
+        if (memoryProtection == null) {
+            return false;
+        }
+        String value = memoryProtection.getChildText("Protect" + propertyName);
+        return value != null && value.equalsIgnoreCase("true");
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.stax;
+
+import org.linguafranca.pwdb.BinaryPool;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.PropertyValue;
+import org.linguafranca.pwdb.StreamConfiguration;
+import org.linguafranca.pwdb.StreamFormat;
+import org.linguafranca.pwdb.kdbx.Helpers;
+import org.linguafranca.pwdb.kdbx.KdbxHeader;
+import org.linguafranca.pwdb.kdbx.KdbxStreamFormat;
+import org.linguafranca.pwdb.kdbx.TimestampCodec;
+import org.linguafranca.pwdb.protect.ProtectedDatabase;
+import org.linguafranca.pwdb.security.StreamEncryptor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Implementation of {@link org.linguafranca.pwdb.Database} over a compact hand-written model,
+ * read and written using StAX without a data binding framework or reflection. See
+ * {@link StaxSerializableDatabase}.
+ *
+ * @author jo
+ */
+public class StaxDatabase extends ProtectedDatabase<StaxDatabase, StaxGroup, StaxEntry, StaxIcon> {
+
+    KeePassFile keePassFile;
+    StreamFormat<?> streamFormat;
+    private UUID recycleBinUuid;
+
+    /**
+     * Create a new empty database
+     */
+    public StaxDatabase() {
+        this(StaxSerializableDatabase.createEmptyDatabase(), null);
+    }
+
+    StaxDatabase(KeePassFile keePassFile, StreamFormat<?> streamFormat) {
+        this.keePassFile = keePassFile;
+        this.streamFormat = streamFormat;
+        keePassFile.rootGroup.database = this;
+        fixUp(keePassFile.rootGroup);
+        String recycleBin = keePassFile.meta.getChildText("RecycleBinUUID");
+        recycleBinUuid = recycleBin == null || recycleBin.isEmpty() ? null : Helpers.uuidFromBase64(recycleBin);
+    }
+
+    /* on load set the database of groups and entries, parents are set as they are read */
+    private void fixUp(StaxGroup parent) {
+        for (StaxGroup group : parent.groups) {
+            group.database = this;
+            fixUp(group);
+        }
+        for (StaxEntry entry : parent.entries) {
+            entry.database = this;
+            if (entry.history != null) {
+                for (StaxEntry historic : entry.history) {
+                    historic.database = this;
+                }
+            }
+        }
+    }
+
+    /**
+     * Load plaintext XML
+     *
+     * @param inputStream contains the XML
+     * @return a new Database
+     * @throws IOException on load failure
+     */
+    public static StaxDatabase loadXml(InputStream inputStream) throws IOException {
+        StaxSerializableDatabase serializableDatabase = new StaxSerializableDatabase();
+        serializableDatabase.setEncryption(new StreamEncryptor.None());
+        KeePassFile keePassFile = serializableDatabase.load(inputStream).keePassFile;
+        keePassFile.rootGroup.uuid = UUID.randomUUID();
+        return new StaxDatabase(keePassFile, null);
+    }
+
+    /**
+     * Load kdbx file
+     *
+     * @param credentials credentials to use
+     * @param inputStream where to load from
+     * @return a new database
+     */
+    public static StaxDatabase load(Credentials credentials, InputStream inputStream) throws IOException {
+        StaxSerializableDatabase serializableDatabase = new StaxSerializableDatabase();
+        StreamFormat<?> streamFormat = new KdbxStreamFormat();
+        streamFormat.load(serializableDatabase, credentials, inputStream);
+        return new StaxDatabase(serializableDatabase.keePassFile, streamFormat);
+    }
+
+    /**
+     * Load kdbx file storing property values according to a strategy, which becomes the
+     * strategy of the database and is closed when the database is closed
+     *
+     * @param credentials credentials to use
+     * @param inputStream where to load from
+     * @param strategy    the property value strategy
+     * @return a new database
+     */
+    public static StaxDatabase load(Credentials credentials, InputStream inputStream,
+                                    PropertyValue.Strategy strategy) throws IOException {
+        StaxSerializableDatabase serializableDatabase = new StaxSerializableDatabase();
+        serializableDatabase.setPropertyValueStrategy(strategy);
+        StreamFormat<?> streamFormat = new KdbxStreamFormat();
+        streamFormat.load(serializableDatabase, credentials, inputStream);
+        StaxDatabase database = new StaxDatabase(serializableDatabase.keePassFile, streamFormat);
+        database.setPropertyValueStrategy(strategy);
+        return database;
+    }
+
+    /**
+     * Load kdbx file holding attachments in a pool, e.g. one which keeps only some of them in memory.
+     * The pool is closed when the database is closed.
+     *
+     * @param credentials credentials to use
+     * @param inputStream where to load from
+     * @param binaryPool  the pool to hold attachments in
+     * @return a new database
+     */
+    public static StaxDatabase load(Credentials credentials, InputStream inputStream,
+                                    BinaryPool binaryPool) throws IOException {
+        StaxSerializableDatabase serializableDatabase = new StaxSerializableDatabase();
+        serializableDatabase.setBinaryPool(binaryPool);
+        StreamFormat<?> streamFormat = new KdbxStreamFormat();
+        streamFormat.load(serializableDatabase, credentials, inputStream);
+        return new StaxDatabase(serializableDatabase.keePassFile, streamFormat);
+    }
+
+    /**
+     * Load kdbx file, reading the file memory mapped
+     *
+     * @param credentials credentials to use
+     * @param path        the file to load
+     * @return a new database
+     */
+    public static StaxDatabase load(Credentials credentials, Path path) throws IOException {
+        StaxSerializableDatabase serializableDatabase = new StaxSerializableDatabase();
+        StreamFormat<?> streamFormat = new KdbxStreamFormat();
+        streamFormat.load(serializableDatabase, credentials, path);
+        return new StaxDatabase(serializableDatabase.keePassFile, streamFormat);
+    }
+
+    /**
+     * Save the database with the same stream format that it was loaded with, or V4 default if none
+     *
+     * @param credentials  credentials to use
+     * @param outputStream where to write to
+     */
+    @Override
+    public void save(Credentials credentials, OutputStream outputStream) throws IOException {
+        if (Objects.isNull(streamFormat)) {
+            streamFormat = new KdbxStreamFormat(new KdbxHeader(4));
+        }
+        save(streamFormat, credentials, outputStream);
+    }
+
+    /**
+     * Save the database with a choice of stream format
+     *
+     * @param streamFormat the format to use
+     * @param credentials  credentials to use
+     * @param outputStream where to write to
+     */
+    @Override
+    public <C extends StreamConfiguration> void save(StreamFormat<C> streamFormat, Credentials credentials,
+                                                     OutputStream outputStream) throws IOException {
+        keePassFile.meta.setChildText("Generator", "KeePassJava2-Stax");
+        StaxSerializableDatabase serializableDatabase = new StaxSerializableDatabase(keePassFile);
+        serializableDatabase.setPropertyValueStrategy(getPropertyValueStrategy());
+        streamFormat.save(serializableDatabase, credentials, outputStream);
+        setDirty(false);
+    }
+
+    @Override
+    public StaxGroup getRootGroup() {
+        return keePassFile.rootGroup;
+    }
+
+    @Override
+    public StaxGroup newGroup() {
+        return StaxGroup.createGroup(this);
+    }
+
+    @Override
+    public StaxEntry newEntry() {
+        return StaxEntry.createEntry(this);
+    }
+
+    @Override
+    public StaxIcon newIcon() {
+        return new StaxIcon();
+    }
+
+    @Override
+    public StaxIcon newIcon(Integer integer) {
+        return new StaxIcon(integer);
+    }
+
+    @Override
+    public boolean isRecycleBinEnabled() {
+        String enabled = keePassFile.meta.getChildText("RecycleBinEnabled");
+        return enabled != null && Boolean.TRUE.equals(Helpers.toBoolean(enabled));
+    }
+
+    @Override
+    public void enableRecycleBin(boolean enable) {
+        keePassFile.meta.setChildText("RecycleBinEnabled", Helpers.fromBoolean(enable));
+    }
+
+    @Override
+    public StaxGroup getRecycleBin() {
+        StaxGroup group = recycleBinUuid == null ? null : findGroup(recycleBinUuid);
+        if (group == null && isRecycleBinEnabled()) {
+            group = newGroup("Recycle Bin");
+            getRootGroup().addGroup(group);
+            recycleBinUuid = group.getUuid();
+            keePassFile.meta.setChildText("RecycleBinUUID", Helpers.base64FromUuid(recycleBinUuid));
+            keePassFile.meta.setChildText("RecycleBinChanged", now());
+        }
+        return group;
+    }
+
+    UUID getRecycleBinUuid() {
+        return recycleBinUuid;
+    }
+
+    @Override
+    public String getName() {
+        return keePassFile.meta.getChildText("DatabaseName");
+    }
+
+    @Override
+    public void setName(String name) {
+        keePassFile.meta.setChildText("DatabaseName", name);
+        keePassFile.meta.setChildText("DatabaseNameChanged", now());
+        setDirty(true);
+    }
+
+    @Override
+    public String getDescription() {
+        return keePassFile.meta.getChildText("DatabaseDescription");
+    }
+
+    @Override
+    public void setDescription(String description) {
+        keePassFile.meta.setChildText("DatabaseDescription", description);
+        keePassFile.meta.setChildText("DatabaseDescriptionChanged", now());
+        setDirty(true);
+    }
+
+    /* timestamps in Meta are held as text, and reformatted on save */
+    private static String now() {
+        return TimestampCodec.encodeV3(new Date());
+    }
+
+    @Override
+    public boolean shouldProtect(String propertyName) {
+        return keePassFile.shouldProtect(propertyName);
+    }
+
+    public BinaryPool getBinaryPool() {
+        return keePassFile.binaryPool;
+    }
+
+    /**
+     * Also closes the pool of attachments, deleting its temporary file if it has one
+     */
+    @Override
+    public void close() {
+        super.close();
+        try {
+            keePassFile.binaryPool.close();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public StreamFormat<?> getStreamFormat() {
+        return streamFormat;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.stax;
+
+import org.jetbrains.annotations.NotNull;
+import org.linguafranca.pwdb.PropertyValue;
+import org.linguafranca.pwdb.base.AbstractEntry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Implementation of {@link org.linguafranca.pwdb.Entry} for the StAX database.
+ * <p>
+ * Property names and values are held in parallel lists, and attachments by name and
+ * index in the database's binary pool. Elements that are not otherwise modelled,
+ * such as AutoType, are kept as read.
+ *
+ * @author jo
+ */
+public class StaxEntry extends AbstractEntry<StaxDatabase, StaxGroup, StaxEntry, StaxIcon> {
+
+    StaxDatabase database;
+    StaxGroup parent;
+
+    UUID uuid;
+    int iconId;
+    Times times;
+    final List<String> propertyNames = new ArrayList<>(STANDARD_PROPERTY_NAMES.size());
+    final List<PropertyValue> propertyValues = new ArrayList<>(STANDARD_PROPERTY_NAMES.size());
+    /* attachment names and their indexes in the binary pool, null if there are none */
+    List<String> binaryNames;
+    List<Integer> binaryRefs;
+    /* unmodelled elements, null if there are none */
+    List<Node> nodes;
+    /* null if there is no History element */
+    List<StaxEntry> history;
+
+    StaxEntry() {
+    }
+
+    static StaxEntry createEntry(StaxDatabase database) {
+        StaxEntry entry = new StaxEntry();
+        entry.database = database;
+        entry.uuid = UUID.randomUUID();
+        entry.times = Times.now();
+        // avoiding setProperty as it does a touch()
+        PropertyValue.Strategy strategy = database.getPropertyValueStrategy();
+        for (String name : STANDARD_PROPERTY_NAMES) {
+            entry.propertyNames.add(name);
+            entry.propertyValues.add(strategy.getFactoryFor(name).of(""));
+        }
+        return entry;
+    }
+
+    @Override
+    public String getProperty(String name) {
+        int index = propertyNames.indexOf(name);
+        return index < 0 ? null : propertyValues.get(index).getValueAsString();
+    }
+
+    @Override
+    public void setProperty(String name, String value) {
+        setPropertyValue(name, database.getPropertyValueStrategy().getFactoryFor(name).of(value));
+    }
+
+    @Override
+    public PropertyValue getPropertyValue(String name) {
+        int index = propertyNames.indexOf(name);
+        return index < 0 ? null : propertyValues.get(index);
+    }
+
+    @Override
+    public void setPropertyValue(String name, PropertyValue value) {
+        int index = propertyNames.indexOf(name);
+        if (index < 0) {
+            propertyNames.add(name);
+            propertyValues.add(value);
+        } else {
+            propertyValues.set(index, value);
+        }
+        touch();
+    }
+
+    @Override
+    public boolean removeProperty(String name) throws IllegalArgumentException {
+        if (STANDARD_PROPERTY_NAMES.contains(name)) {
+            throw new IllegalArgumentException("may not remove property: " + name);
+        }
+        int index = propertyNames.indexOf(name);
+        if (index < 0) {
+            return false;
+        }
+        propertyNames.remove(index);
+        propertyValues.remove(index);
+        touch();
+        return true;
+    }
+
+    @Override
+    public List<String> getPropertyNames() {
+        return new ArrayList<>(propertyNames);
+    }
+
+    private int binaryIndex(String name) {
+        return binaryNames == null ? -1 : binaryNames.indexOf(name);
+    }
+
+    @Override
+    public byte[] getBinaryProperty(String name) {
+        int index = binaryIndex(name);
+        return index < 0 ? null : database.getBinaryPool().get(binaryRefs.get(index));
+    }
+
+    @Override
+    public InputStream getBinaryPropertyStream(String name) throws IOException {
+        int index = binaryIndex(name);
+        return index < 0 ? null : database.getBinaryPool().getInputStream(binaryRefs.get(index));
+    }
+
+    @Override
+    public void setBinaryProperty(String name, byte[] value) {
+        // the pool does not copy
+        addBinaryReference(name, database.getBinaryPool().add(value.clone()));
+    }
+
+    @Override
+    public void setBinaryPropertyStream(String name, InputStream value) throws IOException {
+        addBinaryReference(name, database.getBinaryPool().add(value));
+    }
+
+    /* refer to an attachment, replacing any with the same name */
+    private void addBinaryReference(String name, int ref) {
+        if (binaryNames == null) {
+            binaryNames = new ArrayList<>();
+            binaryRefs = new ArrayList<>();
+        }
+        int index = binaryNames.indexOf(name);
+        if (index < 0) {
+            binaryNames.add(name);
+            binaryRefs.add(ref);
+        } else {
+            binaryRefs.set(index, ref);
+        }
+        touch();
+    }
+
+    @Override
+    public boolean removeBinaryProperty(String name) {
+        int index = binaryIndex(name);
+        if (index < 0) {
+            return false;
+        }
+        binaryNames.remove(index);
+        binaryRefs.remove(index);
+        touch();
+        return true;
+    }
+
+    @Override
+    public List<String> getBinaryPropertyNames() {
+        return binaryNames == null ? new ArrayList<>() : new ArrayList<>(binaryNames);
+    }
+
+    @Override
+    public StaxGroup getParent() {
+        return parent;
+    }
+
+    @Override
+    public @NotNull UUID getUuid() {
+        return uuid;
+    }
+
+    @Override
+    public StaxIcon getIcon() {
+        return new StaxIcon(iconId);
+    }
+
+    @Override
+    public void setIcon(StaxIcon icon) {
+        iconId = icon.getIndex();
+        touch();
+    }
+
+    @Override
+    public Date getLastAccessTime() {
+        return new Date(times.getLastAccessTime());
+    }
+
+    @Override
+    public Date getCreationTime() {
+        return new Date(times.getCreationTime());
+    }
+
+    @Override
+    public boolean getExpires() {
+        return times.getExpires();
+    }
+
+    @Override
+    public void setExpires(boolean expires) {
+        times.setExpires(expires);
+        touch();
+    }
+
+    @Override
+    public Date getExpiryTime() {
+        return new Date(times.getExpiryTime());
+    }
+
+    @Override
+    public void setExpiryTime(Date expiryTime) throws IllegalArgumentException {
+        if (expiryTime == null) {
+            throw new IllegalArgumentException("expiryTime may not be null");
+        }
+        times.setExpiryTime(expiryTime.getTime());
+        touch();
+    }
+
+    @Override
+    public Date getLastModificationTime() {
+        return new Date(times.getLastModificationTime());
+    }
+
+    @Override
+    protected void touch() {
+        times.setLastModificationTime(System.currentTimeMillis());
+        database.setDirty(true);
+    }
+}
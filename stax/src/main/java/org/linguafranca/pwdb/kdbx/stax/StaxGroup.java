@@ -0,0 +1,188 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.stax;
+
+import org.jetbrains.annotations.NotNull;
+import org.linguafranca.pwdb.base.AbstractGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Implementation of {@link org.linguafranca.pwdb.Group} for the StAX database
+ *
+ * @author jo
+ */
+public class StaxGroup extends AbstractGroup<StaxDatabase, StaxGroup, StaxEntry, StaxIcon> {
+
+    StaxDatabase database;
+    StaxGroup parent;
+
+    UUID uuid;
+    String name;
+    String notes;
+    int iconId;
+    Times times;
+    /* unmodelled elements, null if there are none */
+    List<Node> nodes;
+    final List<StaxEntry> entries = new ArrayList<>();
+    final List<StaxGroup> groups = new ArrayList<>();
+
+    StaxGroup() {
+    }
+
+    static StaxGroup createGroup(StaxDatabase database) {
+        StaxGroup group = new StaxGroup();
+        group.database = database;
+        group.uuid = UUID.randomUUID();
+        group.name = "";
+        group.times = Times.now();
+        return group;
+    }
+
+    @Override
+    public boolean isRootGroup() {
+        return database.getRootGroup() == this;
+    }
+
+    @Override
+    public boolean isRecycleBin() {
+        return uuid.equals(database.getRecycleBinUuid());
+    }
+
+    @Override
+    public StaxGroup getParent() {
+        return parent;
+    }
+
+    @Override
+    public void setParent(StaxGroup parent) {
+        parent.addGroup(this);
+    }
+
+    @Override
+    public List<StaxGroup> getGroups() {
+        return new ArrayList<>(groups);
+    }
+
+    @Override
+    public int getGroupsCount() {
+        return groups.size();
+    }
+
+    @Override
+    public StaxGroup addGroup(StaxGroup group) {
+        if (group.isRootGroup()) {
+            throw new IllegalStateException("Cannot add root group to another group");
+        }
+        if (database != group.database) {
+            throw new IllegalStateException("Must be from same database");
+        }
+        if (group.parent != null) {
+            group.parent.removeGroup(group);
+        }
+        group.parent = this;
+        groups.add(group);
+        touch();
+        return group;
+    }
+
+    @Override
+    public StaxGroup removeGroup(StaxGroup group) {
+        if (database != group.database) {
+            throw new IllegalStateException("Must be from same database");
+        }
+        groups.remove(group);
+        group.parent = null;
+        touch();
+        return group;
+    }
+
+    @Override
+    public List<StaxEntry> getEntries() {
+        return new ArrayList<>(entries);
+    }
+
+    @Override
+    public int getEntriesCount() {
+        return entries.size();
+    }
+
+    @Override
+    public StaxEntry addEntry(StaxEntry entry) {
+        if (database != entry.database) {
+            throw new IllegalStateException("Must be from same database");
+        }
+        if (entry.parent != null) {
+            entry.parent.removeEntry(entry);
+        }
+        entries.add(entry);
+        entry.parent = this;
+        touch();
+        return entry;
+    }
+
+    @Override
+    public StaxEntry removeEntry(StaxEntry entry) {
+        if (database != entry.database) {
+            throw new IllegalStateException("Must be from same database");
+        }
+        entries.remove(entry);
+        entry.parent = null;
+        touch();
+        return entry;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void setName(String name) {
+        this.name = name;
+        touch();
+    }
+
+    @Override
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    @Override
+    public StaxIcon getIcon() {
+        return new StaxIcon(iconId);
+    }
+
+    @Override
+    public void setIcon(StaxIcon icon) {
+        iconId = icon.getIndex();
+        touch();
+    }
+
+    @NotNull
+    @Override
+    public StaxDatabase getDatabase() {
+        return database;
+    }
+
+    private void touch() {
+        times.setLastModificationTime(System.currentTimeMillis());
+        database.setDirty(true);
+    }
+}
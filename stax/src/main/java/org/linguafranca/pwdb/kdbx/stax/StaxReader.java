@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.stax;
+
+import org.linguafranca.pwdb.PropertyValue;
+import org.linguafranca.pwdb.kdbx.FormatContext;
+import org.linguafranca.pwdb.security.StreamEncryptor;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.UUID;
+
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+/**
+ * Reads a KDBX XML document in a single pull pass, decrypting protected values as they
+ * are encountered, which is the order in which the inner stream was encrypted.
+ */
+final class StaxReader extends AbstractStaxReader {
+
+    StaxReader(XMLStreamReader reader, StreamEncryptor encryption, PropertyValue.Strategy strategy,
+               FormatContext formatContext) {
+        super(reader, encryption, strategy, formatContext);
+    }
+
+    /**
+     * Read a document into a file whose binary pool is to receive V3 attachments
+     */
+    void read(KeePassFile file) throws XMLStreamException {
+        reader.nextTag();
+        reader.require(START_ELEMENT, null, "KeePassFile");
+        while (reader.nextTag() == START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case "Meta":
+                    file.meta = readMeta(file);
+                    break;
+                case "Root":
+                    readRoot(file);
+                    break;
+                default:
+                    skip();
+            }
+        }
+        if (file.meta == null || file.rootGroup == null) {
+            throw new XMLStreamException("Missing Meta or Root group");
+        }
+    }
+
+    private Node readMeta(KeePassFile file) throws XMLStreamException {
+        Node meta = new Node("Meta");
+        while (reader.nextTag() == START_ELEMENT) {
+            if (reader.getLocalName().equals("Binaries")) {
+                readBinaries(file.binaryPool::set);
+                // a placeholder, the pool is written in its place
+                meta.addChild(new Node("Binaries"));
+            } else {
+                meta.addChild(readNode());
+            }
+        }
+        return meta;
+    }
+
+    private void readRoot(KeePassFile file) throws XMLStreamException {
+        while (reader.nextTag() == START_ELEMENT) {
+            if (reader.getLocalName().equals("Group") && file.rootGroup == null) {
+                file.rootGroup = readGroup();
+            } else {
+                file.rootNodes.add(readNode());
+            }
+        }
+    }
+
+    private StaxGroup readGroup() throws XMLStreamException {
+        StaxGroup group = new StaxGroup();
+        while (reader.nextTag() == START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case "UUID":
+                    group.uuid = readUuid();
+                    break;
+                case "Name":
+                    group.name = reader.getElementText();
+                    break;
+                case "Notes":
+                    group.notes = reader.getElementText();
+                    break;
+                case "IconID":
+                    group.iconId = readInt();
+                    break;
+                case "Times":
+                    group.times = readTimes();
+                    break;
+                case "Entry":
+                    StaxEntry entry = readEntry();
+                    entry.parent = group;
+                    group.entries.add(entry);
+                    break;
+                case "Group":
+                    StaxGroup child = readGroup();
+                    child.parent = group;
+                    group.groups.add(child);
+                    break;
+                default:
+                    if (group.nodes == null) {
+                        group.nodes = new ArrayList<>();
+                    }
+                    group.nodes.add(readNode());
+            }
+        }
+        if (group.times == null) {
+            group.times = Times.now();
+        }
+        if (group.uuid == null) {
+            group.uuid = UUID.randomUUID();
+        }
+        return group;
+    }
+
+    private StaxEntry readEntry() throws XMLStreamException {
+        StaxEntry entry = new StaxEntry();
+        while (reader.nextTag() == START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case "UUID":
+                    entry.uuid = readUuid();
+                    break;
+                case "IconID":
+                    entry.iconId = readInt();
+                    break;
+                case "Times":
+                    entry.times = readTimes();
+                    break;
+                case "String":
+                    Map.Entry<String, PropertyValue> property = readString();
+                    if (property != null) {
+                        entry.propertyNames.add(property.getKey());
+                        entry.propertyValues.add(property.getValue());
+                    }
+                    break;
+                case "Binary":
+                    Map.Entry<String, Integer> binary = readBinary();
+                    if (binary != null) {
+                        if (entry.binaryNames == null) {
+                            entry.binaryNames = new ArrayList<>();
+                            entry.binaryRefs = new ArrayList<>();
+                        }
+                        entry.binaryNames.add(binary.getKey());
+                        entry.binaryRefs.add(binary.getValue());
+                    }
+                    break;
+                case "History":
+                    entry.history = new ArrayList<>();
+                    while (reader.nextTag() == START_ELEMENT) {
+                        entry.history.add(readEntry());
+                    }
+                    break;
+                default:
+                    if (entry.nodes == null) {
+                        entry.nodes = new ArrayList<>();
+                    }
+                    entry.nodes.add(readNode());
+            }
+        }
+        if (entry.times == null) {
+            entry.times = Times.now();
+        }
+        if (entry.uuid == null) {
+            entry.uuid = UUID.randomUUID();
+        }
+        return entry;
+    }
+}
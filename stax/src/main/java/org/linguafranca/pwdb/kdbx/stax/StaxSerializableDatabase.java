@@ -0,0 +1,179 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.stax;
+
+import com.fasterxml.aalto.stax.InputFactoryImpl;
+import com.fasterxml.aalto.stax.OutputFactoryImpl;
+import org.apache.commons.codec.binary.Base64;
+import org.linguafranca.pwdb.BinaryPool;
+import org.linguafranca.pwdb.PropertyValue;
+import org.linguafranca.pwdb.SerializableDatabase;
+import org.linguafranca.pwdb.kdbx.FormatContext;
+import org.linguafranca.pwdb.security.StreamEncryptor;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads and writes the XML of a KDBX database using StAX, a single pull pass to read and
+ * a single pass of an {@link XMLStreamWriter} to write, with protected values decrypted and
+ * encrypted inline.
+ * <p>
+ * The Aalto StAX implementation is used directly, rather than whichever is found on the class path.
+ *
+ * @author jo
+ */
+public class StaxSerializableDatabase implements SerializableDatabase, FormatContext.Aware {
+
+    private static final XMLInputFactory inputFactory = new InputFactoryImpl();
+    private static final XMLOutputFactory outputFactory = new OutputFactoryImpl();
+
+    static {
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    KeePassFile keePassFile;
+    private StreamEncryptor encryption;
+    private FormatContext formatContext = FormatContext.V3;
+    private BinaryPool binaryPool = new BinaryPool();
+    private PropertyValue.Strategy propertyValueStrategy = new PropertyValue.Strategy.Default();
+
+    public StaxSerializableDatabase() {
+    }
+
+    StaxSerializableDatabase(KeePassFile keePassFile) {
+        this.keePassFile = keePassFile;
+        this.binaryPool = keePassFile.binaryPool;
+    }
+
+    /**
+     * Create the content of a new database from the template in the kdbx module
+     */
+    static KeePassFile createEmptyDatabase() {
+        StaxSerializableDatabase database = new StaxSerializableDatabase();
+        database.setEncryption(new StreamEncryptor.None());
+        try (InputStream inputStream = StaxSerializableDatabase.class.getClassLoader().getResourceAsStream("base.kdbx.xml")) {
+            return database.load(inputStream).keePassFile;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public StaxSerializableDatabase load(InputStream inputStream) throws IOException {
+        KeePassFile file = new KeePassFile();
+        // V4 attachments may already have been read into the pool
+        file.binaryPool = binaryPool;
+        try {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(inputStream);
+            try {
+                new StaxReader(reader, encryption, propertyValueStrategy, formatContext).read(file);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        keePassFile = file;
+        return this;
+    }
+
+    @Override
+    public void save(OutputStream outputStream) throws IOException {
+        try {
+            XMLStreamWriter writer = outputFactory.createXMLStreamWriter(outputStream, "UTF-8");
+            try {
+                new StaxWriter(writer, encryption, formatContext).write(keePassFile);
+            } finally {
+                writer.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public StreamEncryptor getEncryption() {
+        return encryption;
+    }
+
+    @Override
+    public void setEncryption(StreamEncryptor encryption) {
+        this.encryption = encryption;
+    }
+
+    @Override
+    public void setFormatContext(FormatContext formatContext) {
+        this.formatContext = formatContext;
+    }
+
+    @Override
+    public byte[] getHeaderHash() {
+        String headerHash = keePassFile.meta.getChildText("HeaderHash");
+        return headerHash == null ? null : Base64.decodeBase64(headerHash.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public void setHeaderHash(byte[] hash) {
+        keePassFile.meta.setChildText("HeaderHash", new String(Base64.encodeBase64(hash), StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public void addBinary(int index, byte[] payload) {
+        binaryPool.set(index, payload);
+    }
+
+    @Override
+    public byte[] getBinary(int index) {
+        return binaryPool.get(index);
+    }
+
+    @Override
+    public int getBinaryCount() {
+        return binaryPool.size();
+    }
+
+    @Override
+    public BinaryPool getBinaryPool() {
+        return binaryPool;
+    }
+
+    /**
+     * Set the pool to load attachments into, e.g. one with a memory budget
+     *
+     * @param binaryPool the pool
+     */
+    public void setBinaryPool(BinaryPool binaryPool) {
+        this.binaryPool = binaryPool;
+    }
+
+    public PropertyValue.Strategy getPropertyValueStrategy() {
+        return propertyValueStrategy;
+    }
+
+    public void setPropertyValueStrategy(PropertyValue.Strategy propertyValueStrategy) {
+        this.propertyValueStrategy = propertyValueStrategy;
+    }
+}
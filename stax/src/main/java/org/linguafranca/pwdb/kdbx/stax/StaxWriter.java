@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.stax;
+
+import org.linguafranca.pwdb.Entry;
+import org.linguafranca.pwdb.kdbx.FormatContext;
+import org.linguafranca.pwdb.kdbx.Helpers;
+import org.linguafranca.pwdb.security.StreamEncryptor;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Writes a KDBX XML document in a single pass, encrypting protected values in document order.
+ */
+final class StaxWriter extends AbstractStaxWriter {
+
+    private Set<String> protectedProperties;
+
+    StaxWriter(XMLStreamWriter writer, StreamEncryptor encryption, FormatContext formatContext) {
+        super(writer, encryption, formatContext);
+    }
+
+    void write(KeePassFile file) throws XMLStreamException {
+        protectedProperties = new HashSet<>();
+        for (String name : Entry.STANDARD_PROPERTY_NAMES) {
+            if (file.shouldProtect(name)) {
+                protectedProperties.add(name);
+            }
+        }
+        writer.writeStartDocument("UTF-8", "1.0");
+        start("KeePassFile");
+        writeMeta(file);
+        start("Root");
+        writeGroup(file.rootGroup);
+        for (Node node : file.rootNodes) {
+            writeNode(node);
+        }
+        end();
+        end();
+        writer.writeEndDocument();
+        writer.flush();
+    }
+
+    private void writeMeta(KeePassFile file) throws XMLStreamException {
+        start("Meta");
+        boolean binariesWritten = false;
+        for (Node node : file.meta.getChildren()) {
+            if (node.getName().equals("Binaries")) {
+                writeBinaries(file.binaryPool);
+                binariesWritten = true;
+            } else {
+                writeNode(node);
+            }
+        }
+        if (!binariesWritten) {
+            writeBinaries(file.binaryPool);
+        }
+        end();
+    }
+
+    private void writeGroup(StaxGroup group) throws XMLStreamException {
+        start("Group");
+        leaf("UUID", Helpers.base64FromUuid(group.uuid));
+        leaf("Name", group.name);
+        leaf("Notes", group.notes);
+        leaf("IconID", String.valueOf(group.iconId));
+        writeNodes(group.nodes, true);
+        writeTimes(group.times);
+        writeNodes(group.nodes, false);
+        for (StaxEntry entry : group.entries) {
+            writeEntry(entry);
+        }
+        for (StaxGroup child : group.groups) {
+            writeGroup(child);
+        }
+        end();
+    }
+
+    private void writeEntry(StaxEntry entry) throws XMLStreamException {
+        start("Entry");
+        leaf("UUID", Helpers.base64FromUuid(entry.uuid));
+        leaf("IconID", String.valueOf(entry.iconId));
+        writeNodes(entry.nodes, true);
+        writeTimes(entry.times);
+        for (int i = 0; i < entry.propertyNames.size(); i++) {
+            String name = entry.propertyNames.get(i);
+            writeString(name, entry.propertyValues.get(i), protectedProperties.contains(name));
+        }
+        if (entry.binaryNames != null) {
+            for (int i = 0; i < entry.binaryNames.size(); i++) {
+                writeBinary(entry.binaryNames.get(i), entry.binaryRefs.get(i));
+            }
+        }
+        writeNodes(entry.nodes, false);
+        if (entry.history != null) {
+            start("History");
+            for (StaxEntry historic : entry.history) {
+                writeEntry(historic);
+            }
+            end();
+        }
+        end();
+    }
+}
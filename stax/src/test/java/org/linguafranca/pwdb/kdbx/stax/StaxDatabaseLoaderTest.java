@@ -0,0 +1,43 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.stax;
+
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.checks.DatabaseLoaderChecks;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * @author jo
+ */
+public class StaxDatabaseLoaderTest extends DatabaseLoaderChecks {
+
+    public StaxDatabaseLoaderTest() throws Exception {
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream("test123.kdbx");
+        // file has password credentials
+        Credentials credentials = new KdbxCreds("123".getBytes());
+        super.database = StaxDatabase.load(credentials, inputStream);
+    }
+
+    @Override
+    protected StaxDatabase loadFromPath(Path path) throws IOException {
+        return StaxDatabase.load(new KdbxCreds("123".getBytes()), path);
+    }
+}
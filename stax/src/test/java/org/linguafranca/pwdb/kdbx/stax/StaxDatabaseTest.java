@@ -0,0 +1,36 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.stax;
+
+import org.linguafranca.pwdb.Database;
+import org.linguafranca.pwdb.checks.BasicDatabaseChecks;
+
+import java.io.IOException;
+
+/**
+ * @author jo
+ */
+public class StaxDatabaseTest extends BasicDatabaseChecks {
+
+    public StaxDatabaseTest() throws IOException {
+    }
+
+    @Override
+    public Database createDatabase() {
+        return new StaxDatabase();
+    }
+}
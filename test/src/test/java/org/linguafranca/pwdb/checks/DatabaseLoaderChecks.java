@@ -20,7 +20,12 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.linguafranca.pwdb.*;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -39,12 +44,51 @@ public abstract class DatabaseLoaderChecks <D extends Database<D,G,E,I>, G exten
     protected Database<D,G,E,I> database;
     protected boolean skipDateCheck = false;
     private SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'hh:mm:ssX");
+    /**
+     * Load a test123 file from a path, as implementations may read files differently from streams
+     *
+     * @param path a copy of a test123 file, password "123"
+     * @return the database, or null if the implementation does not load from a path
+     */
+    protected Database<D,G,E,I> loadFromPath(Path path) throws IOException {
+        return null;
+    }
+
     /**
      * a test123 file for each format. Should contain the same thing. This is a basic sanity check.
      */
     @Test
     public void test123File() throws ParseException {
+        check123(database);
+    }
+
+    @Test
+    public void test123PathV3() throws Exception {
+        check123Path("test123.kdbx");
+    }
+
+    @Test
+    public void test123PathV4() throws Exception {
+        check123Path("test123-AES-Argon2.kdbx");
+    }
+
+    private void check123Path(String resourceName) throws IOException, ParseException {
+        Path path = Files.createTempFile("DatabaseLoaderChecks", ".kdbx");
+        try {
+            try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(resourceName)) {
+                Files.copy(inputStream, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Database<D,G,E,I> loaded = loadFromPath(path);
+            if (loaded == null) {
+                return;
+            }
+            check123(loaded);
+        } finally {
+            Files.delete(path);
+        }
+    }
 
+    private void check123(Database<D,G,E,I> database) throws ParseException {
         // visit all groups and entries and list them to console
         database.visit(new Visitor.Print(printStream));
 
@@ -25,7 +25,12 @@ import org.linguafranca.pwdb.*;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.*;
 import static org.linguafranca.test.util.TestUtil.getTestPrintStream;
@@ -135,6 +140,32 @@ public abstract class SaveAndReloadChecks <D extends Database<D, G, E, I>, G ext
         }
     }
 
+    /**
+     * Test verifies that databases can be saved and reloaded on several threads at once,
+     * each with its own inner stream encryption
+     */
+    @Test
+    public void concurrentSaveAndReloadTest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                    saveDatabase(createNewDatabase(), getCreds("123".getBytes()), outputStream);
+                    D input = loadDatabase(getCreds("123".getBytes()), new ByteArrayInputStream(outputStream.toByteArray()));
+                    verifyContents(input);
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     private D createNewDatabase() throws IOException {
         D database = getDatabase();
 